@@ -1,5 +1,6 @@
 package com.rtsp.client.config;
 
+import com.rtsp.client.media.module.base.MediaBufferOverflowPolicy;
 import com.rtsp.client.media.sdp.SdpParser;
 import com.rtsp.client.media.sdp.base.Sdp;
 import com.rtsp.client.service.ServiceManager;
@@ -42,12 +43,26 @@ public class ConfigManager {
     public static final String FIELD_DELETE_M3U8 = "DELETE_M3U8";
     public static final String FIELD_DELETE_TS = "DELETE_TS";
     public static final String FIELD_DELETE_MP4 = "DELETE_MP4";
+    public static final String FIELD_TS_WRITE_BUFFER_SIZE = "TS_WRITE_BUFFER_SIZE";
+    public static final String FIELD_TS_ASYNC_WRITE = "TS_ASYNC_WRITE";
+    public static final String FIELD_TS_ASYNC_WRITE_QUEUE_SIZE = "TS_ASYNC_WRITE_QUEUE_SIZE";
+    public static final String FIELD_TS_MMAP_WRITE = "TS_MMAP_WRITE";
+    public static final String FIELD_TS_MMAP_DEFAULT_BITRATE = "TS_MMAP_DEFAULT_BITRATE";
+    public static final String FIELD_SEGMENT_STORE = "SEGMENT_STORE";
+    public static final String FIELD_SEGMENT_STORE_MEMORY_LIMIT = "SEGMENT_STORE_MEMORY_LIMIT";
+    public static final String FIELD_REMUXER = "REMUXER";
+    public static final String FIELD_STREAMING_REMUX = "STREAMING_REMUX";
+    public static final String FIELD_FRAGMENTED_MP4 = "FRAGMENTED_MP4";
+    public static final String FIELD_JAVA_REMUX_MAX_BYTES = "JAVA_REMUX_MAX_BYTES";
+    public static final String FIELD_CONVERT_THREAD_COUNT = "CONVERT_THREAD_COUNT";
 
     // SECTION_NETWORK Field String
     private static final String FIELD_LOCAL_LISTEN_IP = "LOCAL_LISTEN_IP";
     private static final String FIELD_LOCAL_LISTEN_PORT = "LOCAL_LISTEN_PORT";
     private static final String FIELD_TARGET_IP = "TARGET_IP";
     private static final String FIELD_TARGET_PORT = "TARGET_PORT";
+    private static final String FIELD_HLS_SERVER = "HLS_SERVER";
+    private static final String FIELD_HLS_SERVER_PORT = "HLS_SERVER_PORT";
 
     // SECTION_RTSP Field String
     private static final String FIELD_USER_AGENT = "USER_AGENT";
@@ -57,6 +72,19 @@ public class ConfigManager {
     private static final String FIELD_TARGET_RTSP_PORT = "TARGET_RTSP_PORT";
     private static final String FIELD_URI_LIMIT = "URI_LIMIT";
     private static final String FIELD_RTP_TIMEOUT = "RTP_TIMEOUT";
+    private static final String FIELD_NATIVE_TRANSPORT = "NATIVE_TRANSPORT";
+    private static final String FIELD_MAX_DATAGRAM_PAYLOAD_SIZE = "MAX_DATAGRAM_PAYLOAD_SIZE";
+    private static final String FIELD_RECV_BATCH_COUNT = "RECV_BATCH_COUNT";
+    private static final String FIELD_RTP_REUSEPORT_COUNT = "RTP_REUSEPORT_COUNT";
+    private static final String FIELD_RTP_REORDER_DEPTH = "RTP_REORDER_DEPTH";
+    private static final String FIELD_RTP_REORDER_LATENCY = "RTP_REORDER_LATENCY";
+    private static final String FIELD_RTP_REORDER_MIN_LATENCY = "RTP_REORDER_MIN_LATENCY";
+    private static final String FIELD_RTP_REORDER_ADAPTIVE = "RTP_REORDER_ADAPTIVE";
+    private static final String FIELD_TS_BUFFER_MAX_PACKETS = "TS_BUFFER_MAX_PACKETS";
+    private static final String FIELD_TS_BUFFER_MAX_BYTES = "TS_BUFFER_MAX_BYTES";
+    private static final String FIELD_TS_BUFFER_OVERFLOW_POLICY = "TS_BUFFER_OVERFLOW_POLICY";
+    private static final String FIELD_MEDIA_MEMORY_BUDGET = "MEDIA_MEMORY_BUDGET";
+    private static final String FIELD_TS_DROP_NULL_PACKETS = "TS_DROP_NULL_PACKETS";
 
     // SECTION_COMMON Field String
     private static final String FIELD_MAGIC_COOKIE = "MAGIC_COOKIE";
@@ -76,12 +104,26 @@ public class ConfigManager {
     private boolean deleteM3u8 = false;
     private boolean deleteTs = false;
     private boolean deleteMp4 = false;
+    private int tsWriteBufferSize = 0; // bytes, TS 파일에 쓰기 전에 모아둘 버퍼 크기 (0 이면 바로 쓴다.)
+    private boolean tsAsyncWrite = false; // TS 파일 쓰기를 전용 I/O 스레드에서 처리할지 여부
+    private int tsAsyncWriteQueueSize = 0; // I/O 스레드에 넘길 수 있는 최대 쓰기 요청 개수
+    private boolean tsMmapWrite = false; // TS 파일을 미리 늘려두고 MappedByteBuffer 로 쓸지 여부
+    private long tsMmapDefaultBitrate = 0; // bps, 수신한 TS 가 없을 때 TS 파일 크기를 추정할 bitrate
+    private String segmentStore = null; // M3U8, TS 세그먼트 저장소 (DISK or MEMORY)
+    private long segmentStoreMemoryLimit = 0; // bytes, MEMORY 저장소의 최대 크기 (넘으면 디스크로 옮긴다.)
+    private String remuxer = null; // TS 를 MP4 로 옮기는 방법 (FFMPEG or JAVA, JAVA 가 실패하면 FFMPEG 로 변환한다.)
+    private boolean streamingRemux = false; // 수신하는 동안 REMUXER 에 TS 를 넘겨서 마지막 패킷을 받은 후 바로 MP4 를 마무리할지 여부
+    private boolean fragmentedMp4 = false; // STREAMING_REMUX 에서 세그먼트를 받을 때마다 moof / mdat fragment 를 이어 쓰는 fragmented MP4 로 만들지 여부 (파일 형식만 바뀌고, VideoPanel 은 그대로 세션이 끝난 후 재생한다.)
+    private int javaRemuxMaxBytes = 0; // bytes, REMUXER=JAVA 가 메모리에 모을 수 있는 stream 별 최대 Elementary stream 크기 (넘으면 FFMPEG 로 변환한다.)
+    private int convertThreadCount = 0; // MP4 변환 작업을 처리할 스레드 개수 (0 이면 CPU core 개수)
 
     // NETWORK
     private String localListenIp;
     private int localListenPort;
     private String targetIp;
     private int targetPort;
+    private boolean hlsServer = false; // 받은 세그먼트를 127.0.0.1 HTTP(HLS)로 제공해서 첫 세그먼트부터 재생할지 여부
+    private int hlsServerPort = 0; // 0 이면 비어있는 포트를 사용한다.
 
     // RTSP
     private String userAgent;
@@ -91,6 +133,19 @@ public class ConfigManager {
     private int targetRtspPort;
     private int uriLimit;
     private long rtpTimeout; // sec
+    private boolean nativeTransport = false; // RTP, RTCP 채널에 epoll 사용 여부 (Linux only)
+    private int maxDatagramPayloadSize; // bytes, recvmmsg 로 한 번에 읽을 datagram 하나의 최대 크기
+    private int recvBatchCount; // recvmmsg 로 한 번에 읽을 최대 datagram 개수
+    private int rtpReusePortCount; // SO_REUSEPORT 로 RTP 포트에 바인딩할 소켓 개수 (native transport only, 송신자 주소 hash 로 나누므로 송신자가 여럿일 때만 효과가 있다.)
+    private int rtpReorderDepth; // RTP 순서를 맞추기 위해 기다릴 최대 패킷 개수
+    private long rtpReorderLatency; // ms, 빠진 RTP 패킷을 기다릴 최대 시간
+    private long rtpReorderMinLatency; // ms, adaptive 모드에서 빠진 RTP 패킷을 기다릴 최소 시간
+    private boolean rtpReorderAdaptive = false; // 지터에 따라 reorder latency, depth 를 자동으로 조절할지 여부
+    private int tsBufferMaxPackets; // 세션 별 TS 버퍼에 쌓아둘 최대 RTP payload 개수
+    private long tsBufferMaxBytes; // bytes, 세션 별 TS 버퍼에 쌓아둘 최대 크기
+    private MediaBufferOverflowPolicy tsBufferOverflowPolicy = MediaBufferOverflowPolicy.DROP_UNTIL_PUSI; // TS 버퍼가 가득 찼을 때 정책
+    private long mediaMemoryBudget; // bytes, 모든 세션의 미디어 버퍼가 함께 사용할 최대 크기
+    private boolean tsDropNullPackets = true; // TS 파일에 쓰기 전에 Null 패킷(PID 0x1FFF)을 버릴지 여부
 
     // REGISTER
     private String magicCookie;
@@ -201,6 +256,53 @@ public class ConfigManager {
         this.deleteTs = Boolean.parseBoolean(getIniValue(SECTION_FFMPEG, FIELD_DELETE_TS));
         this.deleteMp4 = Boolean.parseBoolean(getIniValue(SECTION_FFMPEG, FIELD_DELETE_MP4));
 
+        this.tsWriteBufferSize = Integer.parseInt(getIniValue(SECTION_FFMPEG, FIELD_TS_WRITE_BUFFER_SIZE));
+        if (this.tsWriteBufferSize < 0) {
+            this.tsWriteBufferSize = 0;
+        }
+
+        this.tsAsyncWrite = Boolean.parseBoolean(getIniValue(SECTION_FFMPEG, FIELD_TS_ASYNC_WRITE));
+        this.tsAsyncWriteQueueSize = Integer.parseInt(getIniValue(SECTION_FFMPEG, FIELD_TS_ASYNC_WRITE_QUEUE_SIZE));
+        if (this.tsAsyncWriteQueueSize <= 0) {
+            this.tsAsyncWriteQueueSize = 256;
+        }
+
+        this.tsMmapWrite = Boolean.parseBoolean(getIniValue(SECTION_FFMPEG, FIELD_TS_MMAP_WRITE));
+        this.tsMmapDefaultBitrate = Long.parseLong(getIniValue(SECTION_FFMPEG, FIELD_TS_MMAP_DEFAULT_BITRATE));
+        if (this.tsMmapDefaultBitrate <= 0) {
+            this.tsMmapDefaultBitrate = 8000000;
+        }
+
+        this.segmentStore = getIniValue(SECTION_FFMPEG, FIELD_SEGMENT_STORE).trim().toUpperCase();
+        if (!this.segmentStore.equals("DISK") && !this.segmentStore.equals("MEMORY")) {
+            logger.warn("Unknown segment store. Use DISK. ({})", this.segmentStore);
+            this.segmentStore = "DISK";
+        }
+
+        this.segmentStoreMemoryLimit = Long.parseLong(getIniValue(SECTION_FFMPEG, FIELD_SEGMENT_STORE_MEMORY_LIMIT));
+        if (this.segmentStoreMemoryLimit <= 0) {
+            this.segmentStoreMemoryLimit = 134217728;
+        }
+
+        this.remuxer = getIniValue(SECTION_FFMPEG, FIELD_REMUXER).trim().toUpperCase();
+        if (!this.remuxer.equals("FFMPEG") && !this.remuxer.equals("JAVA")) {
+            logger.warn("Unknown remuxer. Use FFMPEG. ({})", this.remuxer);
+            this.remuxer = "FFMPEG";
+        }
+
+        this.streamingRemux = Boolean.parseBoolean(getIniValue(SECTION_FFMPEG, FIELD_STREAMING_REMUX));
+        this.fragmentedMp4 = Boolean.parseBoolean(getIniValue(SECTION_FFMPEG, FIELD_FRAGMENTED_MP4));
+
+        this.javaRemuxMaxBytes = Integer.parseInt(getIniValue(SECTION_FFMPEG, FIELD_JAVA_REMUX_MAX_BYTES));
+        if (this.javaRemuxMaxBytes <= 0) {
+            this.javaRemuxMaxBytes = 268435456;
+        }
+
+        this.convertThreadCount = Integer.parseInt(getIniValue(SECTION_FFMPEG, FIELD_CONVERT_THREAD_COUNT));
+        if (this.convertThreadCount <= 0) {
+            this.convertThreadCount = Runtime.getRuntime().availableProcessors();
+        }
+
         logger.debug("Load [{}] config...(OK)", SECTION_FFMPEG);
     }
 
@@ -221,6 +323,12 @@ public class ConfigManager {
             targetPort = 9100;
         }
 
+        hlsServer = Boolean.parseBoolean(getIniValue(SECTION_NETWORK, FIELD_HLS_SERVER));
+        hlsServerPort = Integer.parseInt(getIniValue(SECTION_NETWORK, FIELD_HLS_SERVER_PORT));
+        if (hlsServerPort < 0 || hlsServerPort > 65535) {
+            hlsServerPort = 0;
+        }
+
         logger.debug("Load [{}] config...(OK)", SECTION_NETWORK);
     }
 
@@ -257,6 +365,64 @@ public class ConfigManager {
             rtpTimeout = 2000;
         }
 
+        nativeTransport = Boolean.parseBoolean(getIniValue(SECTION_RTSP, FIELD_NATIVE_TRANSPORT));
+
+        maxDatagramPayloadSize = Integer.parseInt(getIniValue(SECTION_RTSP, FIELD_MAX_DATAGRAM_PAYLOAD_SIZE));
+        if (maxDatagramPayloadSize <= 0) {
+            maxDatagramPayloadSize = 1500;
+        }
+
+        recvBatchCount = Integer.parseInt(getIniValue(SECTION_RTSP, FIELD_RECV_BATCH_COUNT));
+        if (recvBatchCount <= 0) {
+            recvBatchCount = 1;
+        }
+
+        rtpReusePortCount = Integer.parseInt(getIniValue(SECTION_RTSP, FIELD_RTP_REUSEPORT_COUNT));
+        if (rtpReusePortCount <= 0) {
+            rtpReusePortCount = 1;
+        }
+
+        rtpReorderDepth = Integer.parseInt(getIniValue(SECTION_RTSP, FIELD_RTP_REORDER_DEPTH));
+        if (rtpReorderDepth <= 0) {
+            rtpReorderDepth = 64;
+        }
+
+        rtpReorderLatency = Long.parseLong(getIniValue(SECTION_RTSP, FIELD_RTP_REORDER_LATENCY));
+        if (rtpReorderLatency < 0) {
+            rtpReorderLatency = 50;
+        }
+
+        rtpReorderMinLatency = Long.parseLong(getIniValue(SECTION_RTSP, FIELD_RTP_REORDER_MIN_LATENCY));
+        if (rtpReorderMinLatency < 0 || rtpReorderMinLatency > rtpReorderLatency) {
+            rtpReorderMinLatency = rtpReorderLatency;
+        }
+
+        rtpReorderAdaptive = Boolean.parseBoolean(getIniValue(SECTION_RTSP, FIELD_RTP_REORDER_ADAPTIVE));
+
+        tsBufferMaxPackets = Integer.parseInt(getIniValue(SECTION_RTSP, FIELD_TS_BUFFER_MAX_PACKETS));
+        if (tsBufferMaxPackets <= 0) {
+            tsBufferMaxPackets = 16384;
+        }
+
+        tsBufferMaxBytes = Long.parseLong(getIniValue(SECTION_RTSP, FIELD_TS_BUFFER_MAX_BYTES));
+        if (tsBufferMaxBytes <= 0) {
+            tsBufferMaxBytes = 33554432;
+        }
+
+        String tsBufferOverflowPolicyName = getIniValue(SECTION_RTSP, FIELD_TS_BUFFER_OVERFLOW_POLICY);
+        tsBufferOverflowPolicy = MediaBufferOverflowPolicy.fromName(tsBufferOverflowPolicyName, null);
+        if (tsBufferOverflowPolicy == null) {
+            logger.warn("Unknown {}=[{}], use {}", FIELD_TS_BUFFER_OVERFLOW_POLICY, tsBufferOverflowPolicyName, MediaBufferOverflowPolicy.DROP_UNTIL_PUSI);
+            tsBufferOverflowPolicy = MediaBufferOverflowPolicy.DROP_UNTIL_PUSI;
+        }
+
+        mediaMemoryBudget = Long.parseLong(getIniValue(SECTION_RTSP, FIELD_MEDIA_MEMORY_BUDGET));
+        if (mediaMemoryBudget <= 0) {
+            mediaMemoryBudget = 268435456;
+        }
+
+        tsDropNullPackets = Boolean.parseBoolean(getIniValue(SECTION_RTSP, FIELD_TS_DROP_NULL_PACKETS));
+
         logger.debug("Load [{}] config...(OK)", SECTION_RTSP);
     }
 
@@ -479,6 +645,62 @@ public class ConfigManager {
         return deleteTs;
     }
 
+    public int getTsWriteBufferSize() {
+        return tsWriteBufferSize;
+    }
+
+    public boolean isTsAsyncWrite() {
+        return tsAsyncWrite;
+    }
+
+    public int getTsAsyncWriteQueueSize() {
+        return tsAsyncWriteQueueSize;
+    }
+
+    public boolean isTsMmapWrite() {
+        return tsMmapWrite;
+    }
+
+    public long getTsMmapDefaultBitrate() {
+        return tsMmapDefaultBitrate;
+    }
+
+    public String getSegmentStore() {
+        return segmentStore;
+    }
+
+    public boolean isMemorySegmentStore() {
+        return "MEMORY".equals(segmentStore);
+    }
+
+    public long getSegmentStoreMemoryLimit() {
+        return segmentStoreMemoryLimit;
+    }
+
+    public String getRemuxer() {
+        return remuxer;
+    }
+
+    public boolean isJavaRemuxer() {
+        return "JAVA".equals(remuxer);
+    }
+
+    public boolean isStreamingRemux() {
+        return streamingRemux;
+    }
+
+    public boolean isFragmentedMp4() {
+        return fragmentedMp4;
+    }
+
+    public int getJavaRemuxMaxBytes() {
+        return javaRemuxMaxBytes;
+    }
+
+    public int getConvertThreadCount() {
+        return convertThreadCount;
+    }
+
     public String getTempRootPath() {
         return tempRootPath;
     }
@@ -543,6 +765,58 @@ public class ConfigManager {
         this.streamThreadPoolSize = streamThreadPoolSize;
     }
 
+    public boolean isNativeTransport() {
+        return nativeTransport;
+    }
+
+    public int getMaxDatagramPayloadSize() {
+        return maxDatagramPayloadSize;
+    }
+
+    public int getRecvBatchCount() {
+        return recvBatchCount;
+    }
+
+    public int getRtpReusePortCount() {
+        return rtpReusePortCount;
+    }
+
+    public int getRtpReorderDepth() {
+        return rtpReorderDepth;
+    }
+
+    public long getRtpReorderLatency() {
+        return rtpReorderLatency;
+    }
+
+    public long getRtpReorderMinLatency() {
+        return rtpReorderMinLatency;
+    }
+
+    public boolean isRtpReorderAdaptive() {
+        return rtpReorderAdaptive;
+    }
+
+    public int getTsBufferMaxPackets() {
+        return tsBufferMaxPackets;
+    }
+
+    public long getTsBufferMaxBytes() {
+        return tsBufferMaxBytes;
+    }
+
+    public MediaBufferOverflowPolicy getTsBufferOverflowPolicy() {
+        return tsBufferOverflowPolicy;
+    }
+
+    public long getMediaMemoryBudget() {
+        return mediaMemoryBudget;
+    }
+
+    public boolean isTsDropNullPackets() {
+        return tsDropNullPackets;
+    }
+
     public String getTargetRtspIp() {
         return targetRtspIp;
     }
@@ -591,6 +865,14 @@ public class ConfigManager {
         this.targetPort = targetPort;
     }
 
+    public boolean isHlsServer() {
+        return hlsServer;
+    }
+
+    public int getHlsServerPort() {
+        return hlsServerPort;
+    }
+
     public String getMagicCookie() {
         return magicCookie;
     }
@@ -5,12 +5,23 @@ import com.rtsp.client.service.AppInstance;
 import net.bramp.ffmpeg.FFmpeg;
 import net.bramp.ffmpeg.FFmpegExecutor;
 import net.bramp.ffmpeg.FFprobe;
+import net.bramp.ffmpeg.ProcessFunction;
+import net.bramp.ffmpeg.RunProcessFunction;
 import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import net.bramp.ffmpeg.job.FFmpegJob;
+import net.bramp.ffmpeg.progress.ProgressListener;
 import org.mp4parser.IsoFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * @class public class FfmpegManager
@@ -22,9 +33,13 @@ public class FfmpegManager {
 
     private static final String BITSTREAM_FILTER = "aac_adtstoasc";
     private static final String C_CODEC = "copy";
+    // fragmented MP4: 앞에 빈 moov 를 쓰고 keyframe 마다 moof / mdat fragment 를 쓴다.
+    private static final String FRAGMENTED_MOVFLAGS = "frag_keyframe+empty_moov+default_base_moof";
 
     //public static final String FFMPEG_TAG = "ffmpeg";
 
+    private static final RunProcessFunction RUN_PROCESS_FUNCTION = new RunProcessFunction();
+
     private FFmpeg ffmpeg = null;
     private FFprobe ffprobe = null;
     private FFmpegExecutor executor = null;
@@ -48,6 +63,19 @@ public class FfmpegManager {
     ////////////////////////////////////////////////////////////////////////////////
 
     public void convertM3u8ToMp4(String srcFilePath, String destFilePath) {
+        convertM3u8ToMp4(srcFilePath, destFilePath, null, null);
+    }
+
+    /**
+     * @fn public boolean convertM3u8ToMp4(String srcFilePath, String destFilePath, ProgressListener progressListener, Consumer<Process> processListener)
+     * @brief M3U8 을 FFmpegExecutor 로 MP4 로 변환하는 함수
+     * @param srcFilePath M3U8 파일 경로
+     * @param destFilePath MP4 파일 경로
+     * @param progressListener FFmpeg 진행 상태를 받을 listener (null 이면 받지 않는다.)
+     * @param processListener FFmpeg 프로세스를 띄울 때마다 호출되는 listener, 변환을 취소할 때 프로세스를 종료하는 데 사용한다. (null 이면 받지 않는다.)
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    public boolean convertM3u8ToMp4(String srcFilePath, String destFilePath, ProgressListener progressListener, Consumer<Process> processListener) {
         String destFilePathOnly = destFilePath.substring(
                 0,
                 destFilePath.lastIndexOf("/")
@@ -60,10 +88,6 @@ public class FfmpegManager {
 
         try {
             ConfigManager configManager = AppInstance.getInstance().getConfigManager();
-            if (ffmpeg == null) {
-                ffmpeg = new FFmpeg(configManager.getFfmpegPath());
-            }
-
             if (ffprobe == null) {
                 ffprobe = new FFprobe(configManager.getFfprobePath());
             }
@@ -73,12 +97,29 @@ public class FfmpegManager {
                     .addExtraArgs("-c", C_CODEC)
                     .done();
 
-            if (executor == null) {
-                executor = new FFmpegExecutor(ffmpeg, ffprobe);
+            FFmpegJob job;
+            if (processListener == null) {
+                if (ffmpeg == null) {
+                    ffmpeg = new FFmpeg(configManager.getFfmpegPath());
+                }
+                if (executor == null) {
+                    executor = new FFmpegExecutor(ffmpeg, ffprobe);
+                }
+                job = executor.createJob(builder, progressListener);
+            } else {
+                // 띄운 프로세스를 listener 에 넘기는 FFmpeg 를 변환마다 만든다.
+                ProcessFunction processFunction = args -> {
+                    Process process = RUN_PROCESS_FUNCTION.run(args);
+                    processListener.accept(process);
+                    return process;
+                };
+                job = new FFmpegExecutor(new FFmpeg(configManager.getFfmpegPath(), processFunction), ffprobe).createJob(builder, progressListener);
             }
-            executor.createJob(builder).run();
+            job.run();
+            return job.getState() == FFmpegJob.State.FINISHED;
         } catch (Exception e) {
             logger.error("FfmpegManager.convertM3u8ToMp4.Exception ", e);
+            return false;
         }
     }
 
@@ -122,4 +163,134 @@ public class FfmpegManager {
         }
     }
 
+    /**
+     * @fn public boolean convertTsStreamToMp4(InputStream srcStream, String destFilePath)
+     * @brief TS 스트림을 FFmpeg 의 표준 입력(pipe:0)으로 넘겨서 MP4 로 변환하는 함수
+     * M3U8, TS 를 파일로 만들지 않고 메모리에 저장한 경우(SEGMENT_STORE=MEMORY) 사용한다.
+     * @param srcStream TS 스트림 (변환 후 닫는다.)
+     * @param destFilePath MP4 파일 경로
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    public boolean convertTsStreamToMp4(InputStream srcStream, String destFilePath) {
+        return convertTsStreamToMp4(srcStream, destFilePath, null);
+    }
+
+    /**
+     * @fn public boolean convertTsStreamToMp4(InputStream srcStream, String destFilePath, Consumer<Process> processListener)
+     * @brief TS 스트림을 FFmpeg 의 표준 입력(pipe:0)으로 넘겨서 MP4 로 변환하는 함수
+     * @param srcStream TS 스트림 (변환 후 닫는다.)
+     * @param destFilePath MP4 파일 경로
+     * @param processListener FFmpeg 프로세스를 띄운 후 호출되는 listener (null 이면 받지 않는다.)
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    public boolean convertTsStreamToMp4(InputStream srcStream, String destFilePath, Consumer<Process> processListener) {
+        String destFilePathOnly = destFilePath.substring(
+                0,
+                destFilePath.lastIndexOf("/")
+        );
+
+        File destFilePathOnlyFile = new File(destFilePathOnly);
+        if (destFilePathOnlyFile.mkdirs()) {
+            logger.debug("Success to make the directory. ({})", destFilePathOnly);
+        }
+
+        List<String> command = getPipeCommand(destFilePath, false);
+        Process process = null;
+        try (InputStream inputStream = srcStream) {
+            process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            if (processListener != null) {
+                processListener.accept(process);
+            }
+
+            // 출력을 읽지 않으면 pipe 가 가득 차서 FFmpeg 가 멈추므로 별도 스레드에서 비운다.
+            InputStream processOutput = process.getInputStream();
+            Thread outputDrainer = new Thread(() -> drainProcessOutput(processOutput), "FfmpegOutputDrainer");
+            outputDrainer.setDaemon(true);
+            outputDrainer.start();
+
+            try (OutputStream processInput = process.getOutputStream()) {
+                byte[] buffer = new byte[64 * 1024];
+                int length;
+                while ((length = inputStream.read(buffer)) != -1) {
+                    processInput.write(buffer, 0, length);
+                }
+            }
+
+            int exitCode = process.waitFor();
+            outputDrainer.join(1000);
+            if (exitCode != 0) {
+                logger.warn("Fail to convert the ts stream to mp4. (destFilePath={}, exitCode={})", destFilePath, exitCode);
+                return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while converting the ts stream to mp4. (destFilePath={})", destFilePath);
+            return false;
+        } catch (Exception e) {
+            logger.error("FfmpegManager.convertTsStreamToMp4.Exception ", e);
+            return false;
+        } finally {
+            if (process != null && process.isAlive()) {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * @fn public static List<String> getPipeCommand(String destFilePath, boolean isFragmented)
+     * @brief 표준 입력(pipe:0)으로 받은 TS 를 MP4 로 변환하는 FFmpeg 명령어를 반환하는 함수
+     * @param destFilePath MP4 파일 경로
+     * @param isFragmented fragmented MP4 로 쓸지 여부
+     * @return FFmpeg command
+     */
+    public static List<String> getPipeCommand(String destFilePath, boolean isFragmented) {
+        ConfigManager configManager = AppInstance.getInstance().getConfigManager();
+        return getPipeCommand(configManager.getFfmpegPath(), destFilePath, isFragmented);
+    }
+
+    /**
+     * @fn public static List<String> getPipeCommand(String ffmpegPath, String destFilePath, boolean isFragmented)
+     * @brief 지정한 FFmpeg 로 표준 입력(pipe:0)으로 받은 TS 를 MP4 로 변환하는 명령어를 반환하는 함수
+     * @param ffmpegPath FFmpeg 실행 파일 경로
+     * @param destFilePath MP4 파일 경로
+     * @param isFragmented fragmented MP4 로 쓸지 여부
+     * @return FFmpeg command
+     */
+    public static List<String> getPipeCommand(String ffmpegPath, String destFilePath, boolean isFragmented) {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                ffmpegPath, "-y",
+                "-f", "mpegts", "-i", "pipe:0",
+                "-bsf:a", BITSTREAM_FILTER,
+                "-c", C_CODEC
+        ));
+        if (isFragmented) {
+            command.add("-movflags");
+            command.add(FRAGMENTED_MOVFLAGS);
+        }
+        command.add("-f");
+        command.add("mp4");
+        command.add(destFilePath);
+        return command;
+    }
+
+    /**
+     * @fn public static void drainProcessOutput(InputStream processOutput)
+     * @brief FFmpeg 프로세스의 출력을 끝날 때까지 읽어서 버리는 함수 (trace 로그로만 남긴다.)
+     * @param processOutput 프로세스 출력 스트림
+     */
+    public static void drainProcessOutput(InputStream processOutput) {
+        byte[] buffer = new byte[4096];
+        try {
+            int length;
+            while ((length = processOutput.read(buffer)) != -1) {
+                if (logger.isTraceEnabled()) {
+                    logger.trace("{}", new String(buffer, 0, length, StandardCharsets.UTF_8));
+                }
+            }
+        } catch (Exception e) {
+            // 프로세스가 종료되면 스트림도 닫힌다.
+        }
+    }
+
 }
@@ -0,0 +1,388 @@
+package com.rtsp.client.ffmpeg;
+
+import org.mp4parser.Box;
+import org.mp4parser.boxes.iso14496.part12.MediaHeaderBox;
+import org.mp4parser.boxes.iso14496.part12.MovieBox;
+import org.mp4parser.boxes.iso14496.part12.MovieExtendsHeaderBox;
+import org.mp4parser.boxes.iso14496.part12.MovieFragmentBox;
+import org.mp4parser.boxes.iso14496.part12.MovieHeaderBox;
+import org.mp4parser.boxes.iso14496.part12.TrackBox;
+import org.mp4parser.boxes.iso14496.part12.TrackFragmentBaseMediaDecodeTimeBox;
+import org.mp4parser.boxes.iso14496.part12.TrackFragmentBox;
+import org.mp4parser.muxer.Movie;
+import org.mp4parser.muxer.Track;
+import org.mp4parser.muxer.builder.FragmentedMp4Builder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @class public class FragmentedMp4Writer
+ * @brief 세그먼트 단위로 만든 Movie 를 하나의 fragmented MP4(fMP4) 파일에 moof / mdat fragment 로 이어 쓰는 class
+ * Reference: ISO/IEC 14496-12, 8.8 Movie Fragments
+ *
+ * 첫 fragment 를 쓸 때 ftyp / moov(mvex 포함, sample table 은 비어있다.)를 먼저 쓰므로, 재생기는 첫 세그먼트만 받은 파일로 재생을 시작할 수 있다.
+ * 세그먼트마다 track 별로 moof + mdat 하나씩 쓰고, mfhd 의 sequence_number 는 파일 전체에서 이어서 매긴다.
+ * tfdt(baseMediaDecodeTime)는 setDecodeTime 으로 정한 값(세그먼트의 첫 timestamp)을 쓰고, 정하지 않은 track 은 이전 fragment 까지의 길이를 이어서 쓴다.
+ * finish 에서 mvhd / mehd / tkhd / mdhd 의 duration 을 전체 길이로 고쳐서 moov 를 같은 위치에 다시 쓴다. (크기가 바뀌지 않도록 처음부터 version 1 로 쓴다.)
+ * 모든 fragment 의 Movie 는 첫 fragment 와 같은 순서의 track 을 가져야 한다. 뒤쪽 track 이 빠진 fragment(예: audio 가 없는 세그먼트)는 그 track 의 moof 없이 쓴다.
+ * 하나의 인스턴스는 하나의 스레드에서만 사용해야 한다.
+ */
+public class FragmentedMp4Writer {
+
+    private static final Logger logger = LoggerFactory.getLogger(FragmentedMp4Writer.class);
+
+    private final SegmentFragmentBuilder fragmentBuilder = new SegmentFragmentBuilder();
+
+    private String destFilePath = null;
+    private RandomAccessFile destFile = null;
+    private FileChannel channel = null;
+
+    private MovieBox moov = null;
+    private long moovPosition = 0;
+    private long moovSize = 0;
+
+    private long[] timescales = null;
+    private long[] nextDecodeTimes = null; // setDecodeTime 으로 정한 다음 fragment 의 tfdt (track timescale, 정하지 않은 track 은 -1)
+    private long[] baseDecodeTimes = null; // 이어서 쓸 때 다음 fragment 의 tfdt (track timescale)
+    private int sequenceNumber = 0; // 마지막으로 쓴 moof 의 sequence_number
+    private int fragmentCount = 0;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public FragmentedMp4Writer() {
+        // Nothing
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public boolean open(String destFilePath)
+     * @brief fMP4 파일을 새로 만들고 쓰기를 시작하는 함수 (열려있던 파일은 지운다.)
+     * @param destFilePath MP4 파일 경로
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    public boolean open(String destFilePath) {
+        abort();
+
+        File file = new File(destFilePath);
+        File destDirectory = file.getParentFile();
+        if (destDirectory != null && destDirectory.mkdirs()) {
+            logger.debug("Success to make the directory. ({})", destDirectory.getAbsolutePath());
+        }
+
+        try {
+            destFile = new RandomAccessFile(file, "rw");
+            destFile.setLength(0);
+            channel = destFile.getChannel();
+        } catch (IOException e) {
+            logger.warn("Fail to open the fragmented mp4 file. (destFilePath={})", destFilePath, e);
+            close();
+            return false;
+        }
+
+        this.destFilePath = destFilePath;
+        moov = null;
+        moovPosition = 0;
+        moovSize = 0;
+        timescales = null;
+        nextDecodeTimes = null;
+        baseDecodeTimes = null;
+        sequenceNumber = 0;
+        fragmentCount = 0;
+        return true;
+    }
+
+    /**
+     * @fn public void setDecodeTime(int trackIndex, long decodeTime)
+     * @brief 다음에 쓸 fragment 에서 지정한 track 의 tfdt 를 정하는 함수 (정하지 않으면 이전 fragment 까지의 길이를 이어서 쓴다.)
+     * @param trackIndex 첫 fragment Movie 의 track 순서
+     * @param decodeTime 파일 시작부터 fragment 의 첫 sample 까지의 decode 시간 (track timescale)
+     */
+    public void setDecodeTime(int trackIndex, long decodeTime) {
+        if (nextDecodeTimes == null || nextDecodeTimes.length <= trackIndex) {
+            int length = nextDecodeTimes == null ? 0 : nextDecodeTimes.length;
+            nextDecodeTimes = nextDecodeTimes == null ? new long[trackIndex + 1] : Arrays.copyOf(nextDecodeTimes, trackIndex + 1);
+            Arrays.fill(nextDecodeTimes, length, nextDecodeTimes.length, -1);
+        }
+        nextDecodeTimes[trackIndex] = decodeTime;
+    }
+
+    /**
+     * @fn public boolean write(Movie movie)
+     * @brief 세그먼트 하나의 Movie 를 moof / mdat fragment 로 파일 끝에 쓰는 함수 (첫 fragment 이면 ftyp / moov 를 먼저 쓴다.)
+     * 첫 fragment 보다 track 이 적으면 있는 track 만 쓰고, 빠진 track 은 다음 fragment 에서 이어서 쓴다.
+     * @param movie 세그먼트 하나의 sample 을 가진 Movie (첫 fragment 의 앞쪽 track 들)
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    public boolean write(Movie movie) {
+        if (channel == null) {
+            return false;
+        }
+
+        List<Track> tracks = movie.getTracks();
+        try {
+            if (moov == null) {
+                writeHeader(movie);
+            } else if (tracks.isEmpty() || tracks.size() > timescales.length) {
+                logger.warn("Fail to write the fragment. Track count is changed. (destFilePath={}, expected={}, actual={})",
+                        destFilePath, timescales.length, tracks.size());
+                return false;
+            }
+            applyDecodeTimes();
+
+            fragmentBuilder.movie = movie;
+            List<Box> boxes = fragmentBuilder.createFragments(movie);
+            for (Box box : boxes) {
+                box.getBox(channel);
+                if (box instanceof MovieFragmentBox) {
+                    sequenceNumber++;
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Fail to write the fragment. (destFilePath={}, sequenceNumber={})", destFilePath, sequenceNumber, e);
+            return false;
+        } finally {
+            fragmentBuilder.movie = null;
+        }
+
+        for (int i = 0; i < tracks.size(); i++) {
+            baseDecodeTimes[i] += tracks.get(i).getDuration();
+        }
+        fragmentCount++;
+        logger.debug("Success to write the fragment. (destFilePath={}, fragment={}, sequenceNumber={}, duration(sec)={})",
+                destFilePath, fragmentCount, sequenceNumber, String.format("%.3f", getDurationSeconds()));
+        return true;
+    }
+
+    /**
+     * @fn public boolean finish()
+     * @brief moov 의 duration 을 전체 길이로 고치고 파일을 닫는 함수 (fragment 를 하나도 쓰지 않았으면 실패)
+     * @return 성공 시 true, 실패 시 false 반환 (실패하면 파일을 지운다.)
+     */
+    public boolean finish() {
+        if (channel == null) {
+            return false;
+        }
+        if (moov == null) {
+            logger.warn("Fail to finish the fragmented mp4 file. No fragment is written. (destFilePath={})", destFilePath);
+            abort();
+            return false;
+        }
+
+        try {
+            updateDuration();
+            if (moov.getSize() == moovSize) {
+                channel.position(moovPosition);
+                moov.getBox(channel);
+            } else {
+                // duration 이 없어도 fragment 로 재생할 수 있으므로 실패로 보지 않는다.
+                logger.warn("Fail to update the duration of the fragmented mp4 file. Moov size is changed. (destFilePath={})", destFilePath);
+            }
+        } catch (Exception e) {
+            logger.warn("Fail to finish the fragmented mp4 file. (destFilePath={})", destFilePath, e);
+            abort();
+            return false;
+        }
+
+        logger.debug("Success to finish the fragmented mp4 file. (destFilePath={}, fragment={}, duration(sec)={})",
+                destFilePath, fragmentCount, String.format("%.3f", getDurationSeconds()));
+        close();
+        destFilePath = null;
+        moov = null;
+        return true;
+    }
+
+    /**
+     * @fn public void abort()
+     * @brief 쓰는 중인 파일을 닫고 지우는 함수
+     */
+    public void abort() {
+        if (destFilePath == null) {
+            return;
+        }
+
+        close();
+        File file = new File(destFilePath);
+        if (file.exists() && !file.delete()) {
+            logger.warn("Fail to delete the incomplete mp4 file. (destFilePath={})", destFilePath);
+        }
+        destFilePath = null;
+        moov = null;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public boolean isOpened() {
+        return channel != null;
+    }
+
+    public boolean isHeaderWritten() {
+        return moov != null;
+    }
+
+    public int getTrackCount() {
+        return timescales == null ? 0 : timescales.length;
+    }
+
+    public int getFragmentCount() {
+        return fragmentCount;
+    }
+
+    /**
+     * @fn public long getDecodeTime(int trackIndex)
+     * @brief 이어서 쓸 때 다음 fragment 에서 쓸 tfdt 를 반환하는 함수
+     * @param trackIndex 첫 fragment Movie 의 track 순서
+     * @return tfdt (track timescale), 첫 fragment 를 쓰기 전이면 0 반환
+     */
+    public long getDecodeTime(int trackIndex) {
+        return baseDecodeTimes == null || trackIndex >= baseDecodeTimes.length ? 0 : baseDecodeTimes[trackIndex];
+    }
+
+    /**
+     * @fn public double getDurationSeconds()
+     * @brief 지금까지 쓴 fragment 의 길이를 반환하는 함수 (가장 긴 track 기준)
+     * @return 길이 (sec)
+     */
+    public double getDurationSeconds() {
+        double duration = 0;
+        if (timescales != null) {
+            for (int i = 0; i < timescales.length; i++) {
+                duration = Math.max(duration, (double) baseDecodeTimes[i] / timescales[i]);
+            }
+        }
+        return duration;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn private void writeHeader(Movie movie) throws IOException
+     * @brief 첫 fragment 의 Movie 로 ftyp / moov 를 쓰고 track 별 시간 단위를 정하는 함수
+     */
+    private void writeHeader(Movie movie) throws IOException {
+        List<Track> tracks = movie.getTracks();
+        timescales = new long[tracks.size()];
+        baseDecodeTimes = new long[tracks.size()];
+        for (int i = 0; i < tracks.size(); i++) {
+            timescales[i] = tracks.get(i).getTrackMetaData().getTimescale();
+        }
+
+        fragmentBuilder.createFtyp(movie).getBox(channel);
+
+        moov = (MovieBox) fragmentBuilder.createHeader(movie);
+        // finish 에서 duration 을 고쳐도 크기가 바뀌지 않도록 64 bits duration 을 쓴다.
+        moov.getMovieHeaderBox().setVersion(1);
+        for (TrackBox trackBox : moov.getBoxes(TrackBox.class)) {
+            trackBox.getTrackHeaderBox().setVersion(1);
+            trackBox.getMediaBox().getMediaHeaderBox().setVersion(1);
+        }
+        moovPosition = channel.position();
+        moovSize = moov.getSize();
+        moov.getBox(channel);
+    }
+
+    /**
+     * @fn private void applyDecodeTimes()
+     * @brief setDecodeTime 으로 정한 tfdt 를 이번 fragment 에 쓰도록 옮기는 함수
+     */
+    private void applyDecodeTimes() {
+        if (nextDecodeTimes == null) {
+            return;
+        }
+
+        for (int i = 0; i < nextDecodeTimes.length && i < baseDecodeTimes.length; i++) {
+            if (nextDecodeTimes[i] >= 0) {
+                baseDecodeTimes[i] = nextDecodeTimes[i];
+            }
+        }
+        nextDecodeTimes = null;
+    }
+
+    /**
+     * @fn private void updateDuration()
+     * @brief 지금까지 쓴 fragment 의 길이로 moov 의 duration 을 고치는 함수
+     */
+    private void updateDuration() {
+        MovieHeaderBox mvhd = moov.getMovieHeaderBox();
+        long movieTimescale = mvhd.getTimescale();
+        long movieDuration = 0;
+
+        List<TrackBox> trackBoxes = moov.getBoxes(TrackBox.class);
+        for (int i = 0; i < trackBoxes.size() && i < timescales.length; i++) {
+            TrackBox trackBox = trackBoxes.get(i);
+            long trackDuration = baseDecodeTimes[i] * movieTimescale / timescales[i];
+            trackBox.getTrackHeaderBox().setDuration(trackDuration);
+            MediaHeaderBox mdhd = trackBox.getMediaBox().getMediaHeaderBox();
+            mdhd.setDuration(baseDecodeTimes[i]);
+            movieDuration = Math.max(movieDuration, trackDuration);
+        }
+
+        mvhd.setDuration(movieDuration);
+        for (MovieExtendsHeaderBox mehd : moov.getBoxes(MovieExtendsHeaderBox.class, true)) {
+            mehd.setFragmentDuration(movieDuration);
+        }
+    }
+
+    private void close() {
+        if (destFile != null) {
+            try {
+                destFile.close();
+            } catch (IOException e) {
+                logger.warn("Fail to close the fragmented mp4 file. (destFilePath={})", destFilePath, e);
+            }
+        }
+        destFile = null;
+        channel = null;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @class private class SegmentFragmentBuilder extends FragmentedMp4Builder
+     * @brief Movie 하나(세그먼트 하나)를 track 별 fragment 하나로 만들고, tfdt / sequence_number 를 파일 전체 기준으로 바꾸는 builder
+     * mfra 는 파일 끝을 알아야 하므로 쓰지 않는다. (재생에 필요하지 않다.)
+     */
+    private class SegmentFragmentBuilder extends FragmentedMp4Builder {
+
+        private Movie movie = null;
+
+        private SegmentFragmentBuilder() {
+            // track 의 모든 sample 을 하나의 fragment 로 만든다.
+            setFragmenter(track -> new long[]{1});
+        }
+
+        private Box createHeader(Movie movie) {
+            return createMoov(movie);
+        }
+
+        private List<Box> createFragments(Movie movie) {
+            return createMoofMdat(movie);
+        }
+
+        @Override
+        protected void createMfhd(long startSample, long endSample, Track track, int sequenceNumber, MovieFragmentBox parent) {
+            super.createMfhd(startSample, endSample, track, FragmentedMp4Writer.this.sequenceNumber + sequenceNumber, parent);
+        }
+
+        @Override
+        protected void createTfdt(long startSample, Track track, TrackFragmentBox parent) {
+            super.createTfdt(startSample, track, parent);
+
+            int trackIndex = movie.getTracks().indexOf(track);
+            if (trackIndex < 0) {
+                return;
+            }
+            for (TrackFragmentBaseMediaDecodeTimeBox tfdt : parent.getBoxes(TrackFragmentBaseMediaDecodeTimeBox.class)) {
+                tfdt.setBaseMediaDecodeTime(tfdt.getBaseMediaDecodeTime() + baseDecodeTimes[trackIndex]);
+            }
+        }
+    }
+
+}
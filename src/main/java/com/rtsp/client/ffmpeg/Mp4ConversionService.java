@@ -0,0 +1,185 @@
+package com.rtsp.client.ffmpeg;
+
+import com.rtsp.client.ffmpeg.base.Mp4ConversionJob;
+import com.rtsp.client.service.AppInstance;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @class public class Mp4ConversionService
+ * @brief TS 를 MP4 로 변환하는 작업을 전용 스레드에서 처리하는 class
+ *
+ * 변환(FFmpeg 프로세스, Java remux)을 소비자 스레드(StreamReceiver)에서 기다리지 않도록 작업 queue 로 넘기고 CompletableFuture 로 결과를 받는다.
+ * 스레드 개수는 CONVERT_THREAD_COUNT (기본 CPU core 개수) 로 제한하며, queue 는 priority 순서(지금 보고 있는 세션 먼저)로 꺼낸다.
+ * 작업은 key(RtspUnit ID)로 관리하며, 같은 key 로 다시 추가하거나 TEARDOWN 하면 이전 작업을 취소한다.
+ * 작업은 세그먼트 파일을 실행할 때 읽으므로, 파일을 지우거나 같은 경로에 다시 쓰기 전에 await 로 기다리거나 cancel 한다.
+ */
+public class Mp4ConversionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(Mp4ConversionService.class);
+
+    // 작업이 없으면 이 시간 후에 스레드를 종료한다.
+    private static final long KEEP_ALIVE_SEC = 30;
+
+    private static Mp4ConversionService mp4ConversionService = null;
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Mp4ConversionJob> jobMap = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public Mp4ConversionService(int threadCount) {
+        int curThreadCount = Math.max(1, threadCount);
+        executor = new ThreadPoolExecutor(
+                curThreadCount, curThreadCount,
+                KEEP_ALIVE_SEC, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                new DefaultThreadFactory("mp4-convert", true)
+        );
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized Mp4ConversionService getInstance() {
+        if (mp4ConversionService == null) {
+            mp4ConversionService = new Mp4ConversionService(AppInstance.getInstance().getConfigManager().getConvertThreadCount());
+        }
+        return mp4ConversionService;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public CompletableFuture<Boolean> submit(String key, int priority, String destFilePath, double totalSeconds, Mp4ConversionJob.Task task)
+     * @brief 변환 작업을 queue 에 추가하는 함수 (같은 key 의 작업이 있으면 취소한다.)
+     * @param key 작업 key (RtspUnit ID)
+     * @param priority Mp4ConversionJob.PRIORITY_WATCHED or PRIORITY_BACKGROUND
+     * @param destFilePath MP4 파일 경로 (작업은 Mp4ConversionJob.getTempFilePath 에 쓰고, 성공하면 이 경로로 옮긴다.)
+     * @param totalSeconds 변환할 미디어 시간 (sec, FFmpeg 진행률 계산에 사용한다.)
+     * @param task 작업 스레드에서 실행할 변환 함수
+     * @return 변환 결과 (성공 시 true, 실패하거나 취소되면 false), 결과는 작업 스레드에서 완료된다.
+     */
+    public CompletableFuture<Boolean> submit(String key, int priority, String destFilePath, double totalSeconds, Mp4ConversionJob.Task task) {
+        return submit(key, priority, destFilePath, totalSeconds, task, null);
+    }
+
+    /**
+     * @fn public CompletableFuture<Boolean> submit(String key, int priority, String destFilePath, double totalSeconds, Mp4ConversionJob.Task task, Runnable releaseListener)
+     * @brief task 에 넘긴 자원(RemuxSink 등)을 실행하지 않고 취소될 때 놓도록 변환 작업을 queue 에 추가하는 함수 (같은 key 의 작업이 있으면 취소한다.)
+     * @param releaseListener task 를 실행하기 전에 취소되거나 추가하지 못하면 호출할 함수 (없으면 null)
+     * @return 변환 결과 (성공 시 true, 실패하거나 취소되면 false), 결과는 작업 스레드에서 완료된다.
+     */
+    public CompletableFuture<Boolean> submit(String key, int priority, String destFilePath, double totalSeconds, Mp4ConversionJob.Task task,
+                                             Runnable releaseListener) {
+        cancel(key);
+
+        Mp4ConversionJob job = new Mp4ConversionJob(key, priority, sequence.getAndIncrement(), destFilePath, totalSeconds,
+                task, finishedJob -> jobMap.remove(finishedJob.getKey(), finishedJob), releaseListener
+        );
+        jobMap.put(key, job);
+
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            jobMap.remove(key, job);
+            logger.warn("({}) Fail to submit the mp4 conversion. Service is stopped. (destFilePath={})", key, destFilePath);
+            job.cancel();
+            return job.getFuture();
+        }
+
+        logger.debug("({}) Mp4 conversion is submitted. ({}, queueSize={}, activeCount={})", key, job, executor.getQueue().size(), executor.getActiveCount());
+        return job.getFuture();
+    }
+
+    /**
+     * @fn public boolean cancel(String key)
+     * @brief key 의 변환 작업을 취소하는 함수 (queue 에 있으면 빼고, 실행 중이면 FFmpeg 프로세스를 종료한다.)
+     * @param key 작업 key (RtspUnit ID)
+     * @return 취소한 작업이 있으면 true, 없으면 false 반환
+     */
+    public boolean cancel(String key) {
+        Mp4ConversionJob job = jobMap.remove(key);
+        if (job == null) {
+            return false;
+        }
+
+        executor.remove(job);
+        job.cancel();
+        logger.debug("({}) Mp4 conversion is cancelled. ({})", key, job);
+        return true;
+    }
+
+    /**
+     * @fn public boolean await(String key, long timeout)
+     * @brief key 의 변환 작업이 끝날 때까지 기다리는 함수 (queue 에서 기다리는 작업 포함)
+     * 작업은 실행할 때 세그먼트 파일을 읽으므로, 같은 경로에 다음 스트림을 쓰기 전에 호출한다.
+     * @param key 작업 key (RtspUnit ID)
+     * @param timeout 최대 대기 시간 (ms)
+     * @return 작업이 없거나 시간 안에 끝나면(취소 포함) true, 아니면 false 반환
+     */
+    public boolean await(String key, long timeout) {
+        Mp4ConversionJob job = jobMap.get(key);
+        if (job == null) {
+            return true;
+        }
+
+        try {
+            job.getFuture().get(timeout, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @fn public double getProgress(String key)
+     * @brief key 의 변환 진행률을 반환하는 함수
+     * @param key 작업 key (RtspUnit ID)
+     * @return 진행률 (0 ~ 1), 작업이 없으면 -1 반환
+     */
+    public double getProgress(String key) {
+        Mp4ConversionJob job = jobMap.get(key);
+        if (job == null) {
+            return -1;
+        }
+        return job.getProgress();
+    }
+
+    public int getPendingJobCount() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveJobCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @fn public void stop()
+     * @brief 모든 작업을 취소하고 스레드를 종료하는 함수 (프로그램 종료 시 호출)
+     */
+    public void stop() {
+        for (String key : jobMap.keySet()) {
+            cancel(key);
+        }
+        executor.shutdownNow();
+        logger.debug("Mp4 conversion service is stopped.");
+    }
+
+}
@@ -0,0 +1,1012 @@
+package com.rtsp.client.ffmpeg;
+
+import com.rtsp.client.protocol.TsPacket;
+import com.rtsp.client.protocol.TsPacketReader;
+import io.netty.buffer.ByteBuf;
+import org.mp4parser.Container;
+import org.mp4parser.boxes.iso14496.part12.CompositionTimeToSample;
+import org.mp4parser.muxer.Edit;
+import org.mp4parser.muxer.MemoryDataSourceImpl;
+import org.mp4parser.muxer.Movie;
+import org.mp4parser.muxer.Track;
+import org.mp4parser.muxer.WrappingTrack;
+import org.mp4parser.muxer.builder.DefaultMp4Builder;
+import org.mp4parser.muxer.tracks.AACTrackImpl;
+import org.mp4parser.muxer.tracks.h264.H264TrackImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @class public class TsMp4Remuxer
+ * @brief FFmpeg 프로세스 없이 TS 스트림의 H.264 / AAC(ADTS) 를 꺼내서 MP4 로 다시 담는 class (재인코딩 없음, -c copy 와 같다.)
+ * Reference: ISO/IEC 13818-1, 2.4.4 Program specific information / 2.4.3.6 PES packet
+ *
+ * PAT / PMT 로 H.264(stream_type 0x1B) video 와 AAC ADTS(stream_type 0x0F) audio PID 를 찾고, PES 를 다시 조립해서 Elementary stream 을 메모리에 모은다.
+ * 모은 H.264 Annex B / ADTS 는 mp4parser(H264TrackImpl, AACTrackImpl)가 sample 로 나누고, ADTS 헤더는 이 때 제거된다. (aac_adtstoasc 와 같다.)
+ * video sample 의 duration 과 composition offset(ctts)은 PES 별 DTS 간격과 PTS - DTS 차이로 정하고, audio 와 video 의 첫 PTS 차이는 edit list 로 맞춘다.
+ * 전체 스트림을 한 번에 변환(remux)하거나, 수신하는 동안 start / feed 로 조금씩 demux 해두고 finish 에서 MP4 만 만들 수 있다.
+ * startFragmented 로 시작하면 writeFragment 를 호출할 때마다(세그먼트를 다 받을 때마다) 모은 Elementary stream 을 fragmented MP4 의 fragment 로 쓰고 놓는다.
+ * fragment 의 tfdt 는 세그먼트의 첫 PES timestamp 에서 스트림의 첫 timestamp 를 뺀 값이므로, 세그먼트 길이를 더하면서 생기는 오차가 쌓이지 않는다.
+ * 모은 Elementary stream 이 stream 별 최대 크기(JAVA_REMUX_MAX_BYTES)를 넘으면 더 모으지 않고 false 를 반환한다. (fragmented 이면 fragment 별 크기)
+ * PSI section 은 하나의 TS 패킷 안에 있다고 가정한다. 지원하지 않는 codec 이면 false 를 반환하므로 호출한 쪽에서 FFmpeg 로 변환해야 한다.
+ * 하나의 인스턴스는 하나의 스레드에서만 사용해야 한다.
+ */
+public class TsMp4Remuxer {
+
+    private static final Logger logger = LoggerFactory.getLogger(TsMp4Remuxer.class);
+
+    public static final int STREAM_TYPE_AAC_ADTS = 0x0F;
+    public static final int STREAM_TYPE_H264 = 0x1B;
+    private static final long PTS_CLOCK_RATE = 90000L; // Hz
+    private static final long PTS_WRAP = 1L << 33;
+    // 이보다 큰 audio / video 시작 차이는 잘못된 timestamp 로 보고 맞추지 않는다.
+    private static final long MAX_START_OFFSET = PTS_CLOCK_RATE * 10;
+    private static final int READ_PACKET_COUNT = 348; // 64 KiB 정도
+    private static final int INITIAL_ES_BUFFER_SIZE = 1024 * 1024;
+    private static final byte[] NAL_START_CODE = {0x00, 0x00, 0x00, 0x01};
+    private static final BooleanSupplier NOT_CANCELLED = () -> false;
+
+    private final TsPacketReader tsPacketReader = new TsPacketReader();
+    private byte[] feedBuffer = new byte[TsPacket.TS_TOTAL_SIZE * 7]; // ByteBuf 로 받은 데이터를 옮겨서 읽는다.
+
+    private int pmtPid = -1;
+    private int videoPid = -1;
+    private int audioPid = -1;
+    private int unsupportedStreamType = -1;
+
+    private final PesAssembler videoPes;
+    private final PesAssembler audioPes;
+
+    // startFragmented 로 시작하지 않았으면 null
+    private FragmentedMp4Writer fragmentedMp4Writer = null;
+    // 첫 fragment 의 video 시간 단위와 frame 간격, 이후 fragment 에서 DTS 로 frame 간격을 구하지 못하면 그대로 쓴다.
+    private long fragmentTimescale = 0;
+    private int fragmentFrameTick = 0;
+    // 첫 fragment 의 video DTS 와 audio PTS 중 이른 값 (90 kHz), fragment 의 tfdt 기준
+    private long fragmentStartDts = -1;
+    // 마지막으로 받은 SPS / PPS (Annex B), SPS 가 없는 세그먼트의 앞에 붙인다.
+    private byte[] parameterSets = null;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public TsMp4Remuxer() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @fn public TsMp4Remuxer(int maxEsBytes)
+     * @brief TsMp4Remuxer 생성자 함수
+     * @param maxEsBytes stream 별로 메모리에 모을 수 있는 최대 Elementary stream 크기 (bytes)
+     */
+    public TsMp4Remuxer(int maxEsBytes) {
+        videoPes = new PesAssembler(maxEsBytes);
+        audioPes = new PesAssembler(maxEsBytes);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public boolean remux(InputStream srcStream, String destFilePath)
+     * @brief TS 스트림을 MP4 파일로 다시 담는 함수
+     * @param srcStream TS 스트림 (188 bytes 단위, 변환 후 닫는다.)
+     * @param destFilePath MP4 파일 경로
+     * @return 성공 시 true, 실패(지원하지 않는 codec 포함) 시 false 반환
+     */
+    public boolean remux(InputStream srcStream, String destFilePath) {
+        return remux(srcStream, destFilePath, NOT_CANCELLED);
+    }
+
+    /**
+     * @fn public boolean remux(InputStream srcStream, String destFilePath, BooleanSupplier isCancelled)
+     * @brief TS 스트림을 MP4 파일로 다시 담는 함수
+     * 읽는 동안과 MP4 를 만들기 전후에 취소 여부를 확인하고, 취소되면 모은 데이터를 놓고 바로 돌아온다.
+     * @param srcStream TS 스트림 (188 bytes 단위, 변환 후 닫는다.)
+     * @param destFilePath MP4 파일 경로
+     * @param isCancelled 취소 여부 (Mp4ConversionJob::isCancelled)
+     * @return 성공 시 true, 실패(지원하지 않는 codec 포함)하거나 취소되면 false 반환
+     */
+    public boolean remux(InputStream srcStream, String destFilePath, BooleanSupplier isCancelled) {
+        start();
+
+        try (InputStream inputStream = srcStream) {
+            if (!demux(inputStream, isCancelled)) {
+                logger.debug("Remux is cancelled while demuxing the ts stream. (destFilePath={})", destFilePath);
+                release();
+                return false;
+            }
+        } catch (Exception e) {
+            logger.warn("Fail to demux the ts stream. (destFilePath={})", destFilePath, e);
+            release();
+            return false;
+        }
+        return finish(destFilePath, isCancelled);
+    }
+
+    /**
+     * @fn public void start()
+     * @brief 새 TS 스트림을 받기 전에 상태를 초기화하는 함수
+     */
+    public void start() {
+        pmtPid = -1;
+        videoPid = -1;
+        audioPid = -1;
+        unsupportedStreamType = -1;
+        videoPes.reset();
+        audioPes.reset();
+        fragmentTimescale = 0;
+        fragmentFrameTick = 0;
+        fragmentStartDts = -1;
+        parameterSets = null;
+    }
+
+    /**
+     * @fn public boolean startFragmented(String destFilePath)
+     * @brief 새 TS 스트림을 받기 전에 상태를 초기화하고 fragmented MP4 파일 쓰기를 시작하는 함수
+     * @param destFilePath MP4 파일 경로
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    public boolean startFragmented(String destFilePath) {
+        release();
+        start();
+
+        fragmentedMp4Writer = new FragmentedMp4Writer();
+        if (!fragmentedMp4Writer.open(destFilePath)) {
+            fragmentedMp4Writer = null;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @fn public boolean writeFragment()
+     * @brief 지금까지 demux 한 Elementary stream 을 fragment 하나로 쓰고 놓는 함수 (세그먼트를 다 받으면 호출)
+     * 다음 세그먼트는 새 video PES 로 시작하므로 video PES 는 여기서 끝내고, 세그먼트 경계에 걸친 audio PES 는 다음 fragment 로 넘긴다.
+     * video 가 아직 없으면 쓰지 않고 다음 세그먼트와 함께 쓴다.
+     * @return 성공 시 true, 실패(지원하지 않는 codec 포함) 시 false 반환
+     */
+    public boolean writeFragment() {
+        if (fragmentedMp4Writer == null) {
+            return false;
+        }
+
+        videoPes.flush();
+        if (unsupportedStreamType >= 0) {
+            logger.warn("Fail to write the fragment. Unsupported stream type. (streamType=0x{})", Integer.toHexString(unsupportedStreamType));
+            return false;
+        }
+        if (isEsLimitExceeded()) {
+            logger.warn("Fail to write the fragment. Elementary stream is too large. (video={}, audio={})", videoPes, audioPes);
+            return false;
+        }
+        if (videoPid < 0 || videoPes.esLength == 0) {
+            return true;
+        }
+
+        boolean isFirst = !fragmentedMp4Writer.isHeaderWritten();
+        try {
+            Movie movie = new Movie();
+            movie.addTrack(createFragmentVideoTrack(isFirst));
+
+            // 첫 fragment 에 audio 가 없었으면 moov 에 audio track 이 없으므로 이후 audio 는 버린다.
+            // 이번 세그먼트에 audio 가 없으면 video 만 쓴다. (audio 의 tfdt 는 다음 fragment 의 첫 PTS 로 정한다.)
+            if (audioPid >= 0 && audioPes.esLength > 0 && (isFirst || fragmentedMp4Writer.getTrackCount() > 1)) {
+                Track audioTrack = new AACTrackImpl(audioPes.getDataSource(null));
+                movie.addTrack(audioTrack);
+            }
+            setFragmentDecodeTimes(movie);
+
+            return fragmentedMp4Writer.write(movie);
+        } catch (Exception e) {
+            logger.warn("Fail to write the fragment. (video={}, audio={})", videoPes, audioPes, e);
+            return false;
+        } finally {
+            videoPes.startFragment();
+            audioPes.startFragment();
+        }
+    }
+
+    /**
+     * @fn public boolean finishFragmented()
+     * @brief 남은 Elementary stream 을 마지막 fragment 로 쓰고 fragmented MP4 파일을 마무리하는 함수 (모은 데이터는 성공 여부와 상관없이 놓는다.)
+     * @return 성공 시 true, 실패 시 false 반환 (실패하면 쓰던 파일을 지운다.)
+     */
+    public boolean finishFragmented() {
+        if (fragmentedMp4Writer == null) {
+            return false;
+        }
+
+        audioPes.flush();
+        boolean isFinished = writeFragment() && fragmentedMp4Writer.finish();
+        if (isFinished) {
+            fragmentedMp4Writer = null;
+        }
+        release();
+        return isFinished;
+    }
+
+    /**
+     * @fn public void feed(ByteBuf data)
+     * @brief 정렬된 TS 데이터(188 bytes 단위)를 demux 해서 Elementary stream 에 붙이는 함수 (수신하는 동안 호출)
+     * @param data TS 데이터 (readerIndex ~ writerIndex, 변경하지 않는다.)
+     */
+    public void feed(ByteBuf data) {
+        int length = data.readableBytes() - (data.readableBytes() % TsPacket.TS_TOTAL_SIZE);
+        if (length > feedBuffer.length) {
+            feedBuffer = new byte[length];
+        }
+        data.getBytes(data.readerIndex(), feedBuffer, 0, length);
+        feed(feedBuffer, 0, length);
+    }
+
+    /**
+     * @fn public void feed(byte[] buffer, int offset, int length)
+     * @brief TS 패킷(188 bytes 단위)을 demux 해서 Elementary stream 에 붙이는 함수
+     * @param buffer TS 데이터
+     * @param offset 시작 위치
+     * @param length 길이 (188 bytes 의 배수, 나머지는 무시한다.)
+     */
+    public void feed(byte[] buffer, int offset, int length) {
+        tsPacketReader.reset(buffer, offset, length);
+        while (tsPacketReader.next()) {
+            if (tsPacketReader.isValid() && !tsPacketReader.isTransportErrorIndicator() && tsPacketReader.hasPayload()) {
+                handlePacket(buffer);
+            }
+        }
+    }
+
+    /**
+     * @fn public boolean finish(String destFilePath)
+     * @brief 지금까지 demux 한 Elementary stream 으로 MP4 파일을 만드는 함수 (모은 데이터는 성공 여부와 상관없이 놓는다.)
+     * @param destFilePath MP4 파일 경로
+     * @return 성공 시 true, 실패(지원하지 않는 codec 포함) 시 false 반환
+     */
+    public boolean finish(String destFilePath) {
+        return finish(destFilePath, NOT_CANCELLED);
+    }
+
+    /**
+     * @fn private boolean finish(String destFilePath, BooleanSupplier isCancelled)
+     * @brief 지금까지 demux 한 Elementary stream 으로 MP4 파일을 만드는 함수 (MP4 구조를 만든 후 파일에 쓰기 전에 취소 여부를 확인한다.)
+     */
+    private boolean finish(String destFilePath, BooleanSupplier isCancelled) {
+        videoPes.flush();
+        audioPes.flush();
+
+        if (unsupportedStreamType >= 0) {
+            logger.warn("Fail to remux the ts stream. Unsupported stream type. (streamType=0x{}, destFilePath={})",
+                    Integer.toHexString(unsupportedStreamType), destFilePath);
+            release();
+            return false;
+        }
+        if (isEsLimitExceeded()) {
+            logger.warn("Fail to remux the ts stream. Elementary stream is too large. (destFilePath={}, video={}, audio={})", destFilePath, videoPes, audioPes);
+            release();
+            return false;
+        }
+        if (videoPid < 0 || videoPes.esLength == 0) {
+            logger.warn("Fail to remux the ts stream. H.264 video is not found. (destFilePath={})", destFilePath);
+            release();
+            return false;
+        }
+
+        File destFile = new File(destFilePath);
+        File destDirectory = destFile.getParentFile();
+        if (destDirectory != null && destDirectory.mkdirs()) {
+            logger.debug("Success to make the directory. ({})", destDirectory.getAbsolutePath());
+        }
+
+        try {
+            Movie movie = new Movie();
+            int frameTick = videoPes.getFrameTick();
+            Track videoTrack = frameTick > 0 ?
+                    applyPesTiming(new H264TrackImpl(videoPes.getDataSource(null), "eng", PTS_CLOCK_RATE, frameTick), frameTick) :
+                    new H264TrackImpl(videoPes.getDataSource(null));
+            movie.addTrack(videoTrack);
+
+            Track audioTrack = null;
+            if (audioPid >= 0 && audioPes.esLength > 0) {
+                audioTrack = new AACTrackImpl(audioPes.getDataSource(null));
+                movie.addTrack(audioTrack);
+            }
+            alignStart(videoTrack, audioTrack);
+
+            // sample 을 나누는 데 가장 오래 걸리므로 파일을 열기 전에 한 번 더 취소 여부를 확인한다.
+            Container container = new EditListMp4Builder().build(movie);
+            if (isCancelled.getAsBoolean()) {
+                logger.debug("Remux is cancelled before writing the mp4 file. (destFilePath={})", destFilePath);
+                return false;
+            }
+
+            try (FileOutputStream outputStream = new FileOutputStream(destFile)) {
+                container.writeContainer(outputStream.getChannel());
+            }
+            logger.debug("Success to remux the ts stream. (destFilePath={}, video={}, audio={})", destFilePath, videoPes, audioTrack != null ? audioPes : null);
+            return true;
+        } catch (Exception e) {
+            logger.warn("Fail to remux the ts stream. (destFilePath={})", destFilePath, e);
+            deleteFile(destFile);
+            return false;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * @fn public boolean isEsLimitExceeded()
+     * @brief 모은 Elementary stream 이 최대 크기를 넘어서 더 모으지 않고 있는지 확인하는 함수
+     * @return 넘었으면 true, 아니면 false 반환
+     */
+    public boolean isEsLimitExceeded() {
+        return videoPes.isLimitExceeded || audioPes.isLimitExceeded;
+    }
+
+    /**
+     * @fn public void release()
+     * @brief 모은 Elementary stream 을 놓는 함수 (크기가 크므로 변환을 마치거나 취소하면 바로 놓는다.)
+     * 쓰는 중인 fragmented MP4 파일이 있으면 마무리하지 않은 것이므로 지운다.
+     */
+    public void release() {
+        videoPes.release();
+        audioPes.release();
+        if (fragmentedMp4Writer != null) {
+            fragmentedMp4Writer.abort();
+            fragmentedMp4Writer = null;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn private boolean demux(InputStream inputStream, BooleanSupplier isCancelled) throws IOException
+     * @brief TS 스트림을 188 bytes 단위로 읽으면서 PSI 와 PES 를 처리하는 함수 (읽을 때마다 취소 여부를 확인한다.)
+     * @return 끝까지 읽었으면 true, 취소되면 false 반환
+     */
+    private boolean demux(InputStream inputStream, BooleanSupplier isCancelled) throws IOException {
+        byte[] buffer = new byte[TsPacket.TS_TOTAL_SIZE * READ_PACKET_COUNT];
+        int length = 0;
+        int readLength;
+        while ((readLength = inputStream.read(buffer, length, buffer.length - length)) != -1) {
+            if (isCancelled.getAsBoolean()) {
+                return false;
+            }
+            if (isEsLimitExceeded()) {
+                // 더 읽어도 MP4 를 만들 수 없으므로 finish 에서 실패로 처리한다.
+                break;
+            }
+
+            length += readLength;
+            int packetLength = length - (length % TsPacket.TS_TOTAL_SIZE);
+            if (packetLength == 0) {
+                continue;
+            }
+            feed(buffer, 0, packetLength);
+
+            // 188 bytes 가 되지 않는 나머지는 앞으로 옮겨서 다음에 읽은 데이터와 합친다.
+            System.arraycopy(buffer, packetLength, buffer, 0, length - packetLength);
+            length -= packetLength;
+        }
+        return true;
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            logger.warn("Fail to delete the incomplete mp4 file. (destFilePath={})", file.getPath());
+        }
+    }
+
+    private void handlePacket(byte[] buffer) {
+        int pid = tsPacketReader.getPid();
+        int offset = tsPacketReader.getPayloadOffset();
+        int length = tsPacketReader.getPayloadLength();
+        boolean isStart = tsPacketReader.isPayloadUnitStartIndicator();
+
+        if (pid == videoPid) {
+            videoPes.append(buffer, offset, length, isStart);
+        } else if (pid == audioPid) {
+            audioPes.append(buffer, offset, length, isStart);
+        } else if (pid == TsPacketReader.PAT_PID) {
+            if (isStart && pmtPid < 0) {
+                parsePat(buffer, offset, offset + length);
+            }
+        } else if (pid == pmtPid) {
+            if (isStart && videoPid < 0) {
+                parsePmt(buffer, offset, offset + length);
+            }
+        }
+    }
+
+    /**
+     * @fn private void parsePat(byte[] buffer, int offset, int end)
+     * @brief PAT 에서 첫 번째 program 의 PMT PID 를 찾는 함수
+     */
+    private void parsePat(byte[] buffer, int offset, int end) {
+        int sectionStart = offset + 1 + (buffer[offset] & 0xFF); // pointer_field
+        if (sectionStart + 8 > end || buffer[sectionStart] != 0x00) {
+            return;
+        }
+
+        int sectionEnd = Math.min(end, sectionStart + 3 + getSectionLength(buffer, sectionStart) - 4); // CRC_32 제외
+        for (int index = sectionStart + 8; index + 4 <= sectionEnd; index += 4) {
+            int programNumber = ((buffer[index] & 0xFF) << 8) | (buffer[index + 1] & 0xFF);
+            if (programNumber != 0) { // 0 은 network PID
+                pmtPid = ((buffer[index + 2] & 0x1F) << 8) | (buffer[index + 3] & 0xFF);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @fn private void parsePmt(byte[] buffer, int offset, int end)
+     * @brief PMT 에서 video / audio Elementary stream 의 PID 와 stream_type 을 찾는 함수
+     */
+    private void parsePmt(byte[] buffer, int offset, int end) {
+        int sectionStart = offset + 1 + (buffer[offset] & 0xFF); // pointer_field
+        if (sectionStart + 12 > end || buffer[sectionStart] != 0x02) {
+            return;
+        }
+
+        int sectionEnd = Math.min(end, sectionStart + 3 + getSectionLength(buffer, sectionStart) - 4); // CRC_32 제외
+        int programInfoLength = ((buffer[sectionStart + 10] & 0x0F) << 8) | (buffer[sectionStart + 11] & 0xFF);
+        int index = sectionStart + 12 + programInfoLength;
+        while (index + 5 <= sectionEnd) {
+            int streamType = buffer[index] & 0xFF;
+            int pid = ((buffer[index + 1] & 0x1F) << 8) | (buffer[index + 2] & 0xFF);
+            int esInfoLength = ((buffer[index + 3] & 0x0F) << 8) | (buffer[index + 4] & 0xFF);
+            index += 5 + esInfoLength;
+
+            if (streamType == STREAM_TYPE_H264) {
+                if (videoPid < 0) {
+                    videoPid = pid;
+                }
+            } else if (streamType == STREAM_TYPE_AAC_ADTS) {
+                if (audioPid < 0) {
+                    audioPid = pid;
+                }
+            } else if (isVideoOrAudioStreamType(streamType)) {
+                unsupportedStreamType = streamType;
+            }
+        }
+    }
+
+    private static int getSectionLength(byte[] buffer, int sectionStart) {
+        return ((buffer[sectionStart + 1] & 0x0F) << 8) | (buffer[sectionStart + 2] & 0xFF);
+    }
+
+    /**
+     * @fn private static boolean isVideoOrAudioStreamType(int streamType)
+     * @brief MP4 로 옮기지 못하면 내용이 빠지는 video / audio stream_type 인지 확인하는 함수 (private data, metadata 등은 무시한다.)
+     */
+    private static boolean isVideoOrAudioStreamType(int streamType) {
+        switch (streamType) {
+            case 0x01: // MPEG-1 video
+            case 0x02: // MPEG-2 video
+            case 0x03: // MPEG-1 audio
+            case 0x04: // MPEG-2 audio
+            case 0x10: // MPEG-4 part 2 video
+            case 0x11: // AAC LATM
+            case 0x24: // H.265
+            case 0x81: // AC-3
+            case 0x87: // E-AC-3
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @fn private void alignStart(Track videoTrack, Track audioTrack)
+     * @brief audio 와 video 의 첫 PTS 차이만큼 늦게 시작하는 track 앞에 빈 edit 를 넣는 함수
+     * video 의 첫 sample 은 DTS 가 아닌 PTS(DTS + 첫 composition offset)에 보여야 하므로, video 는 첫 composition offset 부터 재생하도록 한다.
+     * @param audioTrack audio track (없으면 null)
+     */
+    private void alignStart(Track videoTrack, Track audioTrack) {
+        long startOffset = audioTrack == null ? 0 : getStartOffset();
+        List<CompositionTimeToSample.Entry> compositionTimeEntries = videoTrack.getCompositionTimeEntries();
+        long videoMediaTime = compositionTimeEntries == null || compositionTimeEntries.isEmpty() ? 0 : compositionTimeEntries.get(0).getOffset();
+
+        double delay = (double) Math.abs(startOffset) / PTS_CLOCK_RATE;
+        if (startOffset > 0) {
+            addEdits(audioTrack, delay, 0);
+        }
+        if (startOffset < 0 || videoMediaTime > 0) {
+            addEdits(videoTrack, startOffset < 0 ? delay : 0, videoMediaTime);
+        }
+    }
+
+    /**
+     * @fn private static void addEdits(Track track, double delay, long mediaTime)
+     * @brief track 이 delay 만큼 늦게 시작하고, media 의 mediaTime 부터 끝까지 재생하도록 edit 를 넣는 함수
+     * @param delay 앞에 넣을 빈 edit 길이 (sec, 0 이면 넣지 않는다.)
+     * @param mediaTime 재생을 시작할 media 시간 (track timescale)
+     */
+    private static void addEdits(Track track, double delay, long mediaTime) {
+        long timescale = track.getTrackMetaData().getTimescale();
+        if (delay > 0) {
+            track.getEdits().add(new Edit(-1, timescale, 1.0, delay));
+        }
+        double duration = (double) (track.getDuration() - mediaTime) / timescale;
+        track.getEdits().add(new Edit(mediaTime, timescale, 1.0, duration));
+    }
+
+    /**
+     * @fn private void setFragmentDecodeTimes(Movie movie)
+     * @brief fragment 의 첫 video DTS / audio PTS 에서 스트림의 첫 timestamp 를 뺀 값으로 track 별 tfdt 를 정하는 함수
+     * 첫 fragment 에서는 늦게 시작하는 track 의 tfdt 가 시작 차이가 되므로 edit list 없이 audio 와 video 가 맞는다.
+     * timestamp 가 없거나, 스트림 시작보다 앞서거나, 이어서 쓴 값과 MAX_START_OFFSET 보다 많이 다르면(discontinuity) 이어서 쓴다.
+     * @param movie video, audio 순서로 track 을 가진 fragment 의 Movie
+     */
+    private void setFragmentDecodeTimes(Movie movie) {
+        int trackCount = movie.getTracks().size();
+        long videoDts = videoPes.fragmentFirstDts;
+        long audioDts = trackCount > 1 ? audioPes.fragmentFirstDts : -1;
+        if (fragmentStartDts < 0) {
+            fragmentStartDts = videoDts;
+            if (audioDts >= 0 && (fragmentStartDts < 0 || getTimestampDelta(fragmentStartDts, audioDts) < 0)) {
+                fragmentStartDts = audioDts;
+            }
+            if (fragmentStartDts < 0) {
+                return;
+            }
+        }
+
+        for (int trackIndex = 0; trackIndex < trackCount; trackIndex++) {
+            long dts = trackIndex == 0 ? videoDts : audioDts;
+            if (dts < 0) {
+                continue;
+            }
+
+            long delta = getTimestampDelta(fragmentStartDts, dts);
+            long timescale = movie.getTracks().get(trackIndex).getTrackMetaData().getTimescale();
+            long decodeTime = delta * timescale / PTS_CLOCK_RATE;
+            long continuedTime = fragmentedMp4Writer.getDecodeTime(trackIndex);
+            if (delta < 0 || Math.abs(decodeTime - continuedTime) > MAX_START_OFFSET * timescale / PTS_CLOCK_RATE) {
+                logger.debug("Fail to use the pes timestamp for the fragment decode time. (track={}, dts={}, startDts={}, continuedTime={})",
+                        trackIndex, dts, fragmentStartDts, continuedTime);
+                continue;
+            }
+            fragmentedMp4Writer.setDecodeTime(trackIndex, decodeTime);
+        }
+    }
+
+    /**
+     * @fn private static long getTimestampDelta(long from, long to)
+     * @brief 33 bits timestamp 의 차이(to - from)를 wrap 을 고려해서 구하는 함수
+     * @return 90 kHz 차이 (to 가 앞서면 음수)
+     */
+    private static long getTimestampDelta(long from, long to) {
+        long delta = (to - from) & (PTS_WRAP - 1);
+        return delta >= PTS_WRAP / 2 ? delta - PTS_WRAP : delta;
+    }
+
+    /**
+     * @fn private long getStartOffset()
+     * @brief audio 의 첫 PTS 에서 video 의 첫 PTS 를 뺀 값을 구하는 함수 (wrap 포함)
+     * @return 90 kHz 시작 차이, 구할 수 없거나 MAX_START_OFFSET 보다 크면 0 반환
+     */
+    private long getStartOffset() {
+        if (videoPes.firstPts < 0 || audioPes.firstPts < 0) {
+            return 0;
+        }
+
+        long startOffset = getTimestampDelta(videoPes.firstPts, audioPes.firstPts);
+        return Math.abs(startOffset) > MAX_START_OFFSET ? 0 : startOffset;
+    }
+
+    /**
+     * @fn private Track createFragmentVideoTrack(boolean isFirst) throws IOException
+     * @brief 현재 세그먼트의 H.264 Elementary stream 으로 fragment 의 video track 을 만드는 함수
+     * 모든 fragment 는 첫 fragment 의 시간 단위를 써야 하므로, 첫 fragment 에서 정한 시간 단위로 만든다.
+     * 시간 단위가 90 kHz 이면 sample 의 duration 과 composition offset 은 PES 의 DTS / PTS 로 정한다.
+     * 세그먼트가 SPS 로 시작하지 않으면 마지막으로 받은 SPS / PPS 를 앞에 붙여서 mp4parser 가 sample 을 나눌 수 있게 한다.
+     */
+    private Track createFragmentVideoTrack(boolean isFirst) throws IOException {
+        byte[] segmentParameterSets = findParameterSets(videoPes.es, videoPes.esLength);
+        if (segmentParameterSets != null) {
+            parameterSets = segmentParameterSets;
+        }
+        MemoryDataSourceImpl dataSource = videoPes.getDataSource(segmentParameterSets == null ? parameterSets : null);
+
+        if (isFirst) {
+            int frameTick = videoPes.getFrameTick();
+            if (frameTick > 0) {
+                fragmentTimescale = PTS_CLOCK_RATE;
+                fragmentFrameTick = frameTick;
+                return applyPesTiming(new H264TrackImpl(dataSource, "eng", PTS_CLOCK_RATE, frameTick), frameTick);
+            }
+
+            Track videoTrack = new H264TrackImpl(dataSource);
+            fragmentTimescale = videoTrack.getTrackMetaData().getTimescale();
+            fragmentFrameTick = (int) videoTrack.getSampleDurations()[0];
+            return videoTrack;
+        }
+
+        if (fragmentTimescale != PTS_CLOCK_RATE) {
+            return new H264TrackImpl(dataSource, "eng", fragmentTimescale, fragmentFrameTick);
+        }
+        int frameTick = videoPes.getFrameTick();
+        if (frameTick > 0) {
+            fragmentFrameTick = frameTick;
+        }
+        return applyPesTiming(new H264TrackImpl(dataSource, "eng", PTS_CLOCK_RATE, fragmentFrameTick), fragmentFrameTick);
+    }
+
+    /**
+     * @fn private Track applyPesTiming(Track videoTrack, int frameTick)
+     * @brief PES 별 DTS 간격과 PTS - DTS 차이로 video sample 의 duration 과 composition offset(ctts)을 정하는 함수 (90 kHz track)
+     * PES 하나에 access unit 하나가 있다고 보므로, sample 개수와 timestamp 를 가진 PES 개수가 다르면 mp4parser 가 정한 고정 간격을 그대로 쓴다.
+     * 마지막 sample 은 다음 DTS 를 모르므로, DTS 간격을 구할 수 없는 sample 과 같이 평균 frame 간격을 쓴다.
+     * @param videoTrack 90 kHz, frameTick 간격으로 만든 H264TrackImpl
+     * @param frameTick 90 kHz 평균 frame 간격
+     * @return PES timing 을 쓰는 track, 쓸 수 없으면 videoTrack 반환
+     */
+    private Track applyPesTiming(Track videoTrack, int frameTick) {
+        int sampleCount = videoTrack.getSamples().size();
+        if (videoPes.hasUntimedPes || sampleCount != videoPes.timestampCount) {
+            logger.debug("Fail to use the pes timing. Use the fixed frame tick. (samples={}, video={})", sampleCount, videoPes);
+            return videoTrack;
+        }
+
+        long[] sampleDurations = new long[sampleCount];
+        List<CompositionTimeToSample.Entry> compositionTimeEntries = new ArrayList<>();
+        boolean hasCompositionOffset = false;
+        for (int i = 0; i < sampleCount; i++) {
+            long duration = i + 1 < sampleCount ? (videoPes.dtsList[i + 1] - videoPes.dtsList[i]) & (PTS_WRAP - 1) : 0;
+            sampleDurations[i] = duration == 0 || duration > MAX_START_OFFSET ? frameTick : duration;
+
+            long offset = (videoPes.ptsList[i] - videoPes.dtsList[i]) & (PTS_WRAP - 1);
+            int compositionOffset = offset > MAX_START_OFFSET ? 0 : (int) offset;
+            hasCompositionOffset |= compositionOffset != 0;
+
+            CompositionTimeToSample.Entry lastEntry = compositionTimeEntries.isEmpty() ? null : compositionTimeEntries.get(compositionTimeEntries.size() - 1);
+            if (lastEntry != null && lastEntry.getOffset() == compositionOffset) {
+                lastEntry.setCount(lastEntry.getCount() + 1);
+            } else {
+                compositionTimeEntries.add(new CompositionTimeToSample.Entry(1, compositionOffset));
+            }
+        }
+
+        return new PesTimingTrack(videoTrack, sampleDurations,
+                hasCompositionOffset ? compositionTimeEntries : Collections.emptyList());
+    }
+
+    /**
+     * @fn private static byte[] findParameterSets(byte[] es, int length)
+     * @brief H.264 Annex B 에서 첫 slice 앞에 있는 SPS(nal_unit_type 7) / PPS(8) 를 start code 와 함께 복사하는 함수
+     * @return SPS / PPS, SPS 가 없으면 null 반환
+     */
+    private static byte[] findParameterSets(byte[] es, int length) {
+        ByteArrayOutputStream parameterSets = new ByteArrayOutputStream();
+        boolean hasSps = false;
+        int nalStart = findNalStart(es, 0, length);
+        while (nalStart >= 0) {
+            int nextNalStart = findNalStart(es, nalStart, length);
+            int nalEnd = nextNalStart < 0 ? length : nextNalStart - 3;
+            while (nalEnd > nalStart && es[nalEnd - 1] == 0) { // 4 bytes start code 의 0 과 trailing_zero_8bits
+                nalEnd--;
+            }
+
+            int nalType = es[nalStart] & 0x1F;
+            if (nalType == 1 || nalType == 5) { // slice
+                break;
+            }
+            if (nalType == 7 || nalType == 8) {
+                hasSps |= nalType == 7;
+                parameterSets.write(NAL_START_CODE, 0, NAL_START_CODE.length);
+                parameterSets.write(es, nalStart, nalEnd - nalStart);
+            }
+            nalStart = nextNalStart;
+        }
+        return hasSps ? parameterSets.toByteArray() : null;
+    }
+
+    /**
+     * @fn private static int findNalStart(byte[] es, int offset, int length)
+     * @brief offset 부터 start code(0x000001)를 찾아서 그 다음 위치(NAL header)를 반환하는 함수
+     * @return NAL header 위치, 없으면 -1 반환
+     */
+    private static int findNalStart(byte[] es, int offset, int length) {
+        for (int index = offset; index + 3 < length; index++) {
+            if (es[index] == 0 && es[index + 1] == 0 && es[index + 2] == 1) {
+                return index + 3;
+            }
+        }
+        return -1;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @class private static class PesAssembler
+     * @brief PID 하나의 PES 를 다시 조립해서 헤더를 제거한 Elementary stream 을 모으는 class
+     */
+    private static class PesAssembler {
+
+        private final int maxLength;
+        private boolean isLimitExceeded = false;
+
+        private byte[] pes = new byte[64 * 1024];
+        private int pesLength = 0;
+        private boolean isStarted = false;
+
+        private byte[] es = null;
+        private int esLength = 0;
+
+        private long pesCount = 0;
+        private long firstPts = -1;
+        private long lastDts = -1;
+        private long dtsSpan = 0; // 첫 DTS 부터 마지막 DTS 까지 (wrap 포함)
+        private long timedPesCount = 0;
+
+        // Elementary stream 에 붙인 PES 순서대로의 PTS / DTS (90 kHz), fragment 마다 비운다.
+        private long[] ptsList = new long[256];
+        private long[] dtsList = new long[256];
+        private int timestampCount = 0;
+        private boolean hasUntimedPes = false;
+        private long fragmentFirstDts = -1; // fragment 의 첫 PES 의 DTS, 없으면 -1
+
+        private PesAssembler(int maxLength) {
+            this.maxLength = maxLength;
+        }
+
+        private void reset() {
+            isLimitExceeded = false;
+            pesLength = 0;
+            isStarted = false;
+            esLength = 0;
+            pesCount = 0;
+            firstPts = -1;
+            lastDts = -1;
+            dtsSpan = 0;
+            timedPesCount = 0;
+            timestampCount = 0;
+            hasUntimedPes = false;
+            fragmentFirstDts = -1;
+        }
+
+        private void release() {
+            es = null;
+            esLength = 0;
+        }
+
+        /**
+         * @fn private void onLimitExceeded()
+         * @brief 최대 크기를 넘으면 모은 데이터를 놓고, reset 할 때까지 더 모으지 않도록 하는 함수
+         */
+        private void onLimitExceeded() {
+            isLimitExceeded = true;
+            isStarted = false;
+            pesLength = 0;
+            release();
+        }
+
+        /**
+         * @fn private void startFragment()
+         * @brief 다음 fragment 를 위해 모은 Elementary stream 과 frame 간격 계산, PES timestamp 를 비우는 함수 (조립 중인 PES 와 buffer 는 유지한다.)
+         */
+        private void startFragment() {
+            esLength = 0;
+            dtsSpan = 0;
+            timedPesCount = 0;
+            timestampCount = 0;
+            hasUntimedPes = false;
+            fragmentFirstDts = -1;
+        }
+
+        private void append(byte[] buffer, int offset, int length, boolean isStart) {
+            if (isLimitExceeded) {
+                return;
+            }
+
+            if (isStart) {
+                flush();
+                isStarted = true;
+            } else if (!isStarted) {
+                // 시작을 잃어버린 PES 는 버린다.
+                return;
+            }
+
+            if (pesLength + length > maxLength) {
+                onLimitExceeded();
+                return;
+            }
+            if (pesLength + length > pes.length) {
+                pes = Arrays.copyOf(pes, Math.max(pes.length * 2, pesLength + length));
+            }
+            System.arraycopy(buffer, offset, pes, pesLength, length);
+            pesLength += length;
+        }
+
+        /**
+         * @fn private void flush()
+         * @brief 모은 PES 의 헤더를 읽고 payload 를 Elementary stream 에 붙이는 함수
+         */
+        private void flush() {
+            if (!isStarted) {
+                return;
+            }
+            isStarted = false;
+
+            int length = pesLength;
+            pesLength = 0;
+            if (length < 9 || pes[0] != 0 || pes[1] != 0 || pes[2] != 1) {
+                return;
+            }
+
+            int headerLength = 9 + (pes[8] & 0xFF);
+            if (headerLength > length) {
+                return;
+            }
+
+            long dts = -1;
+            int ptsDtsFlags = (pes[7] >>> 6) & 0x03;
+            if ((ptsDtsFlags & 0x02) != 0 && headerLength >= 14) {
+                long pts = readTimestamp(pes, 9);
+                dts = (ptsDtsFlags == 0x03 && headerLength >= 19) ? readTimestamp(pes, 14) : pts;
+                updateTimestamp(pts, dts);
+            } else {
+                hasUntimedPes = true;
+            }
+            if (esLength == 0) {
+                fragmentFirstDts = dts;
+            }
+
+            pesCount++;
+            appendEs(pes, headerLength, length - headerLength);
+        }
+
+        private void updateTimestamp(long pts, long dts) {
+            if (firstPts < 0) {
+                firstPts = pts;
+            }
+            if (timedPesCount > 0) {
+                long delta = (dts - lastDts) & (PTS_WRAP - 1);
+                if (delta < PTS_WRAP / 2) {
+                    dtsSpan += delta;
+                }
+            }
+            lastDts = dts;
+            timedPesCount++;
+
+            if (timestampCount == ptsList.length) {
+                ptsList = Arrays.copyOf(ptsList, timestampCount * 2);
+                dtsList = Arrays.copyOf(dtsList, timestampCount * 2);
+            }
+            ptsList[timestampCount] = pts;
+            dtsList[timestampCount] = dts;
+            timestampCount++;
+        }
+
+        private void appendEs(byte[] data, int offset, int length) {
+            if (isLimitExceeded) {
+                return;
+            }
+            if ((long) esLength + length > maxLength) {
+                onLimitExceeded();
+                return;
+            }
+
+            if (es == null) {
+                es = new byte[Math.min(maxLength, Math.max(INITIAL_ES_BUFFER_SIZE, length))];
+            } else if (esLength + length > es.length) {
+                es = Arrays.copyOf(es, (int) Math.min(maxLength, Math.max(es.length * 2L, esLength + length)));
+            }
+            System.arraycopy(data, offset, es, esLength, length);
+            esLength += length;
+        }
+
+        /**
+         * @fn private int getFrameTick()
+         * @brief PES 하나에 access unit 하나가 있다고 보고 평균 DTS 간격을 구하는 함수
+         * @return 90 kHz frame 간격, 구할 수 없으면 0 반환
+         */
+        private int getFrameTick() {
+            if (timedPesCount < 2 || dtsSpan <= 0) {
+                return 0;
+            }
+            return (int) Math.round((double) dtsSpan / (timedPesCount - 1));
+        }
+
+        /**
+         * @fn private MemoryDataSourceImpl getDataSource(byte[] prefix)
+         * @brief 모은 Elementary stream 을 mp4parser 의 DataSource 로 감싸는 함수
+         * @param prefix 앞에 붙일 데이터 (없으면 null, 있으면 복사한다.)
+         */
+        private MemoryDataSourceImpl getDataSource(byte[] prefix) {
+            if (prefix == null) {
+                return new MemoryDataSourceImpl(ByteBuffer.wrap(es, 0, esLength).slice());
+            }
+
+            byte[] data = new byte[prefix.length + esLength];
+            System.arraycopy(prefix, 0, data, 0, prefix.length);
+            System.arraycopy(es, 0, data, prefix.length, esLength);
+            return new MemoryDataSourceImpl(ByteBuffer.wrap(data));
+        }
+
+        private static long readTimestamp(byte[] header, int offset) {
+            return ((long) (header[offset] & 0x0E) << 29)
+                    | ((header[offset + 1] & 0xFF) << 22)
+                    | ((header[offset + 2] & 0xFE) << 14)
+                    | ((header[offset + 3] & 0xFF) << 7)
+                    | ((header[offset + 4] & 0xFE) >>> 1);
+        }
+
+        @Override
+        public String toString() {
+            return "{pes=" + pesCount +
+                    ", bytes=" + esLength +
+                    ", firstPts=" + firstPts +
+                    ", frameTick=" + getFrameTick() +
+                    ", isLimitExceeded=" + isLimitExceeded +
+                    '}';
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @class private static class EditListMp4Builder extends DefaultMp4Builder
+     * @brief mvhd / tkhd 와 edit list 가 같은 movie timescale 을 쓰도록 하는 builder
+     * DefaultMp4Builder 는 mvhd 에 track timescale 의 최소공배수를 쓰지만, edit 길이는 Movie.getTimescale(최대공약수)로 바꾸므로
+     * 그대로 쓰면 audio / video 시작을 맞추는 빈 edit 가 짧아진다.
+     */
+    private static class EditListMp4Builder extends DefaultMp4Builder {
+
+        @Override
+        public long getTimescale(Movie movie) {
+            return movie.getTimescale();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @class private static class PesTimingTrack extends WrappingTrack
+     * @brief mp4parser 가 만든 video track 의 sample duration 과 composition offset 만 PES timestamp 로 바꾼 track
+     */
+    private static class PesTimingTrack extends WrappingTrack {
+
+        private final long[] sampleDurations;
+        private final List<CompositionTimeToSample.Entry> compositionTimeEntries;
+        private final long duration;
+
+        private PesTimingTrack(Track parent, long[] sampleDurations, List<CompositionTimeToSample.Entry> compositionTimeEntries) {
+            super(parent);
+            this.sampleDurations = sampleDurations;
+            this.compositionTimeEntries = compositionTimeEntries;
+
+            long totalDuration = 0;
+            for (long sampleDuration : sampleDurations) {
+                totalDuration += sampleDuration;
+            }
+            this.duration = totalDuration;
+        }
+
+        @Override
+        public long[] getSampleDurations() {
+            return sampleDurations;
+        }
+
+        @Override
+        public long getDuration() {
+            return duration;
+        }
+
+        @Override
+        public List<CompositionTimeToSample.Entry> getCompositionTimeEntries() {
+            return compositionTimeEntries;
+        }
+    }
+
+}
@@ -0,0 +1,292 @@
+package com.rtsp.client.ffmpeg.base;
+
+import net.bramp.ffmpeg.progress.ProgressListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @class public class Mp4ConversionJob implements Runnable, Comparable<Mp4ConversionJob>
+ * @brief Mp4ConversionService 의 작업 queue 에 들어가는 MP4 변환 작업 class
+ *
+ * priority 가 작을수록 먼저 실행하고, 같으면 먼저 추가한 작업을 먼저 실행한다.
+ * 결과는 CompletableFuture 로 전달하며, 취소하면 바로 false 로 완료하고 실행 중인 FFmpeg 프로세스를 종료한다.
+ * 변환은 작업마다 다른 임시 파일(getTempFilePath)에 쓰고, 성공하면 MP4 파일 경로로 옮긴다.
+ * 취소된 작업이 늦게 끝나도 같은 key 로 다시 추가한 작업의 MP4 파일을 지우거나 덮어쓰지 않는다.
+ * 취소 여부 확인과 임시 파일 이동은 cancel 과 같은 lock 안에서 처리하므로, cancel 이 반환된 후에는 MP4 파일을 옮기지 않는다.
+ * 실행하기 전에 취소되면 task 를 부르지 않으므로, task 가 넘겨받은 자원은 releaseListener 로 놓는다.
+ */
+public class Mp4ConversionJob implements Runnable, Comparable<Mp4ConversionJob> {
+
+    private static final Logger logger = LoggerFactory.getLogger(Mp4ConversionJob.class);
+
+    // 지금 보고 있는 세션의 작업
+    public static final int PRIORITY_WATCHED = 0;
+    public static final int PRIORITY_BACKGROUND = 1;
+
+    // 진행률 로그를 남기는 단위 (%)
+    private static final int PROGRESS_LOG_STEP = 10;
+    private static final String TEMP_FILE_SUFFIX = ".part";
+
+    /**
+     * @interface public interface Task
+     * @brief 작업 스레드에서 실행할 변환 함수
+     */
+    public interface Task {
+        boolean convert(Mp4ConversionJob job) throws Exception;
+    }
+
+    private final String key;
+    private final int priority;
+    private final long sequence;
+    private final String destFilePath;
+    private final String tempFilePath;
+    private final double totalSeconds; // 0 이면 진행률을 계산하지 않는다.
+    private final Task task;
+    private final Consumer<Mp4ConversionJob> finishListener;
+    private final Runnable releaseListener; // 없으면 null
+    private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+    private final long createdTime = System.nanoTime();
+
+    // isCancelled 와 isDone 을 바꾸거나 임시 파일을 옮길 때 잡는 lock
+    private final Object stateLock = new Object();
+    private volatile Process process = null;
+    private volatile boolean isCancelled = false;
+    private boolean isRunning = false;
+    private boolean isDone = false; // 임시 파일을 옮기거나 지운 후, 또는 실행하기 전에 취소된 후 true
+    private volatile double progress = 0;
+    private int lastProgressLogPercent = 0;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public Mp4ConversionJob(String key, int priority, long sequence, String destFilePath, double totalSeconds,
+                            Task task, Consumer<Mp4ConversionJob> finishListener) {
+        this(key, priority, sequence, destFilePath, totalSeconds, task, finishListener, null);
+    }
+
+    /**
+     * @fn public Mp4ConversionJob(String key, int priority, long sequence, String destFilePath, double totalSeconds, Task task, Consumer<Mp4ConversionJob> finishListener, Runnable releaseListener)
+     * @brief Mp4ConversionJob 생성자 함수
+     * @param releaseListener task 를 실행하지 않고 끝날 때(실행하기 전에 취소) task 가 넘겨받은 자원을 놓는 함수 (없으면 null)
+     */
+    public Mp4ConversionJob(String key, int priority, long sequence, String destFilePath, double totalSeconds,
+                            Task task, Consumer<Mp4ConversionJob> finishListener, Runnable releaseListener) {
+        this.key = key;
+        this.priority = priority;
+        this.sequence = sequence;
+        this.destFilePath = destFilePath;
+        this.tempFilePath = destFilePath != null ? destFilePath + "." + sequence + TEMP_FILE_SUFFIX : null;
+        this.totalSeconds = totalSeconds;
+        this.task = task;
+        this.finishListener = finishListener;
+        this.releaseListener = releaseListener;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void run() {
+        synchronized (stateLock) {
+            if (isCancelled) {
+                // cancel 에서 자원을 놓았다.
+                return;
+            }
+            isRunning = true;
+        }
+
+        long startTime = System.nanoTime();
+        boolean isConverted = false;
+        try {
+            isConverted = task.convert(this);
+        } catch (Exception e) {
+            if (!isCancelled) {
+                logger.warn("({}) Fail to convert to mp4. (destFilePath={})", key, destFilePath, e);
+            }
+        } finally {
+            process = null;
+            synchronized (stateLock) {
+                if (isCancelled || !isConverted) {
+                    // 취소되거나 실패한 변환의 임시 파일은 불완전하므로 지운다.
+                    deleteTempFile();
+                    isConverted = false;
+                } else if (moveTempFile()) {
+                    progress = 1.0;
+                } else {
+                    deleteTempFile();
+                    isConverted = false;
+                }
+                isDone = true;
+            }
+
+            logger.debug("({}) Mp4 conversion is done. (isConverted={}, isCancelled={}, wait(ms)={}, elapsed(ms)={})", key, isConverted, isCancelled,
+                    TimeUnit.NANOSECONDS.toMillis(startTime - createdTime), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+            finishListener.accept(this);
+            future.complete(isConverted);
+        }
+    }
+
+    /**
+     * @fn public void cancel()
+     * @brief 작업을 취소하는 함수
+     * 결과는 바로 false 로 완료하고, 실행 중이면 FFmpeg 프로세스를 종료한다. (작업 스레드는 프로세스가 끝나면 돌아온다.)
+     * 작업 스레드가 임시 파일을 옮기는 중이면 끝날 때까지 기다리고, 이미 옮겼으면 결과를 바꾸지 않는다.
+     * 아직 실행하지 않았으면 task 를 부르지 않으므로 releaseListener 를 호출한다.
+     */
+    public void cancel() {
+        boolean isReleased;
+        synchronized (stateLock) {
+            if (isDone) {
+                return;
+            }
+            isCancelled = true;
+            isReleased = !isRunning;
+            if (isReleased) {
+                isDone = true;
+            }
+        }
+
+        if (isReleased && releaseListener != null) {
+            releaseListener.run();
+        }
+        Process curProcess = process;
+        if (curProcess != null) {
+            curProcess.destroy();
+        }
+        future.complete(false);
+    }
+
+    @Override
+    public int compareTo(Mp4ConversionJob o) {
+        if (priority != o.priority) {
+            return Integer.compare(priority, o.priority);
+        }
+        return Long.compare(sequence, o.sequence);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public void setProcess(Process process)
+     * @brief 작업이 띄운 FFmpeg 프로세스를 등록하는 함수 (취소하면 종료한다.)
+     * @param process FFmpeg 프로세스
+     */
+    public void setProcess(Process process) {
+        this.process = process;
+        if (isCancelled) {
+            process.destroy();
+        }
+    }
+
+    /**
+     * @fn public ProgressListener getProgressListener()
+     * @brief FFmpegExecutor 의 진행 상태(out_time)를 진행률로 바꾸는 listener 를 반환하는 함수
+     * @return ProgressListener
+     */
+    public ProgressListener getProgressListener() {
+        return ffmpegProgress -> {
+            if (totalSeconds <= 0 || ffmpegProgress.out_time_ns <= 0) {
+                return;
+            }
+            setProgress(ffmpegProgress.out_time_ns / (totalSeconds * TimeUnit.SECONDS.toNanos(1)));
+        };
+    }
+
+    public void setProgress(double progress) {
+        this.progress = Math.max(0, Math.min(1.0, progress));
+
+        int progressPercent = (int) (this.progress * 100);
+        if (progressPercent >= lastProgressLogPercent + PROGRESS_LOG_STEP) {
+            lastProgressLogPercent = progressPercent - progressPercent % PROGRESS_LOG_STEP;
+            logger.debug("({}) Mp4 conversion progress: {}%", key, progressPercent);
+        }
+    }
+
+    /**
+     * @fn private boolean moveTempFile()
+     * @brief 변환을 마친 임시 파일을 MP4 파일 경로로 옮기는 함수 (이미 있으면 바꾼다.)
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    private boolean moveTempFile() {
+        if (tempFilePath == null) {
+            return true;
+        }
+
+        try {
+            try {
+                Files.move(Paths.get(tempFilePath), Paths.get(destFilePath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(Paths.get(tempFilePath), Paths.get(destFilePath), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warn("({}) Fail to move the mp4 file. (tempFilePath={}, destFilePath={})", key, tempFilePath, destFilePath, e);
+            return false;
+        }
+    }
+
+    private void deleteTempFile() {
+        if (tempFilePath == null) {
+            return;
+        }
+
+        File tempFile = new File(tempFilePath);
+        if (tempFile.exists() && !tempFile.delete()) {
+            logger.warn("({}) Fail to delete the incomplete mp4 file. (tempFilePath={})", key, tempFilePath);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public String getDestFilePath() {
+        return destFilePath;
+    }
+
+    /**
+     * @fn public String getTempFilePath()
+     * @brief 작업이 변환 결과를 쓸 임시 파일 경로를 반환하는 함수 (성공하면 MP4 파일 경로로 옮긴다.)
+     * @return 임시 파일 경로 (MP4 파일 경로가 없으면 null)
+     */
+    public String getTempFilePath() {
+        return tempFilePath;
+    }
+
+    public CompletableFuture<Boolean> getFuture() {
+        return future;
+    }
+
+    public double getProgress() {
+        return progress;
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    @Override
+    public String toString() {
+        return "Mp4ConversionJob{" +
+                "key='" + key + '\'' +
+                ", priority=" + priority +
+                ", progress=" + (int) (progress * 100) + "%" +
+                ", isCancelled=" + isCancelled +
+                '}';
+    }
+
+}
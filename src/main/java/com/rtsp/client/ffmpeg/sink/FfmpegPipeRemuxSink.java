@@ -0,0 +1,248 @@
+package com.rtsp.client.ffmpeg.sink;
+
+import com.rtsp.client.ffmpeg.FfmpegManager;
+import com.rtsp.client.media.module.base.BoundedMediaBuffer;
+import com.rtsp.client.media.module.base.MediaMemoryBudget;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class public class FfmpegPipeRemuxSink implements RemuxSink
+ * @brief 수신을 시작할 때 FFmpeg 프로세스를 띄우고, 받은 TS 데이터를 표준 입력(pipe:0)으로 바로 넘기는 RemuxSink
+ * 소비자 스레드가 pipe 에 막히지 않도록 데이터는 retain 한 slice 로 queue 에 넣고, 전용 writer 스레드가 FFmpeg 에 쓴다.
+ * queue 에 있는 데이터도 버퍼를 붙잡고 있으므로 MediaMemoryBudget 에 예약하고, writer 스레드가 쓴 후에 반환한다.
+ * queue 가 가득 차거나 예약에 실패하면(FFmpeg 가 멈춘 경우) 실패로 표시하고, finish 에서 false 를 반환해서 저장한 세그먼트로 다시 변환하도록 한다.
+ * fragmented 이면 FFmpeg 가 keyframe 마다 fragment 를 쓴다. (HLS 세그먼트는 keyframe 으로 시작하므로 세그먼트 경계도 fragment 경계가 된다.)
+ */
+public class FfmpegPipeRemuxSink implements RemuxSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmpegPipeRemuxSink.class);
+
+    public static final String NAME = "FFMPEG";
+
+    // RTP payload(7 x 188 bytes) 기준 약 5 MB
+    private static final int QUEUE_CAPACITY = 4096;
+    // 마지막 데이터를 넘긴 후 FFmpeg 가 MP4 를 마무리할 때까지 기다리는 최대 시간
+    private static final long FINISH_TIMEOUT_MS = 30000;
+    private static final ByteBuf END_OF_STREAM = Unpooled.EMPTY_BUFFER;
+
+    private final ArrayBlockingQueue<ByteBuf> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private final boolean isFragmented;
+    private final MediaMemoryBudget memoryBudget;
+    private Process process = null;
+    private Thread writerThread = null;
+    private String destFilePath = null;
+    private volatile boolean isFailed = false;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public FfmpegPipeRemuxSink(boolean isFragmented, MediaMemoryBudget memoryBudget)
+     * @brief FfmpegPipeRemuxSink 생성자 함수
+     * @param isFragmented fragmented MP4 로 쓸지 여부
+     * @param memoryBudget queue 에 있는 데이터를 예약할 메모리 한도 (TS 버퍼와 함께 쓴다.)
+     */
+    public FfmpegPipeRemuxSink(boolean isFragmented, MediaMemoryBudget memoryBudget) {
+        this.isFragmented = isFragmented;
+        this.memoryBudget = memoryBudget;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean start(String destFilePath) {
+        abort();
+
+        File destDirectory = new File(destFilePath).getParentFile();
+        if (destDirectory != null && destDirectory.mkdirs()) {
+            logger.debug("Success to make the directory. ({})", destDirectory.getAbsolutePath());
+        }
+
+        try {
+            process = new ProcessBuilder(FfmpegManager.getPipeCommand(destFilePath, isFragmented)).redirectErrorStream(true).start();
+        } catch (Exception e) {
+            logger.warn("Fail to start the ffmpeg process. (destFilePath={})", destFilePath, e);
+            process = null;
+            return false;
+        }
+
+        this.destFilePath = destFilePath;
+        isFailed = false;
+
+        Process curProcess = process;
+        Thread outputDrainer = new Thread(() -> FfmpegManager.drainProcessOutput(curProcess.getInputStream()), "FfmpegOutputDrainer");
+        outputDrainer.setDaemon(true);
+        outputDrainer.start();
+
+        writerThread = new Thread(() -> writeToProcess(curProcess.getOutputStream()), "FfmpegPipeWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        logger.debug("Success to start the streaming remux. (destFilePath={})", destFilePath);
+        return true;
+    }
+
+    @Override
+    public void write(ByteBuf data) {
+        if (process == null || isFailed) {
+            return;
+        }
+
+        int chargedBytes = BoundedMediaBuffer.getChargedBytes(data);
+        if (!memoryBudget.tryReserve(chargedBytes)) {
+            isFailed = true;
+            logger.warn("Fail to write the ts data into ffmpeg. Memory budget is exceeded. (destFilePath={}, usedBytes={}, limit={})",
+                    destFilePath, memoryBudget.getUsedBytes(), memoryBudget.getLimit());
+            return;
+        }
+
+        ByteBuf slice = data.retainedSlice();
+        if (!queue.offer(slice)) {
+            release(slice);
+            isFailed = true;
+            logger.warn("Fail to write the ts data into ffmpeg. Queue is full. (destFilePath={}, capacity={})", destFilePath, QUEUE_CAPACITY);
+        }
+    }
+
+    @Override
+    public void endSegment() {
+        // FFmpeg 가 keyframe 으로 fragment 를 나눈다.
+    }
+
+    @Override
+    public boolean finish() {
+        if (process == null) {
+            return false;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FINISH_TIMEOUT_MS);
+        try {
+            // writer 스레드가 queue 를 계속 비우므로 오래 막히지 않는다.
+            queue.put(END_OF_STREAM);
+            writerThread.join(FINISH_TIMEOUT_MS);
+            long remainMs = Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            if (!process.waitFor(remainMs, TimeUnit.MILLISECONDS)) {
+                logger.warn("Fail to finish the streaming remux. Timeout. (destFilePath={}, timeout={})", destFilePath, FINISH_TIMEOUT_MS);
+                abort();
+                return false;
+            }
+
+            int exitCode = process.exitValue();
+            if (exitCode != 0 || isFailed) {
+                logger.warn("Fail to finish the streaming remux. (destFilePath={}, exitCode={}, isFailed={})", destFilePath, exitCode, isFailed);
+                abort();
+                return false;
+            }
+
+            process = null;
+            writerThread = null;
+            destFilePath = null;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while finishing the streaming remux. (destFilePath={})", destFilePath);
+            abort();
+            return false;
+        }
+    }
+
+    @Override
+    public void abort() {
+        if (process == null) {
+            return;
+        }
+
+        isFailed = true;
+        process.destroy();
+        writerThread.interrupt();
+        try {
+            writerThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        releaseQueue();
+
+        File destFile = new File(destFilePath);
+        if (destFile.exists() && !destFile.delete()) {
+            logger.warn("Fail to delete the incomplete mp4 file. (destFilePath={})", destFilePath);
+        }
+
+        process = null;
+        writerThread = null;
+        destFilePath = null;
+    }
+
+    @Override
+    public boolean isStarted() {
+        return process != null;
+    }
+
+    @Override
+    public String getName() {
+        return isFragmented ? NAME + "_FMP4" : NAME;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn private void writeToProcess(OutputStream processInput)
+     * @brief queue 의 TS 데이터를 FFmpeg 표준 입력에 쓰는 writer 스레드 함수
+     * 쓰기에 실패해도 END_OF_STREAM 을 받을 때까지 꺼낸 데이터를 release 한다.
+     */
+    private void writeToProcess(OutputStream processInput) {
+        try {
+            while (true) {
+                ByteBuf data = queue.take();
+                if (data == END_OF_STREAM) {
+                    break;
+                }
+
+                try {
+                    if (!isFailed) {
+                        data.getBytes(data.readerIndex(), processInput, data.readableBytes());
+                    }
+                } catch (IOException e) {
+                    isFailed = true;
+                    logger.warn("Fail to write the ts data into ffmpeg. (destFilePath={})", destFilePath, e);
+                } finally {
+                    release(data);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                // 표준 입력을 닫아야 FFmpeg 가 MP4 를 마무리하고 종료한다.
+                processInput.close();
+            } catch (IOException e) {
+                // 프로세스가 이미 종료된 경우
+            }
+        }
+    }
+
+    private void releaseQueue() {
+        ByteBuf data;
+        while ((data = queue.poll()) != null) {
+            if (data != END_OF_STREAM) {
+                release(data);
+            }
+        }
+    }
+
+    private void release(ByteBuf data) {
+        // slice 는 release 한 후에 capacity 를 읽을 수 없으므로 먼저 계산한다.
+        int chargedBytes = BoundedMediaBuffer.getChargedBytes(data);
+        data.release();
+        memoryBudget.release(chargedBytes);
+    }
+
+}
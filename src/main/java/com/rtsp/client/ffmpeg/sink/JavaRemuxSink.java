@@ -0,0 +1,118 @@
+package com.rtsp.client.ffmpeg.sink;
+
+import com.rtsp.client.ffmpeg.TsMp4Remuxer;
+import io.netty.buffer.ByteBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @class public class JavaRemuxSink implements RemuxSink
+ * @brief 수신하는 동안 TsMp4Remuxer 로 TS 를 demux 해두고, finish 에서 MP4 만 만드는 RemuxSink
+ * demux 는 write 를 호출한 소비자 스레드에서 바로 처리하므로 별도의 스레드가 없다.
+ * fragmented 이면 세그먼트가 끝날 때마다 fragmented MP4 의 fragment 를 쓰므로, 외부 재생기는 첫 세그먼트를 받은 후부터 파일을 읽을 수 있다.
+ * (VideoPanel 은 fragmented 여부와 상관없이 finish 가 끝난 MP4 를 재생한다. 수신 중에 보려면 HLS 서버를 사용한다.)
+ * fragment 쓰기에 실패하면 쓰던 파일을 지우고 남은 데이터는 무시하며, finish 에서 false 를 반환해서 저장한 세그먼트로 다시 변환하도록 한다.
+ * fragmented 가 아니면 전체 Elementary stream 을 메모리에 모으므로, maxEsBytes 를 넘으면 같은 방법으로 실패 처리한다.
+ */
+public class JavaRemuxSink implements RemuxSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(JavaRemuxSink.class);
+
+    public static final String NAME = "JAVA";
+
+    private final TsMp4Remuxer tsMp4Remuxer;
+    private final boolean isFragmented;
+    private String destFilePath = null;
+    private boolean isFailed = false;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public JavaRemuxSink(boolean isFragmented, int maxEsBytes)
+     * @brief JavaRemuxSink 생성자 함수
+     * @param isFragmented fragmented MP4 로 쓸지 여부
+     * @param maxEsBytes stream 별로 메모리에 모을 수 있는 최대 Elementary stream 크기 (JAVA_REMUX_MAX_BYTES)
+     */
+    public JavaRemuxSink(boolean isFragmented, int maxEsBytes) {
+        this.isFragmented = isFragmented;
+        this.tsMp4Remuxer = new TsMp4Remuxer(maxEsBytes);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean start(String destFilePath) {
+        abort();
+        if (isFragmented) {
+            if (!tsMp4Remuxer.startFragmented(destFilePath)) {
+                return false;
+            }
+        } else {
+            tsMp4Remuxer.start();
+        }
+        this.destFilePath = destFilePath;
+        isFailed = false;
+        return true;
+    }
+
+    @Override
+    public void write(ByteBuf data) {
+        if (destFilePath == null || isFailed) {
+            return;
+        }
+
+        tsMp4Remuxer.feed(data);
+        if (tsMp4Remuxer.isEsLimitExceeded()) {
+            logger.warn("Fail to remux the ts data. Elementary stream is too large. Convert the stored ts segments. (destFilePath={})", destFilePath);
+            isFailed = true;
+            tsMp4Remuxer.release();
+        }
+    }
+
+    @Override
+    public void endSegment() {
+        if (!isFragmented || destFilePath == null || isFailed) {
+            return;
+        }
+
+        if (!tsMp4Remuxer.writeFragment()) {
+            isFailed = true;
+            tsMp4Remuxer.release();
+        }
+    }
+
+    @Override
+    public boolean finish() {
+        if (destFilePath == null) {
+            return false;
+        }
+
+        String filePath = destFilePath;
+        destFilePath = null;
+        if (isFailed) {
+            return false;
+        }
+        return isFragmented ? tsMp4Remuxer.finishFragmented() : tsMp4Remuxer.finish(filePath);
+    }
+
+    @Override
+    public void abort() {
+        if (destFilePath == null) {
+            return;
+        }
+
+        destFilePath = null;
+        tsMp4Remuxer.release();
+    }
+
+    @Override
+    public boolean isStarted() {
+        return destFilePath != null;
+    }
+
+    @Override
+    public String getName() {
+        return isFragmented ? NAME + "_FMP4" : NAME;
+    }
+
+}
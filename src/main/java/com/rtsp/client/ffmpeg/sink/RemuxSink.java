@@ -0,0 +1,52 @@
+package com.rtsp.client.ffmpeg.sink;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @interface public interface RemuxSink
+ * @brief 수신하는 동안 TS 데이터를 받아서 MP4 로 옮기는(remux) 단계 interface
+ * 세그먼트를 모두 받은 후에 전체 파일을 다시 읽지 않고, 마지막 패킷을 받은 후 finish 에서 MP4 를 마무리한다.
+ * 하나의 소비자 스레드(StreamReceiver)에서만 호출하며, 스트림이 끝나면 finish 와 abort 는 넘겨받은 MP4 변환 작업 스레드에서 호출한다.
+ * (넘긴 후에는 소비자 스레드가 호출하지 않으므로 동시에 호출되지 않는다.)
+ */
+public interface RemuxSink {
+
+    /**
+     * @fn boolean start(String destFilePath)
+     * @brief 새 TS 스트림의 remux 를 시작하는 함수 (진행 중인 remux 가 있으면 취소한다.)
+     * @param destFilePath MP4 파일 경로
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    boolean start(String destFilePath);
+
+    /**
+     * @fn void write(ByteBuf data)
+     * @brief 정렬된 TS 데이터(188 bytes 단위)를 넘기는 함수 (data 의 readerIndex 와 reference 는 변경하지 않는다.)
+     * @param data TS 데이터
+     */
+    void write(ByteBuf data);
+
+    /**
+     * @fn void endSegment()
+     * @brief 현재 세그먼트의 마지막 데이터까지 넘겼음을 알리는 함수 (fragmented MP4 이면 세그먼트 하나를 fragment 로 쓴다.)
+     */
+    void endSegment();
+
+    /**
+     * @fn boolean finish()
+     * @brief 마지막 데이터까지 넘긴 후 MP4 파일을 마무리하는 함수
+     * @return 성공 시 true, 실패 시 false 반환 (실패하면 호출한 쪽에서 저장한 세그먼트로 다시 변환해야 한다.)
+     */
+    boolean finish();
+
+    /**
+     * @fn void abort()
+     * @brief 진행 중인 remux 를 취소하고 자원을 놓는 함수
+     */
+    void abort();
+
+    boolean isStarted();
+
+    String getName();
+
+}
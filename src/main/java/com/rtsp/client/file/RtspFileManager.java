@@ -1,10 +1,24 @@
 package com.rtsp.client.file;
 
+import com.rtsp.client.config.ConfigManager;
+import com.rtsp.client.file.base.AsyncFileWriter;
 import com.rtsp.client.file.base.FileStream;
+import com.rtsp.client.file.store.MemorySegmentStore;
+import com.rtsp.client.file.store.SegmentStore;
+import com.rtsp.client.service.AppInstance;
+import io.netty.buffer.ByteBuf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -22,11 +36,34 @@ public class RtspFileManager {
     private final LinkedHashMap<Integer, FileStream> tsFileMap = new LinkedHashMap<>();
     private final ReentrantLock tsFileListLock = new ReentrantLock();
     private final AtomicInteger tsFileIndex = new AtomicInteger(0);
+    private final int tsWriteBufferSize; // bytes
+    private final AsyncFileWriter asyncFileWriter; // TS_ASYNC_WRITE 가 false 이면 null
+    private final AtomicInteger durableTsFileCount = new AtomicInteger(0);
+
+    // TS_MMAP_WRITE
+    private static final double TS_MMAP_HEADROOM = 1.25; // 추정한 크기보다 여유 있게 늘린다.
+    private static final long TS_MMAP_MIN_SIZE = 256 * 1024; // bytes
+    private static final double DEFAULT_TS_DURATION = 10; // sec, 세그먼트 길이를 모를 때
+    private final boolean tsMmapWrite;
+    private final long tsMmapDefaultBitrate; // bps
+    private final HashMap<Integer, Double> tsFileDurationMap = new HashMap<>(); // index, duration (sec)
+    private long observedTsBytes = 0; // 닫은 TS 파일의 크기 합
+    private double observedTsDuration = 0; // 닫은 TS 파일의 길이 합 (sec)
+
+    // SEGMENT_STORE
+    private final SegmentStore segmentStore; // SEGMENT_STORE 가 DISK 이면 null (FileStream 이 직접 파일에 쓴다.)
 
     ////////////////////////////////////////////////////////////////////////////////
 
     public RtspFileManager(String rtspUnitId) {
         this.rtspUnitId = rtspUnitId;
+
+        ConfigManager configManager = AppInstance.getInstance().getConfigManager();
+        this.tsWriteBufferSize = configManager.getTsWriteBufferSize();
+        this.asyncFileWriter = configManager.isTsAsyncWrite() ? AsyncFileWriter.getInstance() : null;
+        this.tsMmapWrite = configManager.isTsMmapWrite();
+        this.tsMmapDefaultBitrate = configManager.getTsMmapDefaultBitrate();
+        this.segmentStore = configManager.isMemorySegmentStore() ? MemorySegmentStore.getInstance() : null;
     }
 
     ////////////////////////////////////////////////////////////////////////////////
@@ -37,6 +74,7 @@ public class RtspFileManager {
         m3u8FileLock.lock();
         try {
             m3u8File = new FileStream(m3u8FilePath, 0);
+            m3u8File.setSegmentStore(segmentStore);
             m3u8File.createFile(true);
         } catch (Exception e) {
             logger.warn("({}) Fail to create the m3u8 file. (path={})", m3u8FilePath, e);
@@ -94,9 +132,23 @@ public class RtspFileManager {
     ////////////////////////////////////////////////////////////////////////////////
 
     public FileStream createTsFile(int tsFileIndex, String tsFilePath, int limitDataSize) {
+        return createTsFile(tsFileIndex, tsFilePath, limitDataSize, 0);
+    }
+
+    /**
+     * @fn public FileStream createTsFile(int tsFileIndex, String tsFilePath, int limitDataSize, double duration)
+     * @brief TS 파일을 생성하는 함수, 이미 있으면 기존 파일을 반환한다.
+     * TS_MMAP_WRITE 모드이면 세그먼트 길이와 지금까지 수신한 bitrate 로 추정한 크기만큼 파일을 미리 늘려서 map 한다.
+     * @param tsFileIndex TS 파일 인덱스
+     * @param tsFilePath TS 파일 경로
+     * @param limitDataSize 최대 데이터 크기 (0 이면 제한 없음)
+     * @param duration M3U8 #EXTINF 세그먼트 길이 (sec, 모르면 0)
+     * @return 성공 시 FileStream, 실패 시 null 반환
+     */
+    public FileStream createTsFile(int tsFileIndex, String tsFilePath, int limitDataSize, double duration) {
         if (tsFilePath == null || tsFilePath.length() == 0) { return null; }
 
-        return addTsFilePathToList(tsFileIndex, tsFilePath, limitDataSize);
+        return addTsFilePathToList(tsFileIndex, tsFilePath, limitDataSize, duration);
     }
 
     public void removeTsFile(int tsFileIndex) {
@@ -120,15 +172,201 @@ public class RtspFileManager {
             return false;
         }
 
-        return fileStream.closeFileStream();
+        boolean isOpened = fileStream.isOpened();
+        if (!fileStream.closeFileStream()) {
+            return false;
+        }
+
+        if (isOpened) {
+            addObservedTsFile(tsFileIndex, fileStream);
+        }
+        return true;
+    }
+
+    /**
+     * @fn public void closeAllTsFiles()
+     * @brief 열려있는 모든 TS 파일의 버퍼를 파일에 쓰고 닫는 함수 (세션 종료 또는 MP4 변환 전에 호출)
+     */
+    public void closeAllTsFiles() {
+        tsFileListLock.lock();
+        try {
+            for (Map.Entry<Integer, FileStream> entry : tsFileMap.entrySet()) {
+                FileStream fileStream = entry.getValue();
+                if (fileStream == null) {
+                    continue;
+                }
+
+                boolean isOpened = fileStream.isOpened();
+                if (!fileStream.closeFileStream()) {
+                    logger.warn("({}) Fail to close the ts file. (path={})", rtspUnitId, fileStream.getFilePath());
+                } else if (isOpened) {
+                    addObservedTsFile(entry.getKey(), fileStream);
+                }
+            }
+        } finally {
+            tsFileListLock.unlock();
+        }
+    }
+
+    /**
+     * @fn public boolean awaitTsFilesDurable(long timeout)
+     * @brief 닫은 TS 파일이 모두 디스크에 기록될 때까지 기다리는 함수 (async 모드가 아니면 바로 반환)
+     * @param timeout 최대 대기 시간 (ms)
+     * @return 시간 안에 모두 기록되면 true, 아니면 false 반환
+     */
+    public boolean awaitTsFilesDurable(long timeout) {
+        if (asyncFileWriter == null) {
+            return true;
+        }
+
+        return asyncFileWriter.sync(timeout);
+    }
+
+    public boolean isTsFileDurable(int tsFileIndex) {
+        FileStream fileStream = getTsFileStreamFromList(tsFileIndex);
+        return fileStream != null && fileStream.isDurable();
+    }
+
+    /**
+     * @fn public boolean hasFailedTsFile()
+     * @brief 쓰기나 fsync 가 실패해서 내용이 온전하지 않은 TS 파일이 있는지 확인하는 함수
+     * @return 실패한 TS 파일이 하나라도 있으면 true 반환
+     */
+    public boolean hasFailedTsFile() {
+        tsFileListLock.lock();
+        try {
+            for (FileStream fileStream : tsFileMap.values()) {
+                if (fileStream != null && fileStream.isFailed()) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            tsFileListLock.unlock();
+        }
+    }
+
+    public int getDurableTsFileCount() {
+        return durableTsFileCount.get();
+    }
+
+    private void onTsFileDurable(FileStream fileStream) {
+        durableTsFileCount.incrementAndGet();
+        logger.debug("({}) TS file is durable. (path={}, size={})", rtspUnitId, fileStream.getFilePath(), fileStream.getTotalDataSize());
+    }
+
+    /**
+     * @fn public InputStream openTsStream() throws IOException
+     * @brief 모든 TS 세그먼트를 인덱스 순서대로 이어서 읽는 스트림을 여는 함수
+     * 세그먼트가 SegmentStore 에 있어도 임시 파일 없이 FFmpeg 의 입력으로 넘길 수 있다.
+     * @return TS 스트림 (닫을 때 모든 세그먼트 스트림이 닫힌다.)
+     */
+    public InputStream openTsStream() throws IOException {
+        List<Integer> indexList;
+        List<FileStream> fileStreamList = new ArrayList<>();
+        tsFileListLock.lock();
+        try {
+            indexList = new ArrayList<>(tsFileMap.keySet());
+            Collections.sort(indexList);
+            for (Integer index : indexList) {
+                fileStreamList.add(tsFileMap.get(index));
+            }
+        } finally {
+            tsFileListLock.unlock();
+        }
+
+        List<InputStream> inputStreamList = new ArrayList<>(fileStreamList.size());
+        try {
+            for (FileStream fileStream : fileStreamList) {
+                if (segmentStore != null) {
+                    inputStreamList.add(segmentStore.openStream(fileStream.getFilePath()));
+                } else {
+                    inputStreamList.add(new FileInputStream(fileStream.getFilePath()));
+                }
+            }
+        } catch (IOException e) {
+            for (InputStream inputStream : inputStreamList) {
+                inputStream.close();
+            }
+            throw e;
+        }
+
+        return new SequenceInputStream(Collections.enumeration(inputStreamList));
+    }
+
+    public boolean isMemorySegmentStore() {
+        return segmentStore != null;
+    }
+
+    /**
+     * @fn public FileStream getCompleteTsFile(int tsFileIndex)
+     * @brief 쓰기가 끝나서(닫은 후 파일 또는 저장소에 모두 기록) 다른 스레드에서 읽어도 되는 TS 파일을 반환하는 함수
+     * @param tsFileIndex TS 파일 인덱스
+     * @return FileStream, 없거나 아직 쓰는 중이면 null 반환
+     */
+    public FileStream getCompleteTsFile(int tsFileIndex) {
+        FileStream fileStream;
+        tsFileListLock.lock();
+        try {
+            fileStream = tsFileMap.get(tsFileIndex);
+        } finally {
+            tsFileListLock.unlock();
+        }
+        return fileStream != null && fileStream.isDurable() ? fileStream : null;
+    }
+
+    /**
+     * @fn public ByteBuf retainedTsBuffer(FileStream fileStream)
+     * @brief SEGMENT_STORE=MEMORY 이면 TS 파일 데이터를 복사 없이 참조하는 ByteBuf 를 반환하는 함수, 사용한 후 호출한 쪽에서 release 해야 한다.
+     * @param fileStream TS 파일
+     * @return TS 데이터, 데이터가 파일에 있으면(DISK 이거나 디스크로 옮긴 세그먼트) null 반환
+     */
+    public ByteBuf retainedTsBuffer(FileStream fileStream) {
+        if (segmentStore == null) {
+            return null;
+        }
+        return segmentStore.retainedBuffer(fileStream.getFilePath());
     }
 
     public void removeAllTsFiles() {
         removeAllTsFilePathsFromList();
     }
 
-    public boolean writeDataToTsFile(int tsFileIndex, byte[] data) {
-        if (data == null || data.length == 0) { return false; }
+    /**
+     * @fn public long estimateTsFileSize(double duration)
+     * @brief 세그먼트 길이로 TS 파일 크기를 추정하는 함수
+     * 닫은 TS 파일의 크기와 길이로 계산한 bitrate 를 사용하며, 아직 없으면 TS_MMAP_DEFAULT_BITRATE 를 사용한다.
+     * @param duration 세그먼트 길이 (sec)
+     * @return 추정한 크기 (bytes), 최소 TS_MMAP_MIN_SIZE
+     */
+    public long estimateTsFileSize(double duration) {
+        double bitrate;
+        if (observedTsDuration > 0) {
+            bitrate = observedTsBytes * 8 / observedTsDuration;
+        } else {
+            bitrate = tsMmapDefaultBitrate;
+        }
+
+        long size = (long) Math.ceil(duration * bitrate / 8 * TS_MMAP_HEADROOM);
+        return Math.max(TS_MMAP_MIN_SIZE, size);
+    }
+
+    private void addObservedTsFile(int tsFileIndex, FileStream fileStream) {
+        Double duration = tsFileDurationMap.get(tsFileIndex);
+        if (duration == null || duration <= 0) {
+            return;
+        }
+
+        observedTsBytes += fileStream.getTotalDataSize();
+        observedTsDuration += duration;
+        if (fileStream.getMmapSize() > 0) {
+            logger.debug("({}) TS file is closed. (index={}, size={}, preallocated={}, remapCount={})",
+                    rtspUnitId, tsFileIndex, fileStream.getTotalDataSize(), fileStream.getMmapSize(), fileStream.getRemapCount());
+        }
+    }
+
+    public boolean writeDataToTsFile(int tsFileIndex, ByteBuf data) {
+        if (data == null || !data.isReadable()) { return false; }
 
         FileStream fileStream = getTsFileStreamFromList(tsFileIndex);
         if (fileStream == null) {
@@ -163,7 +401,7 @@ public class RtspFileManager {
 
     ////////////////////////////////////////////////////////////////////////////////
 
-    private FileStream addTsFilePathToList(int tsFileIndex, String tsFilePath, int limitDataSize) {
+    private FileStream addTsFilePathToList(int tsFileIndex, String tsFilePath, int limitDataSize, double duration) {
         if (tsFilePath == null || tsFilePath.length() == 0) { return null; }
 
         FileStream tsFileStream = getTsFileStreamFromList(tsFileIndex);
@@ -172,12 +410,18 @@ public class RtspFileManager {
             return tsFileStream;
         }
 
-        tsFileStream = new FileStream(tsFilePath, limitDataSize);
+        tsFileStream = new FileStream(tsFilePath, limitDataSize, tsWriteBufferSize, asyncFileWriter);
+        tsFileStream.setDurableListener(this::onTsFileDurable);
+        tsFileStream.setSegmentStore(segmentStore);
+        if (tsMmapWrite && segmentStore == null) {
+            tsFileStream.setMmapSize(estimateTsFileSize(duration > 0 ? duration : DEFAULT_TS_DURATION));
+        }
         tsFileStream.createFile(true);
 
         tsFileListLock.lock();
         try {
             tsFileMap.put(tsFileIndex, tsFileStream);
+            tsFileDurationMap.put(tsFileIndex, duration);
         } catch (Exception e) {
             logger.warn("({}) Fail to put the tsFilePath. (index={}, path={})", rtspUnitId, tsFileIndex, tsFilePath, e);
             return null;
@@ -199,6 +443,7 @@ public class RtspFileManager {
         tsFileListLock.lock();
         try {
             tsFileMap.remove(tsFileIndex);
+            tsFileDurationMap.remove(tsFileIndex);
         } catch (Exception e) {
             logger.warn("({}) Fail to remove the tsFilePath. (index={})", rtspUnitId, tsFileIndex, e);
         } finally {
@@ -218,7 +463,9 @@ public class RtspFileManager {
         }
 
         tsFileMap.entrySet().removeIf(Objects::nonNull);
+        tsFileDurationMap.clear();
         tsFileIndex.set(0);
+        durableTsFileCount.set(0);
     }
 
     private FileStream getTsFileStreamFromList(int tsFileIndex) {
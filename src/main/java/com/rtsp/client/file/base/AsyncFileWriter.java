@@ -0,0 +1,348 @@
+package com.rtsp.client.file.base;
+
+import com.rtsp.client.service.AppInstance;
+import io.netty.buffer.ByteBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class public class AsyncFileWriter
+ * @brief 파일 쓰기를 전용 I/O 스레드에서 처리하는 write-behind class
+ *
+ * FileStream 이 모은 쓰기 버퍼를 bounded queue 로 넘겨받아서, 같은 파일로 연속된 버퍼는 gathering write 로 한 번에 쓴다.
+ * 파일을 닫는 요청을 받으면 fsync 후 닫고 FileStream 의 durable listener 를 호출한다.
+ * 쓰기나 fsync 가 실패하면 FileStream 을 실패로 표시하고, 그 파일로 남은 쓰기 요청은 다른 위치에 쓰이지 않도록 버린다.
+ * 하나의 스레드가 queue 순서대로 처리하므로 같은 파일의 쓰기 순서는 유지된다.
+ * queue 가 가득 차면 생산자(submit 호출 스레드)는 빈 자리가 생길 때까지 기다린다.
+ */
+public class AsyncFileWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncFileWriter.class);
+
+    private static final int MAX_BATCH_SIZE = 64;
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private static AsyncFileWriter asyncFileWriter = null;
+
+    private final ArrayBlockingQueue<WriteRequest> requestQueue;
+    private final Thread ioThread;
+    private volatile boolean isRunning = true;
+
+    private final LatencyHistogram writeLatencyHistogram = new LatencyHistogram();
+    // fsync 는 write 보다 훨씬 오래 걸리므로 따로 기록한다.
+    private final LatencyHistogram fsyncLatencyHistogram = new LatencyHistogram();
+    private volatile int maxQueueDepth = 0;
+    private volatile long totalWrittenBytes = 0;
+    private volatile long totalWriteCount = 0;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public AsyncFileWriter(int queueSize) {
+        this.requestQueue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+
+        this.ioThread = new Thread(this::run, "AsyncFileWriter");
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    public static synchronized AsyncFileWriter getInstance() {
+        if (asyncFileWriter == null) {
+            asyncFileWriter = new AsyncFileWriter(AppInstance.getInstance().getConfigManager().getTsAsyncWriteQueueSize());
+        }
+        return asyncFileWriter;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public boolean submitWrite(FileChannel fileChannel, ByteBuf data, FileStream fileStream)
+     * @brief 파일에 쓸 데이터를 queue 에 추가하는 함수
+     * data 의 reference 를 넘겨받으며, 쓰고 나면 I/O 스레드가 release 한다.
+     * @param fileChannel 쓸 파일 채널
+     * @param data 쓸 데이터
+     * @param fileStream 파일 채널을 소유한 FileStream, 쓰기가 실패하면 실패로 표시한다.
+     * @return 성공 시 true, 실패 시 false 반환 (실패해도 data 는 release 된다.)
+     */
+    public boolean submitWrite(FileChannel fileChannel, ByteBuf data, FileStream fileStream) {
+        if (!submit(new WriteRequest(fileChannel, data, fileStream, null))) {
+            data.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @fn public boolean submitClose(FileChannel fileChannel, FileStream fileStream)
+     * @brief 앞서 추가한 데이터를 모두 쓴 후 fsync 하고 파일 채널을 닫도록 요청하는 함수
+     * 닫은 후 fileStream 의 durable listener 가 I/O 스레드에서 호출된다.
+     * fsync 나 close 가 실패하면 durable listener 대신 fileStream 을 실패로 표시한다. (파일 채널은 항상 닫는다.)
+     * @param fileChannel 닫을 파일 채널
+     * @param fileStream 파일 채널을 소유한 FileStream
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    public boolean submitClose(FileChannel fileChannel, FileStream fileStream) {
+        return submit(new WriteRequest(fileChannel, null, fileStream, null));
+    }
+
+    /**
+     * @fn public boolean sync(long timeout)
+     * @brief 지금까지 추가한 요청이 모두 처리될 때까지 기다리는 함수
+     * @param timeout 최대 대기 시간 (ms)
+     * @return 시간 안에 모두 처리되면 true, 아니면 false 반환
+     */
+    public boolean sync(long timeout) {
+        CountDownLatch latch = new CountDownLatch(1);
+        if (!submit(new WriteRequest(null, null, null, latch))) {
+            return false;
+        }
+
+        try {
+            if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+                logger.warn("Fail to sync the async file writer. Timeout. (timeout={}, queueDepth={})", timeout, requestQueue.size());
+                return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @fn public void stop()
+     * @brief 남은 요청을 모두 처리한 후 I/O 스레드를 종료하는 함수
+     */
+    public void stop() {
+        isRunning = false;
+        try {
+            ioThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.debug("AsyncFileWriter is stopped. ({})", this);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private boolean submit(WriteRequest writeRequest) {
+        if (!isRunning) {
+            logger.warn("Fail to submit the write request. AsyncFileWriter is stopped.");
+            return false;
+        }
+
+        try {
+            requestQueue.put(writeRequest);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        int queueDepth = requestQueue.size();
+        if (queueDepth > maxQueueDepth) {
+            maxQueueDepth = queueDepth;
+        }
+        return true;
+    }
+
+    private void run() {
+        List<WriteRequest> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (isRunning || !requestQueue.isEmpty()) {
+            try {
+                WriteRequest first = requestQueue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                requestQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                processBatch(batch);
+            } catch (InterruptedException e) {
+                logger.warn("AsyncFileWriter is interrupted.");
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.warn("Fail to process the write requests.", e);
+            } finally {
+                for (WriteRequest writeRequest : batch) {
+                    writeRequest.releaseData();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * @fn private void processBatch(List<WriteRequest> batch)
+     * @brief 같은 파일 채널로 연속된 쓰기 요청을 gathering write 로 묶어서 처리하는 함수
+     * @param batch 요청 목록 (처리한 데이터는 release 하고 null 로 바꾼다.)
+     */
+    private void processBatch(List<WriteRequest> batch) {
+        int index = 0;
+        while (index < batch.size()) {
+            WriteRequest writeRequest = batch.get(index);
+            if (writeRequest.latch != null) {
+                writeRequest.latch.countDown();
+                index++;
+            } else if (writeRequest.data == null) {
+                close(writeRequest);
+                index++;
+            } else {
+                int end = index + 1;
+                while (end < batch.size()
+                        && batch.get(end).data != null
+                        && batch.get(end).fileChannel == writeRequest.fileChannel) {
+                    end++;
+                }
+
+                write(writeRequest.fileChannel, batch.subList(index, end));
+                index = end;
+            }
+        }
+    }
+
+    private void write(FileChannel fileChannel, List<WriteRequest> writeRequests) {
+        FileStream fileStream = writeRequests.get(0).fileStream;
+        if (fileStream != null && fileStream.isFailed()) {
+            // 앞의 쓰기가 실패한 파일에 이어서 쓰면 데이터가 잘못된 위치에 쓰이므로 버린다.
+            for (WriteRequest writeRequest : writeRequests) {
+                writeRequest.releaseData();
+            }
+            return;
+        }
+
+        ByteBuffer[] buffers = new ByteBuffer[writeRequests.size()];
+        long remaining = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            ByteBuf data = writeRequests.get(i).data;
+            buffers[i] = data.nioBuffer();
+            remaining += buffers[i].remaining();
+        }
+
+        long totalBytes = remaining;
+        long startTime = System.nanoTime();
+        try {
+            while (remaining > 0) {
+                remaining -= fileChannel.write(buffers);
+            }
+            writeLatencyHistogram.record(System.nanoTime() - startTime);
+            totalWrittenBytes += totalBytes;
+            totalWriteCount++;
+        } catch (IOException e) {
+            logger.warn("Fail to write the data. (path={}, bytes={})", fileStream != null ? fileStream.getFilePath() : null, totalBytes, e);
+            if (fileStream != null) {
+                fileStream.onFailed();
+            }
+        } finally {
+            for (WriteRequest writeRequest : writeRequests) {
+                writeRequest.releaseData();
+            }
+        }
+    }
+
+    private void close(WriteRequest writeRequest) {
+        FileStream fileStream = writeRequest.fileStream;
+        boolean isClosed = false;
+        try {
+            long startTime = System.nanoTime();
+            writeRequest.fileChannel.force(false);
+            fsyncLatencyHistogram.record(System.nanoTime() - startTime);
+            isClosed = true;
+        } catch (IOException e) {
+            logger.warn("Fail to sync the file channel. (path={})", fileStream != null ? fileStream.getFilePath() : null, e);
+        } finally {
+            try {
+                writeRequest.fileChannel.close();
+            } catch (IOException e) {
+                logger.warn("Fail to close the file channel. (path={})", fileStream != null ? fileStream.getFilePath() : null, e);
+                isClosed = false;
+            }
+        }
+
+        if (fileStream == null) {
+            return;
+        }
+
+        if (isClosed && !fileStream.isFailed()) {
+            fileStream.onDurable();
+        } else {
+            fileStream.onFailed();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public int getQueueDepth() {
+        return requestQueue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public int getQueueCapacity() {
+        return requestQueue.size() + requestQueue.remainingCapacity();
+    }
+
+    public LatencyHistogram getWriteLatencyHistogram() {
+        return writeLatencyHistogram;
+    }
+
+    public LatencyHistogram getFsyncLatencyHistogram() {
+        return fsyncLatencyHistogram;
+    }
+
+    public long getTotalWrittenBytes() {
+        return totalWrittenBytes;
+    }
+
+    public long getTotalWriteCount() {
+        return totalWriteCount;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncFileWriter{" +
+                "queueDepth=" + getQueueDepth() +
+                ", maxQueueDepth=" + maxQueueDepth +
+                ", queueCapacity=" + getQueueCapacity() +
+                ", totalWrittenBytes=" + totalWrittenBytes +
+                ", totalWriteCount=" + totalWriteCount +
+                ", writeLatency(us)=" + writeLatencyHistogram +
+                ", fsyncLatency(us)=" + fsyncLatencyHistogram +
+                '}';
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private static final class WriteRequest {
+
+        private final FileChannel fileChannel;
+        private ByteBuf data; // null 이면 close 요청
+        private final FileStream fileStream; // 쓰기, close 요청의 파일 채널을 소유한 FileStream
+        private final CountDownLatch latch; // null 이 아니면 sync 요청
+
+        private WriteRequest(FileChannel fileChannel, ByteBuf data, FileStream fileStream, CountDownLatch latch) {
+            this.fileChannel = fileChannel;
+            this.data = data;
+            this.fileStream = fileStream;
+            this.latch = latch;
+        }
+
+        private void releaseData() {
+            if (data != null) {
+                data.release();
+                data = null;
+            }
+        }
+    }
+
+}
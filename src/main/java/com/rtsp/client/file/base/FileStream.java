@@ -1,24 +1,59 @@
 package com.rtsp.client.file.base;
 
+import com.rtsp.client.file.store.SegmentStore;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.PlatformDependent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
-
+import java.util.function.Consumer;
+
+/**
+ * @class public class FileStream
+ * @brief 파일 하나를 열어두고 쓰기 버퍼에 모아서 FileChannel 로 쓰는 class
+ * 데이터마다 파일을 열고 닫지 않도록 open 한 채널은 close 할 때까지 유지한다.
+ * AsyncFileWriter 를 지정하면 가득 찬 쓰기 버퍼를 I/O 스레드로 넘기고, close 후 fsync 가 끝나면 durable listener 를 호출한다.
+ * 쓰기나 fsync 가 실패하면 파일을 실패로 표시하고 다시 열 때까지 쓰지 않는다. (실패한 파일은 durable 이 되지 않는다.)
+ * mmap 크기를 지정하면 파일을 그 크기만큼 미리 늘려서 MappedByteBuffer 로 쓰고, 부족하면 다시 map 하며, close 할 때 실제 크기로 자른다.
+ * SegmentStore 를 지정하면 파일을 만들지 않고 같은 경로를 key 로 SegmentStore 에 쓴다.
+ */
 public class FileStream {
 
     private static final Logger logger = LoggerFactory.getLogger(FileStream.class);
 
     private final String filePath;
     private File ramFile;
-    private FileOutputStream fileOutputStream;
+    private FileChannel fileChannel;
+    private final int writeBufferSize; // bytes, 0 이면 버퍼 없이 바로 쓴다.
+    private ByteBuf writeBuffer = null;
+    private final AsyncFileWriter asyncFileWriter; // null 이면 호출한 스레드에서 바로 쓴다.
+    private Consumer<FileStream> durableListener = null;
+    private volatile boolean isDurable = false;
+    private volatile boolean isFailed = false;
+
+    private long mmapSize = 0; // bytes, 0 이면 mmap 을 사용하지 않는다.
+    private MappedByteBuffer mappedBuffer = null;
+    private long mappedPosition = 0; // mappedBuffer 가 시작하는 파일 위치
+    private int remapCount = 0;
+
+    private SegmentStore segmentStore = null; // null 이 아니면 파일 대신 SegmentStore 에 쓴다.
+    private boolean isStoreOpened = false;
     private final ReentrantLock fileStreamLock = new ReentrantLock();
     private boolean isQuit = false;
 
@@ -28,8 +63,18 @@ public class FileStream {
     ////////////////////////////////////////////////////////////////////////////////
 
     public FileStream(String filePath, int limitDataSize) {
+        this(filePath, limitDataSize, 0);
+    }
+
+    public FileStream(String filePath, int limitDataSize, int writeBufferSize) {
+        this(filePath, limitDataSize, writeBufferSize, null);
+    }
+
+    public FileStream(String filePath, int limitDataSize, int writeBufferSize, AsyncFileWriter asyncFileWriter) {
         this.filePath = filePath;
         this.limitDataSize = limitDataSize;
+        this.writeBufferSize = Math.max(0, writeBufferSize);
+        this.asyncFileWriter = asyncFileWriter;
     }
 
     ////////////////////////////////////////////////////////////////////////////////
@@ -39,6 +84,15 @@ public class FileStream {
             return;
         }
 
+        if (segmentStore != null) {
+            if (isDelete) {
+                removeFile();
+            }
+            segmentStore.create(filePath);
+            ramFile = new File(filePath);
+            return;
+        }
+
         ramFile = new File(filePath);
         if (ramFile.isDirectory()) {
             logger.warn("Fail to open fileStream. File name is path. ({})", filePath);
@@ -75,6 +129,13 @@ public class FileStream {
             return;
         }
 
+        if (segmentStore != null) {
+            segmentStore.remove(filePath);
+            ramFile = null;
+            totalDataSize = 0;
+            return;
+        }
+
         try {
             if (ramFile.exists()) {
                 if (ramFile.delete()) {
@@ -105,13 +166,55 @@ public class FileStream {
 
     ////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * @fn public boolean openFileStream(File ramFile, boolean append)
+     * @brief 파일 채널을 여는 함수, 이미 열려있으면 그대로 사용한다.
+     * @param ramFile 파일
+     * @param append 기존 데이터 뒤에 이어서 쓸지 여부
+     * @return 성공 시 true, 실패 시 false 반환
+     */
     public boolean openFileStream(File ramFile, boolean append) {
         try {
             fileStreamLock.lock();
 
-            if (fileOutputStream == null) {
+            if (segmentStore != null) {
+                if (!isStoreOpened) {
+                    isQuit = false;
+                    isDurable = false;
+                    isFailed = false;
+                    if (!append) {
+                        segmentStore.create(filePath);
+                        totalDataSize = 0;
+                    }
+                    isStoreOpened = true;
+                }
+                return true;
+            }
+
+            if (fileChannel == null) {
                 isQuit = false;
-                fileOutputStream = new FileOutputStream(ramFile, append);
+                isDurable = false;
+                isFailed = false;
+                if (mmapSize > 0) {
+                    // READ_WRITE 로 map 하려면 READ 권한도 필요하다.
+                    fileChannel = FileChannel.open(ramFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    if (!append) {
+                        fileChannel.truncate(0);
+                    }
+                    mappedPosition = fileChannel.size();
+                    mappedBuffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, mappedPosition, mmapSize);
+                    return true;
+                }
+
+                if (append) {
+                    fileChannel = FileChannel.open(ramFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                } else {
+                    fileChannel = FileChannel.open(ramFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                }
+
+                if (writeBufferSize > 0) {
+                    writeBuffer = PooledByteBufAllocator.DEFAULT.directBuffer(writeBufferSize, writeBufferSize);
+                }
                 //logger.trace("Success to open the fileStream. (path={})", ramFile.getName());
             }
         } catch (Exception e) {
@@ -124,19 +227,88 @@ public class FileStream {
         return true;
     }
 
+    /**
+     * @fn public boolean closeFileStream()
+     * @brief 버퍼에 남은 데이터를 파일에 쓰고 파일 채널을 닫는 함수
+     * @return 성공 시 true, 실패 시 false 반환
+     */
     public boolean closeFileStream() {
         try {
             fileStreamLock.lock();
 
-            if (fileOutputStream != null) {
+            if (isStoreOpened) {
+                isQuit = true;
+                isStoreOpened = false;
+                if (!segmentStore.close(filePath)) {
+                    onFailed();
+                    return false;
+                }
+                if (!isFailed) {
+                    onDurable();
+                }
+                return true;
+            }
+
+            if (fileChannel != null) {
                 isQuit = true;
-                fileOutputStream.flush();
-                fileOutputStream.close();
-                fileOutputStream = null;
+                if (mappedBuffer != null) {
+                    closeMappedFile();
+                    onDurable();
+                    return true;
+                }
+
+                try {
+                    flushWriteBuffer();
+                } catch (IOException e) {
+                    // 남은 데이터를 쓰지 못한 파일은 durable 로 표시하지 않는다.
+                    onFailed();
+                    throw e;
+                } finally {
+                    if (writeBuffer != null) {
+                        writeBuffer.release();
+                        writeBuffer = null;
+                    }
+
+                    FileChannel closingChannel = fileChannel;
+                    fileChannel = null;
+                    if (asyncFileWriter == null) {
+                        closingChannel.close();
+                        if (!isFailed) {
+                            onDurable();
+                        }
+                    } else if (!asyncFileWriter.submitClose(closingChannel, this)) {
+                        closingChannel.close();
+                        onFailed();
+                    }
+                }
                 //logger.trace("FileStream is closed. (path={}, totalDataSize={})", filePath, totalDataSize);
             }
         } catch (Exception e) {
-            logger.warn("Fail to close the fileStream. (path={})", fileStreamLock, e);
+            logger.warn("Fail to close the fileStream. (path={})", filePath, e);
+            onFailed();
+            return false;
+        } finally {
+            fileStreamLock.unlock();
+        }
+
+        return true;
+    }
+
+    /**
+     * @fn public boolean flushFileStream()
+     * @brief 버퍼에 모아둔 데이터를 파일에 쓰는 함수 (파일 채널은 닫지 않는다.)
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    public boolean flushFileStream() {
+        try {
+            fileStreamLock.lock();
+
+            if (fileChannel != null) {
+                flushWriteBuffer();
+            }
+        } catch (Exception e) {
+            logger.warn("Fail to flush the fileStream. (path={})", filePath, e);
+            onFailed();
             return false;
         } finally {
             fileStreamLock.unlock();
@@ -146,7 +318,20 @@ public class FileStream {
     }
 
     public boolean writeFileStream (byte[] data) {
-        if (ramFile == null || fileOutputStream == null) {
+        return writeFileStream(Unpooled.wrappedBuffer(data));
+    }
+
+    /**
+     * @fn public boolean writeFileStream(ByteBuf data)
+     * @brief ByteBuf 의 readable 영역을 byte[] 로 복사하지 않고 파일에 쓰는 함수
+     * 쓰기 버퍼가 있으면 버퍼에 모았다가 가득 찰 때, flush 또는 close 할 때 한 번에 파일에 쓴다.
+     * 버퍼보다 큰 데이터는 버퍼를 먼저 비운 후 바로 파일에 쓴다.
+     * ByteBuf 의 readerIndex 는 변경하지 않으며, release 는 호출한 쪽에서 처리한다.
+     * @param data 파일에 쓸 데이터
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    public boolean writeFileStream(ByteBuf data) {
+        if (ramFile == null || !isOpened() || isFailed) {
             return false;
         }
 
@@ -155,29 +340,121 @@ public class FileStream {
             return false;
         }
 
+        int dataLength = data.readableBytes();
         try {
             fileStreamLock.lock();
 
-            if (fileOutputStream != null) {
-                fileOutputStream.write(data);
-                totalDataSize += data.length;
+            if (isStoreOpened) {
+                if (!segmentStore.write(filePath, data)) {
+                    // 메모리 한도를 넘어 디스크로 옮기다 실패하면 세그먼트에 데이터가 빠진다.
+                    onFailed();
+                    return false;
+                }
+                totalDataSize += dataLength;
+            } else if (mappedBuffer != null) {
+                if (dataLength > mappedBuffer.remaining()) {
+                    remap(dataLength);
+                }
+
+                ByteBuffer dst = mappedBuffer;
+                int limit = dst.limit();
+                dst.limit(dst.position() + dataLength);
+                data.getBytes(data.readerIndex(), dst);
+                dst.limit(limit);
+                totalDataSize += dataLength;
+            } else if (fileChannel != null) {
+                if (writeBuffer != null && dataLength > writeBuffer.writableBytes()) {
+                    flushWriteBuffer();
+                }
+
+                if (writeBuffer != null && dataLength <= writeBuffer.writableBytes()) {
+                    writeBuffer.writeBytes(data, data.readerIndex(), dataLength);
+                } else if (asyncFileWriter != null) {
+                    // 복사하지 않고 reference 만 늘려서 넘긴다.
+                    asyncFileWriter.submitWrite(fileChannel, data.retainedSlice(data.readerIndex(), dataLength), this);
+                } else {
+                    int index = data.readerIndex();
+                    int end = index + dataLength;
+                    while (index < end) {
+                        index += data.getBytes(index, fileChannel, end - index);
+                    }
+                }
+                totalDataSize += dataLength;
             }
         } catch (Exception e) {
             logger.warn("Fail to write media data. (path={})", filePath, e);
+            // 일부만 쓰였을 수 있으므로 이어서 쓰지 않는다.
+            onFailed();
             return false;
         } finally {
             fileStreamLock.unlock();
         }
 
-        if (limitDataSize > 0 && (limitDataSize >= totalDataSize)) {
+        if (limitDataSize > 0 && totalDataSize >= limitDataSize) {
             closeFileStream();
         }
 
         return true;
     }
 
+    /**
+     * @fn private void remap(int needed)
+     * @brief 지금까지 쓴 위치부터 파일을 다시 map 하는 함수, 크기는 이전의 2 배 이상으로 늘린다.
+     * @param needed 더 필요한 크기 (bytes)
+     */
+    private void remap(int needed) throws IOException {
+        long size = Math.min(Integer.MAX_VALUE, Math.max((long) mappedBuffer.capacity() * 2, needed));
+        mappedPosition += mappedBuffer.position();
+        PlatformDependent.freeDirectBuffer(mappedBuffer);
+        mappedBuffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, mappedPosition, size);
+        remapCount++;
+        logger.debug("Remap the file. (path={}, position={}, size={}, remapCount={})", filePath, mappedPosition, size, remapCount);
+    }
+
+    /**
+     * @fn private void closeMappedFile()
+     * @brief map 을 해제하고 미리 늘려둔 파일을 실제로 쓴 크기로 자른 후 닫는 함수
+     */
+    private void closeMappedFile() throws IOException {
+        long fileSize = mappedPosition + mappedBuffer.position();
+        PlatformDependent.freeDirectBuffer(mappedBuffer);
+        mappedBuffer = null;
+        mappedPosition = 0;
+
+        FileChannel closingChannel = fileChannel;
+        fileChannel = null;
+        try {
+            closingChannel.truncate(fileSize);
+        } finally {
+            closingChannel.close();
+        }
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        // mmap 은 page cache 에 바로 쓰므로 비울 버퍼가 없다.
+        if (writeBuffer == null || mappedBuffer != null) {
+            return;
+        }
+
+        if (asyncFileWriter != null) {
+            // 모은 버퍼를 I/O 스레드로 넘기고 새 버퍼에 이어서 모은다.
+            if (writeBuffer.isReadable()) {
+                asyncFileWriter.submitWrite(fileChannel, writeBuffer, this);
+                writeBuffer = PooledByteBufAllocator.DEFAULT.directBuffer(writeBufferSize, writeBufferSize);
+            }
+            return;
+        }
+
+        while (writeBuffer.isReadable()) {
+            writeBuffer.readBytes(fileChannel, writeBuffer.readableBytes());
+        }
+        writeBuffer.clear();
+    }
+
     public List<String> readFileStreamToLine() {
-        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(ramFile))) {
+        try (BufferedReader bufferedReader = segmentStore != null ?
+                new BufferedReader(new InputStreamReader(segmentStore.openStream(filePath), StandardCharsets.UTF_8)) :
+                new BufferedReader(new FileReader(ramFile))) {
             List<String> lines = new ArrayList<>();
 
             String line;
@@ -197,12 +474,91 @@ public class FileStream {
         return totalDataSize;
     }
 
+    /**
+     * @fn public void setDurableListener(Consumer<FileStream> durableListener)
+     * @brief 파일을 닫고 데이터가 디스크에 기록되었을 때 호출할 함수를 지정하는 함수
+     * async 모드에서는 I/O 스레드에서 fsync 후 호출되고, 아니면 close 한 스레드에서 바로 호출된다.
+     * @param durableListener 호출할 함수
+     */
+    public void setDurableListener(Consumer<FileStream> durableListener) {
+        this.durableListener = durableListener;
+    }
+
+    void onDurable() {
+        isDurable = true;
+        Consumer<FileStream> listener = durableListener;
+        if (listener != null) {
+            listener.accept(this);
+        }
+    }
+
+    public boolean isDurable() {
+        return isDurable;
+    }
+
+    /**
+     * @fn void onFailed()
+     * @brief 쓰기나 fsync 가 실패해서 파일 내용을 믿을 수 없다고 표시하는 함수 (async 모드에서는 I/O 스레드에서 호출된다.)
+     * 다시 열 때까지 writeFileStream 은 false 를 반환하고, 남은 async 쓰기 요청은 버려진다.
+     */
+    void onFailed() {
+        if (!isFailed) {
+            isFailed = true;
+            logger.warn("FileStream is failed. (path={}, totalDataSize={})", filePath, totalDataSize);
+        }
+    }
+
+    public boolean isFailed() {
+        return isFailed;
+    }
+
+    public boolean isAsync() {
+        return asyncFileWriter != null;
+    }
+
+    /**
+     * @fn public void setMmapSize(long mmapSize)
+     * @brief 다음에 파일을 열 때 미리 늘려서 map 할 크기를 지정하는 함수 (0 이면 mmap 을 사용하지 않는다.)
+     * mmap 을 사용하면 async 모드와 쓰기 버퍼는 사용하지 않는다.
+     * @param mmapSize 미리 늘릴 크기 (bytes)
+     */
+    public void setMmapSize(long mmapSize) {
+        this.mmapSize = Math.max(0, Math.min(Integer.MAX_VALUE, mmapSize));
+    }
+
+    public long getMmapSize() {
+        return mmapSize;
+    }
+
+    public int getRemapCount() {
+        return remapCount;
+    }
+
+    /**
+     * @fn public void setSegmentStore(SegmentStore segmentStore)
+     * @brief 파일 대신 데이터를 저장할 SegmentStore 를 지정하는 함수 (createFile 전에 호출해야 한다.)
+     * SegmentStore 를 사용하면 쓰기 버퍼, async 모드, mmap 은 사용하지 않는다.
+     * @param segmentStore 데이터를 저장할 SegmentStore
+     */
+    public void setSegmentStore(SegmentStore segmentStore) {
+        this.segmentStore = segmentStore;
+    }
+
+    public SegmentStore getSegmentStore() {
+        return segmentStore;
+    }
+
+    public boolean isOpened() {
+        return fileChannel != null || isStoreOpened;
+    }
+
     @Override
     public String toString() {
         return "FileStream{" +
                 "filePath='" + filePath + '\'' +
                 ", ramFile=" + ramFile +
-                ", fileOutputStream=" + fileOutputStream +
+                ", fileChannel=" + fileChannel +
+                ", writeBufferSize=" + writeBufferSize +
                 ", fileStreamLock=" + fileStreamLock +
                 ", isQuit=" + isQuit +
                 ", limitDataSize=" + limitDataSize +
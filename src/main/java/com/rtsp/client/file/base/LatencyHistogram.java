@@ -0,0 +1,85 @@
+package com.rtsp.client.file.base;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @class public class LatencyHistogram
+ * @brief 지연 시간을 2 의 제곱수 단위(us) bucket 으로 세어서 percentile 을 계산하는 class
+ * 한 스레드에서 기록하고 다른 스레드에서 읽을 수 있다. (bucket 상한 값으로 근사한다.)
+ */
+public class LatencyHistogram {
+
+    // bucket i 는 (2^(i-1), 2^i] us 범위, 마지막 bucket 은 그 이상
+    private static final int BUCKET_COUNT = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public LatencyHistogram() {
+        // Nothing
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public void record(long nanos)
+     * @brief 지연 시간을 기록하는 함수
+     * @param nanos 지연 시간 (nano seconds)
+     */
+    public void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int index = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        buckets.incrementAndGet(Math.min(index, BUCKET_COUNT - 1));
+    }
+
+    /**
+     * @fn public long getPercentile(double percentile)
+     * @brief 지정한 percentile 의 지연 시간을 반환하는 함수
+     * @param percentile 0 ~ 100
+     * @return 지연 시간 (us), 기록이 없으면 0 반환
+     */
+    public long getPercentile(double percentile) {
+        long totalCount = getCount();
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long targetCount = Math.max(1, (long) Math.ceil(totalCount * percentile / 100.0));
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += buckets.get(i);
+            if (count >= targetCount) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKET_COUNT - 1);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+                "count=" + getCount() +
+                ", p50=" + getPercentile(50) +
+                ", p90=" + getPercentile(90) +
+                ", p99=" + getPercentile(99) +
+                ", p999=" + getPercentile(99.9) +
+                '}';
+    }
+
+}
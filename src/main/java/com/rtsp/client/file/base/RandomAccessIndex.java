@@ -0,0 +1,222 @@
+package com.rtsp.client.file.base;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+/**
+ * @class public class RandomAccessIndex
+ * @brief 수신하면서 찾은 TS random access point(keyframe)의 미디어 시간과 저장 위치(세그먼트 인덱스, 세그먼트 안의 byte offset)를 기록하는 class
+ *
+ * 시간 순서대로 추가되므로 primitive 배열(시간, 세그먼트 인덱스, offset)에 이어 붙이고 이진 탐색으로 찾는다. 배열은 부족할 때만 2 배로 늘린다.
+ * 시간은 수신을 시작한 시점을 0 으로 하는 90 kHz tick 이므로 MP4 재생 시간, PLAY 요청의 npt 와 같은 기준이다.
+ * 소비자 스레드(StreamReceiver)가 추가하고 GUI 스레드가 찾으므로 모든 함수는 동기화되어 있다. (keyframe 은 보통 초당 1 개 정도라서 부담이 없다.)
+ *
+ * 파일 형식 (big endian): magic(4) version(4) clockRate(4) count(4) + count x [time(8) segmentIndex(4) byteOffset(8)]
+ */
+public class RandomAccessIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(RandomAccessIndex.class);
+
+    public static final int FILE_MAGIC = 0x52414958; // "RAIX"
+    public static final int FILE_VERSION = 1;
+    public static final long CLOCK_RATE = 90000L; // Hz
+    private static final int INITIAL_CAPACITY = 256;
+
+    private long[] times = new long[INITIAL_CAPACITY]; // 90 kHz
+    private int[] segmentIndexes = new int[INITIAL_CAPACITY];
+    private long[] byteOffsets = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public RandomAccessIndex() {
+        // Nothing
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public synchronized void reset()
+     * @brief 기록한 random access point 를 모두 지우는 함수 (배열은 재사용한다.)
+     */
+    public synchronized void reset() {
+        size = 0;
+    }
+
+    /**
+     * @fn public synchronized boolean add(long time, int segmentIndex, long byteOffset)
+     * @brief random access point 를 추가하는 함수
+     * @param time 미디어 시간 (90 kHz)
+     * @param segmentIndex TS 세그먼트 인덱스
+     * @param byteOffset 세그먼트 안에서 random access point 가 있는 TS 패킷의 위치 (bytes)
+     * @return 추가하면 true, 이전 시간보다 늦지 않으면 false 반환
+     */
+    public synchronized boolean add(long time, int segmentIndex, long byteOffset) {
+        if (size > 0 && time <= times[size - 1]) {
+            return false;
+        }
+
+        if (size == times.length) {
+            int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            segmentIndexes = Arrays.copyOf(segmentIndexes, capacity);
+            byteOffsets = Arrays.copyOf(byteOffsets, capacity);
+        }
+
+        times[size] = time;
+        segmentIndexes[size] = segmentIndex;
+        byteOffsets[size] = byteOffset;
+        size++;
+        return true;
+    }
+
+    /**
+     * @fn public synchronized int find(double seconds)
+     * @brief 지정한 시간 이전(같은 시간 포함)의 마지막 random access point 를 찾는 함수
+     * @param seconds 미디어 시간 (sec)
+     * @return 찾은 항목의 번호, 지정한 시간 이전에 random access point 가 없으면 -1 반환
+     */
+    public synchronized int find(double seconds) {
+        long time = (long) (seconds * CLOCK_RATE);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * @fn public synchronized double findSeconds(double seconds)
+     * @brief 지정한 시간 이전의 마지막 random access point 시간을 반환하는 함수
+     * @param seconds 미디어 시간 (sec)
+     * @return random access point 시간 (sec), 없으면 지정한 시간을 그대로 반환
+     */
+    public synchronized double findSeconds(double seconds) {
+        int index = find(seconds);
+        return index < 0 ? seconds : getSeconds(index);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public synchronized boolean writeFile(String filePath)
+     * @brief 기록한 random access point 를 파일로 저장하는 함수
+     * @param filePath 저장할 파일 경로
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    public synchronized boolean writeFile(String filePath) {
+        if (filePath == null) {
+            return false;
+        }
+
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)))) {
+            outputStream.writeInt(FILE_MAGIC);
+            outputStream.writeInt(FILE_VERSION);
+            outputStream.writeInt((int) CLOCK_RATE);
+            outputStream.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                outputStream.writeLong(times[i]);
+                outputStream.writeInt(segmentIndexes[i]);
+                outputStream.writeLong(byteOffsets[i]);
+            }
+            return true;
+        } catch (Exception e) {
+            logger.warn("Fail to write the random access index file. (path={})", filePath, e);
+            return false;
+        }
+    }
+
+    /**
+     * @fn public synchronized boolean readFile(String filePath)
+     * @brief 저장한 random access point 파일을 읽어서 현재 기록을 대체하는 함수
+     * @param filePath 읽을 파일 경로
+     * @return 성공 시 true, 실패 시 false 반환 (실패하면 현재 기록은 바뀌지 않는다.)
+     */
+    public synchronized boolean readFile(String filePath) {
+        if (filePath == null) {
+            return false;
+        }
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            if (inputStream.readInt() != FILE_MAGIC || inputStream.readInt() != FILE_VERSION
+                    || inputStream.readInt() != CLOCK_RATE) {
+                logger.warn("Fail to read the random access index file. Unknown format. (path={})", filePath);
+                return false;
+            }
+
+            int count = inputStream.readInt();
+            if (count < 0) {
+                logger.warn("Fail to read the random access index file. Wrong count. (path={}, count={})", filePath, count);
+                return false;
+            }
+
+            int capacity = Math.max(INITIAL_CAPACITY, count);
+            long[] newTimes = new long[capacity];
+            int[] newSegmentIndexes = new int[capacity];
+            long[] newByteOffsets = new long[capacity];
+            for (int i = 0; i < count; i++) {
+                newTimes[i] = inputStream.readLong();
+                newSegmentIndexes[i] = inputStream.readInt();
+                newByteOffsets[i] = inputStream.readLong();
+            }
+
+            times = newTimes;
+            segmentIndexes = newSegmentIndexes;
+            byteOffsets = newByteOffsets;
+            size = count;
+            return true;
+        } catch (Exception e) {
+            logger.warn("Fail to read the random access index file. (path={})", filePath, e);
+            return false;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized long getTime(int index) {
+        return times[index];
+    }
+
+    public synchronized double getSeconds(int index) {
+        return (double) times[index] / CLOCK_RATE;
+    }
+
+    public synchronized int getSegmentIndex(int index) {
+        return segmentIndexes[index];
+    }
+
+    public synchronized long getByteOffset(int index) {
+        return byteOffsets[index];
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RandomAccessIndex{" +
+                "size=" + size +
+                (size > 0 ? ", first=" + String.format("%.3f", getSeconds(0)) + ", last=" + String.format("%.3f", getSeconds(size - 1)) : "") +
+                '}';
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.rtsp.client.file.store;
+
+import io.netty.buffer.ByteBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @class public class DiskSegmentStore implements SegmentStore
+ * @brief 세그먼트를 같은 경로의 파일로 저장하는 SegmentStore class
+ * 쓰는 중인 세그먼트는 close 할 때까지 FileChannel 을 열어둔다.
+ */
+public class DiskSegmentStore implements SegmentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskSegmentStore.class);
+
+    private final Map<String, FileChannel> channelMap = new ConcurrentHashMap<>();
+    private final Set<String> pathSet = ConcurrentHashMap.newKeySet();
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public DiskSegmentStore() {
+        // Nothing
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean create(String path) {
+        remove(path);
+
+        File file = new File(path);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && parent.mkdirs()) {
+            logger.debug("Success to create a new directory. (path={})", parent.getPath());
+        }
+
+        try {
+            channelMap.put(path, FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+            pathSet.add(path);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Fail to create the segment file. (path={})", path, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean write(String path, ByteBuf data) {
+        try {
+            FileChannel fileChannel = channelMap.get(path);
+            if (fileChannel == null) {
+                fileChannel = FileChannel.open(new File(path).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                channelMap.put(path, fileChannel);
+                pathSet.add(path);
+            }
+
+            int index = data.readerIndex();
+            int end = data.writerIndex();
+            while (index < end) {
+                index += data.getBytes(index, fileChannel, end - index);
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warn("Fail to write the segment file. (path={})", path, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean close(String path) {
+        FileChannel fileChannel = channelMap.remove(path);
+        if (fileChannel == null) {
+            return true;
+        }
+
+        try {
+            fileChannel.close();
+            return true;
+        } catch (IOException e) {
+            logger.warn("Fail to close the segment file. (path={})", path, e);
+            return false;
+        }
+    }
+
+    @Override
+    public InputStream openStream(String path) throws IOException {
+        return new FileInputStream(path);
+    }
+
+    @Override
+    public ByteBuf retainedBuffer(String path) {
+        // 같은 경로의 파일에 있으므로 호출한 쪽에서 파일로 읽는다.
+        return null;
+    }
+
+    @Override
+    public long getSize(String path) {
+        return new File(path).length();
+    }
+
+    @Override
+    public boolean contains(String path) {
+        return pathSet.contains(path);
+    }
+
+    @Override
+    public void remove(String path) {
+        close(path);
+        if (pathSet.remove(path)) {
+            File file = new File(path);
+            if (file.exists() && !file.delete()) {
+                logger.warn("Fail to remove the segment file. (path={})", path);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (String path : pathSet) {
+            remove(path);
+        }
+    }
+
+}
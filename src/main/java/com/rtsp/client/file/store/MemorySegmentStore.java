@@ -0,0 +1,287 @@
+package com.rtsp.client.file.store;
+
+import com.rtsp.client.service.AppInstance;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @class public class MemorySegmentStore implements SegmentStore
+ * @brief 세그먼트를 off-heap(direct) chunk 에 저장하는 SegmentStore class
+ *
+ * 모든 세그먼트가 함께 쓰는 메모리 한도(SEGMENT_STORE_MEMORY_LIMIT)를 넘으면
+ * 그 세그먼트는 지금까지 모은 데이터와 함께 디스크(DiskSegmentStore)로 옮기고, 이후 데이터도 디스크에 쓴다.
+ * 짧은 영상은 디스크를 거치지 않고 메모리에서 바로 remux 할 수 있다.
+ */
+public class MemorySegmentStore implements SegmentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemorySegmentStore.class);
+
+    public static final int CHUNK_SIZE = 64 * 1024; // bytes
+
+    private static MemorySegmentStore memorySegmentStore = null;
+
+    private final long limit; // bytes
+    private final AtomicLong usedBytes = new AtomicLong(0);
+    private final AtomicLong spilledCount = new AtomicLong(0);
+    private final Map<String, MemorySegment> segmentMap = new ConcurrentHashMap<>();
+    private final DiskSegmentStore spillStore = new DiskSegmentStore();
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public MemorySegmentStore(long limit) {
+        this.limit = limit;
+    }
+
+    public static synchronized MemorySegmentStore getInstance() {
+        if (memorySegmentStore == null) {
+            memorySegmentStore = new MemorySegmentStore(AppInstance.getInstance().getConfigManager().getSegmentStoreMemoryLimit());
+        }
+        return memorySegmentStore;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean create(String path) {
+        remove(path);
+        segmentMap.put(path, new MemorySegment(path));
+        return true;
+    }
+
+    @Override
+    public boolean write(String path, ByteBuf data) {
+        MemorySegment segment = segmentMap.computeIfAbsent(path, MemorySegment::new);
+        return segment.write(data);
+    }
+
+    @Override
+    public boolean close(String path) {
+        MemorySegment segment = segmentMap.get(path);
+        if (segment == null) {
+            return false;
+        }
+
+        return segment.close();
+    }
+
+    @Override
+    public InputStream openStream(String path) throws IOException {
+        MemorySegment segment = segmentMap.get(path);
+        if (segment == null) {
+            throw new IOException("Segment is not exists. (path=" + path + ")");
+        }
+
+        return segment.openStream();
+    }
+
+    @Override
+    public ByteBuf retainedBuffer(String path) {
+        MemorySegment segment = segmentMap.get(path);
+        return segment == null ? null : segment.retainedBuffer();
+    }
+
+    @Override
+    public long getSize(String path) {
+        MemorySegment segment = segmentMap.get(path);
+        return segment == null ? 0 : segment.getSize();
+    }
+
+    @Override
+    public boolean contains(String path) {
+        return segmentMap.containsKey(path);
+    }
+
+    @Override
+    public void remove(String path) {
+        MemorySegment segment = segmentMap.remove(path);
+        if (segment != null) {
+            segment.release();
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (String path : segmentMap.keySet()) {
+            remove(path);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private boolean reserve() {
+        while (true) {
+            long cur = usedBytes.get();
+            if (cur + CHUNK_SIZE > limit) {
+                return false;
+            }
+
+            if (usedBytes.compareAndSet(cur, cur + CHUNK_SIZE)) {
+                return true;
+            }
+        }
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "MemorySegmentStore{" +
+                "limit=" + limit +
+                ", usedBytes=" + usedBytes.get() +
+                ", segmentCount=" + segmentMap.size() +
+                ", spilledCount=" + spilledCount.get() +
+                '}';
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @class private final class MemorySegment
+     * @brief CHUNK_SIZE 크기의 direct chunk 목록에 저장하는 세그먼트, 한도를 넘으면 디스크로 옮긴다.
+     */
+    private final class MemorySegment {
+
+        private final String path;
+        private final List<ByteBuf> chunkList = new ArrayList<>();
+        private long size = 0;
+        private boolean isSpilled = false;
+        private boolean isFailed = false; // 디스크로 옮기지 못해서 데이터가 빠진 세그먼트
+
+        private MemorySegment(String path) {
+            this.path = path;
+        }
+
+        private synchronized boolean write(ByteBuf data) {
+            if (isFailed) {
+                return false;
+            }
+
+            int index = data.readerIndex();
+            int end = data.writerIndex();
+            size += end - index;
+            if (isSpilled) {
+                return spillStore.write(path, data);
+            }
+
+            while (index < end) {
+                ByteBuf chunk = chunkList.isEmpty() ? null : chunkList.get(chunkList.size() - 1);
+                if (chunk == null || !chunk.isWritable()) {
+                    if (!reserve()) {
+                        if (!spill()) {
+                            return false;
+                        }
+                        return spillStore.write(path, data.slice(index, end - index));
+                    }
+
+                    chunk = PooledByteBufAllocator.DEFAULT.directBuffer(CHUNK_SIZE, CHUNK_SIZE);
+                    chunkList.add(chunk);
+                }
+
+                int length = Math.min(chunk.writableBytes(), end - index);
+                chunk.writeBytes(data, index, length);
+                index += length;
+            }
+            return true;
+        }
+
+        /**
+         * @fn private boolean spill()
+         * @brief 지금까지 메모리에 모은 데이터를 디스크에 쓰고 chunk 를 반환하는 함수
+         * 디스크에 쓰지 못하면 세그먼트를 실패로 표시하고, 이후 write 는 false 를 반환한다.
+         * @return 성공 시 true, 실패 시 false 반환
+         */
+        private boolean spill() {
+            boolean isWritten = spillStore.create(path);
+            for (int i = 0; isWritten && i < chunkList.size(); i++) {
+                isWritten = spillStore.write(path, chunkList.get(i));
+            }
+            releaseChunks();
+
+            if (!isWritten) {
+                spillStore.remove(path);
+                isFailed = true;
+                logger.warn("Fail to spill the segment to disk. (path={}, size={}, {})", path, size, MemorySegmentStore.this);
+                return false;
+            }
+
+            isSpilled = true;
+            spilledCount.incrementAndGet();
+            logger.debug("Segment is spilled to disk. Memory limit is exceeded. (path={}, size={}, {})", path, size, MemorySegmentStore.this);
+            return true;
+        }
+
+        private synchronized boolean close() {
+            if (isSpilled) {
+                return spillStore.close(path);
+            }
+            return true;
+        }
+
+        private synchronized InputStream openStream() throws IOException {
+            if (isSpilled) {
+                return spillStore.openStream(path);
+            }
+
+            return new ByteBufInputStream(retainedBuffer(), true);
+        }
+
+        /**
+         * @fn private synchronized ByteBuf retainedBuffer()
+         * @brief 모든 chunk 를 복사 없이 이어 붙인 ByteBuf 를 반환하는 함수 (디스크로 옮긴 세그먼트이면 null)
+         */
+        private synchronized ByteBuf retainedBuffer() {
+            if (isSpilled) {
+                return null;
+            }
+
+            // 읽는 동안 세그먼트가 지워져도 chunk 가 반환되지 않도록 reference 를 늘려서 넘긴다.
+            CompositeByteBuf composite = PooledByteBufAllocator.DEFAULT.compositeDirectBuffer(Math.max(2, chunkList.size()));
+            for (ByteBuf chunk : chunkList) {
+                composite.addComponent(true, chunk.retainedDuplicate());
+            }
+            return composite;
+        }
+
+        private synchronized long getSize() {
+            return size;
+        }
+
+        private synchronized void release() {
+            releaseChunks();
+            if (isSpilled) {
+                spillStore.remove(path);
+            }
+        }
+
+        private void releaseChunks() {
+            for (ByteBuf chunk : chunkList) {
+                chunk.release();
+            }
+            usedBytes.addAndGet(-(long) chunkList.size() * CHUNK_SIZE);
+            chunkList.clear();
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.rtsp.client.file.store;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @interface public interface SegmentStore
+ * @brief M3U8, TS 세그먼트를 경로(이름)로 저장하고 스트림으로 읽을 수 있게 하는 저장소 interface
+ * FileStream 에 지정하면 파일 대신 저장소에 데이터를 쓴다.
+ */
+public interface SegmentStore {
+
+    /**
+     * @fn boolean create(String path)
+     * @brief 빈 세그먼트를 생성하는 함수, 같은 경로의 세그먼트가 있으면 지우고 새로 만든다.
+     * @param path 세그먼트 경로
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    boolean create(String path);
+
+    /**
+     * @fn boolean write(String path, ByteBuf data)
+     * @brief 세그먼트 뒤에 데이터를 추가하는 함수 (data 의 readerIndex 와 reference 는 변경하지 않는다.)
+     * @param path 세그먼트 경로
+     * @param data 추가할 데이터
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    boolean write(String path, ByteBuf data);
+
+    /**
+     * @fn boolean close(String path)
+     * @brief 세그먼트 쓰기를 끝내는 함수 (데이터는 remove 할 때까지 유지된다.)
+     * @param path 세그먼트 경로
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    boolean close(String path);
+
+    /**
+     * @fn InputStream openStream(String path) throws IOException
+     * @brief 세그먼트를 처음부터 읽는 스트림을 여는 함수, 읽은 후 호출한 쪽에서 close 해야 한다.
+     * @param path 세그먼트 경로
+     * @return 세그먼트 스트림
+     */
+    InputStream openStream(String path) throws IOException;
+
+    /**
+     * @fn ByteBuf retainedBuffer(String path)
+     * @brief 메모리에 있는 세그먼트 전체를 복사 없이 참조하는 ByteBuf 를 반환하는 함수, 사용한 후 호출한 쪽에서 release 해야 한다.
+     * @param path 세그먼트 경로
+     * @return 세그먼트 데이터, 세그먼트가 없거나 같은 경로의 파일에 있으면 null 반환
+     */
+    ByteBuf retainedBuffer(String path);
+
+    long getSize(String path);
+
+    boolean contains(String path);
+
+    void remove(String path);
+
+    void clear();
+
+}
@@ -5,6 +5,8 @@ import com.rtsp.client.gui.listener.PauseButtonListener;
 import com.rtsp.client.gui.listener.PlayButtonListener;
 import com.rtsp.client.gui.listener.StopButtonListener;
 import com.rtsp.client.gui.listener.VolumeButtonListener;
+import com.rtsp.client.media.netty.module.RtspManager;
+import com.rtsp.client.media.netty.module.base.RtspUnit;
 import com.rtsp.client.service.AppInstance;
 import javafx.application.Platform;
 import javafx.embed.swing.JFXPanel;
@@ -129,7 +131,13 @@ public class VideoControlPanel extends JPanel {
         videoProgressBar.setOnMouseClicked(event -> {
             MediaPlayer videoPlayer = GuiManager.getInstance().getVideoPanel().getMediaPlayer();
             if (videoPlayer != null) {
-                videoPlayer.seek(new Duration(videoPlayer.getTotalDuration().toMillis() * (event.getX() / videoProgressBar.getWidth())));
+                double seekTime = videoPlayer.getTotalDuration().toSeconds() * (event.getX() / videoProgressBar.getWidth());
+                // 수신한 영상이면 가장 가까운 이전 keyframe 으로 맞춰서 바로 디코딩할 수 있는 위치로 이동한다.
+                RtspUnit rtspUnit = RtspManager.getInstance().getRtspUnit();
+                if (!GuiManager.getInstance().isUploaded() && rtspUnit != null) {
+                    seekTime = rtspUnit.getRandomAccessIndex().findSeconds(seekTime);
+                }
+                videoPlayer.seek(Duration.seconds(seekTime));
             }
         });
 
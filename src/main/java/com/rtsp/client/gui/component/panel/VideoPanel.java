@@ -28,6 +28,8 @@ public class VideoPanel extends JPanel {
 
     private static final Logger logger = LoggerFactory.getLogger(MediaPanel.class);
 
+    private static final String HTTP_SCHEME = "http://";
+
     private final JFXPanel vFXPanel = new JFXPanel();
     private MediaPlayer mediaPlayer;
     private MediaView mediaView;
@@ -63,9 +65,9 @@ public class VideoPanel extends JPanel {
     }
 
     public void initMediaPlayer(String path) {
-        File videoFile = new File(path);
-        if (videoFile.exists() && videoFile.isFile()) {
-            Media media = new Media(videoFile.toURI().toString());
+        String source = getMediaSource(path);
+        if (source != null) {
+            Media media = new Media(source);
             mediaPlayer = new MediaPlayer(media);
 
             GuiManager guiManager = GuiManager.getInstance();
@@ -122,6 +124,24 @@ public class VideoPanel extends JPanel {
         }
     }
 
+    /**
+     * @fn private String getMediaSource(String path)
+     * @brief 재생할 경로를 Media URI 로 바꾸는 함수 (HLS 서버의 http URL 은 그대로 사용한다.)
+     * @param path 파일 경로 또는 http URL
+     * @return URI, 파일이 없으면 null 반환
+     */
+    private String getMediaSource(String path) {
+        if (path.startsWith(HTTP_SCHEME)) {
+            return path;
+        }
+
+        File videoFile = new File(path);
+        if (videoFile.exists() && videoFile.isFile()) {
+            return videoFile.toURI().toString();
+        }
+        return null;
+    }
+
     ////////////////////////////////////////////////////////////////////////////////
 
     public MediaPlayer getMediaPlayer() {
@@ -69,7 +69,8 @@ public class PlayButtonListener implements ActionListener {
             MediaPlayer mediaPlayer = GuiManager.getInstance().getVideoPanel().getMediaPlayer();
             if (mediaPlayer != null) {
                 Duration duration = mediaPlayer.getCurrentTime();
-                double curTime = duration.toSeconds();
+                // 서버가 keyframe 부터 다시 보내도록 받은 영상의 가장 가까운 이전 random access point 에서 재개한다.
+                double curTime = rtspUnit.getRandomAccessIndex().findSeconds(duration.toSeconds());
                 rtspUnit.setStartTime(curTime);
                 if (rtspNettyChannel != null) {
                     rtspNettyChannel.sendPlay(rtspUnit,
@@ -1,11 +1,28 @@
 package com.rtsp.client.media.module;
 
+import com.rtsp.client.config.ConfigManager;
 import com.rtsp.client.ffmpeg.FfmpegManager;
+import com.rtsp.client.ffmpeg.Mp4ConversionService;
+import com.rtsp.client.ffmpeg.TsMp4Remuxer;
+import com.rtsp.client.ffmpeg.base.Mp4ConversionJob;
+import com.rtsp.client.ffmpeg.sink.FfmpegPipeRemuxSink;
+import com.rtsp.client.ffmpeg.sink.JavaRemuxSink;
+import com.rtsp.client.ffmpeg.sink.RemuxSink;
 import com.rtsp.client.file.RtspFileManager;
 import com.rtsp.client.file.base.FileStream;
+import com.rtsp.client.file.base.RandomAccessIndex;
 import com.rtsp.client.gui.GuiManager;
+import com.rtsp.client.gui.component.panel.VideoPanel;
+import com.rtsp.client.media.module.base.MediaMemoryBudget;
+import com.rtsp.client.media.module.base.TsPacketAligner;
+import com.rtsp.client.media.module.base.TsPesReassembler;
+import com.rtsp.client.media.module.base.TsSegmentBoundaryDetector;
+import com.rtsp.client.media.netty.NettyChannelManager;
+import com.rtsp.client.media.netty.module.HlsNettyServer;
 import com.rtsp.client.media.netty.module.RtspManager;
+import com.rtsp.client.media.netty.module.base.HlsSession;
 import com.rtsp.client.media.netty.module.base.RtspUnit;
+import com.rtsp.client.protocol.TsPacket;
 import com.rtsp.client.service.AppInstance;
 import com.rtsp.client.service.ServiceManager;
 import com.rtsp.client.service.scheduler.job.Job;
@@ -13,190 +30,682 @@ import com.rtsp.client.service.scheduler.schedule.ScheduleManager;
 import io.lindstrom.m3u8.model.MediaPlaylist;
 import io.lindstrom.m3u8.model.MediaSegment;
 import io.lindstrom.m3u8.parser.MediaPlaylistParser;
+import io.netty.buffer.ByteBuf;
 import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * @class public class StreamReceiver extends Job
+ * @brief 수신한 M3U8, TS 데이터를 파일로 저장하는 소비자 Job class
+ * 한 번 실행되면 VIDEO_PLAY job 이 멈출 때까지 버퍼를 기다리며 소비한다. (lasted job 이 아니다.)
+ */
 public class StreamReceiver extends Job {
 
     private static final Logger logger = LoggerFactory.getLogger(StreamReceiver.class);
 
     public static final String M3U8_FILE_HEADER = "#EXTM3U";
-    public static final String FFMPEG_TS_FILE_HEADER = "FFmpeg";
+
+    // 버퍼가 비어있을 때 기다리는 최대 시간, reorder buffer 의 latency 만료를 확인하는 주기이기도 하다.
+    public static final long IDLE_WAIT_MS = 5;
+    // MP4 로 변환하기 전에 TS 파일 쓰기가 끝나기를 기다리는 최대 시간
+    private static final long TS_DURABLE_TIMEOUT_MS = 5000;
+    // 다음 스트림의 M3U8, TS 파일을 쓰기 전에 이전 스트림의 MP4 변환이 끝나기를 기다리는 최대 시간, 넘으면 변환을 취소한다.
+    private static final long CONVERSION_WAIT_TIMEOUT_MS = 5000;
+    // 받은 미디어 시간(PTS 범위)은 마지막 프레임 길이를 포함하지 않고, #EXTINF 는 반올림된 값일 수 있으므로 이만큼 모자라도 다 받은 것으로 본다.
+    private static final double MEDIA_COMPLETE_TOLERANCE = 0.5; // sec
+    // 다 받은 것으로 판단하기 전에 늦게 도착하는 패킷을 기다리는 시간
+    private static final long MEDIA_COMPLETE_IDLE_MS = 100;
+    // RemuxSink 가 쓰는 중인 MP4 파일 경로 형식 (MP4 파일 경로, 스트림 번호), 변환 작업이 마무리한 후 MP4 파일 경로로 옮긴다.
+    private static final String REMUX_FILE_PATH_FORMAT = "%s.%d.remux";
 
     private final FfmpegManager ffmpegManager = new FfmpegManager();
+    // STREAMING_REMUX 가 false 이면 null, 스트림이 끝나면 변환 작업에 넘기고 다음 스트림을 위해 새로 만든다.
+    private RemuxSink remuxSink;
+    private String remuxFilePath = null;
+    private int remuxFileIndex = 0;
+    private final TsSegmentBoundaryDetector tsBoundaryDetector = new TsSegmentBoundaryDetector();
+    private final TsPacketAligner tsPacketAligner = new TsPacketAligner(
+            AppInstance.getInstance().getConfigManager().isTsDropNullPackets()
+    );
     private int totalRecvTsBytes = 0;
+    // M3U8 #EXTINF 합 (sec), 받은 미디어 시간이 이 값에 도달하면 RTP timeout 을 기다리지 않고 변환한다.
+    private double mediaTotalSeconds = 0;
+    private long lastTsRecvTime = 0; // nano seconds
+    private int lastProgressPercent = -1;
+    // HLS_SERVER 가 true 이면 M3U8 을 받을 때 공개하는 세션, 첫 세그먼트를 다 쓰면 MP4 변환을 기다리지 않고 재생한다.
+    private HlsSession hlsSession = null;
+    private boolean isHlsPlaybackStarted = false;
+
+    // run 이 실행 중인 동안 잡고 있는 lock, awaitStop 에서 종료를 기다릴 때 사용한다.
+    private final ReentrantLock runLock = new ReentrantLock();
 
     ////////////////////////////////////////////////////////////////////////////////
 
     public StreamReceiver(String name, int initialDelay, int interval, TimeUnit timeUnit, int priority, int totalRunCount, boolean isLasted) {
         super(name, initialDelay, interval, timeUnit, priority, totalRunCount, isLasted);
+
+        remuxSink = newRemuxSink();
+    }
+
+    private static RemuxSink newRemuxSink() {
+        ConfigManager configManager = AppInstance.getInstance().getConfigManager();
+        if (!configManager.isStreamingRemux()) {
+            return null;
+        }
+
+        return configManager.isJavaRemuxer() ?
+                new JavaRemuxSink(configManager.isFragmentedMp4(), configManager.getJavaRemuxMaxBytes()) :
+                new FfmpegPipeRemuxSink(configManager.isFragmentedMp4(), MediaMemoryBudget.getInstance());
     }
 
     ////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * @fn public void run()
+     * @brief VIDEO_PLAY job 이 멈출 때까지 M3U8, TS 버퍼를 소비하는 함수
+     * 버퍼가 비어있으면 IDLE_WAIT_MS 동안 park 하며 기다리고, 깨어나면 쌓인 데이터를 한 번에 모두 처리한다.
+     * 생산자(Netty 수신 스레드)가 offer 할 때 unpark 하므로 패킷마다 1 ms 씩 기다리지 않는다.
+     * 처리 중에 예외가 발생해도 로그만 남기고 다음 데이터를 계속 소비하며, 인터럽트될 때만 멈춘다.
+     */
     @Override
     public void run() {
+        runLock.lock();
+        try {
+            while (!getIsFinished()) {
+                try {
+                    RtspUnit rtspUnit = RtspManager.getInstance().getRtspUnit();
+                    if (rtspUnit == null || rtspUnit.isPaused()) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(IDLE_WAIT_MS));
+                        continue;
+                    }
+
+                    if (!rtspUnit.isStarted()) {
+                        rtspUnit.setStarted(true);
+                        StopWatch rtpTimeoutStopWatch = rtspUnit.getRtpTimeoutStopWatch();
+                        rtpTimeoutStopWatch.start();
+                    }
+
+                    // 미디어 세크먼트 리스트가 정의되지 않거나 비어있으면 M3U8 먼저 수신 처리
+                    List<MediaSegment> mediaSegmentList = rtspUnit.getMediaSegmentList();
+                    if (mediaSegmentList == null || mediaSegmentList.isEmpty()) {
+                        receiveM3u8(rtspUnit);
+                    } else {
+                        receiveTs(rtspUnit, mediaSegmentList);
+                    }
+                } catch (InterruptedException e) {
+                    logger.warn("({}) Interrupted while waiting for the media data.", getName());
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    // 소비자가 멈추면 생산자만 버퍼를 채우게 되므로 로그만 남기고 계속 소비한다.
+                    // 같은 예외가 반복되어도 CPU 를 점유하지 않도록 잠시 쉰다.
+                    logger.warn("({}) Fail to receive the media data. Skip and continue.", getName(), e);
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(IDLE_WAIT_MS));
+                }
+            }
+        } finally {
+            closeTsFiles();
+            if (remuxSink != null) {
+                // MP4 로 변환하기 전에 멈추면 진행 중인 remux 를 취소한다.
+                remuxSink.abort();
+            }
+            runLock.unlock();
+        }
+    }
+
+    /**
+     * @fn private void closeTsFiles()
+     * @brief 세션이 멈출 때 열어둔 TS 파일의 쓰기 버퍼를 파일에 쓰고 닫는 함수
+     */
+    private void closeTsFiles() {
         RtspUnit rtspUnit = RtspManager.getInstance().getRtspUnit();
-        if (rtspUnit == null) {
+        if (rtspUnit != null) {
+            rtspUnit.getFileManager().closeAllTsFiles();
+        }
+    }
+
+    /**
+     * @fn public boolean awaitStop(long timeout)
+     * @brief 종료 요청(stopJob)을 받은 후 run 이 끝날 때까지 기다리는 함수
+     * 버퍼를 정리하기 전에 호출해서 소비자와 동시에 버퍼에 접근하지 않도록 한다.
+     * @param timeout 최대 대기 시간 (ms)
+     * @return 시간 안에 종료되면 true, 아니면 false 반환
+     */
+    public boolean awaitStop(long timeout) {
+        try {
+            if (!runLock.tryLock(timeout, TimeUnit.MILLISECONDS)) {
+                logger.warn("({}) Fail to wait for the receiver to stop. (timeout={})", getName(), timeout);
+                return false;
+            }
+            runLock.unlock();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @fn private void receiveM3u8(RtspUnit rtspUnit) throws InterruptedException
+     * @brief M3U8 데이터를 기다렸다가 파일로 저장하고 미디어 세그먼트 리스트를 정의하는 함수
+     * @param rtspUnit RtspUnit
+     */
+    private void receiveM3u8(RtspUnit rtspUnit) throws InterruptedException {
+        // GET M3U8
+        byte[] data = rtspUnit.pollFromM3U8Buffer(IDLE_WAIT_MS, TimeUnit.MILLISECONDS);
+        if (data == null || data.length <= 0) {
             return;
         }
 
-        if (rtspUnit.isPaused()) {
+        // M3U8 먼저 도착(UDP, paylaod 가변), 그리고 TS 파일 수신함(RTP, payload 188)
+        logger.debug("({}) ({}) >> Recv M3U8\n{}(size={})",
+                getName(), rtspUnit.getSessionId(),
+                new String(data, StandardCharsets.UTF_8), data.length
+        );
+
+        RtspFileManager fileManager = rtspUnit.getFileManager();
+        String m3u8FileName = rtspUnit.getM3u8FilePath();
+        awaitPreviousConversion(rtspUnit);
+        fileManager.createM3U8File(m3u8FileName);
+        if (!fileManager.openM3U8File()) {
+            logger.warn("({}) ({}) Fail to open the m3u8 file. (path={})", getName(), rtspUnit.getSessionId(), m3u8FileName);
+            fileManager.removeM3U8File();
             return;
+        } else {
+            logger.trace("({}) ({}) Success to open the m3u8 file. (path={})", getName(), rtspUnit.getSessionId(), m3u8FileName);
         }
 
-        if (!rtspUnit.isStarted()) {
-            rtspUnit.setStarted(true);
-            StopWatch rtpTimeoutStopWatch = rtspUnit.getRtpTimeoutStopWatch();
-            rtpTimeoutStopWatch.start();
+        if (fileManager.writeM3U8File(data)) {
+            logger.debug("({}) ({}) Success to write the data into m3u8 file. (m3u8FileName={})", getName(), rtspUnit.getSessionId(), m3u8FileName);
         }
 
-        // 미디어 세크먼트 리스트가 정의되지 않거나 비어있으면 M3U8 먼저 수신 처리
-        RtspFileManager fileManager = rtspUnit.getFileManager();
-        List<MediaSegment> mediaSegmentList = rtspUnit.getMediaSegmentList();
-        if (mediaSegmentList == null || mediaSegmentList.isEmpty()) {
-            // GET M3U8
-            byte[] data = rtspUnit.pollFromM3U8Buffer();
-            if (data == null || data.length <= 0) {
-                return;
+        if (!fileManager.closeM3U8File()) {
+            logger.warn("({}) ({}) Fail to close the m3u8 file. (path={})", getName(), rtspUnit.getSessionId(), m3u8FileName);
+        } else {
+            logger.trace("({}) ({}) Success to close the m3u8 file. (path={})", getName(), rtspUnit.getSessionId(), m3u8FileName);
+        }
+
+        try {
+            MediaPlaylistParser parser = new MediaPlaylistParser();
+            // 저장한 파일을 다시 읽지 않고 수신한 데이터로 바로 파싱한다. (SEGMENT_STORE=MEMORY 이면 파일이 없다.)
+            MediaPlaylist playlist = parser.readPlaylist(new String(data, StandardCharsets.UTF_8));
+            if (playlist != null) {
+                List<MediaSegment> mediaSegmentList = playlist.mediaSegments();
+                rtspUnit.setTsFileLimit(mediaSegmentList.size());
+                rtspUnit.setMediaSegmentList(mediaSegmentList);
+                tsBoundaryDetector.reset();
+                tsBoundaryDetector.startSegment(getSegmentDuration(mediaSegmentList, fileManager.getTsFileIndex()));
+                rtspUnit.getTsPesReassembler().reset();
+                rtspUnit.getTsReadBuffer().setVideoPid(-1);
+                rtspUnit.getRandomAccessIndex().reset();
+                if (remuxSink != null) {
+                    remuxFilePath = String.format(REMUX_FILE_PATH_FORMAT, rtspUnit.getMp4FilePath(), remuxFileIndex++);
+                    if (!remuxSink.start(remuxFilePath)) {
+                        logger.warn("({}) ({}) Fail to start the streaming remux. (remuxer={}, path={})", getName(), rtspUnit.getSessionId(), remuxSink.getName(), remuxFilePath);
+                    }
+                }
+                mediaTotalSeconds = 0;
+                for (MediaSegment mediaSegment : mediaSegmentList) {
+                    mediaTotalSeconds += mediaSegment.duration();
+                }
+                lastProgressPercent = -1;
+                publishHlsSession(rtspUnit, fileManager, mediaSegmentList);
+                logger.debug("({}) ({}) MediaSegmentList: {}", getName(), rtspUnit.getSessionId(), mediaSegmentList);
             }
+        } catch (Exception e) {
+            logger.warn("({}) ({}) Fail to get the media segment list. (m3u8FilePath={})", getName(), rtspUnit.getSessionId(), m3u8FileName, e);
+        }
+    }
 
-            // M3U8 먼저 도착(UDP, paylaod 가변), 그리고 TS 파일 수신함(RTP, payload 188)
-            logger.debug("({}) ({}) >> Recv M3U8\n{}(size={})",
-                    getName(), rtspUnit.getSessionId(),
-                    new String(data, StandardCharsets.UTF_8), data.length
-            );
+    /**
+     * @fn private void awaitPreviousConversion(RtspUnit rtspUnit)
+     * @brief 이전 스트림의 MP4 변환 작업이 끝날 때까지 기다리는 함수
+     * 다음 스트림은 같은 경로의 M3U8, TS 파일을 덮어쓰므로, 작업이 세그먼트를 다 읽기 전에 쓰지 않는다.
+     * CONVERSION_WAIT_TIMEOUT_MS 안에 끝나지 않으면 작업을 취소한다. (덮어쓴 세그먼트로 만든 MP4 는 옮기지 않는다.)
+     * @param rtspUnit RtspUnit
+     */
+    private void awaitPreviousConversion(RtspUnit rtspUnit) {
+        Mp4ConversionService mp4ConversionService = Mp4ConversionService.getInstance();
+        if (mp4ConversionService.await(rtspUnit.getRtspUnitId(), CONVERSION_WAIT_TIMEOUT_MS)) {
+            return;
+        }
 
-            String m3u8FileName = rtspUnit.getM3u8FilePath();
-            fileManager.createM3U8File(m3u8FileName);
-            if (!fileManager.openM3U8File()) {
-                logger.warn("({}) ({}) Fail to open the m3u8 file. (path={})", getName(), rtspUnit.getSessionId(), m3u8FileName);
-                fileManager.removeM3U8File();
-                return;
-            } else {
-                logger.trace("({}) ({}) Success to open the m3u8 file. (path={})", getName(), rtspUnit.getSessionId(), m3u8FileName);
-            }
+        logger.warn("({}) ({}) Cancel the previous mp4 conversion. It is not finished before the next stream. (timeout={}ms)",
+                getName(), rtspUnit.getSessionId(), CONVERSION_WAIT_TIMEOUT_MS);
+        mp4ConversionService.cancel(rtspUnit.getRtspUnitId());
+    }
 
-            if (fileManager.writeM3U8File(data)) {
-                logger.debug("({}) ({}) Success to write the data into m3u8 file. (m3u8FileName={})", getName(), rtspUnit.getSessionId(), m3u8FileName);
-            }
+    /**
+     * @fn private void receiveTs(RtspUnit rtspUnit, List<MediaSegment> mediaSegmentList) throws InterruptedException
+     * @brief TS 데이터를 기다렸다가 쌓인 데이터를 모두 TS 파일에 적재하는 함수
+     * 데이터가 없으면 reorder buffer 에서 기다림이 끝난 payload 를 내보내고,
+     * RTP timeout 이 지나거나 M3U8 에 정의된 미디어 시간을 모두 받았으면 MP4 로 변환한다.
+     * @param rtspUnit RtspUnit
+     * @param mediaSegmentList M3U8 Media segment list
+     */
+    private void receiveTs(RtspUnit rtspUnit, List<MediaSegment> mediaSegmentList) throws InterruptedException {
+        // GET TS
+        RtspFileManager fileManager = rtspUnit.getFileManager();
+        ByteBuf data = rtspUnit.pollFromTsBuffer(IDLE_WAIT_MS, TimeUnit.MILLISECONDS);
+        if (data == null) {
+            // 빠진 패킷을 RTP_REORDER_LATENCY 이상 기다린 payload 가 있으면 건너뛰고 처리
+            rtspUnit.releaseExpiredRtpPayloads();
+            data = rtspUnit.pollFromTsBuffer();
+        }
 
-            if (!fileManager.closeM3U8File()) {
-                logger.warn("({}) ({}) Fail to close the m3u8 file. (path={})", getName(), rtspUnit.getSessionId(), m3u8FileName);
-            } else {
-                logger.trace("({}) ({}) Success to close the m3u8 file. (path={})", getName(), rtspUnit.getSessionId(), m3u8FileName);
-            }
+        if (data == null) {
+            // Convert M3U8 to MP4 by timeout or completion
+            long rtpTimeout = AppInstance.getInstance().getConfigManager().getRtpTimeout();
+            StopWatch rtpTimeoutStopWatch = rtspUnit.getRtpTimeoutStopWatch();
+            long curTime = rtpTimeoutStopWatch.getTime(TimeUnit.SECONDS);
+            boolean isTimeout = rtpTimeout > 0 && curTime >= rtpTimeout;
+            boolean isComplete = !isTimeout && isMediaComplete(rtspUnit);
+            if (isTimeout || isComplete) {
+                // 빠진 패킷을 기다리며 reorder buffer 에 남아있는 payload 를 먼저 처리
+                rtspUnit.flushRtpReorderBuffer();
+                data = rtspUnit.pollFromTsBuffer();
+                if (data != null) {
+                    drainTsBuffer(rtspUnit, fileManager, mediaSegmentList, data);
+                    return;
+                }
 
-            try {
-                MediaPlaylistParser parser = new MediaPlaylistParser();
-                MediaPlaylist playlist = parser.readPlaylist(Paths.get(m3u8FileName));
-                if (playlist != null) {
-                    mediaSegmentList = playlist.mediaSegments();
-                    rtspUnit.setTsFileLimit(mediaSegmentList.size());
-                    rtspUnit.setMediaSegmentList(mediaSegmentList);
-                    logger.debug("({}) ({}) MediaSegmentList: {}", getName(), rtspUnit.getSessionId(), mediaSegmentList);
+                if (isComplete) {
+                    logger.debug("({}) ({}) >> Recv all media (mediaSeconds={}, total={}, curTime={})", getName(), rtspUnit.getSessionId(),
+                            rtspUnit.getTsPesReassembler().getMediaSeconds(), mediaTotalSeconds, curTime);
+                } else {
+                    logger.debug("({}) ({}) >> RTP Timeout (curTime={}, limit={})", getName(), rtspUnit.getSessionId(), curTime, rtpTimeout);
                 }
-            } catch (Exception e) {
-                logger.warn("({}) ({}) Fail to get the media segment list. (m3u8FilePath={})", getName(), rtspUnit.getSessionId(), m3u8FileName, e);
-            }
-        } else {
-            // GET TS
-            byte[] data = rtspUnit.pollFromTsBuffer();
-            if (data == null || data.length == 0) {
-                // Convert M3U8 to MP4 by timeout
-                long rtpTimeout = AppInstance.getInstance().getConfigManager().getRtpTimeout();
-                if (rtpTimeout > 0) {
-                    StopWatch rtpTimeoutStopWatch = rtspUnit.getRtpTimeoutStopWatch();
-                    long curTime = rtpTimeoutStopWatch.getTime(TimeUnit.SECONDS);
-                    if (curTime >= rtpTimeout) {
-                        logger.debug("({}) ({}) >> RTP Timeout (curTime={}, limit={})", getName(), rtspUnit.getSessionId(), curTime, rtpTimeout);
-                        logger.debug("({}) ({}) >> Recv TS Bytes: {}", getName(), rtspUnit.getSessionId(), totalRecvTsBytes);
-                        totalRecvTsBytes = 0;
-
-                        rtpTimeoutStopWatch.reset();
-                        rtspUnit.setStarted(false);
-
-                        ffmpegManager.convertM3u8ToMp4(rtspUnit.getM3u8FilePath(), rtspUnit.getMp4FilePath());
-                        GuiManager.getInstance().getVideoPanel().initMediaPlayer(rtspUnit.getMp4FilePath());
+                logger.debug("({}) ({}) >> Recv TS Bytes: {}", getName(), rtspUnit.getSessionId(), totalRecvTsBytes);
+                logger.debug("({}) ({}) >> {}", getName(), rtspUnit.getSessionId(), rtspUnit.getRtpReorderBuffer());
+                logger.debug("({}) ({}) >> {}", getName(), rtspUnit.getSessionId(), rtspUnit.getTsReadBuffer());
+                logger.debug("({}) ({}) >> {}", getName(), rtspUnit.getSessionId(), tsPacketAligner);
+                logger.debug("({}) ({}) >> {}", getName(), rtspUnit.getSessionId(), rtspUnit.getTsHealthMonitor());
+                logger.debug("({}) ({}) >> {}", getName(), rtspUnit.getSessionId(), rtspUnit.getTsPesReassembler());
+                // 다음 스트림의 sequence number 를 이번 스트림 기준으로 버리지 않도록 초기화한다.
+                rtspUnit.resetRtpReorderBuffer();
+                totalRecvTsBytes = 0;
+                lastTsRecvTime = 0;
+
+                rtpTimeoutStopWatch.reset();
+                rtspUnit.setStarted(false);
+
+                // 쓰기 버퍼에 남은 데이터를 FFmpeg 가 읽기 전에 파일에 쓴다.
+                fileManager.closeAllTsFiles();
+                fileManager.awaitTsFilesDurable(TS_DURABLE_TIMEOUT_MS);
+                RandomAccessIndex randomAccessIndex = rtspUnit.getRandomAccessIndex();
+                // SEGMENT_STORE=MEMORY 이면 세그먼트가 디스크에 남지 않으므로 index 도 쓰지 않는다.
+                if (!fileManager.isMemorySegmentStore() && randomAccessIndex.writeFile(rtspUnit.getIndexFilePath())) {
+                    logger.debug("({}) ({}) Success to write the random access index file. ({}, path={})", getName(), rtspUnit.getSessionId(), randomAccessIndex, rtspUnit.getIndexFilePath());
+                }
+                if (hlsSession != null) {
+                    hlsSession.setFinished();
+                }
+                // HLS 로 재생 중이면 재생기를 바꾸지 않는다. (MP4 는 다시 재생할 때 사용한다.)
+                boolean isPlayMp4 = !isHlsPlaybackStarted;
+                hlsSession = null;
+                isHlsPlaybackStarted = false;
+                String mp4FilePath = rtspUnit.getMp4FilePath();
+                convertToMp4(rtspUnit, fileManager).thenAccept(isConverted -> {
+                    if (isConverted && isPlayMp4) {
+                        GuiManager.getInstance().getVideoPanel().initMediaPlayer(mp4FilePath);
                         GuiManager.getInstance().getVideoPanel().getMediaPlayer().play();
-                        fileManager.resetTsFileIndex();
-                        rtspUnit.setMediaSegmentList(null);
-                        ServiceManager.getInstance().getScheduleManager().stopJob(RtspUnit.VIDEO_JOB_KEY, this);
-                        return;
                     }
-                }
-                return;
+                });
+                fileManager.resetTsFileIndex();
+                rtspUnit.setMediaSegmentList(null);
+                ServiceManager.getInstance().getScheduleManager().stopJob(RtspUnit.VIDEO_JOB_KEY, this);
             }
+            return;
+        }
 
-            String dataStr = new String(data, StandardCharsets.UTF_8);
+        drainTsBuffer(rtspUnit, fileManager, mediaSegmentList, data);
+    }
 
-            // 특정 TS 파일 다 쌓을 때까지 다음 TS 파일로 넘어가지 않아야함
-            // > FFmpeg 가 생성한 TS 파일에는 각각 데이터 맨 앞에 [~FFmpeg Service~] 가 추가된다.
-            String tsFileName = rtspUnit.getTsFilePath();
-            int tsFileIndex = fileManager.getTsFileIndex();
-            String curTsFileName = String.format(tsFileName, tsFileIndex);
+    /**
+     * @fn private CompletableFuture<Boolean> convertToMp4(RtspUnit rtspUnit, RtspFileManager fileManager)
+     * @brief 받은 TS 세그먼트를 MP4 파일로 변환하는 작업을 Mp4ConversionService 에 넘기는 함수 (기다리지 않는다.)
+     * STREAMING_REMUX 가 true 이면 수신하는 동안 TS 를 넘긴 RemuxSink 를 작업에 넘겨서 작업 스레드에서 MP4 를 마무리하고,
+     * 소비자는 다음 스트림을 위해 새 RemuxSink 를 만든다. (작업이 실행되기 전에 취소되면 넘긴 RemuxSink 를 abort 한다.)
+     * RemuxSink 가 없거나 실패하면 저장한 세그먼트를 다시 읽어서 변환한다.
+     * 저장한 세그먼트 중 쓰기가 실패한 파일이 있으면 세그먼트로는 변환하지 않고 false 로 완료한다.
+     * 세그먼트 변환은 REMUXER=JAVA 이면 TsMp4Remuxer 로 프로세스 없이 변환하고, 실패하거나 지원하지 않는 codec 이면 FFmpeg 로 변환한다.
+     * @param rtspUnit RtspUnit
+     * @param fileManager RtspFileManager
+     * @return 변환 결과 (성공 시 true), 작업 스레드에서 완료된다.
+     */
+    private CompletableFuture<Boolean> convertToMp4(RtspUnit rtspUnit, RtspFileManager fileManager) {
+        long sessionId = rtspUnit.getSessionId();
+        String mp4FilePath = rtspUnit.getMp4FilePath();
+        RemuxSink finishingSink = remuxSink != null && remuxSink.isStarted() ? remuxSink : null;
+        String finishingFilePath = remuxFilePath;
+        if (finishingSink != null) {
+            remuxSink = newRemuxSink();
+        }
+        remuxFilePath = null;
 
-            // 현재 인덱스로 TS 파일 생성 시도 > 이미 있으면 생성하지 않음
-            FileStream tsFileStream = fileManager.createTsFile(tsFileIndex, curTsFileName, 0);
-            if (tsFileStream == null) {
-                logger.warn("({}) ({}) Fail to create the ts file. (index={})", getName(), rtspUnit.getSessionId(), tsFileIndex);
-                return;
+        // 쓰기가 실패한 세그먼트는 데이터가 빠지거나 밀려 있으므로 변환하지 않는다.
+        boolean hasFailedTsFile = fileManager.hasFailedTsFile();
+        String m3u8FilePath = rtspUnit.getM3u8FilePath();
+        ConfigManager configManager = AppInstance.getInstance().getConfigManager();
+        boolean isJavaRemuxer = configManager.isJavaRemuxer();
+        int javaRemuxMaxBytes = configManager.getJavaRemuxMaxBytes();
+        int priority = rtspUnit == RtspManager.getInstance().getRtspUnit() ?
+                Mp4ConversionJob.PRIORITY_WATCHED : Mp4ConversionJob.PRIORITY_BACKGROUND;
+        return Mp4ConversionService.getInstance().submit(rtspUnit.getRtspUnitId(), priority, mp4FilePath, mediaTotalSeconds, job -> {
+            long startTime = System.nanoTime();
+            if (finishingSink != null) {
+                if (finishingSink.finish() && moveFile(finishingFilePath, job.getTempFilePath())) {
+                    logger.debug("({}) ({}) >> Convert to mp4. (remuxer=STREAMING_{}, elapsed(ms)={}, path={})", getName(), sessionId,
+                            finishingSink.getName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), mp4FilePath);
+                    return true;
+                }
+                if (job.isCancelled()) {
+                    return false;
+                }
+                logger.warn("({}) ({}) Fail to finish the streaming remux. Convert the stored ts segments. (remuxer={})", getName(), sessionId, finishingSink.getName());
             }
 
-            if (!fileManager.openTsFile(tsFileIndex)) {
-                logger.warn("({}) ({}) Fail to open the ts file. (path={})", getName(), rtspUnit.getSessionId(), tsFileStream.getFilePath());
-                fileManager.removeTsFile(tsFileIndex);
-                return;
+            if (hasFailedTsFile) {
+                logger.warn("({}) ({}) Fail to convert to mp4. Some ts segments are not written. (path={})", getName(), sessionId, mp4FilePath);
+                return false;
             }
 
-            // 현재 TS 파일 사이즈가 0 보다 크고, 현재 패킷 데이터에 FFMPEG 문자열이 온다면, 다음 TS 파일에 데이터 적재
-            int tsFileSize = fileManager.getTsFileSize(tsFileIndex);
-            if (tsFileSize > 0 && dataStr.contains(FFMPEG_TS_FILE_HEADER)) {
-                if (!fileManager.closeTsFile(tsFileIndex)) {
-                    logger.warn("({}) ({}) Fail to close the file stream. (path={})", getName(), rtspUnit.getSessionId(), tsFileStream.getFilePath());
+            String remuxer = "FFMPEG";
+            boolean isConverted = false;
+            if (isJavaRemuxer) {
+                try {
+                    isConverted = new TsMp4Remuxer(javaRemuxMaxBytes).remux(fileManager.openTsStream(), job.getTempFilePath(), job::isCancelled);
+                } catch (Exception e) {
+                    logger.warn("({}) ({}) Fail to open the ts stream.", getName(), sessionId, e);
                 }
-                totalRecvTsBytes += tsFileSize;
-                logger.debug("({}) ({}) Success to write completely the ts file. (index={}, size={}, path={})", getName(), rtspUnit.getSessionId(), tsFileIndex, tsFileSize, tsFileStream.getFilePath());
-                //logger.debug("({}) ({}) Total time: {}", getName(), rtspUnit.getSessionId(), ffmpegManager.getFileTime(curTsFileName));
-
-                // 업데이트된 인덱스로 TS 파일 생성
-                // 미디어 세크먼트 리스트보다 인덱스가 같거나 높으면 안됨 > 정해진 TS 만 생성 필요
-                tsFileIndex = fileManager.addAndGetTsFileIndex();
-                if (tsFileIndex >= rtspUnit.getTsFileLimit()) {
-                    logger.warn("Fail to process the ts file. Index is exceeded. (index={}, mediaSegmentListSize={})", tsFileIndex, mediaSegmentList.size());
-                    return;
+
+                if (isConverted) {
+                    remuxer = "JAVA";
+                } else if (!job.isCancelled()) {
+                    logger.warn("({}) ({}) Fail to remux the ts segments in process. Convert with FFmpeg.", getName(), sessionId);
                 }
+            }
 
-                logger.debug("({}) ({}) The index of the next ts file is defined. ({})", getName(), rtspUnit.getSessionId(), tsFileIndex);
-                curTsFileName = String.format(tsFileName, tsFileIndex);
-                tsFileStream = fileManager.createTsFile(tsFileIndex, curTsFileName, 0);
-                if (tsFileStream == null) {
-                    logger.warn("({}) ({}) Fail to create the ts file. (index={})", getName(), rtspUnit.getSessionId(), tsFileIndex);
-                    return;
+            if (!isConverted && !job.isCancelled()) {
+                if (fileManager.isMemorySegmentStore()) {
+                    // 메모리에 저장한 TS 세그먼트를 임시 파일 없이 순서대로 FFmpeg 에 넘긴다.
+                    try {
+                        isConverted = ffmpegManager.convertTsStreamToMp4(fileManager.openTsStream(), job.getTempFilePath(), job::setProcess);
+                    } catch (Exception e) {
+                        logger.warn("({}) ({}) Fail to open the ts stream.", getName(), sessionId, e);
+                    }
+                } else {
+                    isConverted = ffmpegManager.convertM3u8ToMp4(m3u8FilePath, job.getTempFilePath(), job.getProgressListener(), job::setProcess);
                 }
+            }
 
-                if (!fileManager.openTsFile(tsFileIndex)) {
-                    logger.warn("({}) ({}) Fail to open the ts file. (path={})", getName(), rtspUnit.getSessionId(), tsFileStream.getFilePath());
-                    fileManager.removeTsFile(tsFileIndex);
-                    return;
+            logger.debug("({}) ({}) >> Convert to mp4. (remuxer={}, isConverted={}, elapsed(ms)={}, path={})", getName(), sessionId,
+                    remuxer, isConverted, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), mp4FilePath);
+            return isConverted;
+        }, finishingSink != null ? finishingSink::abort : null);
+    }
+
+    /**
+     * @fn private boolean moveFile(String srcFilePath, String destFilePath)
+     * @brief RemuxSink 가 마무리한 MP4 파일을 변환 작업의 임시 파일 경로로 옮기는 함수 (실패하면 지운다.)
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    private boolean moveFile(String srcFilePath, String destFilePath) {
+        if (destFilePath == null) {
+            return true;
+        }
+
+        try {
+            Files.move(Paths.get(srcFilePath), Paths.get(destFilePath), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            logger.warn("({}) Fail to move the remuxed mp4 file. (srcFilePath={}, destFilePath={})", getName(), srcFilePath, destFilePath, e);
+            File srcFile = new File(srcFilePath);
+            if (srcFile.exists() && !srcFile.delete()) {
+                logger.warn("({}) Fail to delete the remuxed mp4 file. (path={})", getName(), srcFilePath);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @fn private void drainTsBuffer(RtspUnit rtspUnit, RtspFileManager fileManager, List<MediaSegment> mediaSegmentList, ByteBuf data)
+     * @brief 첫 번째 데이터를 포함해서 TS 버퍼에 쌓인 데이터를 모두 꺼내서 TS 파일에 적재하는 함수
+     * 적재하기 전에 188 bytes 단위로 정렬하고 깨진 데이터와 Null 패킷을 버린다.
+     * 데이터 하나를 처리하다 실패하면 그 데이터만 버리고 다음 데이터를 처리한다.
+     * 종료 요청을 받으면 남은 데이터는 버퍼에 둔 채로 중단한다.
+     * @param data 먼저 꺼낸 TS 데이터 (RTP payload slice)
+     */
+    private void drainTsBuffer(RtspUnit rtspUnit, RtspFileManager fileManager, List<MediaSegment> mediaSegmentList, ByteBuf data) {
+        do {
+            try {
+                if (tsPacketAligner.align(data) > 0) {
+                    rtspUnit.getTsHealthMonitor().update(data, rtspUnit.getPolledTsArrivalTime());
+                    rtspUnit.getTsPesReassembler().update(data);
+                    // 버퍼가 넘쳤을 때 audio 나 PSI 가 아닌 video PES 시작부터 다시 받도록 한다.
+                    rtspUnit.getTsReadBuffer().setVideoPid(rtspUnit.getTsPesReassembler().getVideoPid());
+                    writeTsData(rtspUnit, fileManager, mediaSegmentList, data);
                 }
+            } catch (Exception e) {
+                // 처리하지 못한 payload 하나만 버리고 남은 데이터를 계속 처리한다.
+                logger.warn("({}) ({}) Fail to process the ts data. Drop the data. (size={})", getName(), rtspUnit.getSessionId(), data.readableBytes(), e);
+            } finally {
+                data.release();
             }
+        } while (!getIsFinished() && (data = rtspUnit.pollFromTsBuffer()) != null);
 
-            if (fileManager.writeDataToTsFile(tsFileIndex, data)) {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("({}) ({}) Success to write the data into ts file. (tsFileIndex={}, tsFileName={})", getName(), rtspUnit.getSessionId(), tsFileIndex, tsFileName);
+        lastTsRecvTime = System.nanoTime();
+        if (!isHlsPlaybackStarted) {
+            updateBufferingProgress(rtspUnit);
+            startHlsPlayback();
+        }
+    }
+
+    /**
+     * @fn private void publishHlsSession(RtspUnit rtspUnit, RtspFileManager fileManager, List<MediaSegment> mediaSegmentList)
+     * @brief HLS 서버가 열려 있으면 받을 세그먼트 리스트로 세션을 공개하는 함수
+     * @param rtspUnit RtspUnit
+     * @param fileManager RtspFileManager
+     * @param mediaSegmentList M3U8 Media segment list
+     */
+    private void publishHlsSession(RtspUnit rtspUnit, RtspFileManager fileManager, List<MediaSegment> mediaSegmentList) {
+        hlsSession = null;
+        isHlsPlaybackStarted = false;
+
+        HlsNettyServer hlsNettyServer = NettyChannelManager.getInstance().getHlsServer();
+        if (hlsNettyServer == null) {
+            return;
+        }
+
+        hlsSession = new HlsSession(String.valueOf(rtspUnit.getSessionId()), fileManager, mediaSegmentList);
+        String url = hlsNettyServer.publish(hlsSession);
+        logger.debug("({}) ({}) Success to publish the hls session. (url={})", getName(), rtspUnit.getSessionId(), url);
+    }
+
+    /**
+     * @fn private void startHlsPlayback()
+     * @brief 공개한 HLS 세션의 첫 번째 세그먼트 쓰기가 끝났으면 재생기를 HLS URL 로 초기화하고 재생하는 함수
+     * 그 후의 재생 진행은 재생기가 표시하므로 버퍼링 진행은 더 표시하지 않는다.
+     */
+    private void startHlsPlayback() {
+        HlsNettyServer hlsNettyServer = NettyChannelManager.getInstance().getHlsServer();
+        if (hlsSession == null || hlsNettyServer == null || hlsSession.getSegment(0) == null) {
+            return;
+        }
+
+        isHlsPlaybackStarted = true;
+        String url = hlsNettyServer.getPlaylistUrl(hlsSession);
+        VideoPanel videoPanel = GuiManager.getInstance().getVideoPanel();
+        videoPanel.initMediaPlayer(url);
+        if (videoPanel.getMediaPlayer() != null) {
+            videoPanel.getMediaPlayer().play();
+        }
+        logger.debug("({}) Start the hls playback. ({}, url={})", getName(), hlsSession, url);
+    }
+
+    /**
+     * @fn private boolean isMediaComplete(RtspUnit rtspUnit)
+     * @brief M3U8 에 정의된 미디어 시간을 모두 받았는지 확인하는 함수
+     * 받은 미디어 시간(PTS 범위)이 #EXTINF 합에 도달하고, 마지막 TS 데이터를 받은 후 MEDIA_COMPLETE_IDLE_MS 동안 더 받은 데이터가 없으면 다 받은 것으로 본다.
+     * @param rtspUnit RtspUnit
+     * @return 다 받았으면 true, 아니면 false 반환
+     */
+    private boolean isMediaComplete(RtspUnit rtspUnit) {
+        if (mediaTotalSeconds <= 0 || lastTsRecvTime == 0
+                || System.nanoTime() - lastTsRecvTime < TimeUnit.MILLISECONDS.toNanos(MEDIA_COMPLETE_IDLE_MS)) {
+            return false;
+        }
+
+        return rtspUnit.getTsPesReassembler().getMediaSeconds() >= mediaTotalSeconds - MEDIA_COMPLETE_TOLERANCE;
+    }
+
+    /**
+     * @fn private void updateBufferingProgress(RtspUnit rtspUnit)
+     * @brief 받은 미디어 시간의 비율을 재생 진행 바에 표시하는 함수 (1% 단위로 바뀔 때만 갱신한다.)
+     * @param rtspUnit RtspUnit
+     */
+    private void updateBufferingProgress(RtspUnit rtspUnit) {
+        double mediaSeconds = rtspUnit.getTsPesReassembler().getMediaSeconds();
+        if (mediaTotalSeconds <= 0 || mediaSeconds <= 0) {
+            return;
+        }
+
+        int progressPercent = (int) Math.min(100, mediaSeconds * 100 / mediaTotalSeconds);
+        if (progressPercent == lastProgressPercent) {
+            return;
+        }
+        lastProgressPercent = progressPercent;
+        GuiManager.getInstance().getVideoControlPanel().setVideoProgressBar(progressPercent / 100.0);
+    }
+
+    /**
+     * @fn private void writeTsData(RtspUnit rtspUnit, RtspFileManager fileManager, List<MediaSegment> mediaSegmentList, ByteBuf data)
+     * @brief 수신한 TS 데이터를 현재 인덱스의 TS 파일에 적재하는 함수
+     * TsSegmentBoundaryDetector 가 다음 세그먼트의 첫 패킷을 찾으면, 그 앞까지는 현재 TS 파일에 쓰고 나머지는 다음 TS 파일에 쓴다.
+     * 쓴 범위에 random access point 가 있으면 세그먼트 인덱스와 세그먼트 안의 위치를 RandomAccessIndex 에 기록한다.
+     * STREAMING_REMUX 가 true 이면 같은 데이터를 RemuxSink 에도 넘기고, 세그먼트가 바뀌면 RemuxSink 에 알린다. (FRAGMENTED_MP4 이면 세그먼트마다 fragment 를 쓴다.)
+     * @param rtspUnit RtspUnit
+     * @param fileManager RtspFileManager
+     * @param mediaSegmentList M3U8 Media segment list
+     * @param data TS 데이터 (RTP payload slice)
+     */
+    private void writeTsData(RtspUnit rtspUnit, RtspFileManager fileManager, List<MediaSegment> mediaSegmentList, ByteBuf data) {
+        // 특정 TS 파일 다 쌓을 때까지 다음 TS 파일로 넘어가지 않아야함
+        int index = data.readerIndex();
+        int scanIndex = index;
+        int end = data.writerIndex();
+        while (index < end) {
+            // 현재 인덱스로 TS 파일 생성 시도 > 이미 있으면 생성하지 않음
+            int tsFileIndex = fileManager.getTsFileIndex();
+            FileStream tsFileStream = openTsFile(rtspUnit, fileManager, mediaSegmentList, tsFileIndex);
+            if (tsFileStream == null) {
+                return;
+            }
+
+            // 마지막 세그먼트이면 더 나누지 않고 남은 데이터를 모두 쓴다. (경계를 잘못 찾아도 버리지 않도록)
+            int boundary = tsFileIndex + 1 < rtspUnit.getTsFileLimit() ? tsBoundaryDetector.findBoundary(data, scanIndex, end) : -1;
+            int writeEnd = boundary < 0 ? end : boundary;
+            if (writeEnd > index) {
+                // 파일은 세그먼트가 바뀌거나 세션이 끝날 때까지 열어두고, 데이터는 쓰기 버퍼에 모았다가 쓴다.
+                ByteBuf tsData = (index == data.readerIndex() && writeEnd == end) ? data : data.slice(index, writeEnd - index);
+                long segmentOffset = tsFileStream.getTotalDataSize();
+                if (fileManager.writeDataToTsFile(tsFileIndex, tsData)) {
+                    addRandomAccessPoints(rtspUnit, tsFileIndex, segmentOffset, index, writeEnd);
+                    if (logger.isTraceEnabled()) {
+                        logger.trace("({}) ({}) Success to write the data into ts file. (tsFileIndex={}, path={})", getName(), rtspUnit.getSessionId(), tsFileIndex, tsFileStream.getFilePath());
+                    }
+                }
+                if (remuxSink != null) {
+                    remuxSink.write(tsData);
                 }
             }
 
+            if (boundary < 0) {
+                return;
+            }
+
+            // 다음 세그먼트의 첫 패킷이 왔으므로 현재 TS 파일을 닫고 다음 TS 파일에 데이터 적재
+            int tsFileSize = fileManager.getTsFileSize(tsFileIndex);
             if (!fileManager.closeTsFile(tsFileIndex)) {
                 logger.warn("({}) ({}) Fail to close the file stream. (path={})", getName(), rtspUnit.getSessionId(), tsFileStream.getFilePath());
             }
+            totalRecvTsBytes += tsFileSize;
+            logger.debug("({}) ({}) Success to write completely the ts file. (index={}, size={}, path={})", getName(), rtspUnit.getSessionId(), tsFileIndex, tsFileSize, tsFileStream.getFilePath());
+            if (remuxSink != null) {
+                remuxSink.endSegment();
+            }
+
+            // 미디어 세크먼트 리스트보다 인덱스가 같거나 높으면 안됨 > 정해진 TS 만 생성 필요
+            tsFileIndex = fileManager.addAndGetTsFileIndex();
+            if (tsFileIndex >= rtspUnit.getTsFileLimit()) {
+                logger.warn("Fail to process the ts file. Index is exceeded. (index={}, mediaSegmentListSize={})", tsFileIndex, mediaSegmentList.size());
+                return;
+            }
+
+            logger.debug("({}) ({}) The index of the next ts file is defined. ({})", getName(), rtspUnit.getSessionId(), tsFileIndex);
+            tsBoundaryDetector.startSegment(getSegmentDuration(mediaSegmentList, tsFileIndex));
+            index = boundary;
+            scanIndex = boundary + TsPacket.TS_TOTAL_SIZE;
+        }
+    }
+
+    /**
+     * @fn private void addRandomAccessPoints(RtspUnit rtspUnit, int tsFileIndex, long segmentOffset, int index, int writeEnd)
+     * @brief TsPesReassembler 가 찾은 random access point 중에 TS 파일에 쓴 범위에 있는 것을 RandomAccessIndex 에 기록하는 함수
+     * @param tsFileIndex TS 세그먼트 인덱스
+     * @param segmentOffset 쓰기 전의 TS 파일 크기 (data 의 index 위치가 세그먼트 안에서 시작하는 위치)
+     * @param index TS 파일에 쓴 범위의 시작 위치 (절대 위치)
+     * @param writeEnd TS 파일에 쓴 범위의 끝 위치 (exclusive)
+     */
+    private void addRandomAccessPoints(RtspUnit rtspUnit, int tsFileIndex, long segmentOffset, int index, int writeEnd) {
+        TsPesReassembler tsPesReassembler = rtspUnit.getTsPesReassembler();
+        for (int i = 0; i < tsPesReassembler.getRandomAccessCount(); i++) {
+            int offset = tsPesReassembler.getRandomAccessOffset(i);
+            if (offset >= index && offset < writeEnd) {
+                rtspUnit.getRandomAccessIndex().add(tsPesReassembler.getRandomAccessTime(i), tsFileIndex, segmentOffset + offset - index);
+            }
         }
     }
+
+    /**
+     * @fn private FileStream openTsFile(RtspUnit rtspUnit, RtspFileManager fileManager, List<MediaSegment> mediaSegmentList, int tsFileIndex)
+     * @brief 지정한 인덱스의 TS 파일을 생성하고 여는 함수 (이미 열려있으면 그대로 사용)
+     * @return 성공 시 FileStream, 실패 시 null 반환
+     */
+    private FileStream openTsFile(RtspUnit rtspUnit, RtspFileManager fileManager, List<MediaSegment> mediaSegmentList, int tsFileIndex) {
+        String curTsFileName = String.format(rtspUnit.getTsFilePath(), tsFileIndex);
+        FileStream tsFileStream = fileManager.createTsFile(tsFileIndex, curTsFileName, 0, getSegmentDuration(mediaSegmentList, tsFileIndex));
+        if (tsFileStream == null) {
+            logger.warn("({}) ({}) Fail to create the ts file. (index={})", getName(), rtspUnit.getSessionId(), tsFileIndex);
+            return null;
+        }
+
+        if (!fileManager.openTsFile(tsFileIndex)) {
+            logger.warn("({}) ({}) Fail to open the ts file. (path={})", getName(), rtspUnit.getSessionId(), tsFileStream.getFilePath());
+            fileManager.removeTsFile(tsFileIndex);
+            return null;
+        }
+        return tsFileStream;
+    }
+
+    private static double getSegmentDuration(List<MediaSegment> mediaSegmentList, int tsFileIndex) {
+        if (mediaSegmentList == null || tsFileIndex < 0 || tsFileIndex >= mediaSegmentList.size()) {
+            return 0;
+        }
+
+        return mediaSegmentList.get(tsFileIndex).duration();
+    }
 }
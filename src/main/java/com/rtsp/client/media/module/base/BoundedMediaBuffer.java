@@ -0,0 +1,390 @@
+package com.rtsp.client.media.module.base;
+
+import com.rtsp.client.service.base.SpscRingBuffer;
+import io.netty.buffer.ByteBuf;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @class public class BoundedMediaBuffer
+ * @brief 패킷 개수와 byte 크기 한도가 있는 세션 별 미디어(TS payload) 버퍼 class
+ *
+ * 한도를 넘으면 MediaBufferOverflowPolicy 에 따라 데이터를 버리고, 버린 패킷과 byte 수를 센다.
+ * 모든 세션이 함께 쓰는 MediaMemoryBudget 도 넘지 않도록 예약한다.
+ * 한도는 payload 크기가 아니라 데이터가 붙잡고 있는 버퍼 크기(slice 이면 원래 수신 버퍼의 capacity)로 계산한다.
+ * recvmmsg 처럼 수신 버퍼 하나를 여러 datagram 이 나눠 쓰는 경우에는 payload 를 복사해서 원래 버퍼를 놓아준다.
+ * SpscRingBuffer 위에서 동작하므로 offer 는 생산자 스레드, poll / clear 는 소비자 스레드에서만 호출해야 한다.
+ * DROP_OLDEST 정책이면 소비자가 멈춰 있어도 한도를 넘지 않도록 생산자가 오래된 데이터를 꺼내서 버리며,
+ * 이때는 생산자와 소비자가 꺼내는 동작을 pollLock 으로 직렬화한다.
+ * 버퍼가 데이터의 reference 를 소유하며, 버려지는 데이터는 여기서 release 한다.
+ * 데이터마다 수신 시간을 함께 저장하므로, 소비자는 꺼낸 후 getPolledArrivalTime 으로 읽을 수 있다.
+ */
+public class BoundedMediaBuffer {
+
+    public static final int TS_PACKET_SIZE = 188;
+    public static final byte TS_SYNC_BYTE = 0x47;
+    // slice 가 자기 크기의 이 배수보다 큰 버퍼를 붙잡고 있으면 복사한다.
+    private static final int MAX_PINNED_RATIO = 4;
+
+    private final SpscRingBuffer<ByteBuf> ringBuffer;
+    private final int maxPackets;
+    private final long maxBytes;
+    private final MediaBufferOverflowPolicy overflowPolicy;
+    private final MediaMemoryBudget memoryBudget;
+    // DROP_OLDEST 정책에서 생산자와 소비자가 ring buffer 에서 꺼낼 때 잡는 lock (다른 정책이면 null)
+    private final ReentrantLock pollLock;
+
+    // 마지막으로 꺼낸 데이터의 수신 시간 (nano seconds, 소비자 전용)
+    private long polledArrivalTime = 0;
+
+    private final AtomicLong bytes = new AtomicLong(0);
+    private final AtomicLong droppedPackets = new AtomicLong(0);
+    private final AtomicLong droppedBytes = new AtomicLong(0);
+
+    // DROP_UNTIL_PUSI 정책에서 다음 PUSI 를 기다리는 중인지 여부 (생산자 전용)
+    private boolean isWaitingPusi = false;
+    // DROP_UNTIL_PUSI 정책에서 다시 받기 시작할 video PID (소비자가 PES 를 조립하면서 설정한다.)
+    private volatile int videoPid = -1;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public BoundedMediaBuffer(int maxPackets, long maxBytes, MediaBufferOverflowPolicy overflowPolicy, MediaMemoryBudget memoryBudget)
+     * @brief BoundedMediaBuffer 생성자 함수
+     * @param maxPackets 최대 패킷 개수
+     * @param maxBytes 최대 byte 크기
+     * @param overflowPolicy 한도를 넘었을 때 정책
+     * @param memoryBudget 모든 세션이 함께 쓰는 메모리 한도
+     */
+    public BoundedMediaBuffer(int maxPackets, long maxBytes, MediaBufferOverflowPolicy overflowPolicy, MediaMemoryBudget memoryBudget) {
+        this.maxPackets = maxPackets;
+        this.maxBytes = maxBytes;
+        this.overflowPolicy = overflowPolicy;
+        this.memoryBudget = memoryBudget;
+        this.ringBuffer = new SpscRingBuffer<>(maxPackets, true);
+        this.pollLock = overflowPolicy == MediaBufferOverflowPolicy.DROP_OLDEST ? new ReentrantLock() : null;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public boolean offer(ByteBuf data)
+     * @brief 데이터를 추가하는 함수 (생산자 전용)
+     * 한도를 넘어서 버려지는 경우에도 data 의 reference 는 버퍼가 가져가서 release 한다.
+     * 큰 수신 버퍼를 붙잡고 있는 slice 는 복사본으로 바꿔서 넣는다.
+     * @param data TS payload (retained slice)
+     * @return 추가했으면 true, 버렸으면 false 반환
+     */
+    public boolean offer(ByteBuf data) {
+        return offer(data, System.nanoTime());
+    }
+
+    /**
+     * @fn public boolean offer(ByteBuf data, long arrivalTime)
+     * @brief 수신 시간과 함께 데이터를 추가하는 함수 (생산자 전용)
+     * @param data TS payload (retained slice)
+     * @param arrivalTime 수신 시간 (System.nanoTime())
+     * @return 추가했으면 true, 버렸으면 false 반환
+     */
+    public boolean offer(ByteBuf data, long arrivalTime) {
+        int length = data.readableBytes();
+
+        if (isWaitingPusi) {
+            if (!hasRandomAccessPoint(data, videoPid)) {
+                drop(data, length);
+                return false;
+            }
+            isWaitingPusi = false;
+        }
+
+        data = unpin(data);
+        int chargedBytes = getChargedBytes(data);
+
+        boolean isOverflow = isOverflow(chargedBytes);
+        if (isOverflow && overflowPolicy == MediaBufferOverflowPolicy.DROP_OLDEST) {
+            // 소비자가 멈춰 있어도 한도를 넘지 않도록 오래된 데이터를 먼저 버린다.
+            isOverflow = !dropOldest(chargedBytes);
+        }
+        if (isOverflow) {
+            if (overflowPolicy == MediaBufferOverflowPolicy.DROP_UNTIL_PUSI) {
+                isWaitingPusi = true;
+            }
+            drop(data, length);
+            return false;
+        }
+
+        if (!memoryBudget.tryReserve(chargedBytes)) {
+            if (overflowPolicy == MediaBufferOverflowPolicy.DROP_UNTIL_PUSI) {
+                isWaitingPusi = true;
+            }
+            drop(data, length);
+            return false;
+        }
+
+        bytes.addAndGet(chargedBytes);
+        if (!ringBuffer.offer(data, arrivalTime)) {
+            bytes.addAndGet(-chargedBytes);
+            memoryBudget.release(chargedBytes);
+            drop(data, length);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @fn public ByteBuf poll()
+     * @brief 데이터를 하나 꺼내는 함수 (소비자 전용)
+     * @return 비어있으면 null 반환, 꺼낸 쪽에서 release 해야 한다.
+     */
+    public ByteBuf poll() {
+        ByteBuf data = pollFromRing();
+        if (data != null) {
+            onPolled(data);
+        }
+        return data;
+    }
+
+    /**
+     * @fn public ByteBuf poll(long timeout, TimeUnit unit)
+     * @brief 데이터가 들어올 때까지 최대 timeout 동안 기다렸다가 꺼내는 함수 (소비자 전용)
+     * DROP_OLDEST 정책이면 lock 을 잡지 않고 기다렸다가 꺼내므로, 그 사이에 생산자가 버리면 null 을 반환할 수 있다.
+     * @return 시간 안에 데이터가 들어오지 않으면 null 반환, 꺼낸 쪽에서 release 해야 한다.
+     */
+    public ByteBuf poll(long timeout, TimeUnit unit) throws InterruptedException {
+        ByteBuf data;
+        if (pollLock == null) {
+            data = ringBuffer.poll(timeout, unit);
+            if (data != null) {
+                polledArrivalTime = ringBuffer.getPolledStamp();
+            }
+        } else {
+            data = pollFromRing();
+            if (data == null && ringBuffer.await(timeout, unit)) {
+                data = pollFromRing();
+            }
+        }
+
+        if (data != null) {
+            onPolled(data);
+        }
+        return data;
+    }
+
+    /**
+     * @fn public void clear()
+     * @brief 남은 데이터를 모두 release 하는 함수 (소비자 전용)
+     */
+    public void clear() {
+        ByteBuf data;
+        while ((data = pollFromRing()) != null) {
+            onPolled(data);
+            data.release();
+        }
+    }
+
+    /**
+     * @fn public void setVideoPid(int videoPid)
+     * @brief DROP_UNTIL_PUSI 정책에서 다시 받기 시작할 video PID 를 설정하는 함수
+     * 설정하기 전에는 random_access_indicator 가 있는 PUSI 패킷에서 다시 받는다.
+     * @param videoPid Video PID (모르면 -1)
+     */
+    public void setVideoPid(int videoPid) {
+        if (this.videoPid != videoPid) {
+            this.videoPid = videoPid;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private boolean isOverflow(int chargedBytes) {
+        return ringBuffer.size() >= maxPackets || bytes.get() + chargedBytes > maxBytes;
+    }
+
+    /**
+     * @fn private boolean dropOldest(int chargedBytes)
+     * @brief 새 데이터가 한도 안에 들어갈 때까지 오래된 데이터를 꺼내서 버리는 함수 (생산자 전용, DROP_OLDEST)
+     * @param chargedBytes 새 데이터가 붙잡고 있는 메모리 크기
+     * @return 한도 안에 들어가면 true, 비워도 들어가지 않으면(데이터 하나가 maxBytes 보다 크면) false 반환
+     */
+    private boolean dropOldest(int chargedBytes) {
+        if (chargedBytes > maxBytes) {
+            return false;
+        }
+
+        pollLock.lock();
+        try {
+            while (isOverflow(chargedBytes)) {
+                ByteBuf data = ringBuffer.poll();
+                if (data == null) {
+                    return false;
+                }
+
+                int length = data.readableBytes();
+                onPolled(data);
+                drop(data, length);
+            }
+            return true;
+        } finally {
+            pollLock.unlock();
+        }
+    }
+
+    private ByteBuf pollFromRing() {
+        if (pollLock == null) {
+            return pollAndStamp();
+        }
+
+        pollLock.lock();
+        try {
+            return pollAndStamp();
+        } finally {
+            pollLock.unlock();
+        }
+    }
+
+    private ByteBuf pollAndStamp() {
+        ByteBuf data = ringBuffer.poll();
+        if (data != null) {
+            polledArrivalTime = ringBuffer.getPolledStamp();
+        }
+        return data;
+    }
+
+    private void onPolled(ByteBuf data) {
+        int chargedBytes = getChargedBytes(data);
+        bytes.addAndGet(-chargedBytes);
+        memoryBudget.release(chargedBytes);
+    }
+
+    private void drop(ByteBuf data, int length) {
+        droppedPackets.incrementAndGet();
+        droppedBytes.addAndGet(length);
+        data.release();
+    }
+
+    /**
+     * @fn public static boolean hasRandomAccessPoint(ByteBuf data, int videoPid)
+     * @brief 데이터 안에 다시 받기 시작할 수 있는 TS 패킷이 있는지 확인하는 함수
+     * video PID 를 알면 그 PID 의 PUSI 패킷, 모르면 random_access_indicator 가 설정된 PUSI 패킷을 찾는다.
+     * (audio 나 PSI 의 PUSI 에서 다시 시작하면 video 는 keyframe 없이 이어진다.)
+     * @param data TS payload (188 bytes 단위)
+     * @param videoPid Video PID (모르면 -1)
+     * @return 찾으면 true, 없으면 false 반환
+     */
+    public static boolean hasRandomAccessPoint(ByteBuf data, int videoPid) {
+        int index = data.readerIndex();
+        int end = data.writerIndex();
+        for (; index + TS_PACKET_SIZE <= end; index += TS_PACKET_SIZE) {
+            if (data.getByte(index) != TS_SYNC_BYTE || (data.getByte(index + 1) & 0x40) == 0) {
+                continue;
+            }
+
+            if (videoPid >= 0) {
+                int pid = ((data.getByte(index + 1) & 0x1F) << 8) | (data.getByte(index + 2) & 0xFF);
+                if (pid == videoPid) {
+                    return true;
+                }
+            } else if (isRandomAccessIndicator(data, index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRandomAccessIndicator(ByteBuf data, int index) {
+        // adaptation_field_control 이 adaptation field 를 포함하고, 길이가 1 이상이어야 flag 가 있다.
+        return (data.getByte(index + 3) & 0x20) != 0
+                && (data.getByte(index + 4) & 0xFF) > 0
+                && (data.getByte(index + 5) & 0x40) != 0;
+    }
+
+    /**
+     * @fn public static int getChargedBytes(ByteBuf data)
+     * @brief 데이터가 붙잡고 있는 메모리 크기를 반환하는 함수
+     * slice 는 원래 버퍼 전체를 붙잡고 있으므로 원래 버퍼의 capacity 를 반환한다.
+     * @param data TS payload
+     * @return 한도에 반영할 크기
+     */
+    public static int getChargedBytes(ByteBuf data) {
+        ByteBuf parent = data.unwrap();
+        return parent != null ? parent.capacity() : data.capacity();
+    }
+
+    /**
+     * @fn private static ByteBuf unpin(ByteBuf data)
+     * @brief 자기 크기보다 훨씬 큰 수신 버퍼를 붙잡고 있는 slice 를 복사본으로 바꾸는 함수
+     * recvmmsg 수신 버퍼는 여러 datagram 이 나눠 쓰므로, slice 하나만 남아도 버퍼 전체가 pool 로 돌아가지 못한다.
+     * @param data TS payload (retained slice, 복사하면 release 한다.)
+     * @return 복사했으면 복사본, 아니면 data 반환
+     */
+    private static ByteBuf unpin(ByteBuf data) {
+        ByteBuf parent = data.unwrap();
+        int length = data.readableBytes();
+        if (parent == null || parent.capacity() <= length * MAX_PINNED_RATIO) {
+            return data;
+        }
+
+        ByteBuf copy = data.alloc().directBuffer(length, length);
+        try {
+            copy.writeBytes(data, data.readerIndex(), length);
+        } finally {
+            data.release();
+        }
+        return copy;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public int size() {
+        return ringBuffer.size();
+    }
+
+    /**
+     * @fn public long getPolledArrivalTime()
+     * @brief 마지막으로 꺼낸 데이터의 수신 시간을 반환하는 함수 (소비자 전용)
+     * @return 수신 시간 (System.nanoTime())
+     */
+    public long getPolledArrivalTime() {
+        return polledArrivalTime;
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public int getMaxPackets() {
+        return maxPackets;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public MediaBufferOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long getDroppedPackets() {
+        return droppedPackets.get();
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "BoundedMediaBuffer{" +
+                "size=" + size() +
+                ", bytes=" + bytes.get() +
+                ", maxPackets=" + maxPackets +
+                ", maxBytes=" + maxBytes +
+                ", overflowPolicy=" + overflowPolicy +
+                ", droppedPackets=" + droppedPackets.get() +
+                ", droppedBytes=" + droppedBytes.get() +
+                '}';
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.rtsp.client.media.module.base;
+
+/**
+ * @enum public enum MediaBufferOverflowPolicy
+ * @brief 미디어 버퍼가 가득 찼을 때 어떤 데이터를 버릴지 정하는 정책
+ */
+public enum MediaBufferOverflowPolicy {
+
+    // 가장 오래된 데이터부터 버린다. (생산자가 넣을 때 한도를 넘은 만큼 버린다.)
+    DROP_OLDEST,
+    // 새로 들어온 데이터를 버린다.
+    DROP_NEWEST,
+    // 새로 들어온 데이터를 버리고, 다음 PES 시작(PUSI)이 들어올 때까지 계속 버린다.
+    DROP_UNTIL_PUSI;
+
+    public static MediaBufferOverflowPolicy fromName(String name, MediaBufferOverflowPolicy defaultPolicy) {
+        if (name == null) {
+            return defaultPolicy;
+        }
+
+        for (MediaBufferOverflowPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(name.trim())) {
+                return policy;
+            }
+        }
+        return defaultPolicy;
+    }
+
+}
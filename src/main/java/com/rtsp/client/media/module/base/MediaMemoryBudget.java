@@ -0,0 +1,72 @@
+package com.rtsp.client.media.module.base;
+
+import com.rtsp.client.service.AppInstance;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @class public class MediaMemoryBudget
+ * @brief 모든 세션의 미디어 버퍼가 함께 사용하는 메모리 한도를 관리하는 class
+ * 버퍼에 데이터를 넣기 전에 reserve 하고, 꺼내거나 버릴 때 release 한다.
+ */
+public class MediaMemoryBudget {
+
+    private static MediaMemoryBudget mediaMemoryBudget = null;
+
+    private final long limit; // bytes
+    private final AtomicLong usedBytes = new AtomicLong(0);
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public MediaMemoryBudget(long limit) {
+        this.limit = limit;
+    }
+
+    public static synchronized MediaMemoryBudget getInstance() {
+        if (mediaMemoryBudget == null) {
+            mediaMemoryBudget = new MediaMemoryBudget(AppInstance.getInstance().getConfigManager().getMediaMemoryBudget());
+        }
+        return mediaMemoryBudget;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public boolean tryReserve(int bytes)
+     * @brief 한도 안에서 메모리를 예약하는 함수
+     * @param bytes 예약할 크기
+     * @return 성공 시 true, 한도를 넘으면 false 반환
+     */
+    public boolean tryReserve(int bytes) {
+        while (true) {
+            long cur = usedBytes.get();
+            long next = cur + bytes;
+            if (next > limit) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+
+            if (usedBytes.compareAndSet(cur, next)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(int bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+}
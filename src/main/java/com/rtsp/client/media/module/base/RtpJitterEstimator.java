@@ -0,0 +1,134 @@
+package com.rtsp.client.media.module.base;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class public class RtpJitterEstimator
+ * @brief RTP 수신 지터(Interarrival jitter)를 계산하는 class
+ * Reference: https://datatracker.ietf.org/doc/html/rfc3550#appendix-A.8
+ *
+ * D(i-1,i) = (Rj - Ri) - (Sj - Si) 를 timestamp 단위로 계산하고, J = J + (|D| - J) / 16 로 누적한다.
+ * 패킷 평균 수신 간격도 같이 계산해서 지터 시간을 패킷 개수로 바꿀 수 있게 한다.
+ * 스레드에 안전하지 않으므로 호출하는 쪽에서 동기화해야 한다.
+ */
+public class RtpJitterEstimator {
+
+    public static final int DEFAULT_CLOCK_RATE = 90000; // MP2T/90000
+
+    private final int clockRate;
+
+    private long baseArrivalNanos = -1;
+    private long prevTransit = 0;
+    private long prevArrivalNanos = -1;
+    private boolean hasPrev = false;
+
+    private double jitter = 0; // timestamp units
+    private double avgInterarrivalNanos = 0;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public RtpJitterEstimator(int clockRate) {
+        this.clockRate = clockRate > 0 ? clockRate : DEFAULT_CLOCK_RATE;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public void update(long timeStamp, long arrivalNanos)
+     * @brief 수신한 RTP 패킷의 timestamp 와 수신 시간으로 지터를 갱신하는 함수
+     * @param timeStamp RTP timestamp (32 bits)
+     * @param arrivalNanos 수신 시간 (System.nanoTime())
+     */
+    public void update(long timeStamp, long arrivalNanos) {
+        if (baseArrivalNanos < 0) {
+            baseArrivalNanos = arrivalNanos;
+        }
+
+        // 수신 시간을 RTP timestamp 단위로 변환 (32 bits 로 잘라서 timestamp 와 같은 범위로 비교)
+        long arrival = (arrivalNanos - baseArrivalNanos) / 1000 * clockRate / 1000000;
+        long transit = (arrival - timeStamp) & 0xFFFFFFFFL;
+
+        if (hasPrev) {
+            int d = (int) (transit - prevTransit);
+            jitter += (Math.abs(d) - jitter) / 16.0;
+
+            long interarrivalNanos = arrivalNanos - prevArrivalNanos;
+            if (avgInterarrivalNanos <= 0) {
+                avgInterarrivalNanos = interarrivalNanos;
+            } else {
+                avgInterarrivalNanos += (interarrivalNanos - avgInterarrivalNanos) / 16.0;
+            }
+        }
+
+        prevTransit = transit;
+        prevArrivalNanos = arrivalNanos;
+        hasPrev = true;
+    }
+
+    public void reset() {
+        baseArrivalNanos = -1;
+        prevTransit = 0;
+        prevArrivalNanos = -1;
+        hasPrev = false;
+        jitter = 0;
+        avgInterarrivalNanos = 0;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public long getJitter()
+     * @brief RFC 3550 지터를 timestamp 단위로 반환하는 함수 (RTCP RR 의 interarrival jitter 와 같은 값)
+     * @return 지터 (timestamp units)
+     */
+    public long getJitter() {
+        return (long) jitter;
+    }
+
+    public double getJitterMillis() {
+        return jitter * 1000.0 / clockRate;
+    }
+
+    public long getJitterNanos() {
+        return (long) (jitter * TimeUnit.SECONDS.toNanos(1) / clockRate);
+    }
+
+    public double getAvgInterarrivalNanos() {
+        return avgInterarrivalNanos;
+    }
+
+    /**
+     * @fn public int getCongestionLevel()
+     * @brief 지터 크기로 혼잡 단계를 반환하는 함수 (RTCP fraction lost 로 정하는 단계와 같은 0 ~ 4 범위)
+     * @return 혼잡 단계
+     */
+    public int getCongestionLevel() {
+        double jitterMillis = getJitterMillis();
+        if (jitterMillis <= 5) {
+            return 0;
+        } else if (jitterMillis <= 20) {
+            return 1;
+        } else if (jitterMillis <= 50) {
+            return 2;
+        } else if (jitterMillis <= 100) {
+            return 3;
+        } else {
+            return 4;
+        }
+    }
+
+    public int getClockRate() {
+        return clockRate;
+    }
+
+    @Override
+    public String toString() {
+        return "RtpJitterEstimator{" +
+                "clockRate=" + clockRate +
+                ", jitter=" + getJitter() +
+                ", jitterMillis=" + String.format("%.3f", getJitterMillis()) +
+                ", avgInterarrivalNanos=" + (long) avgInterarrivalNanos +
+                '}';
+    }
+
+}
@@ -0,0 +1,413 @@
+package com.rtsp.client.media.module.base;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * @class public class RtpReorderBuffer
+ * @brief RTP sequence number 순서대로 payload 를 내보내는 Reorder buffer class
+ *
+ * 수신한 payload 를 depth 크기의 ring 에 (seq & mask) 로 저장한 후 기대하는 순서부터 연속된 payload 만 sink 로 전달한다.
+ * 빠진 패킷은 latency 만큼만 기다리며, 그 이후에는 건너뛰고 다음 payload 부터 전달한다.
+ * adaptive 모드에서는 RFC 3550 지터로 latency 와 기다릴 패킷 개수(window)를 자동으로 늘리거나 줄인다.
+ * 16 bits sequence number 의 wraparound 를 고려해서 비교한다.
+ * RFC 3550 A.1 처럼 MAX_DROPOUT 이상 앞서거나 MAX_MISORDER 이상 뒤처진 패킷은 범위 밖으로 보고 버리며,
+ * 범위 밖 패킷이 연속된 sequence number 로 RESYNC_PACKET_COUNT 개 들어오면 송신 측이 다시 시작한 것으로 보고 남은 payload 를 내보낸 후 그 순서부터 다시 맞춘다.
+ * payload 는 수신 시간과 함께 sink 로 전달하므로, 소비자는 reorder 대기 시간과 상관없이 수신 시간을 알 수 있다.
+ * 여러 수신 채널(스레드)에서 동시에 호출할 수 있으며, 버퍼가 payload 의 reference 를 소유하고 버려지는 payload 는 여기서 release 한다.
+ */
+public class RtpReorderBuffer {
+
+    public static final int SEQ_MODULO = 0x10000;
+    // 지터의 몇 배만큼 빠진 패킷을 기다릴지
+    public static final int JITTER_LATENCY_FACTOR = 4;
+    public static final int MIN_WINDOW = 8;
+    // RFC 3550 A.1 : 이 거리 이상 앞서거나 뒤처진 sequence number 는 범위 밖으로 본다.
+    public static final int MAX_DROPOUT = 3000;
+    public static final int MAX_MISORDER = 100;
+    // 범위 밖에서 연속된 sequence number 가 이만큼 들어오면 다시 맞춘다. (RFC 3550 A.1 MIN_SEQUENTIAL)
+    public static final int RESYNC_PACKET_COUNT = 2;
+
+    private final ByteBuf[] slots;
+    private final long[] arrivalTimes; // nano seconds
+    private final int mask;
+    private final ObjLongConsumer<ByteBuf> sink;
+
+    private final boolean isAdaptive;
+    private final long minLatencyNanos;
+    private final long maxLatencyNanos;
+    private long latencyNanos;
+    private int window; // 기다릴 수 있는 최대 sequence number 거리 (<= depth)
+    private final RtpJitterEstimator jitterEstimator;
+
+    private int expectedSeq = -1;
+    private int highestSeq = -1;
+    private int size = 0;
+    private int badSeq = -1; // 범위 밖 패킷 다음에 올 sequence number
+    private int badSeqCount = 0;
+
+    private long receivedCount = 0;
+    private long reorderedCount = 0;
+    private long lateCount = 0;
+    private long duplicateCount = 0;
+    private long lostCount = 0;
+    private long outOfRangeCount = 0;
+    private long resyncCount = 0;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public RtpReorderBuffer(int depth, long minLatency, long maxLatency, boolean isAdaptive, int clockRate, ObjLongConsumer<ByteBuf> sink)
+     * @brief RtpReorderBuffer 생성자 함수
+     * @param depth 순서를 기다릴 최대 패킷 개수 (2 의 제곱수로 올림)
+     * @param minLatency adaptive 모드에서 빠진 패킷을 기다릴 최소 시간 (ms)
+     * @param maxLatency 빠진 패킷을 기다릴 최대 시간 (ms)
+     * @param isAdaptive 지터에 따라 latency 와 window 를 자동으로 조절할지 여부
+     * @param clockRate RTP timestamp clock rate
+     * @param sink 순서가 맞춰진 payload 와 수신 시간(System.nanoTime())을 받을 함수 (payload 의 reference 를 넘겨받는다.)
+     */
+    public RtpReorderBuffer(int depth, long minLatency, long maxLatency, boolean isAdaptive, int clockRate, ObjLongConsumer<ByteBuf> sink) {
+        int capacity = 1;
+        while (capacity < depth && capacity < SEQ_MODULO / 2) {
+            capacity <<= 1;
+        }
+
+        this.slots = new ByteBuf[capacity];
+        this.arrivalTimes = new long[capacity];
+        this.mask = capacity - 1;
+        this.sink = sink;
+
+        this.isAdaptive = isAdaptive;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxLatency));
+        this.minLatencyNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(Math.max(0, minLatency)), maxLatencyNanos);
+        this.jitterEstimator = new RtpJitterEstimator(clockRate);
+        resetWindow();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public synchronized void offer(int seq, long timeStamp, ByteBuf payload)
+     * @brief RTP payload 를 추가하고 순서가 맞는 payload 를 sink 로 전달하는 함수
+     * 이미 지나간 sequence number 나 중복된 payload 는 release 하고 버린다.
+     * 기다릴 수 있는 범위(window)를 넘어서면 빠진 패킷을 건너뛰고 앞의 payload 부터 전달한다.
+     * MAX_DROPOUT / MAX_MISORDER 밖의 sequence number 는 버리며, 연속해서 들어오면 그 순서부터 다시 맞춘다.
+     * @param seq RTP sequence number (16 bits)
+     * @param timeStamp RTP timestamp (32 bits)
+     * @param payload RTP payload (retained slice)
+     */
+    public synchronized void offer(int seq, long timeStamp, ByteBuf payload) {
+        long now = System.nanoTime();
+        receivedCount++;
+
+        jitterEstimator.update(timeStamp, now);
+        if (isAdaptive) {
+            adapt();
+        }
+
+        seq &= 0xFFFF;
+        if (expectedSeq < 0) {
+            expectedSeq = seq;
+            highestSeq = seq;
+        }
+
+        int distance = (seq - expectedSeq) & 0xFFFF;
+        if (distance >= MAX_DROPOUT) {
+            if (distance >= SEQ_MODULO - MAX_MISORDER) {
+                // 조금 늦게 도착한 (이미 지나간) 패킷
+                lateCount++;
+                payload.release();
+                return;
+            }
+
+            if (!isResyncRequired(seq)) {
+                outOfRangeCount++;
+                payload.release();
+                return;
+            }
+            resync(seq);
+            distance = 0;
+        } else {
+            badSeqCount = 0;
+        }
+
+        if (distance >= window) {
+            skip(distance - window + 1);
+        }
+
+        int index = seq & mask;
+        if (slots[index] != null) {
+            duplicateCount++;
+            payload.release();
+            return;
+        }
+
+        // 더 큰 sequence number 보다 늦게 도착했지만 아직 기다리고 있던 패킷
+        if ((short) (seq - highestSeq) < 0) {
+            reorderedCount++;
+        } else {
+            highestSeq = seq;
+        }
+
+        slots[index] = payload;
+        arrivalTimes[index] = now;
+        size++;
+        drain();
+        releaseExpired(now);
+    }
+
+    /**
+     * @fn public synchronized void releaseExpired()
+     * @brief 빠진 패킷을 latency 이상 기다린 payload 가 있으면 빠진 패킷을 건너뛰고 전달하는 함수
+     * 새로운 패킷이 들어오지 않는 동안 소비자가 주기적으로 호출한다.
+     */
+    public synchronized void releaseExpired() {
+        releaseExpired(System.nanoTime());
+    }
+
+    /**
+     * @fn public synchronized void flush()
+     * @brief 빠진 패킷을 기다리지 않고 버퍼에 남은 payload 를 모두 순서대로 sink 로 전달하는 함수
+     */
+    public synchronized void flush() {
+        if (size <= 0) {
+            return;
+        }
+
+        // 마지막으로 전달한 payload 다음 sequence number 부터 다시 기다린다.
+        for (int distance = mask; distance >= 0; distance--) {
+            if (slots[(expectedSeq + distance) & mask] != null) {
+                skip(distance + 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @fn public synchronized void clear()
+     * @brief 버퍼에 남은 payload 를 모두 release 하고 상태와 통계를 초기화하는 함수
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                slots[i].release();
+                slots[i] = null;
+            }
+        }
+
+        size = 0;
+        expectedSeq = -1;
+        highestSeq = -1;
+        badSeq = -1;
+        badSeqCount = 0;
+        receivedCount = 0;
+        reorderedCount = 0;
+        lateCount = 0;
+        duplicateCount = 0;
+        lostCount = 0;
+        outOfRangeCount = 0;
+        resyncCount = 0;
+        jitterEstimator.reset();
+        resetWindow();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn private boolean isResyncRequired(int seq)
+     * @brief 범위 밖 sequence number 가 연속해서 RESYNC_PACKET_COUNT 개 들어왔는지 확인하는 함수 (RFC 3550 A.1 bad_seq)
+     * @param seq 범위 밖 sequence number
+     * @return 다시 맞춰야 하면 true, 아니면 false 반환
+     */
+    private boolean isResyncRequired(int seq) {
+        if (seq == badSeq) {
+            badSeqCount++;
+        } else {
+            badSeqCount = 1;
+        }
+        badSeq = (seq + 1) & 0xFFFF;
+        return badSeqCount >= RESYNC_PACKET_COUNT;
+    }
+
+    /**
+     * @fn private void resync(int seq)
+     * @brief 남은 payload 를 모두 내보낸 후 지정한 sequence number 부터 다시 기다리는 함수 (송신 측 재시작, sequence number 점프)
+     * @param seq 새로 기다릴 sequence number
+     */
+    private void resync(int seq) {
+        flush();
+        expectedSeq = seq;
+        highestSeq = seq;
+        badSeq = -1;
+        badSeqCount = 0;
+        resyncCount++;
+    }
+
+    private void resetWindow() {
+        latencyNanos = maxLatencyNanos;
+        window = slots.length;
+    }
+
+    /**
+     * @fn private void adapt()
+     * @brief 측정한 지터로 latency 와 window 를 다시 계산하는 함수
+     * latency 는 지터의 JITTER_LATENCY_FACTOR 배를 [minLatency, maxLatency] 범위로 자르고,
+     * window 는 그 시간 동안 들어올 패킷 개수의 2 배를 [MIN_WINDOW, depth] 범위로 자른다.
+     */
+    private void adapt() {
+        long targetNanos = jitterEstimator.getJitterNanos() * JITTER_LATENCY_FACTOR;
+        latencyNanos = Math.max(minLatencyNanos, Math.min(maxLatencyNanos, targetNanos));
+
+        double avgInterarrivalNanos = jitterEstimator.getAvgInterarrivalNanos();
+        if (avgInterarrivalNanos > 0) {
+            long packetCount = (long) Math.ceil(latencyNanos / avgInterarrivalNanos) * 2;
+            window = (int) Math.max(Math.min(MIN_WINDOW, slots.length), Math.min(slots.length, packetCount));
+        }
+    }
+
+    /**
+     * @fn private void releaseExpired(long now)
+     * @brief 기대하는 sequence number 이후 가장 먼저 기다리고 있는 payload 가 latency 를 넘겼으면 그 앞의 빈 자리를 건너뛰는 함수
+     * @param now 현재 시간 (nano seconds)
+     */
+    private void releaseExpired(long now) {
+        while (size > 0) {
+            int distance = 1;
+            while (slots[(expectedSeq + distance) & mask] == null) {
+                distance++;
+            }
+
+            if (now - arrivalTimes[(expectedSeq + distance) & mask] < latencyNanos) {
+                return;
+            }
+
+            skip(distance);
+        }
+    }
+
+    /**
+     * @fn private void skip(int count)
+     * @brief 기대하는 sequence number 를 count 만큼 앞으로 옮기면서 그 사이의 payload 를 전달하는 함수
+     * @param count 건너뛸 sequence number 개수
+     */
+    private void skip(int count) {
+        int emitCount = Math.min(count, slots.length);
+        int emittedCount = 0;
+        for (int i = 0; i < emitCount && size > 0; i++) {
+            int index = (expectedSeq + i) & mask;
+            ByteBuf payload = slots[index];
+            if (payload != null) {
+                slots[index] = null;
+                size--;
+                emittedCount++;
+                sink.accept(payload, arrivalTimes[index]);
+            }
+        }
+
+        lostCount += count - emittedCount;
+        expectedSeq = (expectedSeq + count) & 0xFFFF;
+        drain();
+    }
+
+    private void drain() {
+        int index = expectedSeq & mask;
+        ByteBuf payload;
+        while ((payload = slots[index]) != null) {
+            slots[index] = null;
+            size--;
+            sink.accept(payload, arrivalTimes[index]);
+
+            expectedSeq = (expectedSeq + 1) & 0xFFFF;
+            index = expectedSeq & mask;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getDepth() {
+        return slots.length;
+    }
+
+    public synchronized int getWindow() {
+        return window;
+    }
+
+    public synchronized long getLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+    }
+
+    public boolean isAdaptive() {
+        return isAdaptive;
+    }
+
+    /**
+     * @fn public synchronized long getJitter()
+     * @brief RFC 3550 interarrival jitter 를 반환하는 함수
+     * @return 지터 (timestamp units)
+     */
+    public synchronized long getJitter() {
+        return jitterEstimator.getJitter();
+    }
+
+    public synchronized double getJitterMillis() {
+        return jitterEstimator.getJitterMillis();
+    }
+
+    public synchronized int getJitterCongestionLevel() {
+        return jitterEstimator.getCongestionLevel();
+    }
+
+    public synchronized long getReceivedCount() {
+        return receivedCount;
+    }
+
+    public synchronized long getReorderedCount() {
+        return reorderedCount;
+    }
+
+    public synchronized long getLateCount() {
+        return lateCount;
+    }
+
+    public synchronized long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    public synchronized long getLostCount() {
+        return lostCount;
+    }
+
+    public synchronized long getOutOfRangeCount() {
+        return outOfRangeCount;
+    }
+
+    public synchronized long getResyncCount() {
+        return resyncCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RtpReorderBuffer{" +
+                "depth=" + slots.length +
+                ", window=" + window +
+                ", latency=" + getLatency() +
+                ", jitterMillis=" + String.format("%.3f", jitterEstimator.getJitterMillis()) +
+                ", size=" + size +
+                ", expectedSeq=" + expectedSeq +
+                ", received=" + receivedCount +
+                ", reordered=" + reorderedCount +
+                ", late=" + lateCount +
+                ", duplicate=" + duplicateCount +
+                ", lost=" + lostCount +
+                ", outOfRange=" + outOfRangeCount +
+                ", resync=" + resyncCount +
+                '}';
+    }
+
+}
@@ -0,0 +1,254 @@
+package com.rtsp.client.media.module.base;
+
+import com.rtsp.client.protocol.TsPacketReader;
+import io.netty.buffer.ByteBuf;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class public class TsHealthMonitor
+ * @brief 세션 별로 수신한 TS 패킷의 상태(연속성, 전송 오류, PCR jitter, discontinuity)를 세는 class
+ * Reference: ISO/IEC 13818-1, 2.4.3.3 / ETSI TR 101 290, 5.2
+ *
+ * PID 별 상태는 PID(13 bits)를 index 로 하는 primitive 배열(8192)에 저장하므로 패킷마다 객체를 할당하지 않는다.
+ * continuity_counter 는 payload 가 있는 패킷에서만 1 씩 증가하며, 같은 값이 한 번 반복되면 중복 패킷으로 센다.
+ * PCR jitter 는 이전 PCR 과의 PCR 간격과 RTP 패킷 수신 간격의 차이를 RFC 3550 방식(1/16)으로 평활한 값이다.
+ * reorder buffer 를 지난 후에 소비자 스레드에서 update 하므로 재정렬된 패킷은 손실로 세지 않으며,
+ * 수신 시간은 payload 와 함께 넘겨받으므로 jitter 에 reorder 대기 시간이나 소비자가 늦게 꺼낸 시간은 포함되지 않는다.
+ * update 는 하나의 스레드에서만 호출해야 하며, 다른 스레드에서는 counter 를 읽기만 한다.
+ */
+public class TsHealthMonitor {
+
+    public static final int PID_COUNT = 8192;
+    private static final int NO_CC = -1;
+    private static final long PCR_CLOCK_RATE = 27000000L; // Hz
+    // TR 101 290 PCR_repetition_error 기준 (100 ms)
+    private static final long PCR_REPETITION_LIMIT_US = 100000;
+
+    private final TsPacketReader tsPacketReader = new TsPacketReader();
+
+    // PID 별 상태
+    private final int[] lastCc = new int[PID_COUNT];
+    private final int[] ccErrorCounts = new int[PID_COUNT];
+    private final int[] packetCounts = new int[PID_COUNT];
+    private final long[] lastPcr = new long[PID_COUNT]; // 27 MHz
+    private final long[] lastPcrTime = new long[PID_COUNT]; // 수신 시간 (nano seconds)
+
+    // 전체 counter
+    private volatile long totalPackets = 0;
+    private volatile long ccErrors = 0;
+    private volatile long duplicatePackets = 0;
+    private volatile long transportErrors = 0;
+    private volatile long discontinuities = 0;
+    private volatile long pcrCount = 0;
+    private volatile long pcrRepetitionErrors = 0;
+    private volatile long pcrJitterUs = 0; // 평활한 값
+    private volatile long maxPcrJitterUs = 0;
+    private double pcrJitter = 0; // us
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public TsHealthMonitor() {
+        reset();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public void reset()
+     * @brief 모든 PID 상태와 counter 를 초기화하는 함수 (새 세션을 시작할 때 호출)
+     */
+    public void reset() {
+        Arrays.fill(lastCc, NO_CC);
+        Arrays.fill(ccErrorCounts, 0);
+        Arrays.fill(packetCounts, 0);
+        Arrays.fill(lastPcr, TsPacketReader.NO_PCR);
+        Arrays.fill(lastPcrTime, 0);
+
+        totalPackets = 0;
+        ccErrors = 0;
+        duplicatePackets = 0;
+        transportErrors = 0;
+        discontinuities = 0;
+        pcrCount = 0;
+        pcrRepetitionErrors = 0;
+        pcrJitterUs = 0;
+        maxPcrJitterUs = 0;
+        pcrJitter = 0;
+    }
+
+    /**
+     * @fn public void update(ByteBuf data, long arrivalTime)
+     * @brief 정렬된 TS 데이터(188 bytes 단위)의 패킷 상태를 반영하는 함수
+     * @param data TS 데이터 (readerIndex ~ writerIndex, 변경하지 않는다.)
+     * @param arrivalTime 데이터를 담은 RTP 패킷의 수신 시간 (System.nanoTime())
+     */
+    public void update(ByteBuf data, long arrivalTime) {
+        tsPacketReader.reset(data, data.readerIndex(), data.readableBytes());
+        while (tsPacketReader.next()) {
+            if (!tsPacketReader.isValid()) {
+                continue;
+            }
+
+            totalPackets++;
+            int pid = tsPacketReader.getPid();
+            packetCounts[pid]++;
+
+            // 전송 중 보정하지 못한 오류가 있으면 헤더 값도 믿을 수 없다.
+            if (tsPacketReader.isTransportErrorIndicator()) {
+                transportErrors++;
+                continue;
+            }
+
+            if (pid == TsPacketReader.NULL_PID) {
+                continue;
+            }
+
+            boolean isDiscontinuity = tsPacketReader.isDiscontinuityIndicator();
+            if (isDiscontinuity) {
+                discontinuities++;
+                lastPcr[pid] = TsPacketReader.NO_PCR;
+            }
+
+            checkContinuity(pid, isDiscontinuity);
+
+            long pcr = tsPacketReader.getPcr();
+            if (pcr != TsPacketReader.NO_PCR) {
+                checkPcr(pid, pcr, arrivalTime);
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private void checkContinuity(int pid, boolean isDiscontinuity) {
+        int cc = tsPacketReader.getContinuityCounter();
+        int prevCc = lastCc[pid];
+        lastCc[pid] = cc;
+        if (prevCc == NO_CC || isDiscontinuity) {
+            return;
+        }
+
+        if (!tsPacketReader.hasPayload()) {
+            // payload 가 없는 패킷은 continuity_counter 가 증가하지 않는다.
+            if (cc != prevCc) {
+                ccErrorCounts[pid]++;
+                ccErrors++;
+            }
+            return;
+        }
+
+        if (cc == prevCc) {
+            duplicatePackets++;
+        } else if (cc != ((prevCc + 1) & 0x0F)) {
+            ccErrorCounts[pid]++;
+            ccErrors++;
+        }
+    }
+
+    private void checkPcr(int pid, long pcr, long arrivalTime) {
+        pcrCount++;
+        long prevPcr = lastPcr[pid];
+        long prevTime = lastPcrTime[pid];
+        lastPcr[pid] = pcr;
+        lastPcrTime[pid] = arrivalTime;
+        if (prevPcr == TsPacketReader.NO_PCR || pcr < prevPcr) {
+            // 첫 PCR 또는 wrap / 되돌아간 PCR 은 기준만 다시 잡는다.
+            return;
+        }
+
+        long pcrIntervalUs = (pcr - prevPcr) * 1000000 / PCR_CLOCK_RATE;
+        long recvIntervalUs = TimeUnit.NANOSECONDS.toMicros(arrivalTime - prevTime);
+        if (pcrIntervalUs > PCR_REPETITION_LIMIT_US) {
+            pcrRepetitionErrors++;
+        }
+
+        long d = Math.abs(recvIntervalUs - pcrIntervalUs);
+        pcrJitter += (d - pcrJitter) / 16.0;
+        pcrJitterUs = (long) pcrJitter;
+        if (d > maxPcrJitterUs) {
+            maxPcrJitterUs = d;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public long getTotalPackets() {
+        return totalPackets;
+    }
+
+    public long getCcErrors() {
+        return ccErrors;
+    }
+
+    public int getCcErrors(int pid) {
+        return ccErrorCounts[pid & 0x1FFF];
+    }
+
+    public int getPacketCount(int pid) {
+        return packetCounts[pid & 0x1FFF];
+    }
+
+    public long getDuplicatePackets() {
+        return duplicatePackets;
+    }
+
+    public long getTransportErrors() {
+        return transportErrors;
+    }
+
+    public long getDiscontinuities() {
+        return discontinuities;
+    }
+
+    public long getPcrCount() {
+        return pcrCount;
+    }
+
+    public long getPcrRepetitionErrors() {
+        return pcrRepetitionErrors;
+    }
+
+    public long getPcrJitterUs() {
+        return pcrJitterUs;
+    }
+
+    public long getMaxPcrJitterUs() {
+        return maxPcrJitterUs;
+    }
+
+    /**
+     * @fn public String getCcErrorsByPid()
+     * @brief continuity 오류가 있는 PID 와 오류 개수를 문자열로 반환하는 함수 (로그 용)
+     * @return [pid:count, ...]
+     */
+    public String getCcErrorsByPid() {
+        StringBuilder stringBuilder = new StringBuilder("[");
+        for (int pid = 0; pid < PID_COUNT; pid++) {
+            if (ccErrorCounts[pid] > 0) {
+                if (stringBuilder.length() > 1) {
+                    stringBuilder.append(", ");
+                }
+                stringBuilder.append(String.format("0x%04X", pid)).append(':').append(ccErrorCounts[pid]);
+            }
+        }
+        return stringBuilder.append(']').toString();
+    }
+
+    @Override
+    public String toString() {
+        return "TsHealthMonitor{" +
+                "totalPackets=" + totalPackets +
+                ", ccErrors=" + ccErrors + getCcErrorsByPid() +
+                ", duplicatePackets=" + duplicatePackets +
+                ", transportErrors=" + transportErrors +
+                ", discontinuities=" + discontinuities +
+                ", pcrCount=" + pcrCount +
+                ", pcrRepetitionErrors=" + pcrRepetitionErrors +
+                ", pcrJitter(us)=" + pcrJitterUs +
+                ", maxPcrJitter(us)=" + maxPcrJitterUs +
+                '}';
+    }
+
+}
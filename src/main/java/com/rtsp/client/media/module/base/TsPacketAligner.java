@@ -0,0 +1,162 @@
+package com.rtsp.client.media.module.base;
+
+import com.rtsp.client.protocol.TsPacket;
+import com.rtsp.client.protocol.TsPacketReader;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @class public class TsPacketAligner
+ * @brief RTP payload 를 188 bytes TS 패킷 단위로 검증하고 정렬하는 class
+ * Reference: https://datatracker.ietf.org/doc/html/rfc2250#section-2.1
+ *
+ * MP2T/RTP payload 는 정수 개의 TS 패킷(보통 7 x 188 bytes)을 담는다.
+ * 패킷 시작 위치에 sync byte(0x47)가 없으면 8 bytes 씩 읽는 SWAR 방식으로 다음 sync byte 를 찾아서 다시 맞추고,
+ * 그 사이의 깨진 데이터와 Null 패킷(PID 0x1FFF)은 버린다.
+ * 남길 패킷은 payload 안에서 앞으로 옮기므로(in-place) 새 버퍼를 할당하지 않는다. 하나의 소비자 스레드에서만 사용해야 한다.
+ */
+public class TsPacketAligner {
+
+    private static final long SYNC_BYTES = 0x4747474747474747L;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private final boolean isDropNullPackets;
+
+    private long totalPackets = 0;
+    private long nullPackets = 0;
+    private long resyncCount = 0;
+    private long skippedBytes = 0; // sync 를 다시 맞추면서 버린 bytes
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public TsPacketAligner(boolean isDropNullPackets) {
+        this.isDropNullPackets = isDropNullPackets;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public int align(ByteBuf data)
+     * @brief payload 에서 유효한 TS 패킷만 앞으로 모으고 writerIndex 를 줄이는 함수
+     * 정렬이 맞고 버릴 패킷이 없으면 데이터를 옮기지 않는다.
+     * @param data RTP payload (readerIndex ~ writerIndex)
+     * @return 남긴 TS 패킷 개수
+     */
+    public int align(ByteBuf data) {
+        int index = data.readerIndex();
+        int end = data.writerIndex();
+        int writeIndex = index;
+        int packetCount = 0;
+
+        while (index + TsPacket.TS_TOTAL_SIZE <= end) {
+            if (!isPacketStart(data, index, end)) {
+                int syncIndex = findSync(data, index + 1, end);
+                resyncCount++;
+                if (syncIndex < 0) {
+                    // 남은 데이터는 아래에서 한 번만 센다.
+                    break;
+                }
+                skippedBytes += syncIndex - index;
+                index = syncIndex;
+                continue;
+            }
+
+            totalPackets++;
+            int pid = data.getUnsignedShort(index + 1) & 0x1FFF;
+            if (isDropNullPackets && pid == TsPacketReader.NULL_PID) {
+                nullPackets++;
+            } else {
+                if (writeIndex != index) {
+                    data.setBytes(writeIndex, data, index, TsPacket.TS_TOTAL_SIZE);
+                }
+                writeIndex += TsPacket.TS_TOTAL_SIZE;
+                packetCount++;
+            }
+            index += TsPacket.TS_TOTAL_SIZE;
+        }
+
+        if (index < end) {
+            // 188 bytes 가 되지 않는 나머지 또는 sync 를 찾지 못한 나머지
+            skippedBytes += end - index;
+        }
+
+        data.writerIndex(writeIndex);
+        return packetCount;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn private static boolean isPacketStart(ByteBuf data, int index, int end)
+     * @brief 지정한 위치가 TS 패킷의 시작인지 확인하는 함수
+     * sync byte 가 있고, 뒤에 패킷이 하나 더 들어갈 수 있으면 그 위치에도 sync byte 가 있어야 한다.
+     */
+    private static boolean isPacketStart(ByteBuf data, int index, int end) {
+        if (data.getByte(index) != TsPacket.SYNC_BYTE) {
+            return false;
+        }
+
+        int nextIndex = index + TsPacket.TS_TOTAL_SIZE;
+        return nextIndex + TsPacket.TS_TOTAL_SIZE > end || data.getByte(nextIndex) == TsPacket.SYNC_BYTE;
+    }
+
+    /**
+     * @fn private static int findSync(ByteBuf data, int index, int end)
+     * @brief 지정한 위치부터 TS 패킷이 시작하는 위치를 찾는 함수
+     * 8 bytes 를 little endian long 으로 읽어서 0x47 과 XOR 한 후, 0 이 된 byte 를 한 번에 찾는다. (SWAR)
+     * (x - 0x01..) & ~x & 0x80.. 는 가장 낮은 byte(= 가장 앞 byte)의 0 을 정확히 찾는다.
+     * @return TS 패킷 시작 위치, 없으면 -1 반환
+     */
+    private static int findSync(ByteBuf data, int index, int end) {
+        // 남은 데이터가 TS 패킷 하나 이상이면 8 bytes 는 항상 읽을 수 있다.
+        while (index + TsPacket.TS_TOTAL_SIZE <= end) {
+            long x = data.getLongLE(index) ^ SYNC_BYTES;
+            long found = (x - LOW_BITS) & ~x & HIGH_BITS;
+            if (found == 0) {
+                index += Long.BYTES;
+                continue;
+            }
+
+            int candidate = index + (Long.numberOfTrailingZeros(found) >>> 3);
+            if (candidate + TsPacket.TS_TOTAL_SIZE <= end && isPacketStart(data, candidate, end)) {
+                return candidate;
+            }
+            index = candidate + 1;
+        }
+        return -1;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public boolean isDropNullPackets() {
+        return isDropNullPackets;
+    }
+
+    public long getTotalPackets() {
+        return totalPackets;
+    }
+
+    public long getNullPackets() {
+        return nullPackets;
+    }
+
+    public long getResyncCount() {
+        return resyncCount;
+    }
+
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "TsPacketAligner{" +
+                "isDropNullPackets=" + isDropNullPackets +
+                ", totalPackets=" + totalPackets +
+                ", nullPackets=" + nullPackets +
+                ", resyncCount=" + resyncCount +
+                ", skippedBytes=" + skippedBytes +
+                '}';
+    }
+
+}
@@ -0,0 +1,393 @@
+package com.rtsp.client.media.module.base;
+
+import com.rtsp.client.protocol.TsPacketReader;
+import io.netty.buffer.ByteBuf;
+
+import java.util.Arrays;
+
+/**
+ * @class public class TsPesReassembler
+ * @brief 수신한 TS 패킷에서 Elementary stream 별로 PES 헤더를 다시 조립해서 PTS / DTS 를 추출하고, 지금까지 받은 미디어 시간을 계산하는 class
+ * Reference: ISO/IEC 13818-1, 2.4.3.6 PES packet / 2.4.3.7 Semantic definition of fields in PES packet
+ *
+ * payload_unit_start_indicator 가 설정된 패킷의 payload 가 PES start code(00 00 01)로 시작하면 그 PID 를 Elementary stream 으로 등록한다.
+ * PES 헤더가 여러 TS 패킷에 나뉘어 오면 PID 별 작은 버퍼(19 bytes)에 모은 후에 PTS / DTS 를 읽는다. 시간 계산에는 헤더만 필요하므로 PES payload 는 복사하지 않고 크기만 센다.
+ * PTS 는 33 bits 에서 wrap 되므로 직전 값과의 차이로 풀어서(unwrap) 스트림 별 최소 / 최대 PTS 를 유지하고, 그 차이를 받은 미디어 시간으로 사용한다.
+ * discontinuity_indicator 가 설정되면 그때까지의 시간을 누적하고 새로 기준을 잡는다.
+ * 받은 미디어 시간은 첫 번째 video stream(stream_id 0xE0~0xEF)을 기준으로 하고, video stream 이 없으면 처음 발견한 stream 을 기준으로 한다.
+ * 기준 stream 에서 random_access_indicator 가 설정된 PES 를 찾으면 그 TS 패킷 위치와 미디어 시간을 random access point 로 모아두고, 다음 update 전까지 제공한다.
+ * update 는 하나의 스레드에서만 호출해야 하며, 다른 스레드에서는 getMediaSeconds 등으로 읽기만 한다.
+ */
+public class TsPesReassembler {
+
+    public static final long PTS_CLOCK_RATE = 90000L; // Hz
+    public static final long NO_TIMESTAMP = -1;
+    public static final int MAX_STREAM_COUNT = 16;
+    private static final int PID_COUNT = 8192;
+    private static final long PTS_WRAP = 1L << 33;
+    private static final long PTS_MASK = PTS_WRAP - 1;
+    // packet_start_code_prefix (3) + stream_id (1) + PES_packet_length (2) + flags (2) + PES_header_data_length (1) + PTS (5) + DTS (5)
+    private static final int PES_HEADER_MAX_SIZE = 19;
+    private static final int PES_FIXED_HEADER_SIZE = 9;
+    // update 한 번(RTP payload 하나)에서 찾을 수 있는 최대 random access point 개수
+    private static final int MAX_RANDOM_ACCESS_POINTS = 16;
+
+    private final TsPacketReader tsPacketReader = new TsPacketReader();
+
+    // PID 별 stream index + 1 (0 이면 등록되지 않은 PID)
+    private final byte[] streamIndexByPid = new byte[PID_COUNT];
+    private final PesStream[] streams = new PesStream[MAX_STREAM_COUNT];
+    private int streamCount = 0;
+    private int referenceIndex = -1;
+    // 처음 등록한 video stream 의 PID (BoundedMediaBuffer 가 생산자 스레드에서 읽는다.)
+    private volatile int videoPid = -1;
+
+    // 마지막 update 에서 찾은 random access point (TS 패킷 절대 위치, 미디어 시간)
+    private final int[] randomAccessOffsets = new int[MAX_RANDOM_ACCESS_POINTS];
+    private final long[] randomAccessTimes = new long[MAX_RANDOM_ACCESS_POINTS]; // 90 kHz
+    private int randomAccessCount = 0;
+
+    private volatile long pesCount = 0;
+    private volatile long ptsCount = 0;
+    private volatile double mediaSeconds = 0;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public TsPesReassembler() {
+        // Nothing
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public void reset()
+     * @brief 등록한 stream 과 시간 정보를 모두 초기화하는 함수 (새 스트림을 받기 전에 호출)
+     */
+    public void reset() {
+        Arrays.fill(streamIndexByPid, (byte) 0);
+        Arrays.fill(streams, null);
+        streamCount = 0;
+        referenceIndex = -1;
+        videoPid = -1;
+        randomAccessCount = 0;
+        pesCount = 0;
+        ptsCount = 0;
+        mediaSeconds = 0;
+    }
+
+    /**
+     * @fn public void update(ByteBuf data)
+     * @brief 정렬된 TS 데이터(188 bytes 단위)에서 PES 헤더를 조립하고 받은 미디어 시간을 갱신하는 함수
+     * @param data TS 데이터 (readerIndex ~ writerIndex, 변경하지 않는다.)
+     */
+    public void update(ByteBuf data) {
+        // 이전 update 에서 시작한 PES 의 위치는 이번 데이터의 위치가 아니다.
+        randomAccessCount = 0;
+        for (int i = 0; i < streamCount; i++) {
+            streams[i].randomAccessOffset = -1;
+        }
+
+        tsPacketReader.reset(data, data.readerIndex(), data.readableBytes());
+        while (tsPacketReader.next()) {
+            if (!tsPacketReader.isValid() || tsPacketReader.isTransportErrorIndicator()
+                    || tsPacketReader.isNullPacket() || !tsPacketReader.hasPayload()) {
+                continue;
+            }
+
+            int pid = tsPacketReader.getPid();
+            int streamIndex = streamIndexByPid[pid] - 1;
+            if (streamIndex < 0 && tsPacketReader.isPayloadUnitStartIndicator()) {
+                streamIndex = addStream(data, pid);
+            }
+            if (streamIndex < 0) {
+                continue;
+            }
+
+            PesStream pesStream = streams[streamIndex];
+            if (tsPacketReader.isDiscontinuityIndicator()) {
+                pesStream.startNewTimeline();
+            }
+
+            if (tsPacketReader.isPayloadUnitStartIndicator()) {
+                pesStream.pesCount++;
+                pesStream.headerLength = 0;
+                pesStream.isHeaderPending = true;
+                pesStream.randomAccessOffset = tsPacketReader.isRandomAccessIndicator() ? tsPacketReader.getPacketOffset() : -1;
+                pesCount++;
+            }
+            pesStream.payloadBytes += tsPacketReader.getPayloadLength();
+
+            if (pesStream.isHeaderPending) {
+                appendHeader(data, pesStream);
+            }
+        }
+
+        if (referenceIndex >= 0) {
+            mediaSeconds = (double) streams[referenceIndex].getTotalTicks() / PTS_CLOCK_RATE;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn private int addStream(ByteBuf data, int pid)
+     * @brief PES start code 로 시작하는 PID 를 Elementary stream 으로 등록하는 함수
+     * @return 등록한 stream index, PES 가 아니거나 더 등록할 수 없으면 -1 반환
+     */
+    private int addStream(ByteBuf data, int pid) {
+        if (streamCount >= MAX_STREAM_COUNT || tsPacketReader.getPayloadLength() < 4) {
+            return -1;
+        }
+
+        // PSI 는 pointer_field 와 table_id 로 시작하므로 00 00 01 이 나올 수 없다.
+        int offset = tsPacketReader.getPayloadOffset();
+        int startCode = data.getInt(offset);
+        if ((startCode >>> 8) != 0x000001 || !hasPesHeader(startCode & 0xFF)) {
+            return -1;
+        }
+
+        int streamIndex = streamCount++;
+        int streamId = startCode & 0xFF;
+        streams[streamIndex] = new PesStream(pid, streamId);
+        streamIndexByPid[pid] = (byte) (streamIndex + 1);
+        if (referenceIndex < 0 || (isVideoStreamId(streamId) && !isVideoStreamId(streams[referenceIndex].streamId))) {
+            referenceIndex = streamIndex;
+        }
+        if (videoPid < 0 && isVideoStreamId(streamId)) {
+            videoPid = pid;
+        }
+        return streamIndex;
+    }
+
+    /**
+     * @fn private void appendHeader(ByteBuf data, PesStream pesStream)
+     * @brief 현재 패킷의 payload 를 PES 헤더 버퍼에 이어 붙이고, 필요한 만큼 모이면 PTS / DTS 를 읽는 함수
+     */
+    private void appendHeader(ByteBuf data, PesStream pesStream) {
+        byte[] header = pesStream.header;
+        int length = Math.min(tsPacketReader.getPayloadLength(), PES_HEADER_MAX_SIZE - pesStream.headerLength);
+        data.getBytes(tsPacketReader.getPayloadOffset(), header, pesStream.headerLength, length);
+        pesStream.headerLength += length;
+        if (pesStream.headerLength < PES_FIXED_HEADER_SIZE) {
+            return;
+        }
+
+        if (header[0] != 0 || header[1] != 0 || header[2] != 1 || (header[6] & 0xC0) != 0x80) {
+            // PES 시작 패킷을 잃어버린 경우
+            pesStream.isHeaderPending = false;
+            return;
+        }
+
+        int ptsDtsFlags = (header[7] >>> 6) & 0x03;
+        int requiredLength = PES_FIXED_HEADER_SIZE + (ptsDtsFlags == 0x03 ? 10 : ptsDtsFlags == 0x02 ? 5 : 0);
+        if (pesStream.headerLength < requiredLength) {
+            return;
+        }
+
+        pesStream.isHeaderPending = false;
+        if ((header[8] & 0xFF) + PES_FIXED_HEADER_SIZE < requiredLength) {
+            return;
+        }
+
+        if ((ptsDtsFlags & 0x02) != 0) {
+            pesStream.lastDts = ptsDtsFlags == 0x03 ? readTimestamp(header, 14) : NO_TIMESTAMP;
+            pesStream.updatePts(readTimestamp(header, 9));
+            ptsCount++;
+            if (pesStream.randomAccessOffset >= 0 && pesStream == streams[referenceIndex]
+                    && randomAccessCount < MAX_RANDOM_ACCESS_POINTS) {
+                randomAccessOffsets[randomAccessCount] = pesStream.randomAccessOffset;
+                randomAccessTimes[randomAccessCount] = pesStream.getCurrentTicks();
+                randomAccessCount++;
+            }
+        }
+        pesStream.randomAccessOffset = -1;
+    }
+
+    /**
+     * @fn private static long readTimestamp(byte[] header, int offset)
+     * @brief PES 헤더의 33 bits PTS / DTS 를 읽는 함수 (5 bytes, marker bit 포함)
+     * @return 90 kHz timestamp
+     */
+    private static long readTimestamp(byte[] header, int offset) {
+        return ((long) (header[offset] & 0x0E) << 29)
+                | ((header[offset + 1] & 0xFF) << 22)
+                | ((header[offset + 2] & 0xFE) << 14)
+                | ((header[offset + 3] & 0xFF) << 7)
+                | ((header[offset + 4] & 0xFE) >>> 1);
+    }
+
+    /**
+     * @fn private static boolean hasPesHeader(int streamId)
+     * @brief 선택적 PES 헤더(PTS / DTS 포함)를 가지는 stream_id 인지 확인하는 함수
+     * private_stream_1(AC-3 등), audio(0xC0~0xDF), video(0xE0~0xEF) 만 사용한다.
+     */
+    private static boolean hasPesHeader(int streamId) {
+        return streamId == 0xBD || (streamId >= 0xC0 && streamId <= 0xEF);
+    }
+
+    private static boolean isVideoStreamId(int streamId) {
+        return streamId >= 0xE0 && streamId <= 0xEF;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public double getMediaSeconds()
+     * @brief 지금까지 받은 미디어 시간을 반환하는 함수 (기준 stream 의 PTS 범위, 마지막 프레임 길이는 포함하지 않는다.)
+     * @return Media seconds
+     */
+    public double getMediaSeconds() {
+        return mediaSeconds;
+    }
+
+    /**
+     * @fn public int getVideoPid()
+     * @brief 처음 등록한 video stream (stream_id 0xE0 ~ 0xEF) 의 PID 를 반환하는 함수
+     * @return 아직 video stream 을 찾지 못했으면 -1 반환
+     */
+    public int getVideoPid() {
+        return videoPid;
+    }
+
+    /**
+     * @fn public int getRandomAccessCount()
+     * @brief 마지막 update 에서 찾은 기준 stream 의 random access point 개수를 반환하는 함수 (update 를 호출한 스레드에서만 사용)
+     * @return Random access point count
+     */
+    public int getRandomAccessCount() {
+        return randomAccessCount;
+    }
+
+    /**
+     * @fn public int getRandomAccessOffset(int index)
+     * @brief random access point 가 시작하는 TS 패킷의 절대 위치를 반환하는 함수 (update 에 넘긴 데이터 기준)
+     * @param index 0 ~ getRandomAccessCount() - 1
+     * @return Packet offset
+     */
+    public int getRandomAccessOffset(int index) {
+        return randomAccessOffsets[index];
+    }
+
+    /**
+     * @fn public long getRandomAccessTime(int index)
+     * @brief random access point 의 미디어 시간을 반환하는 함수 (수신을 시작한 시점 기준)
+     * @param index 0 ~ getRandomAccessCount() - 1
+     * @return 90 kHz
+     */
+    public long getRandomAccessTime(int index) {
+        return randomAccessTimes[index];
+    }
+
+    public long getPesCount() {
+        return pesCount;
+    }
+
+    public long getPtsCount() {
+        return ptsCount;
+    }
+
+    public int getStreamCount() {
+        return streamCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder("TsPesReassembler{");
+        stringBuilder.append("mediaSeconds=").append(String.format("%.3f", mediaSeconds))
+                .append(", pesCount=").append(pesCount)
+                .append(", ptsCount=").append(ptsCount)
+                .append(", streams=[");
+        for (int i = 0; i < streamCount; i++) {
+            PesStream pesStream = streams[i];
+            if (pesStream == null) {
+                continue;
+            }
+            if (i > 0) {
+                stringBuilder.append(", ");
+            }
+            stringBuilder.append(pesStream);
+        }
+        return stringBuilder.append("]}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @class private static class PesStream
+     * @brief Elementary stream 하나의 PES 헤더 조립 상태와 PTS 범위를 저장하는 class
+     */
+    private static class PesStream {
+
+        private final int pid;
+        private final int streamId;
+
+        private final byte[] header = new byte[PES_HEADER_MAX_SIZE];
+        private int headerLength = 0;
+        private boolean isHeaderPending = false;
+        private int randomAccessOffset = -1; // 헤더를 조립 중인 random access PES 의 시작 패킷 위치
+
+        private long pesCount = 0;
+        private long payloadBytes = 0;
+
+        private long lastRawPts = NO_TIMESTAMP; // 33 bits
+        private long unwrappedPts = 0;
+        private long minPts = 0; // unwrapped
+        private long maxPts = 0; // unwrapped
+        private long lastDts = NO_TIMESTAMP;
+        private long accumulatedTicks = 0; // 이전 timeline 들의 길이 (90 kHz)
+
+        private PesStream(int pid, int streamId) {
+            this.pid = pid;
+            this.streamId = streamId;
+        }
+
+        private void updatePts(long pts) {
+            if (lastRawPts == NO_TIMESTAMP) {
+                lastRawPts = pts;
+                unwrappedPts = pts;
+                minPts = pts;
+                maxPts = pts;
+                return;
+            }
+
+            // B-frame 등으로 PTS 가 조금 되돌아갈 수 있으므로 절반 이상 차이 나면 음수로 본다.
+            long delta = (pts - lastRawPts) & PTS_MASK;
+            if (delta >= PTS_WRAP / 2) {
+                delta -= PTS_WRAP;
+            }
+            lastRawPts = pts;
+            unwrappedPts += delta;
+            if (unwrappedPts < minPts) {
+                minPts = unwrappedPts;
+            } else if (unwrappedPts > maxPts) {
+                maxPts = unwrappedPts;
+            }
+        }
+
+        private void startNewTimeline() {
+            accumulatedTicks += maxPts - minPts;
+            lastRawPts = NO_TIMESTAMP;
+            minPts = 0;
+            maxPts = 0;
+        }
+
+        private long getCurrentTicks() {
+            return accumulatedTicks + (unwrappedPts - minPts);
+        }
+
+        private long getTotalTicks() {
+            return accumulatedTicks + (maxPts - minPts);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("0x%04X", pid) +
+                    "/sid=" + String.format("0x%02X", streamId) +
+                    ":pes=" + pesCount +
+                    ",bytes=" + payloadBytes +
+                    ",dts=" + lastDts +
+                    ",sec=" + String.format("%.3f", (double) getTotalTicks() / PTS_CLOCK_RATE);
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.rtsp.client.media.module.base;
+
+import com.rtsp.client.protocol.TsPacketReader;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @class public class TsSegmentBoundaryDetector
+ * @brief 수신한 TS 패킷의 헤더를 파싱해서 다음 TS 세그먼트가 시작하는 패킷을 찾는 class
+ *
+ * 세그먼트 경계는 payload_unit_start_indicator 가 설정된 PAT(PID 0) 패킷, 또는 random_access_indicator 가 설정된 PES 시작 패킷에서만 나눈다.
+ * 1) PAT 의 discontinuity_indicator 가 설정되면 바로 경계로 판단한다.
+ * 2) 첫 PCR 부터 흐른 시간이 지금까지 지정한 세그먼트 길이(#EXTINF)의 합에 도달한 후의 첫 번째 PAT 또는 random access 패킷을 경계로 판단한다. (하나의 muxer 가 세그먼트를 나눈 경우)
+ * 3) PAT 의 continuity_counter 가 이어지지 않는 것만으로는 경계로 보지 않는다. (PAT 하나를 잃어버려도 끊기므로)
+ *    0 으로 다시 시작하고(세그먼트마다 새로 mux 한 경우) 세그먼트 시간이 절반 이상 지났거나, 세그먼트 끝에 가까울 때만 경계로 판단한다.
+ * PCR 이 뒤로 가거나 크게 건너뛰면(세그먼트마다 새로 mux 한 경우 등) 그 구간은 직전 PCR 간격만큼만 흐른 것으로 본다.
+ * TsPacketReader 로 188 bytes 단위로 한 번만 훑으며 객체를 할당하지 않는다. 하나의 소비자 스레드에서만 사용해야 한다.
+ */
+public class TsSegmentBoundaryDetector {
+
+    public static final long PCR_CLOCK_RATE = 27000000L; // Hz
+    private static final long PCR_WRAP = (1L << 33) * 300;
+    // PAT 는 보통 0.1 초 이상 간격으로 반복되므로 그보다 짧게 잡아서 실제 경계 직전의 PAT 에서 나누지 않도록 한다.
+    private static final long DURATION_TOLERANCE = PCR_CLOCK_RATE / 20; // 50 ms
+    // continuity_counter 가 끊긴 PAT 를 경계로 볼 수 있는 세그먼트 끝까지의 남은 시간 (#EXTINF 는 반올림된 값일 수 있다.)
+    private static final long CC_BREAK_TOLERANCE = PCR_CLOCK_RATE / 2; // 500 ms
+    // PCR 간격은 100 ms 이하여야 하므로, 이보다 크게 건너뛰면 PCR discontinuity 로 본다. (패킷 손실 여유 포함)
+    private static final long MAX_PCR_GAP = PCR_CLOCK_RATE; // 1 sec
+
+    private final TsPacketReader tsPacketReader = new TsPacketReader();
+
+    private int lastPatCc = -1;
+    private long lastPcr = -1; // 27 MHz
+    private long lastPcrDelta = 0; // 직전 PCR 간격, 27 MHz
+    private long elapsedTime = 0; // 첫 PCR 부터 흐른 시간 (PCR discontinuity 구간 제외), 27 MHz
+    private long segmentStartTime = 0; // 현재 세그먼트의 시작 시간 (첫 PCR 기준), 27 MHz
+    private long segmentEndTime = 0; // 첫 PCR 기준, 27 MHz
+    private int pcrDiscontinuityCount = 0;
+    private int ccBreakCount = 0;
+    private int segmentPacketCount = 0;
+    private int boundaryCount = 0;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public TsSegmentBoundaryDetector() {
+        // Nothing
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public void reset()
+     * @brief 새 스트림을 받기 전에 상태를 초기화하는 함수
+     */
+    public void reset() {
+        lastPatCc = -1;
+        lastPcr = -1;
+        lastPcrDelta = 0;
+        elapsedTime = 0;
+        segmentStartTime = 0;
+        segmentEndTime = 0;
+        pcrDiscontinuityCount = 0;
+        ccBreakCount = 0;
+        segmentPacketCount = 0;
+        boundaryCount = 0;
+    }
+
+    /**
+     * @fn public void startSegment(double duration)
+     * @brief 새 세그먼트를 쓰기 시작할 때 세그먼트 길이를 지정하는 함수 (첫 세그먼트 포함)
+     * @param duration M3U8 #EXTINF 세그먼트 길이 (sec, 모르면 0)
+     */
+    public void startSegment(double duration) {
+        segmentStartTime = segmentEndTime;
+        if (duration > 0) {
+            segmentEndTime += (long) (duration * PCR_CLOCK_RATE);
+        }
+    }
+
+    /**
+     * @fn public int findBoundary(ByteBuf data, int index, int end)
+     * @brief 지정한 범위의 TS 패킷을 순서대로 읽으면서 다음 세그먼트의 첫 패킷 위치를 찾는 함수
+     * 경계 패킷까지 상태에 반영되므로, 이어서 찾을 때는 반환한 위치 + TS_TOTAL_SIZE 부터 호출해야 한다.
+     * @param data TS 데이터 (188 bytes 단위)
+     * @param index 시작 위치
+     * @param end 끝 위치 (exclusive)
+     * @return 경계 패킷의 위치, 없으면 -1 반환
+     */
+    public int findBoundary(ByteBuf data, int index, int end) {
+        tsPacketReader.reset(data, index, end - index);
+        while (tsPacketReader.next()) {
+            if (!tsPacketReader.isValid()) {
+                segmentPacketCount++;
+                continue;
+            }
+
+            long pcr = tsPacketReader.getPcr();
+            if (pcr != TsPacketReader.NO_PCR) {
+                updatePcr(pcr);
+            }
+
+            boolean isBoundary = false;
+            if (tsPacketReader.getPid() == TsPacketReader.PAT_PID && tsPacketReader.isPayloadUnitStartIndicator()) {
+                int cc = tsPacketReader.getContinuityCounter();
+                // 세그먼트마다 PAT 를 하나만 쓰는 muxer 는 매번 0 이므로, 이전 값이 0 이어도 0 으로 다시 시작한 것으로 본다.
+                boolean isCcReset = lastPatCc >= 0 && cc == 0 && lastPatCc != 0x0F;
+                boolean isCcBreak = isCcReset || (lastPatCc >= 0 && cc != ((lastPatCc + 1) & 0x0F) && cc != lastPatCc);
+                isBoundary = tsPacketReader.isDiscontinuityIndicator() || isSegmentTimeReached(DURATION_TOLERANCE)
+                        || (isCcBreak && isCcBreakBoundary(isCcReset));
+                if (isCcBreak) {
+                    ccBreakCount++;
+                }
+                lastPatCc = cc;
+            } else if (tsPacketReader.isPayloadUnitStartIndicator() && tsPacketReader.isRandomAccessIndicator()) {
+                isBoundary = isSegmentTimeReached(DURATION_TOLERANCE);
+            }
+
+            if (isBoundary && segmentPacketCount > 0) {
+                segmentPacketCount = 1;
+                boundaryCount++;
+                return tsPacketReader.getPacketOffset();
+            }
+            segmentPacketCount++;
+        }
+        return -1;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn private void updatePcr(long pcr)
+     * @brief PCR 로 흐른 시간을 갱신하는 함수 (뒤로 가거나 MAX_PCR_GAP 보다 크게 건너뛰면 직전 PCR 간격만큼만 더한다.)
+     * @param pcr PCR (27 MHz)
+     */
+    private void updatePcr(long pcr) {
+        if (lastPcr >= 0) {
+            long delta = pcr - lastPcr;
+            if (delta < -PCR_WRAP / 2) {
+                delta += PCR_WRAP;
+            }
+
+            if (delta >= 0 && delta <= MAX_PCR_GAP) {
+                elapsedTime += delta;
+                lastPcrDelta = delta;
+            } else {
+                elapsedTime += lastPcrDelta;
+                pcrDiscontinuityCount++;
+            }
+        }
+        lastPcr = pcr;
+    }
+
+    private boolean isSegmentTimeReached(long tolerance) {
+        if (lastPcr < 0 || segmentEndTime <= 0) {
+            return false;
+        }
+        return elapsedTime >= segmentEndTime - tolerance;
+    }
+
+    /**
+     * @fn private boolean isCcBreakBoundary(boolean isCcReset)
+     * @brief continuity_counter 가 끊긴 PAT 를 경계로 볼지 판단하는 함수
+     * 세그먼트 끝에 가깝거나, 0 으로 다시 시작했고 세그먼트 시간이 절반 이상 지났으면 경계로 본다. (시간을 모르면 0 으로 다시 시작한 것만 본다.)
+     * @param isCcReset continuity_counter 가 0 으로 다시 시작했는지 여부
+     * @return 경계이면 true, 아니면 false 반환
+     */
+    private boolean isCcBreakBoundary(boolean isCcReset) {
+        if (isSegmentTimeReached(CC_BREAK_TOLERANCE)) {
+            return true;
+        }
+        if (!isCcReset) {
+            return false;
+        }
+        if (lastPcr < 0 || segmentEndTime <= segmentStartTime) {
+            return true;
+        }
+        return elapsedTime - segmentStartTime >= (segmentEndTime - segmentStartTime) / 2;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public int getBoundaryCount() {
+        return boundaryCount;
+    }
+
+    public int getSegmentPacketCount() {
+        return segmentPacketCount;
+    }
+
+    public int getPcrDiscontinuityCount() {
+        return pcrDiscontinuityCount;
+    }
+
+    public int getCcBreakCount() {
+        return ccBreakCount;
+    }
+
+    @Override
+    public String toString() {
+        return "TsSegmentBoundaryDetector{" +
+                "lastPatCc=" + lastPatCc +
+                ", lastPcr=" + lastPcr +
+                ", elapsedTime=" + elapsedTime +
+                ", segmentEndTime=" + segmentEndTime +
+                ", segmentPacketCount=" + segmentPacketCount +
+                ", boundaryCount=" + boundaryCount +
+                ", pcrDiscontinuityCount=" + pcrDiscontinuityCount +
+                ", ccBreakCount=" + ccBreakCount +
+                '}';
+    }
+
+}
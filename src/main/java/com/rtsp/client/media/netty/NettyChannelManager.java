@@ -1,16 +1,30 @@
 package com.rtsp.client.media.netty;
 
 import com.rtsp.client.config.ConfigManager;
+import com.rtsp.client.media.netty.base.NettyThreadFactory;
+import com.rtsp.client.media.netty.module.HlsNettyServer;
 import com.rtsp.client.media.netty.module.RtcpNettyChannel;
 import com.rtsp.client.media.netty.module.RtpNettyChannel;
 import com.rtsp.client.media.netty.module.RtspNettyChannel;
 import com.rtsp.client.media.netty.module.RtspRegisterNettyChannel;
 import com.rtsp.client.service.AppInstance;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -20,8 +34,24 @@ public class NettyChannelManager {
 
     private static NettyChannelManager nettyChannelManager = null;
 
+    // RTSP, Register 채널은 요청/응답만 처리하므로 적은 수의 스레드로 충분하다.
+    private static final int CONTROL_THREAD_COUNT = 2;
+
+    // 모든 RTP, RTCP 채널이 공유하는 EventLoopGroup
+    private final NettyThreadFactory mediaThreadFactory = new NettyThreadFactory("netty-media");
+    private EventLoopGroup mediaEventLoopGroup = null;
+    private boolean isMediaNativeTransport = false;
+
+    // 모든 RTSP, Register 채널이 공유하는 EventLoopGroup
+    private final NettyThreadFactory controlThreadFactory = new NettyThreadFactory("netty-control");
+    private EventLoopGroup controlEventLoopGroup = null;
+
+    private final ReentrantLock eventLoopGroupLock = new ReentrantLock();
+
     private RtspRegisterNettyChannel rtspRegisterNettyChannel = null;
 
+    private HlsNettyServer hlsNettyServer = null;
+
     private final HashMap<String, RtspNettyChannel> rtspChannelMap = new HashMap<>();
     private final ReentrantLock rtspChannelMapLock = new ReentrantLock();
 
@@ -46,6 +76,183 @@ public class NettyChannelManager {
 
     ////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * @fn public EventLoopGroup getMediaEventLoopGroup()
+     * @brief RTP, RTCP 채널이 공유하는 EventLoopGroup 을 반환하는 함수
+     * 처음 호출될 때 STREAM_THREAD_POOL_SIZE 크기로 생성하며, 채널이 닫혀도 종료하지 않는다.
+     * @return EventLoopGroup
+     */
+    public EventLoopGroup getMediaEventLoopGroup() {
+        try {
+            eventLoopGroupLock.lock();
+
+            if (mediaEventLoopGroup == null || mediaEventLoopGroup.isShuttingDown()) {
+                ConfigManager configManager = AppInstance.getInstance().getConfigManager();
+                int threadCount = configManager.getStreamThreadPoolSize();
+
+                isMediaNativeTransport = false;
+                if (configManager.isNativeTransport()) {
+                    if (Epoll.isAvailable()) {
+                        isMediaNativeTransport = true;
+                    } else {
+                        log.info("| Native transport is not available. Use nio transport instead. ({})", Epoll.unavailabilityCause().toString());
+                    }
+                }
+
+                if (isMediaNativeTransport) {
+                    mediaEventLoopGroup = new EpollEventLoopGroup(threadCount, mediaThreadFactory);
+                } else {
+                    mediaEventLoopGroup = new NioEventLoopGroup(threadCount, mediaThreadFactory);
+                }
+                log.debug("| Media event loop group is created. (threadCount={}, transport={})",
+                        threadCount, isMediaNativeTransport ? "epoll" : "nio"
+                );
+            }
+            return mediaEventLoopGroup;
+        } finally {
+            eventLoopGroupLock.unlock();
+        }
+    }
+
+    /**
+     * @fn public Bootstrap newMediaBootstrap()
+     * @brief RTP, RTCP 채널용 Bootstrap 을 생성하는 함수
+     * 공유 EventLoopGroup 의 transport 에 맞는 DatagramChannel 을 사용한다.
+     * epoll transport 이면 MAX_DATAGRAM_PAYLOAD_SIZE 를 설정해서 recvmmsg 로 여러 datagram 을 한 번에 읽는다.
+     * 채널 handler 는 DatagramChannel 기준으로 초기화해야 한다.
+     * @return Bootstrap
+     */
+    public Bootstrap newMediaBootstrap() {
+        ConfigManager configManager = AppInstance.getInstance().getConfigManager();
+        Bootstrap bootstrap = new Bootstrap();
+        configureMediaBootstrap(bootstrap, getMediaEventLoopGroup(),
+                configManager.getSendBufSize(), configManager.getRecvBufSize(),
+                configManager.getMaxDatagramPayloadSize(), configManager.getRecvBatchCount()
+        );
+        return bootstrap;
+    }
+
+    /**
+     * @fn public static void configureMediaBootstrap(Bootstrap bootstrap, EventLoopGroup eventLoopGroup, int sendBufSize, int recvBufSize, int maxDatagramPayloadSize, int recvBatchCount)
+     * @brief RTP, RTCP 채널용 Bootstrap 에 EventLoopGroup 의 transport 에 맞는 DatagramChannel 과 option 을 설정하는 함수
+     * @param bootstrap Bootstrap
+     * @param eventLoopGroup EpollEventLoopGroup or NioEventLoopGroup
+     * @param sendBufSize SO_SNDBUF
+     * @param recvBufSize SO_RCVBUF
+     * @param maxDatagramPayloadSize recvmmsg 로 읽을 datagram 하나의 최대 크기
+     * @param recvBatchCount recvmmsg 로 한 번에 읽을 datagram 개수 (1 이하이면 recvmmsg 를 사용하지 않는다.)
+     */
+    public static void configureMediaBootstrap(Bootstrap bootstrap, EventLoopGroup eventLoopGroup, int sendBufSize, int recvBufSize,
+                                               int maxDatagramPayloadSize, int recvBatchCount) {
+        bootstrap.group(eventLoopGroup)
+                .option(ChannelOption.SO_BROADCAST, false)
+                .option(ChannelOption.SO_SNDBUF, sendBufSize)
+                .option(ChannelOption.SO_RCVBUF, recvBufSize)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.SO_REUSEADDR, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 1000);
+
+        if (eventLoopGroup instanceof EpollEventLoopGroup) {
+            bootstrap.channel(EpollDatagramChannel.class);
+            if (recvBatchCount > 1) {
+                // 수신 버퍼 하나에 recvBatchCount 개의 datagram 을 담아서 recvmmsg 로 읽는다.
+                // 각 DatagramPacket 은 그 버퍼의 retained slice 로 전달된다.
+                bootstrap.option(EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE, maxDatagramPayloadSize)
+                        .option(ChannelOption.RCVBUF_ALLOCATOR,
+                                new FixedRecvByteBufAllocator(maxDatagramPayloadSize * recvBatchCount)
+                        );
+            }
+        } else {
+            bootstrap.channel(NioDatagramChannel.class);
+        }
+    }
+
+    public boolean isMediaNativeTransport() {
+        return isMediaNativeTransport;
+    }
+
+    /**
+     * @fn public int getRtpSocketCount()
+     * @brief RTP 포트 하나에 SO_REUSEPORT 로 바인딩할 소켓 개수를 반환하는 함수
+     * epoll transport 에서만 사용할 수 있으며, media EventLoop 개수를 넘지 않는다.
+     * 커널이 송신자 주소, 포트의 hash 로 소켓을 고르므로 송신자가 하나인 스트림은 소켓 하나에만 들어와서 병렬로 처리되지 않는다.
+     * 여러 송신자가 같은 RTP 포트로 보낼 때만 EventLoop 간에 수신이 나뉜다.
+     * @return 소켓 개수 (nio transport 이면 1)
+     */
+    public int getRtpSocketCount() {
+        getMediaEventLoopGroup();
+        if (!isMediaNativeTransport) {
+            return 1;
+        }
+
+        ConfigManager configManager = AppInstance.getInstance().getConfigManager();
+        return Math.max(1, Math.min(configManager.getRtpReusePortCount(), configManager.getStreamThreadPoolSize()));
+    }
+
+    /**
+     * @fn public EventLoopGroup getControlEventLoopGroup()
+     * @brief RTSP, Register 채널이 공유하는 EventLoopGroup 을 반환하는 함수
+     * 처음 호출될 때 생성하며, 채널이 닫혀도 종료하지 않는다.
+     * @return EventLoopGroup
+     */
+    public EventLoopGroup getControlEventLoopGroup() {
+        try {
+            eventLoopGroupLock.lock();
+
+            if (controlEventLoopGroup == null || controlEventLoopGroup.isShuttingDown()) {
+                controlEventLoopGroup = new NioEventLoopGroup(CONTROL_THREAD_COUNT, controlThreadFactory);
+                log.debug("| Control event loop group is created. (threadCount={})", CONTROL_THREAD_COUNT);
+            }
+            return controlEventLoopGroup;
+        } finally {
+            eventLoopGroupLock.unlock();
+        }
+    }
+
+    /**
+     * @fn public void stop()
+     * @brief 모든 채널을 닫고 공유 EventLoopGroup 을 종료하는 함수 (프로그램 종료 시 호출)
+     */
+    public void stop() {
+        deleteAllRtpChannels();
+        deleteAllRtcpChannels();
+        deleteAllRtspChannels();
+        removeRegisterChannel();
+        closeHlsServer();
+
+        try {
+            eventLoopGroupLock.lock();
+
+            if (mediaEventLoopGroup != null) {
+                mediaEventLoopGroup.shutdownGracefully();
+                mediaEventLoopGroup = null;
+            }
+
+            if (controlEventLoopGroup != null) {
+                controlEventLoopGroup.shutdownGracefully();
+                controlEventLoopGroup = null;
+            }
+        } finally {
+            eventLoopGroupLock.unlock();
+        }
+
+        log.debug("| All event loop groups are closed.");
+    }
+
+    public int getMediaThreadCount() {
+        return mediaThreadFactory.getLiveThreadCount();
+    }
+
+    public int getControlThreadCount() {
+        return controlThreadFactory.getLiveThreadCount();
+    }
+
+    public int getTotalCreatedThreadCount() {
+        return mediaThreadFactory.getTotalCreatedThreadCount() + controlThreadFactory.getTotalCreatedThreadCount();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
     // Register 버튼 클릭 시 호출
     public void addRegisterChannel() {
         if (rtspRegisterNettyChannel != null) {
@@ -77,6 +284,44 @@ public class NettyChannelManager {
 
     ////////////////////////////////////////////////////////////////////////////////
 
+    // HLS_SERVER 가 true 이면 프로그램 시작 시 호출
+    public void openHlsServer() {
+        if (hlsNettyServer != null) {
+            return;
+        }
+
+        ConfigManager configManager = AppInstance.getInstance().getConfigManager();
+        HlsNettyServer curHlsNettyServer = new HlsNettyServer(configManager.getHlsServerPort());
+        if (!curHlsNettyServer.start()) {
+            log.warn("| Fail to open the hls server. Playback will start after the mp4 conversion. (port={})", configManager.getHlsServerPort());
+            return;
+        }
+
+        hlsNettyServer = curHlsNettyServer;
+        log.debug("| Success to open the hls server. (port={})", hlsNettyServer.getPort());
+    }
+
+    // 프로그램 종료 시 호출
+    public void closeHlsServer() {
+        if (hlsNettyServer == null) {
+            return;
+        }
+
+        hlsNettyServer.stop();
+        hlsNettyServer = null;
+    }
+
+    /**
+     * @fn public HlsNettyServer getHlsServer()
+     * @brief HLS 서버를 반환하는 함수
+     * @return HlsNettyServer, 사용하지 않거나 열지 못했으면 null 반환
+     */
+    public HlsNettyServer getHlsServer() {
+        return hlsNettyServer;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
     // Register 200 OK 응답 호출 시 생성되는 Rtsp Response 수신 채널
     public RtspNettyChannel openRtspChannel(String rtspUnitId, String ip, int port) {
         try {
@@ -145,15 +390,16 @@ public class NettyChannelManager {
             rtspChannelMapLock.lock();
 
             if (!rtspChannelMap.isEmpty()) {
-                for (Map.Entry<String, RtspNettyChannel> entry : rtspChannelMap.entrySet()) {
-                    RtspNettyChannel rtspNettyChannel = entry.getValue();
+                Iterator<Map.Entry<String, RtspNettyChannel>> iterator = rtspChannelMap.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    RtspNettyChannel rtspNettyChannel = iterator.next().getValue();
                     if (rtspNettyChannel == null) {
                         continue;
                     }
 
                     rtspNettyChannel.closeChannel();
                     rtspNettyChannel.stop();
-                    rtspChannelMap.remove(entry.getKey());
+                    iterator.remove();
                 }
 
                 log.debug("| Success to close all rtsp channel(s).");
@@ -179,28 +425,30 @@ public class NettyChannelManager {
 
     ////////////////////////////////////////////////////////////////////////////////
 
-    public void openRtpChannel(String rtspUnitId, String ip, int port) {
+    public RtpNettyChannel openRtpChannel(String rtspUnitId, String ip, int port) {
         try {
             rtpChannelMapLock.lock();
 
             if (rtpChannelMap.get(rtspUnitId) != null) {
                 log.trace("| ({}) Fail to add the rtp channel. Key is duplicated.", rtspUnitId);
-                return;
+                return null;
             }
 
-            RtpNettyChannel rtpNettyChannel = new RtpNettyChannel(rtspUnitId, ip, port);
+            RtpNettyChannel rtpNettyChannel = new RtpNettyChannel(rtspUnitId, ip, port, getRtpSocketCount());
             rtpNettyChannel.run();
 
             Channel channel = rtpNettyChannel.start();
             if (channel == null) {
                 log.warn("| ({}) Fail to add the rtp channel.", rtspUnitId);
-                return;
+                return null;
             }
 
             rtpChannelMap.putIfAbsent(rtspUnitId, rtpNettyChannel);
-            log.debug("| ({}) Success to add rtp channel.", rtspUnitId);
+            log.debug("| ({}) Success to add rtp channel. (socketCount={})", rtspUnitId, rtpNettyChannel.getChannelCount());
+            return rtpNettyChannel;
         } catch (Exception e) {
             log.warn("| ({}) Fail to add rtp channel (ip={}, port={}).", rtspUnitId, ip, port, e);
+            return null;
         } finally {
             rtpChannelMapLock.unlock();
         }
@@ -232,15 +480,16 @@ public class NettyChannelManager {
         try {
             rtpChannelMapLock.lock();
 
-            if (!rtspChannelMap.isEmpty()) {
-                for (Map.Entry<String, RtpNettyChannel> entry : rtpChannelMap.entrySet()) {
-                    RtpNettyChannel rtpNettyChannel = entry.getValue();
+            if (!rtpChannelMap.isEmpty()) {
+                Iterator<Map.Entry<String, RtpNettyChannel>> iterator = rtpChannelMap.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    RtpNettyChannel rtpNettyChannel = iterator.next().getValue();
                     if (rtpNettyChannel == null) {
                         continue;
                     }
 
                     rtpNettyChannel.stop();
-                    rtpChannelMap.remove(entry.getKey());
+                    iterator.remove();
                 }
 
                 log.debug("| Success to close all rtp channel(s).");
@@ -336,15 +585,16 @@ public class NettyChannelManager {
             rtcpChannelMapLock.lock();
 
             if (!rtcpChannelMap.isEmpty()) {
-                for (Map.Entry<String, RtcpNettyChannel> entry : rtcpChannelMap.entrySet()) {
-                    RtcpNettyChannel rtcpNettyChannel = entry.getValue();
+                Iterator<Map.Entry<String, RtcpNettyChannel>> iterator = rtcpChannelMap.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    RtcpNettyChannel rtcpNettyChannel = iterator.next().getValue();
                     if (rtcpNettyChannel == null) {
                         continue;
                     }
 
                     rtcpNettyChannel.closeChannel();
                     rtcpNettyChannel.stop();
-                    rtcpChannelMap.remove(entry.getKey());
+                    iterator.remove();
                 }
 
                 log.debug("| Success to close all rtcp channel(s).");
@@ -0,0 +1,45 @@
+package com.rtsp.client.media.netty.base;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @class public class NettyThreadFactory extends DefaultThreadFactory
+ * @brief EventLoopGroup 이 생성한 스레드 중 살아있는 스레드 수를 세는 ThreadFactory class
+ */
+public class NettyThreadFactory extends DefaultThreadFactory {
+
+    private final AtomicInteger liveThreadCount = new AtomicInteger(0);
+    private final AtomicInteger totalCreatedThreadCount = new AtomicInteger(0);
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public NettyThreadFactory(String poolName) {
+        super(poolName);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    protected Thread newThread(Runnable r, String name) {
+        totalCreatedThreadCount.incrementAndGet();
+        return super.newThread(() -> {
+            liveThreadCount.incrementAndGet();
+            try {
+                r.run();
+            } finally {
+                liveThreadCount.decrementAndGet();
+            }
+        }, name);
+    }
+
+    public int getLiveThreadCount() {
+        return liveThreadCount.get();
+    }
+
+    public int getTotalCreatedThreadCount() {
+        return totalCreatedThreadCount.get();
+    }
+
+}
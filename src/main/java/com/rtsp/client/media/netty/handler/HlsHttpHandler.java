@@ -0,0 +1,177 @@
+package com.rtsp.client.media.netty.handler;
+
+import com.rtsp.client.file.base.FileStream;
+import com.rtsp.client.media.netty.module.HlsNettyServer;
+import com.rtsp.client.media.netty.module.base.HlsSession;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @class public class HlsHttpHandler extends SimpleChannelInboundHandler<FullHttpRequest>
+ * @brief HlsNettyServer 에 공개된 세션의 M3U8 과 TS 세그먼트를 HTTP 로 보내는 handler
+ *
+ * GET /<name>.m3u8 : 쓰기가 끝난 세그먼트로 만든 M3U8
+ * GET /<name>/<index>.ts : TS 세그먼트 (메모리에 있으면 저장소의 chunk 를, 파일이면 FileRegion 을 복사 없이 보낸다.)
+ * HEAD 는 같은 헤더만 보내고, 그 외의 method 는 405 를 보낸다.
+ */
+public class HlsHttpHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+    private static final Logger logger = LoggerFactory.getLogger(HlsHttpHandler.class);
+
+    private static final String PLAYLIST_CONTENT_TYPE = "application/vnd.apple.mpegurl";
+    private static final String SEGMENT_CONTENT_TYPE = "video/mp2t";
+
+    private final HlsNettyServer hlsNettyServer;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public HlsHttpHandler(HlsNettyServer hlsNettyServer) {
+        this.hlsNettyServer = hlsNettyServer;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+        if (!request.decoderResult().isSuccess()) {
+            sendError(ctx, request, HttpResponseStatus.BAD_REQUEST);
+            return;
+        }
+
+        HttpMethod method = request.method();
+        if (!HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method)) {
+            sendError(ctx, request, HttpResponseStatus.METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        String path = new QueryStringDecoder(request.uri()).path();
+        if (path.endsWith(HlsSession.PLAYLIST_EXTENSION)) {
+            String name = path.substring(1, path.length() - HlsSession.PLAYLIST_EXTENSION.length());
+            sendPlaylist(ctx, request, hlsNettyServer.getSession(name));
+            return;
+        }
+
+        // /<name>/<index>.ts
+        int separator = path.lastIndexOf('/');
+        if (separator > 1 && path.endsWith(HlsSession.SEGMENT_EXTENSION)) {
+            HlsSession hlsSession = hlsNettyServer.getSession(path.substring(1, separator));
+            int index;
+            try {
+                index = Integer.parseInt(path.substring(separator + 1, path.length() - HlsSession.SEGMENT_EXTENSION.length()));
+            } catch (NumberFormatException e) {
+                index = -1;
+            }
+            sendSegment(ctx, request, hlsSession, index);
+            return;
+        }
+
+        sendError(ctx, request, HttpResponseStatus.NOT_FOUND);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        // 재생기가 세그먼트를 받는 중에 연결을 끊는 경우 (seek, 종료)
+        logger.debug("HlsHttpHandler.exceptionCaught (remote={}, cause={})", ctx.channel().remoteAddress(), cause.toString());
+        ctx.close();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private void sendPlaylist(ChannelHandlerContext ctx, FullHttpRequest request, HlsSession hlsSession) {
+        if (hlsSession == null) {
+            sendError(ctx, request, HttpResponseStatus.NOT_FOUND);
+            return;
+        }
+
+        byte[] playlist = hlsSession.buildPlaylist().getBytes(StandardCharsets.UTF_8);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                HttpMethod.HEAD.equals(request.method()) ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(playlist));
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, PLAYLIST_CONTENT_TYPE);
+        // 재생기가 다시 요청할 때마다 새로 받은 세그먼트를 넣어야 하므로 캐시하지 않는다.
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, HttpHeaderValues.NO_CACHE);
+        HttpUtil.setContentLength(response, playlist.length);
+        send(ctx, request, response);
+    }
+
+    private void sendSegment(ChannelHandlerContext ctx, FullHttpRequest request, HlsSession hlsSession, int index) {
+        FileStream segment = hlsSession == null ? null : hlsSession.getSegment(index);
+        if (segment == null) {
+            sendError(ctx, request, HttpResponseStatus.NOT_FOUND);
+            return;
+        }
+
+        long length = segment.getTotalDataSize();
+        ByteBuf content = HttpMethod.HEAD.equals(request.method()) ?
+                Unpooled.EMPTY_BUFFER : hlsSession.getFileManager().retainedTsBuffer(segment);
+        if (content != null) {
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content);
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, SEGMENT_CONTENT_TYPE);
+            HttpUtil.setContentLength(response, length);
+            send(ctx, request, response);
+            return;
+        }
+
+        File file = new File(segment.getFilePath());
+        if (!file.isFile()) {
+            sendError(ctx, request, HttpResponseStatus.NOT_FOUND);
+            return;
+        }
+
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, SEGMENT_CONTENT_TYPE);
+        HttpUtil.setContentLength(response, length);
+        boolean isKeepAlive = setKeepAlive(request, response);
+
+        ctx.write(response);
+        ctx.write(new DefaultFileRegion(file, 0, length));
+        ChannelFuture future = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        if (!isKeepAlive) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    private void sendError(ChannelHandlerContext ctx, FullHttpRequest request, HttpResponseStatus status) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+        HttpUtil.setContentLength(response, 0);
+        logger.debug("Fail to process the hls request. (method={}, uri={}, status={})", request.method(), request.uri(), status);
+        send(ctx, request, response);
+    }
+
+    private void send(ChannelHandlerContext ctx, FullHttpRequest request, FullHttpResponse response) {
+        boolean isKeepAlive = setKeepAlive(request, response);
+        ChannelFuture future = ctx.writeAndFlush(response);
+        if (!isKeepAlive) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    private static boolean setKeepAlive(FullHttpRequest request, HttpResponse response) {
+        boolean isKeepAlive = HttpUtil.isKeepAlive(request);
+        HttpUtil.setKeepAlive(response, isKeepAlive);
+        return isKeepAlive;
+    }
+
+}
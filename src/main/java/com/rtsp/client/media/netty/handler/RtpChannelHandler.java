@@ -3,7 +3,7 @@ package com.rtsp.client.media.netty.handler;
 import com.rtsp.client.media.module.StreamReceiver;
 import com.rtsp.client.media.netty.module.RtspManager;
 import com.rtsp.client.media.netty.module.base.RtspUnit;
-import com.rtsp.client.protocol.RtpPacket;
+import com.rtsp.client.protocol.RtpHeaderView;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -13,14 +13,25 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.charset.StandardCharsets;
 
+/**
+ * @class public class RtpChannelHandler extends SimpleChannelInboundHandler<DatagramPacket>
+ * @brief RtpChannelHandler class
+ * 수신한 Datagram 을 byte[] 로 복사하지 않고 RtpHeaderView 로 ByteBuf 에서 바로 RTP 헤더를 파싱한다.
+ * TS 데이터는 원본 ByteBuf 의 retained slice 로 TS 버퍼에 전달되며, 소비자(StreamReceiver)가 release 한다.
+ */
 public class RtpChannelHandler extends SimpleChannelInboundHandler<DatagramPacket> {
 
     private static final Logger logger = LoggerFactory.getLogger(RtpChannelHandler.class);
 
+    private static final byte[] M3U8_FILE_HEADER_BYTES = StreamReceiver.M3U8_FILE_HEADER.getBytes(StandardCharsets.UTF_8);
+
     private final String rtspUnitId;
     private final String ip;
     private final int port;
 
+    // 핸들러는 채널의 EventLoop 스레드에서만 호출되므로 헤더 뷰를 재사용한다.
+    private final RtpHeaderView rtpHeaderView = new RtpHeaderView();
+
     ////////////////////////////////////////////////////////////////////////////////
 
     public RtpChannelHandler(String rtspUnitId, String ip, int port) {
@@ -45,26 +56,61 @@ public class RtpChannelHandler extends SimpleChannelInboundHandler<DatagramPacke
             }
 
             int readBytes = buf.readableBytes();
-            if (buf.readableBytes() <= 0) {
+            if (readBytes <= 0) {
                 return;
             }
 
-            byte[] data = new byte[readBytes];
-            buf.getBytes(0, data);
-
-            String dataStr = new String(data, StandardCharsets.UTF_8);
-            if (dataStr.startsWith(StreamReceiver.M3U8_FILE_HEADER)) {
+            int readerIndex = buf.readerIndex();
+            if (isM3u8Data(buf, readerIndex, readBytes)) {
+                // M3U8 은 세션 당 한 번만 수신되므로 byte[] 로 복사해서 전달
+                byte[] data = new byte[readBytes];
+                buf.getBytes(readerIndex, data);
                 rtspUnit.offerToM3U8Buffer(data);
-            } else {
-                RtpPacket rtpPacket = new RtpPacket(data, readBytes);
-                data = rtpPacket.getPayload();
-                rtspUnit.offerToTsBuffer(data);
+                return;
             }
+
+            if (!rtpHeaderView.wrap(buf, readerIndex, readBytes)) {
+                logger.trace("({}) Fail to parse the rtp header. ({})", rtspUnitId, rtpHeaderView);
+                return;
+            }
+
+            int payloadLength = rtpHeaderView.getPayloadLength();
+            if (payloadLength <= 0) {
+                return;
+            }
+
+            // Datagram 은 channelRead0 종료 후 자동으로 release 되므로 payload slice 를 retain 해서 넘긴다.
+            rtspUnit.offerRtpPayload(
+                    rtpHeaderView.getSequenceNumber(),
+                    rtpHeaderView.getTimeStamp(),
+                    buf.retainedSlice(rtpHeaderView.getPayloadOffset(), payloadLength)
+            );
         } catch (Exception e) {
             logger.warn("RtpChannelHandler.channelRead0.Exception", e);
         }
     }
 
+    /**
+     * @fn static boolean isM3u8Data(ByteBuf buf, int index, int length)
+     * @brief 데이터가 M3U8 헤더(#EXTM3U)로 시작하는지 byte 단위로 비교하는 함수
+     * @param buf 수신 데이터
+     * @param index 데이터 시작 위치
+     * @param length 데이터 길이
+     * @return M3U8 데이터이면 true, 아니면 false 반환
+     */
+    static boolean isM3u8Data(ByteBuf buf, int index, int length) {
+        if (length < M3U8_FILE_HEADER_BYTES.length) {
+            return false;
+        }
+
+        for (int i = 0; i < M3U8_FILE_HEADER_BYTES.length; i++) {
+            if (buf.getByte(index + i) != M3U8_FILE_HEADER_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
         logger.warn("({}) RtpChannelHandler is inactive.", rtspUnitId);
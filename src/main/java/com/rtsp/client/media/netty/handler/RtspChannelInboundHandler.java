@@ -2,6 +2,7 @@ package com.rtsp.client.media.netty.handler;
 
 import com.fsm.module.StateHandler;
 import com.rtsp.client.config.ConfigManager;
+import com.rtsp.client.ffmpeg.Mp4ConversionService;
 import com.rtsp.client.fsm.RtspEvent;
 import com.rtsp.client.fsm.RtspState;
 import com.rtsp.client.gui.GuiManager;
@@ -23,6 +24,7 @@ import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.DefaultLastHttpContent;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.rtsp.RtspHeaderNames;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import javafx.scene.media.MediaPlayer;
 import javafx.util.Duration;
 import org.slf4j.Logger;
@@ -30,6 +32,9 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -41,6 +46,13 @@ public class RtspChannelInboundHandler extends ChannelInboundHandlerAdapter {
 
     private static final Logger logger = LoggerFactory.getLogger(RtspChannelInboundHandler.class);
 
+    private static final long STREAM_RECEIVER_STOP_TIMEOUT = 1000; // ms
+    // 소비자가 멈추지 않으면 STREAM_RECEIVER_STOP_TIMEOUT 씩 다시 기다리는 횟수
+    private static final int STREAM_RECEIVER_STOP_RETRY_COUNT = 5;
+
+    // TEARDOWN 후 소비자가 멈출 때까지 기다리고 RtspUnit 을 정리하는 스레드 (control EventLoop 를 막지 않도록 분리한다.)
+    private static final ExecutorService STOP_EXECUTOR = Executors.newSingleThreadExecutor(new DefaultThreadFactory("rtsp-stop", true));
+
     private final String name;
 
     private final String rtspUnitId; // rtspUnitId
@@ -63,10 +75,11 @@ public class RtspChannelInboundHandler extends ChannelInboundHandlerAdapter {
                 configManager.getStreamThreadPoolSize()
         );
 
+        // 한 번 실행되면 stopJob 으로 멈출 때까지 버퍼를 기다리며 소비한다.
         videoPlayJob = new StreamReceiver(
                 StreamReceiver.class.getSimpleName() + "_" + rtspUnitId,
-                1, 1, TimeUnit.MILLISECONDS,
-                1, 1, true
+                0, 1, TimeUnit.MILLISECONDS,
+                1, 1, false
         );
 
         //logger.debug("({}) RtspChannelHandler is created. (listenIp={}, listenRtspPort={})", name, listenIp, listenRtspPort);
@@ -347,9 +360,14 @@ public class RtspChannelInboundHandler extends ChannelInboundHandlerAdapter {
                             }
 
                             ServiceManager.getInstance().getScheduleManager().stopJob(RtspUnit.VIDEO_JOB_KEY, videoPlayJob);
-
                             GuiManager.getInstance().getControlPanel().applyStopButtonStatus();
-                            RtspManager.getInstance().clearRtspUnit(true, false);
+                            // 버퍼를 비우기 전에 소비자가 멈출 때까지 기다린다. (다른 RTSP 응답을 막지 않도록 EventLoop 밖에서 기다린다.)
+                            CompletableFuture.supplyAsync(this::awaitStreamReceiverStop, STOP_EXECUTOR)
+                                    .thenAccept(isStopped -> clearStoppedRtspUnit(rtspUnit, isStopped))
+                                    .exceptionally(e -> {
+                                        logger.warn("({}) ({}) Fail to clear the rtsp unit after TEARDOWN.", name, rtspUnit.getRtspUnitId(), e);
+                                        return null;
+                                    });
                         } else {
                             logger.warn("({}) ({}) () Fail to process STOP. Status code is not HttpResponseStatus.OK.code(). (code={})", name, rtspUnit.getRtspUnitId(), res.status().code());
                             rtspStateHandler.fire(
@@ -368,6 +386,44 @@ public class RtspChannelInboundHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * @fn private boolean awaitStreamReceiverStop()
+     * @brief 소비자(StreamReceiver)가 멈출 때까지 기다리는 함수 (STOP_EXECUTOR 에서 실행)
+     * @return 멈추면 true, 재시도 횟수 안에 멈추지 않으면 false 반환
+     */
+    private boolean awaitStreamReceiverStop() {
+        for (int i = 0; i < STREAM_RECEIVER_STOP_RETRY_COUNT; i++) {
+            if (videoPlayJob.awaitStop(STREAM_RECEIVER_STOP_TIMEOUT)) {
+                return true;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @fn private void clearStoppedRtspUnit(RtspUnit rtspUnit, boolean isStopped)
+     * @brief TEARDOWN 후 MP4 변환을 취소하고 RtspUnit 을 정리하는 함수
+     * 소비자가 멈추지 않았으면 아직 버퍼와 TS 파일을 사용하고 있으므로 RtspUnit 은 정리하지 않는다.
+     * @param rtspUnit RtspUnit
+     * @param isStopped 소비자가 멈췄는지 여부
+     */
+    private void clearStoppedRtspUnit(RtspUnit rtspUnit, boolean isStopped) {
+        // 세그먼트를 지우기 전에 아직 끝나지 않은 MP4 변환을 취소한다.
+        Mp4ConversionService.getInstance().cancel(rtspUnit.getRtspUnitId());
+
+        if (!isStopped) {
+            logger.warn("({}) ({}) Fail to clear the rtsp unit. StreamReceiver is not stopped. (timeout={}ms)",
+                    name, rtspUnit.getRtspUnitId(), STREAM_RECEIVER_STOP_TIMEOUT * STREAM_RECEIVER_STOP_RETRY_COUNT);
+            return;
+        }
+
+        RtspManager.getInstance().clearRtspUnit(true, false);
+        logger.debug("({}) ({}) Success to clear the rtsp unit after TEARDOWN.", name, rtspUnit.getRtspUnitId());
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
         //logger.warn("({}) RtspChannelHandler is inactive.", name);
@@ -0,0 +1,147 @@
+package com.rtsp.client.media.netty.module;
+
+import com.rtsp.client.media.netty.NettyChannelManager;
+import com.rtsp.client.media.netty.handler.HlsHttpHandler;
+import com.rtsp.client.media.netty.module.base.HlsSession;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @class public class HlsNettyServer
+ * @brief 받은 M3U8 과 TS 세그먼트를 HTTP(HLS)로 제공하는 127.0.0.1 전용 서버
+ * JavaFX Media 는 HTTP 의 HLS 를 재생할 수 있으므로, MP4 변환을 기다리지 않고 첫 세그먼트를 받은 후부터 재생할 수 있다.
+ * 세션은 publish 로 공개하고, 세션이 끝나면 unpublish 로 내린다. 요청은 control EventLoopGroup 에서 처리한다.
+ */
+public class HlsNettyServer {
+
+    private static final Logger log = LoggerFactory.getLogger(HlsNettyServer.class);
+
+    public static final String LOOPBACK_IP = "127.0.0.1";
+    // 요청은 GET / HEAD 만 받으므로 body 는 필요 없다.
+    private static final int MAX_REQUEST_SIZE = 8192;
+
+    private final int port;
+    private final Map<String, HlsSession> sessionMap = new ConcurrentHashMap<>();
+
+    private Channel serverChannel = null;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public HlsNettyServer(int port) {
+        this.port = port;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public boolean start()
+     * @brief 127.0.0.1 에 HTTP 서버를 바인딩하는 함수 (port 가 0 이면 비어있는 포트를 사용한다.)
+     * @return 성공 시 true, 실패 시 false 반환
+     */
+    public boolean start() {
+        if (serverChannel != null) {
+            return true;
+        }
+
+        EventLoopGroup eventLoopGroup = NettyChannelManager.getInstance().getControlEventLoopGroup();
+        ServerBootstrap serverBootstrap = new ServerBootstrap();
+        serverBootstrap.group(eventLoopGroup)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_REUSEADDR, true)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    public void initChannel(final SocketChannel ch) {
+                        final ChannelPipeline pipeline = ch.pipeline();
+                        pipeline.addLast(new HttpServerCodec());
+                        pipeline.addLast(new HttpObjectAggregator(MAX_REQUEST_SIZE));
+                        pipeline.addLast(new HlsHttpHandler(HlsNettyServer.this));
+                    }
+                });
+
+        try {
+            serverChannel = serverBootstrap.bind(LOOPBACK_IP, port).sync().channel();
+            log.debug("Success to start the hls server. (ip={}, port={})", LOOPBACK_IP, getPort());
+            return true;
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while starting the hls server. (ip={}, port={})", LOOPBACK_IP, port);
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.warn("Fail to start the hls server. (ip={}, port={})", LOOPBACK_IP, port, e);
+            return false;
+        }
+    }
+
+    public void stop() {
+        sessionMap.clear();
+        if (serverChannel != null) {
+            serverChannel.close();
+            serverChannel = null;
+            log.debug("Success to stop the hls server. (ip={}, port={})", LOOPBACK_IP, port);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public String publish(HlsSession hlsSession)
+     * @brief 세션을 공개하는 함수 (같은 이름의 세션이 있으면 바꾼다.)
+     * @param hlsSession HlsSession
+     * @return 세션의 M3U8 URL
+     */
+    public String publish(HlsSession hlsSession) {
+        sessionMap.put(hlsSession.getName(), hlsSession);
+        String url = getPlaylistUrl(hlsSession);
+        log.debug("Success to publish the hls session. (url={})", url);
+        return url;
+    }
+
+    public void unpublish(String name) {
+        if (sessionMap.remove(name) != null) {
+            log.debug("Success to unpublish the hls session. (name={})", name);
+        }
+    }
+
+    public HlsSession getSession(String name) {
+        return sessionMap.get(name);
+    }
+
+    public String getPlaylistUrl(HlsSession hlsSession) {
+        return "http://" + LOOPBACK_IP + ":" + getPort() + hlsSession.getPlaylistPath();
+    }
+
+    /**
+     * @fn public int getPort()
+     * @brief 바인딩한 포트를 반환하는 함수 (설정한 포트가 0 이면 실제로 할당된 포트)
+     * @return 포트, 시작하지 않았으면 설정한 포트 반환
+     */
+    public int getPort() {
+        Channel channel = serverChannel;
+        if (channel == null) {
+            return port;
+        }
+        return ((InetSocketAddress) channel.localAddress()).getPort();
+    }
+
+    public boolean isStarted() {
+        return serverChannel != null;
+    }
+
+}
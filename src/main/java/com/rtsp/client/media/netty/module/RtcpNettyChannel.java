@@ -1,13 +1,10 @@
 package com.rtsp.client.media.netty.module;
 
-import com.rtsp.client.config.ConfigManager;
+import com.rtsp.client.media.netty.NettyChannelManager;
 import com.rtsp.client.media.netty.handler.RtcpChannelHandler;
-import com.rtsp.client.service.AppInstance;
 import io.netty.bootstrap.Bootstrap;
-import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.DatagramChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,7 +20,6 @@ public class RtcpNettyChannel { // > UDP
     private static final Logger logger = LoggerFactory.getLogger(RtcpNettyChannel.class);
 
     private Bootstrap b;
-    private NioEventLoopGroup group;
 
     /*메시지 수신용 채널 */
     private Channel serverChannel;
@@ -43,44 +39,30 @@ public class RtcpNettyChannel { // > UDP
     ////////////////////////////////////////////////////////////////////////////////
 
     public void run (String ip, int port) {
-        ConfigManager configManager = AppInstance.getInstance().getConfigManager();
-        int nioThreadCount = configManager.getStreamThreadPoolSize();
-        int sendBufSize = configManager.getSendBufSize();
-        int recvBufSize = configManager.getRecvBufSize();
-
-        group = new NioEventLoopGroup(nioThreadCount);
-        b = new Bootstrap();
-        b.group(group)
-                .channel(NioDatagramChannel.class)
-                .option(ChannelOption.SO_BROADCAST, false)
-                .option(ChannelOption.SO_SNDBUF, sendBufSize)
-                .option(ChannelOption.SO_RCVBUF, recvBufSize)
-                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
-                .option(ChannelOption.SO_REUSEADDR, true)
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 1000)
-                .handler(new ChannelInitializer<NioDatagramChannel>() {
-                    @Override
-                    protected void initChannel(NioDatagramChannel socketChannel) {
-                        final ChannelPipeline pipeline = socketChannel.pipeline();
-                        pipeline.addLast(
-                                new RtcpChannelHandler(
-                                        rtspUnitId,
-                                        ip,
-                                        port
-                                )
-                        );
-                    }
-                });
+        b = NettyChannelManager.getInstance().newMediaBootstrap();
+        b.handler(new ChannelInitializer<DatagramChannel>() {
+            @Override
+            protected void initChannel(DatagramChannel socketChannel) {
+                final ChannelPipeline pipeline = socketChannel.pipeline();
+                pipeline.addLast(
+                        new RtcpChannelHandler(
+                                rtspUnitId,
+                                ip,
+                                port
+                        )
+                );
+            }
+        });
     }
 
     /**
      * @fn public void stop()
      * @brief Netty Channel 을 종료하는 함수
+     * 공유 EventLoopGroup 은 NettyChannelManager 가 관리하므로 종료하지 않는다.
      */
     public void stop () {
-        if (group != null) {
-            group.shutdownGracefully();
-        }
+        closeChannel();
+        b = null;
     }
 
     ////////////////////////////////////////////////////////////////////////////////
@@ -1,18 +1,18 @@
 package com.rtsp.client.media.netty.module;
 
-import com.rtsp.client.config.ConfigManager;
+import com.rtsp.client.media.netty.NettyChannelManager;
 import com.rtsp.client.media.netty.handler.RtpChannelHandler;
-import com.rtsp.client.service.AppInstance;
 import io.netty.bootstrap.Bootstrap;
-import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.socket.DatagramChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class RtpNettyChannel {
 
@@ -21,38 +21,44 @@ public class RtpNettyChannel {
     private final String rtspUnitId;
     private final String ip;
     private final int port;
+    private final int socketCount;
 
     private Channel channel = null;
+    // SO_REUSEPORT 모드에서 같은 포트에 바인딩된 모든 채널 (channel 포함)
+    private final List<Channel> channelList = new ArrayList<>();
     private Bootstrap bootstrap;
 
     ////////////////////////////////////////////////////////////////////////////////
 
     public RtpNettyChannel(String rtspUnitId, String ip, int port) {
+        this(rtspUnitId, ip, port, 1);
+    }
+
+    /**
+     * @fn public RtpNettyChannel(String rtspUnitId, String ip, int port, int socketCount)
+     * @brief RtpNettyChannel 생성자 함수
+     * @param socketCount 같은 포트에 SO_REUSEPORT 로 바인딩할 소켓 개수 (epoll transport 에서만 2 이상 사용)
+     */
+    public RtpNettyChannel(String rtspUnitId, String ip, int port, int socketCount) {
         this.rtspUnitId = rtspUnitId;
         this.ip = ip;
         this.port = port;
+        this.socketCount = Math.max(1, socketCount);
     }
 
     public void run () {
-        ConfigManager configManager = AppInstance.getInstance().getConfigManager();
-
-        bootstrap = new Bootstrap();
-        EventLoopGroup eventLoopGroup = new NioEventLoopGroup(configManager.getStreamThreadPoolSize());
-        bootstrap.group(eventLoopGroup)
-                .channel(NioDatagramChannel.class)
-                .option(ChannelOption.SO_BROADCAST, false)
-                .option(ChannelOption.SO_SNDBUF, configManager.getSendBufSize())
-                .option(ChannelOption.SO_RCVBUF, configManager.getRecvBufSize())
-                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
-                .option(ChannelOption.SO_REUSEADDR, true)
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 1000)
-                .handler(new ChannelInitializer<NioDatagramChannel>() {
-                    @Override
-                    public void initChannel (final NioDatagramChannel ch) {
-                        final ChannelPipeline pipeline = ch.pipeline();
-                        pipeline.addLast(new RtpChannelHandler(rtspUnitId, ip, port));
-                    }
-                });
+        bootstrap = NettyChannelManager.getInstance().newMediaBootstrap();
+        if (socketCount > 1) {
+            // 커널이 flow 별로 소켓을 골라주므로 각 소켓은 서로 다른 EventLoop 에서 수신한다.
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        bootstrap.handler(new ChannelInitializer<DatagramChannel>() {
+            @Override
+            public void initChannel (final DatagramChannel ch) {
+                final ChannelPipeline pipeline = ch.pipeline();
+                pipeline.addLast(new RtpChannelHandler(rtspUnitId, ip, port));
+            }
+        });
     }
 
     public Channel start() {
@@ -69,32 +75,51 @@ public class RtpNettyChannel {
         }
 
         try {
-            ChannelFuture channelFuture = bootstrap.bind(address, port).sync();
-            if (channelFuture == null) {
-                log.warn("[{}] Fail to start the rtp channel. (ip={}, port={})", rtspUnitId, ip, port);
-                return null;
+            // Bootstrap.bind 는 EventLoopGroup.next() 로 EventLoop 를 돌아가며 할당한다.
+            for (int i = 0; i < socketCount; i++) {
+                ChannelFuture channelFuture = bootstrap.bind(address, port).sync();
+                if (channelFuture == null) {
+                    log.warn("[{}] Fail to start the rtp channel. (ip={}, port={})", rtspUnitId, ip, port);
+                    closeAllChannels();
+                    return null;
+                }
+
+                channelList.add(channelFuture.channel());
             }
 
-            channel = channelFuture.channel();
-            log.debug("[{}] Success to start the rtp channel. (ip={}, port={})", rtspUnitId, ip, port);
+            channel = channelList.get(0);
+            log.debug("[{}] Success to start the rtp channel. (ip={}, port={}, socketCount={})", rtspUnitId, ip, port, socketCount);
             return channel;
         } catch (Exception e) {
             log.warn("[{}] Fail to start the rtp channel. (ip={}, port={})", rtspUnitId, ip, port, e);
+            closeAllChannels();
             return null;
         }
     }
 
+    /**
+     * @fn public void stop()
+     * @brief RTP 채널을 닫는 함수 (공유 EventLoopGroup 은 NettyChannelManager 가 관리하므로 종료하지 않는다.)
+     */
     public void stop() {
+        bootstrap = null;
         if (channel == null) {
             log.warn("[{}] Fail to stop the rtp channel. (ip={}, port={})", rtspUnitId, ip, port);
             return;
         }
 
-        channel.close();
-        channel = null;
+        closeAllChannels();
         log.debug("[{}] Success to stop the rtp channel. (ip={}, port={})", rtspUnitId, ip, port);
     }
 
+    private void closeAllChannels() {
+        for (Channel curChannel : channelList) {
+            curChannel.close();
+        }
+        channelList.clear();
+        channel = null;
+    }
+
     public String getRtspUnitId() {
         return rtspUnitId;
     }
@@ -110,4 +135,8 @@ public class RtpNettyChannel {
     public Channel getChannel() {
         return channel;
     }
+
+    public int getChannelCount() {
+        return channelList.size();
+    }
 }
@@ -4,13 +4,13 @@ import com.fsm.module.StateHandler;
 import com.rtsp.client.config.ConfigManager;
 import com.rtsp.client.fsm.RtspEvent;
 import com.rtsp.client.fsm.RtspState;
+import com.rtsp.client.media.netty.NettyChannelManager;
 import com.rtsp.client.media.netty.handler.RtspChannelInboundHandler;
 import com.rtsp.client.media.netty.module.base.RtspUnit;
 import com.rtsp.client.service.AppInstance;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.DefaultHttpRequest;
@@ -31,7 +31,6 @@ public class RtspNettyChannel { // > TCP
     private static final Logger logger = LoggerFactory.getLogger(RtspNettyChannel.class);
 
     private Bootstrap b;
-    private EventLoopGroup eventLoopGroup;
 
     /*메시지 수신용 채널 */
     private Channel channel;
@@ -55,9 +54,8 @@ public class RtspNettyChannel { // > TCP
     public void run () {
         ConfigManager configManager = AppInstance.getInstance().getConfigManager();
 
-        eventLoopGroup = new NioEventLoopGroup(configManager.getStreamThreadPoolSize());
         b = new Bootstrap();
-        b.group(eventLoopGroup);
+        b.group(NettyChannelManager.getInstance().getControlEventLoopGroup());
         b.channel(NioSocketChannel.class)
                 .option(ChannelOption.SO_RCVBUF, configManager.getRecvBufSize())
                 .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
@@ -82,9 +80,13 @@ public class RtspNettyChannel { // > TCP
     /**
      * @fn public void stop()
      * @brief Netty Channel 을 종료하는 함수
+     * 공유 EventLoopGroup 은 NettyChannelManager 가 관리하므로 종료하지 않는다.
      */
     public void stop () {
-        eventLoopGroup.shutdownGracefully();
+        if (channel != null) {
+            closeChannel();
+        }
+        b = null;
     }
 
     ////////////////////////////////////////////////////////////////////////////////
@@ -192,6 +194,8 @@ public class RtspNettyChannel { // > TCP
                 RtspEvent.PLAY,
                 rtspUnit.getStateManager().getStateUnit(rtspUnit.getRtspStateUnitId())
         );
+        // 새 PLAY 의 RTP sequence number 는 이전과 이어지지 않을 수 있으므로 처음부터 다시 맞춘다.
+        rtspUnit.resetRtpReorderBuffer();
 
         DefaultHttpRequest request = new DefaultHttpRequest(RtspVersions.RTSP_1_0, RtspMethods.PLAY, rtspUnit.getUri());
         request.headers().set(RtspHeaderNames.CSEQ, String.valueOf(seqNum));
@@ -1,6 +1,7 @@
 package com.rtsp.client.media.netty.module;
 
 import com.rtsp.client.config.ConfigManager;
+import com.rtsp.client.media.netty.NettyChannelManager;
 import com.rtsp.client.media.netty.handler.RtspRegisterChannelHandler;
 import com.rtsp.client.protocol.register.RegisterRtspUnitReq;
 import com.rtsp.client.protocol.register.UnRegisterRtspUnitReq;
@@ -10,7 +11,6 @@ import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.channel.socket.nio.NioDatagramChannel;
 import org.slf4j.Logger;
@@ -45,9 +45,7 @@ public class RtspRegisterNettyChannel {
     public void run () {
         bootstrap = new Bootstrap();
         ConfigManager configManager = AppInstance.getInstance().getConfigManager();
-        EventLoopGroup eventLoopGroup = new NioEventLoopGroup(configManager.getStreamThreadPoolSize());
-
-        bootstrap.group(eventLoopGroup)
+        bootstrap.group(NettyChannelManager.getInstance().getControlEventLoopGroup())
                 .channel(NioDatagramChannel.class)
                 .option(ChannelOption.SO_BROADCAST, false)
                 .option(ChannelOption.SO_SNDBUF, configManager.getSendBufSize())
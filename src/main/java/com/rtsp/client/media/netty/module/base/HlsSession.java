@@ -0,0 +1,130 @@
+package com.rtsp.client.media.netty.module.base;
+
+import com.rtsp.client.file.RtspFileManager;
+import com.rtsp.client.file.base.FileStream;
+import io.lindstrom.m3u8.model.MediaSegment;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @class public class HlsSession
+ * @brief HlsNettyServer 가 제공하는 세션 하나의 M3U8 과 TS 세그먼트 정보를 가진 class
+ *
+ * 세그먼트 URI 는 M3U8 과 같은 이름의 디렉토리 아래의 인덱스로 바꾼다. (http://127.0.0.1:port/<name>.m3u8 -> <name>/<index>.ts)
+ * 쓰기가 끝난 세그먼트만 인덱스 순서대로 M3U8 에 넣고, 모두 받거나 수신이 끝나면 #EXT-X-ENDLIST 를 붙인다.
+ * 그 전까지는 EVENT playlist 이므로 재생기가 M3U8 을 다시 요청하면서 새로 받은 세그먼트를 이어서 재생한다.
+ */
+public class HlsSession {
+
+    public static final String PLAYLIST_EXTENSION = ".m3u8";
+    public static final String SEGMENT_EXTENSION = ".ts";
+
+    private final String name;
+    private final RtspFileManager fileManager;
+    private final List<MediaSegment> mediaSegmentList;
+    private final int targetDuration; // sec
+    private volatile boolean isFinished = false;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public HlsSession(String name, RtspFileManager fileManager, List<MediaSegment> mediaSegmentList) {
+        this.name = name;
+        this.fileManager = fileManager;
+        this.mediaSegmentList = mediaSegmentList;
+
+        double maxDuration = 1;
+        for (MediaSegment mediaSegment : mediaSegmentList) {
+            maxDuration = Math.max(maxDuration, mediaSegment.duration());
+        }
+        this.targetDuration = (int) Math.ceil(maxDuration);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public int getCompleteSegmentCount()
+     * @brief 첫 번째 세그먼트부터 쓰기가 끝난 세그먼트가 연속으로 몇 개인지 구하는 함수
+     * @return 세그먼트 개수
+     */
+    public int getCompleteSegmentCount() {
+        int count = 0;
+        while (count < mediaSegmentList.size() && fileManager.getCompleteTsFile(count) != null) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @fn public String buildPlaylist()
+     * @brief 쓰기가 끝난 세그먼트로 M3U8 을 만드는 함수
+     * @return M3U8 문자열
+     */
+    public String buildPlaylist() {
+        int completeSegmentCount = getCompleteSegmentCount();
+
+        StringBuilder playlist = new StringBuilder(128 + completeSegmentCount * 48);
+        playlist.append("#EXTM3U\n")
+                .append("#EXT-X-VERSION:3\n")
+                .append("#EXT-X-TARGETDURATION:").append(targetDuration).append('\n')
+                .append("#EXT-X-MEDIA-SEQUENCE:0\n")
+                .append("#EXT-X-PLAYLIST-TYPE:EVENT\n");
+        for (int i = 0; i < completeSegmentCount; i++) {
+            playlist.append("#EXTINF:").append(String.format(Locale.ROOT, "%.3f", mediaSegmentList.get(i).duration())).append(",\n")
+                    .append(name).append('/').append(i).append(SEGMENT_EXTENSION).append('\n');
+        }
+        if (isFinished || completeSegmentCount == mediaSegmentList.size()) {
+            playlist.append("#EXT-X-ENDLIST\n");
+        }
+        return playlist.toString();
+    }
+
+    /**
+     * @fn public FileStream getSegment(int index)
+     * @brief M3U8 에 넣은(쓰기가 끝난) 세그먼트를 반환하는 함수
+     * @param index 세그먼트 인덱스
+     * @return FileStream, 없거나 아직 쓰는 중이면 null 반환
+     */
+    public FileStream getSegment(int index) {
+        if (index < 0 || index >= mediaSegmentList.size()) {
+            return null;
+        }
+        return fileManager.getCompleteTsFile(index);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public String getName() {
+        return name;
+    }
+
+    public RtspFileManager getFileManager() {
+        return fileManager;
+    }
+
+    public String getPlaylistPath() {
+        return "/" + name + PLAYLIST_EXTENSION;
+    }
+
+    /**
+     * @fn public void setFinished()
+     * @brief 수신이 끝났음을 표시하는 함수 (받지 못한 세그먼트가 있어도 #EXT-X-ENDLIST 를 붙인다.)
+     */
+    public void setFinished() {
+        isFinished = true;
+    }
+
+    public boolean isFinished() {
+        return isFinished;
+    }
+
+    @Override
+    public String toString() {
+        return "HlsSession{" +
+                "name='" + name + '\'' +
+                ", segments=" + getCompleteSegmentCount() + "/" + mediaSegmentList.size() +
+                ", isFinished=" + isFinished +
+                '}';
+    }
+
+}
@@ -4,15 +4,25 @@ import com.fsm.StateManager;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.rtsp.client.config.ConfigManager;
+import com.rtsp.client.ffmpeg.Mp4ConversionService;
 import com.rtsp.client.file.RtspFileManager;
+import com.rtsp.client.file.base.RandomAccessIndex;
 import com.rtsp.client.fsm.RtspFsmManager;
+import com.rtsp.client.media.module.base.BoundedMediaBuffer;
+import com.rtsp.client.media.module.base.MediaMemoryBudget;
+import com.rtsp.client.media.module.base.RtpJitterEstimator;
+import com.rtsp.client.media.module.base.RtpReorderBuffer;
+import com.rtsp.client.media.module.base.TsHealthMonitor;
+import com.rtsp.client.media.module.base.TsPesReassembler;
 import com.rtsp.client.media.netty.NettyChannelManager;
+import com.rtsp.client.media.netty.module.HlsNettyServer;
 import com.rtsp.client.media.netty.module.RtspNettyChannel;
 import com.rtsp.client.media.sdp.SdpParser;
 import com.rtsp.client.media.sdp.base.Sdp;
 import com.rtsp.client.service.AppInstance;
-import com.rtsp.client.service.base.ConcurrentCyclicFIFO;
+import com.rtsp.client.service.base.SpscRingBuffer;
 import io.lindstrom.m3u8.model.MediaSegment;
+import io.netty.buffer.ByteBuf;
 import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +30,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @class public class RtspUnit
@@ -31,13 +42,14 @@ public class RtspUnit {
 
     public static final int MAX_SESSION_ID = 100000;
     public static final String VIDEO_JOB_KEY = "VIDEO_PLAY";
+    public static final int M3U8_BUFFER_CAPACITY = 16;
 
     private String uri = null;
     private final String rtspUnitId; // ID of the RTSP session
     private long sessionId; // ID of the session
     private final SdpParser sdpParser = new SdpParser();
 
-    private int congestionLevel = 0;
+    private int congestionLevel = 0; // RTCP fraction lost 로 정한 혼잡 단계
 
     private RtspNettyChannel rtspChannel;
     private final String targetIp;
@@ -61,8 +73,18 @@ public class RtspUnit {
     private boolean isPaused = false;
     private boolean isRegistered = false;
 
-    private final ConcurrentCyclicFIFO<byte[]> m3u8ReadBuffer = new ConcurrentCyclicFIFO<>();
-    private final ConcurrentCyclicFIFO<byte[]> tsReadBuffer = new ConcurrentCyclicFIFO<>();
+    // 생산자: Netty 수신 스레드 (reorder buffer lock 으로 직렬화), 소비자: StreamReceiver
+    private final SpscRingBuffer<byte[]> m3u8ReadBuffer = new SpscRingBuffer<>(M3U8_BUFFER_CAPACITY);
+    // RTP payload slices (retained), TS_BUFFER_MAX_PACKETS / TS_BUFFER_MAX_BYTES 를 넘으면 TS_BUFFER_OVERFLOW_POLICY 에 따라 버린다.
+    private final BoundedMediaBuffer tsReadBuffer;
+    // 수신한 RTP payload 를 sequence number 순서로 맞춰서 tsReadBuffer 로 보내는 버퍼
+    private final RtpReorderBuffer rtpReorderBuffer;
+    // 소비자(StreamReceiver)가 파일에 쓰기 전에 TS 패킷 상태를 반영한다.
+    private final TsHealthMonitor tsHealthMonitor = new TsHealthMonitor();
+    // 소비자(StreamReceiver)가 PES 헤더의 PTS 로 지금까지 받은 미디어 시간을 계산한다.
+    private final TsPesReassembler tsPesReassembler = new TsPesReassembler();
+    // 수신하면서 찾은 keyframe 의 시간과 TS 세그먼트 안의 위치, MP4 로 변환할 때 indexFilePath 에 저장한다. (SEGMENT_STORE=DISK, TS 파일과 함께 지운다.)
+    private final RandomAccessIndex randomAccessIndex = new RandomAccessIndex();
 
     private final RtspFileManager fileManager;
     private String fileNameOnly;
@@ -70,6 +92,7 @@ public class RtspUnit {
     private String m3u8FilePath;
     private String tsFilePath;
     private String mp4FilePath;
+    private String indexFilePath;
     private int tsFileLimit = 0;
     private List<MediaSegment> mediaSegmentList = null;
 
@@ -83,6 +106,22 @@ public class RtspUnit {
         this.fileManager = new RtspFileManager(rtspUnitId);
         rtspFsmManager.init(this);
 
+        ConfigManager configManager = AppInstance.getInstance().getConfigManager();
+        this.tsReadBuffer = new BoundedMediaBuffer(
+                configManager.getTsBufferMaxPackets(),
+                configManager.getTsBufferMaxBytes(),
+                configManager.getTsBufferOverflowPolicy(),
+                MediaMemoryBudget.getInstance()
+        );
+        this.rtpReorderBuffer = new RtpReorderBuffer(
+                configManager.getRtpReorderDepth(),
+                configManager.getRtpReorderMinLatency(),
+                configManager.getRtpReorderLatency(),
+                configManager.isRtpReorderAdaptive(),
+                RtpJitterEstimator.DEFAULT_CLOCK_RATE,
+                this::offerToTsBuffer
+        );
+
         logger.debug("({}) RtspUnit is created. (stateUnitId={}, targetIp={}, targetPort={})", rtspUnitId, rtspStateUnitId, targetIp, targetPort);
     }
 
@@ -96,6 +135,16 @@ public class RtspUnit {
 
     ////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * @fn public boolean isHlsPublished()
+     * @brief 이 세션의 세그먼트를 HLS 서버에서 제공하고 있는지 확인하는 함수
+     * @return 공개한 HLS 세션이 있으면 true 반환
+     */
+    public boolean isHlsPublished() {
+        HlsNettyServer hlsNettyServer = NettyChannelManager.getInstance().getHlsServer();
+        return hlsNettyServer != null && hlsNettyServer.getSession(String.valueOf(sessionId)) != null;
+    }
+
     public String getUri() {
         return uri;
     }
@@ -122,6 +171,7 @@ public class RtspUnit {
         m3u8FilePath = tempFileRootPath + fileNameOnly + ".m3u8";
         tsFilePath = tempFileRootPath + fileNameOnly + "%d.ts";
         mp4FilePath = tempFileRootPath + fileNameOnly + ".mp4";;
+        indexFilePath = tempFileRootPath + fileNameOnly + ".idx";
     }
 
     public List<MediaSegment> getMediaSegmentList() {
@@ -148,6 +198,10 @@ public class RtspUnit {
         return mp4FilePath;
     }
 
+    public String getIndexFilePath() {
+        return indexFilePath;
+    }
+
     public boolean isRegistered() {
         return isRegistered;
     }
@@ -246,8 +300,13 @@ public class RtspUnit {
         return rtspUnitId;
     }
 
+    /**
+     * @fn public int getCongestionLevel()
+     * @brief RTCP fraction lost 와 RTP 수신 지터로 정한 혼잡 단계 중 큰 값을 반환하는 함수
+     * @return 혼잡 단계 (0 ~ 4)
+     */
     public int getCongestionLevel() {
-        return congestionLevel;
+        return Math.max(congestionLevel, rtpReorderBuffer.getJitterCongestionLevel());
     }
 
     public void setCongestionLevel(int congestionLevel) {
@@ -299,8 +358,21 @@ public class RtspUnit {
 
     ////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * @fn public void clear(boolean isStopped)
+     * @brief 세션 상태를 초기화하고 세션 파일을 지우는 함수
+     * PAUSE(isStopped=false) 이면 수신 상태는 두고 파일만 지우며, HLS 세션이 공개되어 있으면 파일도 지우지 않는다.
+     * 파일을 지우면 아직 끝나지 않은 MP4 변환 작업은 먼저 취소한다.
+     * @param isStopped TEARDOWN 또는 세션 종료이면 true, PAUSE 이면 false
+     */
     public void clear(boolean isStopped) {
         if (isStopped) {
+            // 세그먼트를 지우기 전에 HLS 서버에서 내린다.
+            HlsNettyServer hlsNettyServer = NettyChannelManager.getInstance().getHlsServer();
+            if (hlsNettyServer != null) {
+                hlsNettyServer.unpublish(String.valueOf(sessionId));
+            }
+
             sessionId = 0;
             congestionLevel = 0;
             rtspChannel = null;
@@ -314,17 +386,40 @@ public class RtspUnit {
             isPaused = false;
             mediaSegmentList = null;
             rtpTimeoutStopWatch.reset();
+            // VIDEO_PLAY job 이 멈춘 후에 호출되므로 소비자 대신 버퍼를 비운다.
             m3u8ReadBuffer.clear();
-            tsReadBuffer.clear();
+            rtpReorderBuffer.clear();
+            releaseTsBuffer();
+            tsHealthMonitor.reset();
+            tsPesReassembler.reset();
+            randomAccessIndex.reset();
+        } else if (isHlsPublished()) {
+            // PAUSE 후 재생기가 M3U8 과 이미 받은 세그먼트를 다시 요청하므로 TEARDOWN 으로 세션을 내릴 때까지 지우지 않는다.
+            logger.debug("({}) Keep the session files while the hls session is published. (sessionId={})", rtspUnitId, sessionId);
+            return;
         }
 
+        // SEGMENT_STORE=MEMORY 이면 세그먼트가 메모리를 차지하고 있으므로 설정과 상관없이 지운다.
         ConfigManager configManager = AppInstance.getInstance().getConfigManager();
-        if (configManager.isDeleteM3u8()) {
+        boolean isMemorySegmentStore = fileManager.isMemorySegmentStore();
+        if (configManager.isDeleteM3u8() || configManager.isDeleteTs() || configManager.isDeleteMp4() || isMemorySegmentStore) {
+            // 변환 작업은 실행할 때 세그먼트를 읽고 MP4 파일을 쓰므로, 지우기 전에 TEARDOWN 과 같이 취소한다.
+            Mp4ConversionService.getInstance().cancel(rtspUnitId);
+        }
+
+        if (configManager.isDeleteM3u8() || isMemorySegmentStore) {
             fileManager.removeM3U8File();
         }
 
-        if (configManager.isDeleteTs()) {
+        if (configManager.isDeleteTs() || isMemorySegmentStore) {
             fileManager.removeAllTsFiles();
+            // index 는 TS 세그먼트 안의 위치를 가리키므로 세그먼트와 함께 지운다.
+            if (indexFilePath != null) {
+                File indexFile = new File(indexFilePath);
+                if (indexFile.exists() && indexFile.delete()) {
+                    logger.debug("({}) Success to delete the random access index file. (path={})", rtspUnitId, indexFilePath);
+                }
+            }
         }
 
         if (configManager.isDeleteMp4()) {
@@ -367,22 +462,130 @@ public class RtspUnit {
 
     ////////////////////////////////////////////////////////////////////////////////
 
-    public void offerToM3U8Buffer(byte[] data) {
-        m3u8ReadBuffer.offer(data);
+    /**
+     * @fn public synchronized void offerToM3U8Buffer(byte[] data)
+     * @brief M3U8 버퍼에 데이터를 추가하는 함수
+     * RTP 소켓이 여러 개이면 여러 스레드에서 호출될 수 있으므로 생산자를 직렬화한다.
+     * @param data M3U8 데이터
+     */
+    public synchronized void offerToM3U8Buffer(byte[] data) {
+        if (!m3u8ReadBuffer.offer(data)) {
+            logger.warn("({}) M3U8 buffer is full. Drop the data. (size={})", rtspUnitId, data.length);
+        }
     }
 
     public byte[] pollFromM3U8Buffer() {
         return m3u8ReadBuffer.poll();
     }
 
-    public void offerToTsBuffer(byte[] data) {
-        tsReadBuffer.offer(data);
+    /**
+     * @fn public byte[] pollFromM3U8Buffer(long timeout, TimeUnit unit) throws InterruptedException
+     * @brief M3U8 데이터가 들어올 때까지 최대 timeout 동안 기다렸다가 꺼내는 함수 (소비자 전용)
+     * @return 시간 안에 데이터가 들어오지 않으면 null 반환
+     */
+    public byte[] pollFromM3U8Buffer(long timeout, TimeUnit unit) throws InterruptedException {
+        return m3u8ReadBuffer.poll(timeout, unit);
+    }
+
+    /**
+     * @fn public void offerToTsBuffer(ByteBuf data, long arrivalTime)
+     * @brief TS 버퍼에 RTP payload 를 수신 시간과 함께 추가하는 함수
+     * 버퍼가 data 의 reference 를 소유하며, pollFromTsBuffer 로 가져간 쪽에서 release 해야 한다.
+     * 버퍼나 MEDIA_MEMORY_BUDGET 한도를 넘으면 TS_BUFFER_OVERFLOW_POLICY 에 따라 data 를 release 하고 버린다.
+     * @param data RTP payload (retained slice)
+     * @param arrivalTime RTP 패킷 수신 시간 (System.nanoTime())
+     */
+    public void offerToTsBuffer(ByteBuf data, long arrivalTime) {
+        int length = data.readableBytes();
+        if (!tsReadBuffer.offer(data, arrivalTime)) {
+            logger.trace("({}) TS buffer is full. Drop the data. (size={}, policy={})", rtspUnitId, length, tsReadBuffer.getOverflowPolicy());
+        }
+    }
+
+    /**
+     * @fn public void offerRtpPayload(int seq, long timeStamp, ByteBuf data)
+     * @brief 수신한 RTP payload 를 reorder buffer 를 거쳐서 sequence number 순서대로 TS 버퍼에 추가하는 함수
+     * RTP timestamp 와 수신 시간으로 지터를 계산하며, 지터는 reorder latency 와 혼잡 단계에 반영된다.
+     * @param seq RTP sequence number
+     * @param timeStamp RTP timestamp
+     * @param data RTP payload (retained slice)
+     */
+    public void offerRtpPayload(int seq, long timeStamp, ByteBuf data) {
+        rtpReorderBuffer.offer(seq, timeStamp, data);
+    }
+
+    /**
+     * @fn public void releaseExpiredRtpPayloads()
+     * @brief 빠진 패킷을 RTP_REORDER_LATENCY 이상 기다린 payload 를 TS 버퍼로 보내는 함수
+     */
+    public void releaseExpiredRtpPayloads() {
+        rtpReorderBuffer.releaseExpired();
     }
 
-    public byte[] pollFromTsBuffer() {
+    /**
+     * @fn public void flushRtpReorderBuffer()
+     * @brief Reorder buffer 에서 빠진 패킷을 기다리고 있는 payload 를 모두 TS 버퍼로 보내는 함수
+     */
+    public void flushRtpReorderBuffer() {
+        rtpReorderBuffer.flush();
+    }
+
+    /**
+     * @fn public void resetRtpReorderBuffer()
+     * @brief Reorder buffer 에 남은 payload 를 TS 버퍼로 보낸 후 sequence number 와 지터 상태를 초기화하는 함수
+     * PLAY 를 시작하거나 스트림이 끝나면 호출해서 다음 스트림을 이전 sequence number 기준으로 버리지 않도록 한다.
+     */
+    public void resetRtpReorderBuffer() {
+        rtpReorderBuffer.flush();
+        rtpReorderBuffer.clear();
+    }
+
+    public RtpReorderBuffer getRtpReorderBuffer() {
+        return rtpReorderBuffer;
+    }
+
+    public ByteBuf pollFromTsBuffer() {
         return tsReadBuffer.poll();
     }
 
+    /**
+     * @fn public ByteBuf pollFromTsBuffer(long timeout, TimeUnit unit) throws InterruptedException
+     * @brief TS 데이터가 들어올 때까지 최대 timeout 동안 기다렸다가 꺼내는 함수 (소비자 전용)
+     * @return 시간 안에 데이터가 들어오지 않으면 null 반환, 꺼낸 쪽에서 release 해야 한다.
+     */
+    public ByteBuf pollFromTsBuffer(long timeout, TimeUnit unit) throws InterruptedException {
+        return tsReadBuffer.poll(timeout, unit);
+    }
+
+    /**
+     * @fn public long getPolledTsArrivalTime()
+     * @brief pollFromTsBuffer 로 마지막으로 꺼낸 RTP payload 의 수신 시간을 반환하는 함수 (소비자 전용)
+     * @return 수신 시간 (System.nanoTime())
+     */
+    public long getPolledTsArrivalTime() {
+        return tsReadBuffer.getPolledArrivalTime();
+    }
+
+    public TsHealthMonitor getTsHealthMonitor() {
+        return tsHealthMonitor;
+    }
+
+    public TsPesReassembler getTsPesReassembler() {
+        return tsPesReassembler;
+    }
+
+    public RandomAccessIndex getRandomAccessIndex() {
+        return randomAccessIndex;
+    }
+
+    public BoundedMediaBuffer getTsReadBuffer() {
+        return tsReadBuffer;
+    }
+
+    private void releaseTsBuffer() {
+        tsReadBuffer.clear();
+    }
+
     ////////////////////////////////////////////////////////////////////////////////
 
     @Override
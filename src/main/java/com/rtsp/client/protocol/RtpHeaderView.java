@@ -0,0 +1,311 @@
+package com.rtsp.client.protocol;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @class public class RtpHeaderView
+ * @brief 할당 없이 RTP 헤더를 읽는 재사용 가능한 Flyweight class
+ * Reference: https://datatracker.ietf.org/doc/html/rfc3550#section-5.1
+ *
+ * byte[], ByteBuffer, ByteBuf 의 지정한 offset 에서 RTP 헤더를 shift 연산으로 바로 파싱한다.
+ * CSRC list, Header extension, Padding 을 건너뛴 payload 위치와 길이를 계산하며,
+ * 원본 데이터는 복사하지 않고 참조만 유지하므로 다음 wrap 호출 전까지만 유효하다.
+ * 하나의 인스턴스는 하나의 스레드에서만 사용해야 한다.
+ */
+public class RtpHeaderView {
+
+    public static final int RTP_VERSION = 2;
+    public static final int CSRC_LENGTH = 4;
+    public static final int EXTENSION_HEADER_LENGTH = 4;
+
+    private byte[] array = null;
+    private ByteBuffer byteBuffer = null;
+    private ByteBuf byteBuf = null;
+    private int offset = 0;
+
+    private int version = 0;
+    private boolean padding = false;
+    private boolean extension = false;
+    private int csrcCount = 0;
+    private boolean marker = false;
+    private int payloadType = 0;
+    private int sequenceNumber = 0;
+    private long timeStamp = 0;
+    private long ssrc = 0;
+
+    private int extensionProfile = 0;
+    private int extensionLength = 0; // bytes, except for the extension header
+    private int headerLength = 0;
+    private int paddingLength = 0;
+    private int payloadLength = 0;
+    private boolean isValid = false;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public RtpHeaderView() {
+        // Nothing
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public boolean wrap(byte[] data, int offset, int length)
+     * @brief byte[] 의 지정한 위치에 있는 RTP 패킷을 파싱하는 함수
+     * @param data RTP 패킷 데이터
+     * @param offset RTP 패킷 시작 위치
+     * @param length RTP 패킷 길이
+     * @return 유효한 RTP 패킷이면 true, 아니면 false 반환
+     */
+    public boolean wrap(byte[] data, int offset, int length) {
+        reset(offset);
+        array = data;
+        if (data == null || length < RtpPacket.FIXED_HEADER_LENGTH || offset + length > data.length) {
+            return false;
+        }
+
+        parseFixedHeader(
+                (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                        | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF),
+                (data[offset + 4] & 0xFF) << 24 | (data[offset + 5] & 0xFF) << 16
+                        | (data[offset + 6] & 0xFF) << 8 | (data[offset + 7] & 0xFF),
+                (data[offset + 8] & 0xFF) << 24 | (data[offset + 9] & 0xFF) << 16
+                        | (data[offset + 10] & 0xFF) << 8 | (data[offset + 11] & 0xFF)
+        );
+
+        int extensionHeaderIndex = offset + RtpPacket.FIXED_HEADER_LENGTH + csrcCount * CSRC_LENGTH;
+        if (extension) {
+            if (extensionHeaderIndex + EXTENSION_HEADER_LENGTH > offset + length) {
+                return false;
+            }
+            extensionProfile = (data[extensionHeaderIndex] & 0xFF) << 8 | (data[extensionHeaderIndex + 1] & 0xFF);
+            extensionLength = ((data[extensionHeaderIndex + 2] & 0xFF) << 8 | (data[extensionHeaderIndex + 3] & 0xFF)) * 4;
+        }
+
+        return finish(length, padding ? data[offset + length - 1] & 0xFF : 0);
+    }
+
+    /**
+     * @fn public boolean wrap(ByteBuffer data, int offset, int length)
+     * @brief ByteBuffer 의 지정한 위치에 있는 RTP 패킷을 파싱하는 함수 (position 은 변경하지 않는다.)
+     * @param data RTP 패킷 데이터
+     * @param offset RTP 패킷 시작 위치 (절대 위치)
+     * @param length RTP 패킷 길이
+     * @return 유효한 RTP 패킷이면 true, 아니면 false 반환
+     */
+    public boolean wrap(ByteBuffer data, int offset, int length) {
+        reset(offset);
+        byteBuffer = data;
+        if (data == null || length < RtpPacket.FIXED_HEADER_LENGTH || offset + length > data.limit()) {
+            return false;
+        }
+
+        // ByteBuffer 의 order 와 상관없이 network byte order 로 읽는다.
+        parseFixedHeader(getInt(data, offset), getInt(data, offset + 4), getInt(data, offset + 8));
+
+        int extensionHeaderIndex = offset + RtpPacket.FIXED_HEADER_LENGTH + csrcCount * CSRC_LENGTH;
+        if (extension) {
+            if (extensionHeaderIndex + EXTENSION_HEADER_LENGTH > offset + length) {
+                return false;
+            }
+            int extensionHeader = getInt(data, extensionHeaderIndex);
+            extensionProfile = extensionHeader >>> 16;
+            extensionLength = (extensionHeader & 0xFFFF) * 4;
+        }
+
+        return finish(length, padding ? data.get(offset + length - 1) & 0xFF : 0);
+    }
+
+    /**
+     * @fn public boolean wrap(ByteBuf data, int offset, int length)
+     * @brief ByteBuf 의 지정한 위치에 있는 RTP 패킷을 파싱하는 함수 (readerIndex 는 변경하지 않는다.)
+     * @param data RTP 패킷 데이터
+     * @param offset RTP 패킷 시작 위치 (절대 위치)
+     * @param length RTP 패킷 길이
+     * @return 유효한 RTP 패킷이면 true, 아니면 false 반환
+     */
+    public boolean wrap(ByteBuf data, int offset, int length) {
+        reset(offset);
+        byteBuf = data;
+        if (data == null || length < RtpPacket.FIXED_HEADER_LENGTH || offset + length > data.writerIndex()) {
+            return false;
+        }
+
+        parseFixedHeader(data.getInt(offset), data.getInt(offset + 4), data.getInt(offset + 8));
+
+        int extensionHeaderIndex = offset + RtpPacket.FIXED_HEADER_LENGTH + csrcCount * CSRC_LENGTH;
+        if (extension) {
+            if (extensionHeaderIndex + EXTENSION_HEADER_LENGTH > offset + length) {
+                return false;
+            }
+            extensionProfile = data.getUnsignedShort(extensionHeaderIndex);
+            extensionLength = data.getUnsignedShort(extensionHeaderIndex + 2) * 4;
+        }
+
+        return finish(length, padding ? data.getUnsignedByte(offset + length - 1) : 0);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private void reset(int offset) {
+        this.array = null;
+        this.byteBuffer = null;
+        this.byteBuf = null;
+        this.offset = offset;
+        this.extensionProfile = 0;
+        this.extensionLength = 0;
+        this.headerLength = 0;
+        this.paddingLength = 0;
+        this.payloadLength = 0;
+        this.isValid = false;
+    }
+
+    private void parseFixedHeader(int vToSn, int timeStamp, int ssrc) {
+        this.version = (vToSn >>> 30) & 0x03;
+        this.padding = ((vToSn >>> 29) & 0x01) == 0x01;
+        this.extension = ((vToSn >>> 28) & 0x01) == 0x01;
+        this.csrcCount = (vToSn >>> 24) & 0x0F;
+        this.marker = ((vToSn >>> 23) & 0x01) == 0x01;
+        this.payloadType = (vToSn >>> 16) & 0x7F;
+        this.sequenceNumber = vToSn & 0xFFFF;
+        this.timeStamp = timeStamp & 0xFFFFFFFFL;
+        this.ssrc = ssrc & 0xFFFFFFFFL;
+    }
+
+    private boolean finish(int length, int paddingLength) {
+        headerLength = RtpPacket.FIXED_HEADER_LENGTH + csrcCount * CSRC_LENGTH;
+        if (extension) {
+            headerLength += EXTENSION_HEADER_LENGTH + extensionLength;
+        }
+
+        // Padding 의 마지막 byte 는 자기 자신을 포함한 padding 길이
+        if (padding && paddingLength == 0) {
+            return false;
+        }
+
+        this.paddingLength = paddingLength;
+        this.payloadLength = length - headerLength - paddingLength;
+        this.isValid = version == RTP_VERSION && payloadLength >= 0;
+        return isValid;
+    }
+
+    private static int getInt(ByteBuffer data, int index) {
+        return (data.get(index) & 0xFF) << 24 | (data.get(index + 1) & 0xFF) << 16
+                | (data.get(index + 2) & 0xFF) << 8 | (data.get(index + 3) & 0xFF);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public long getCsrc(int index)
+     * @brief 지정한 순서의 CSRC identifier 를 반환하는 함수
+     * @param index CSRC 순서 (0 ~ csrcCount - 1)
+     * @return CSRC identifier (32 bits)
+     */
+    public long getCsrc(int index) {
+        if (index < 0 || index >= csrcCount) {
+            throw new IndexOutOfBoundsException("csrc index=" + index + ", count=" + csrcCount);
+        }
+
+        int csrcIndex = offset + RtpPacket.FIXED_HEADER_LENGTH + index * CSRC_LENGTH;
+        if (byteBuf != null) {
+            return byteBuf.getUnsignedInt(csrcIndex);
+        } else if (byteBuffer != null) {
+            return getInt(byteBuffer, csrcIndex) & 0xFFFFFFFFL;
+        } else {
+            return ((array[csrcIndex] & 0xFF) << 24 | (array[csrcIndex + 1] & 0xFF) << 16
+                    | (array[csrcIndex + 2] & 0xFF) << 8 | (array[csrcIndex + 3] & 0xFF)) & 0xFFFFFFFFL;
+        }
+    }
+
+    public boolean isValid() {
+        return isValid;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean isPadding() {
+        return padding;
+    }
+
+    public boolean isExtension() {
+        return extension;
+    }
+
+    public int getCsrcCount() {
+        return csrcCount;
+    }
+
+    public boolean isMarker() {
+        return marker;
+    }
+
+    public int getPayloadType() {
+        return payloadType;
+    }
+
+    public int getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    public long getSsrc() {
+        return ssrc;
+    }
+
+    public int getExtensionProfile() {
+        return extensionProfile;
+    }
+
+    public int getExtensionLength() {
+        return extensionLength;
+    }
+
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    public int getPaddingLength() {
+        return paddingLength;
+    }
+
+    /**
+     * @fn public int getPayloadOffset()
+     * @brief wrap 할 때 지정한 데이터 기준 payload 의 절대 위치를 반환하는 함수
+     * @return Payload offset
+     */
+    public int getPayloadOffset() {
+        return offset + headerLength;
+    }
+
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public String toString() {
+        return "RtpHeaderView{" +
+                "version=" + version +
+                ", padding=" + padding +
+                ", extension=" + extension +
+                ", csrcCount=" + csrcCount +
+                ", marker=" + marker +
+                ", payloadType=" + payloadType +
+                ", sequenceNumber=" + sequenceNumber +
+                ", timeStamp=" + timeStamp +
+                ", ssrc=" + ssrc +
+                ", headerLength=" + headerLength +
+                ", paddingLength=" + paddingLength +
+                ", payloadLength=" + payloadLength +
+                ", isValid=" + isValid +
+                '}';
+    }
+}
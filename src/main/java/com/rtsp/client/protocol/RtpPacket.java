@@ -139,47 +139,43 @@ public class RtpPacket implements Serializable {
     /**
      * @fn public RtpPacket(byte[] data, int dataLength)
      * @brief 지정한 Byte Array Data 을 Rtp Packet 으로 Unpacking 하는 생성자 함수
+     * CSRC list 는 csrcList 로 파싱하고, Header extension 과 Padding 은 payload 에서 제외한다.
      * @param data Rtp Byte Array Data
      * @param dataLength Rtp Byte Array Length
      */
     public RtpPacket(byte[] data, int dataLength) {
+        RtpHeaderView headerView = new RtpHeaderView();
+        if (!headerView.wrap(data, 0, dataLength)) {
+            throw new IllegalArgumentException(RtpException.INVALID_HEADER + headerView);
+        }
+
         /* 1) Extract Version to Sequence Number (32 bits) */
-        int vToSnLength = 4; // # bytes
-        int offset = vToSnLength;
-        byte[] vToSnBytes = new byte[vToSnLength];
-        System.arraycopy(data, 0, vToSnBytes, 0, vToSnLength);
-        int vToSn = ByteUtil.bytesToInt(vToSnBytes, true);
-        version = (vToSn >>> 0x1E) & 0x03;
-        padding = (vToSn >>> 0x1D) & 0x01;
-        extension = (vToSn >>> 0x1C) & 0x01;
-        csrc = (vToSn >>> 0x18) & 0x0F;
-        marker = (vToSn >>> 0x17) & 0x01;
-        payloadType = (vToSn >>> 0x10) & 0x7F;
-        seqNum = (vToSn & 0xFFFF);
+        version = headerView.getVersion();
+        padding = headerView.isPadding() ? 1 : 0;
+        extension = headerView.isExtension() ? 1 : 0;
+        csrc = headerView.getCsrcCount();
+        marker = headerView.isMarker() ? 1 : 0;
+        payloadType = headerView.getPayloadType();
+        seqNum = headerView.getSequenceNumber();
 
         /* 2) Extract Timestamp */
-        int timeStampLength = 4; // 4 bytes arriving, need to store as long
-        byte[] timeStampBytes = new byte[timeStampLength];
-        System.arraycopy(data, offset, timeStampBytes, 0, timeStampLength);
-        byte[] timeStampLongBytes = new byte[8]; // Copy to long byte array
-        System.arraycopy(timeStampBytes, 0, timeStampLongBytes, 4, 4);
-        timeStamp = ByteUtil.bytesToLong(timeStampLongBytes, true);
-        offset += timeStampLength;
+        timeStamp = headerView.getTimeStamp();
 
         /* 3) Extract SSRC */
-        int ssrcLength = 4; // 4 bytes arriving, need to store as long
-        byte[] ssrcBytes = new byte[ssrcLength];
-        System.arraycopy(data, offset, ssrcBytes, 0, ssrcLength);
-        byte[] ssrcLongBytes = new byte[8]; // Copy to long byte array
-        System.arraycopy(ssrcBytes, 0, ssrcLongBytes, 4, 4);
-        ssrc = ByteUtil.bytesToLong(ssrcLongBytes, true);
-        offset += ssrcLength;
-
-        /* 4) Extract Payload */
-        int payloadLength = (dataLength - offset); // # bytes
-        this.payloadLength = payloadLength;
+        ssrc = headerView.getSsrc();
+
+        /* 4) Extract CSRC list */
+        if (csrc > 0) {
+            csrcList = new long[csrc];
+            for (int i = 0; i < csrc; i++) {
+                csrcList[i] = headerView.getCsrc(i);
+            }
+        }
+
+        /* 5) Extract Payload (Header extension, Padding 제외) */
+        payloadLength = headerView.getPayloadLength();
         payload = new byte[payloadLength];
-        System.arraycopy(data, offset, payload, 0, payloadLength);
+        System.arraycopy(data, headerView.getPayloadOffset(), payload, 0, payloadLength);
 
         /*logger.debug("[RTPPacket] Unpacking: {}", ByteUtil.writeBytes(data));
         logger.debug("[RTPPacket] Unpacked V: {}", version);
@@ -516,6 +512,15 @@ public class RtpPacket implements Serializable {
         return payloadLength;
     }
 
+    /**
+     * @fn public long[] getCsrcList()
+     * @brief Get the CSRC list.
+     * @return CSRC identifiers (null if the CSRC count is 0).
+     */
+    public long[] getCsrcList() {
+        return csrcList;
+    }
+
     ////////////////////////////////////////////////////////////////////////////////
 
     @Override
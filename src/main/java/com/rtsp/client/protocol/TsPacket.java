@@ -73,7 +73,7 @@ public class TsPacket {
     // 동일한 PID를 갖는 패킷이 존재할 때, 우선 순위 부여 true / 미부여 false
     private boolean transportPriority = false;                  // 1 bit
     // TS 패킷 미디어 식별자
-    private String pid = "";                                    // 13 bits
+    private int pid = 0;                                        // 13 bits
     // 스크램블링 유 01 10 11 / 무 00 및 종류 표시 (01 10 11 의 의미는 규격마다 다름)
     private int transportScramblingControl = 0;                 // 2 bits
     // TS 패킷 해더 다음 바로 Adaptation Field 존재 유무
@@ -223,7 +223,7 @@ public class TsPacket {
         this.transportErrorIndicator = ( (tsHeader >>> 0x17) & 0x01 ) == 0x01;
         this.payloadUnitStartIndicator = ( (tsHeader >>> 0x16) & 0x01 ) == 0x01;
         this.transportPriority = ( (tsHeader >>> 0x15) & 0x01 ) == 0x01;
-        this.pid = Integer.toBinaryString((tsHeader >>> 0x08) & 0x1FFF);
+        this.pid = (tsHeader >>> 0x08) & 0x1FFF;
         this.transportScramblingControl = (tsHeader >>> 0x06) & 0x03;
         this.adaptationFieldControl = (tsHeader >>> 0x04) & 0x03;
         this.continuityCounter = tsHeader & 0x0F;
@@ -239,11 +239,11 @@ public class TsPacket {
      * @return 변경된 index 값
      */
     private int parsingAdaptation (byte[] data, int index) {
-        if (data[index] > 0) {
-            byte[] adaptationFieldLengthByteData = new byte[1];
-            System.arraycopy(data, index, adaptationFieldLengthByteData, 0, adaptationFieldLengthByteData.length);
-            this.adaptationFieldLength = adaptationFieldLengthByteData[0];
-            index += adaptationFieldLengthByteData.length;
+        // adaptation_field_length 는 unsigned 8 bits (0 ~ 183)
+        int length = data[index] & 0xFF;
+        index += 1;
+        if (length > 0 && index + length <= TS_TOTAL_SIZE) {
+            this.adaptationFieldLength = length;
 
             this.adaptationField = new byte[adaptationFieldLength];
             System.arraycopy(data, index, adaptationField, 0, adaptationField.length);
@@ -262,7 +262,7 @@ public class TsPacket {
         if (payloadUnitStartIndicator) {
             byte[] payloadPointerByteData = new byte[1];
             System.arraycopy(data, index, payloadPointerByteData, 0, payloadPointerByteData.length);
-            this.payloadPointer = payloadPointerByteData[0];
+            this.payloadPointer = payloadPointerByteData[0] & 0xFF;
             index += payloadPointerByteData.length;
             //log.debug("data[{}] : {}", index, payloadPointer);
         }
@@ -280,7 +280,7 @@ public class TsPacket {
                 ", transportErrorIndicator=" + transportErrorIndicator +
                 ", payloadUnitStartIndicator=" + payloadUnitStartIndicator +
                 ", transportPriority=" + transportPriority +
-                ", pid='" + pid + "(" + getPidStreamType() + ")" + '\'' +
+                ", pid=" + String.format("0x%04X", pid) + "(" + getPidStreamType() + ")" +
                 ", transportScramblingControl=" + transportScramblingControl +
                 ", adaptationFieldControl=" + adaptationFieldControl +
                 ", continuityCounter=" + continuityCounter +
@@ -308,46 +308,121 @@ public class TsPacket {
         return payload;
     }
 
+    public int getPid() {
+        return pid;
+    }
+
+    public int getContinuityCounter() {
+        return continuityCounter;
+    }
+
+    public boolean isPayloadUnitStartIndicator() {
+        return payloadUnitStartIndicator;
+    }
+
+    public byte getSyncByte() {
+        return syncByte;
+    }
+
+    public boolean isTransportErrorIndicator() {
+        return transportErrorIndicator;
+    }
+
+    public boolean isTransportPriority() {
+        return transportPriority;
+    }
+
+    public int getTransportScramblingControl() {
+        return transportScramblingControl;
+    }
+
+    public int getAdaptationFieldControl() {
+        return adaptationFieldControl;
+    }
+
+    public int getAdaptationFieldLength() {
+        return adaptationFieldLength;
+    }
+
+    public byte[] getAdaptationField() {
+        return adaptationField;
+    }
+
+    public int getPayloadPointer() {
+        return payloadPointer;
+    }
+
+    /**
+     * @fn public String getPidStreamType()
+     * @brief PID 로 TS 패킷의 종류를 반환하는 함수 (ISO/IEC 13818-1, Table 2-3)
+     * ES 의 stream_type 은 PMT 에서 알 수 있으며 getStreamTypeName 으로 변환한다.
+     * @return PID 종류
+     */
     public String getPidStreamType() {
         switch (pid) {
-            case "0x00":
+            case TsPacketReader.PAT_PID:
+                return "Program Association Table";
+            case TsPacketReader.CAT_PID:
+                return "Conditional Access Table";
+            case 0x0002:
+                return "Transport Stream Description Table";
+            case 0x0003:
+                return "IPMP Control Information Table";
+            case TsPacketReader.SDT_PID:
+                return "Service Description Table";
+            case TsPacketReader.NULL_PID:
+                return "Null packet";
+            default:
+                return pid < 0x0010 ? "Reserved" : "PMT or Elementary stream";
+        }
+    }
+
+    /**
+     * @fn public static String getStreamTypeName(int streamType)
+     * @brief PMT 의 stream_type 값을 이름으로 변환하는 함수 (ISO/IEC 13818-1, Table 2-34)
+     * @param streamType stream_type (8 bits)
+     * @return stream_type 이름
+     */
+    public static String getStreamTypeName(int streamType) {
+        switch (streamType) {
+            case 0x00:
                 return "ITU-T｜ISO/IEC reserved";
-            case "0x01":
+            case 0x01:
                 return "ISO/IEC 11172-2 Video";
-            case "0x02":
+            case 0x02:
                 return "ITU-T Rec. H262｜ISO/IEC 13818-2 Video or ISO/IEC 11172 constrained parameter video stream";
-            case "0x03":
+            case 0x03:
                 return "ISO/IEC 11172-3 Audio";
-            case "0x04":
+            case 0x04:
                 return "ISO/IEC 13818-3 Audio";
-            case "0x05":
+            case 0x05:
                 return "ITU-T Rec. H.222.0｜ISO/IEC 13818-1 private section";
-            case "0x06":
+            case 0x06:
                 return "ITU-T Rec. H.222.0｜ISO/IEC 13818-1 PES packets containing private data";
-            case "0x07":
+            case 0x07:
                 return "ISO/IEC 13522 MHEG";
-            case "0x08":
+            case 0x08:
                 return "Annex A - DSM CC";
-            case "0x09":
+            case 0x09:
                 return "ITU-T Rec. H.222.1";
-            case "0x0A":
+            case 0x0A:
                 return "ISO/IEC 13818-6 type A";
-            case "0x0B":
+            case 0x0B:
                 return "ISO/IEC 13818-6 type B";
-            case "0x0C":
+            case 0x0C:
                 return "ISO/IEC 13818-6 type C";
-            case "0x0D":
+            case 0x0D:
                 return "ISO/IEC 13818-6 type D";
-            case "0x0E":
+            case 0x0E:
                 return "ISO/IEC 13818-1 auxiliary";
-            case "0x0F":
-            case "0x10": case "0x11": case "0x12": case "0x13": case "0x14": case "0x15": case "0x16": case "0x17": case "0x18": case "0x19": case "0x1A": case "0x1B": case "0x1C": case "0x1D": case "0x1E": case "0x1F":
-            case "0x20": case "0x21": case "0x22": case "0x23": case "0x24": case "0x25": case "0x26": case "0x27": case "0x28": case "0x29": case "0x2A": case "0x2B": case "0x2C": case "0x2D": case "0x2E": case "0x2F":
-            case "0x30": case "0x31": case "0x32": case "0x33": case "0x34": case "0x35": case "0x36": case "0x37": case "0x38": case "0x39": case "0x3A": case "0x3B": case "0x3C": case "0x3D": case "0x3E": case "0x3F":
-            case "0x40": case "0x41": case "0x42": case "0x43": case "0x44": case "0x45": case "0x46": case "0x47": case "0x48": case "0x49": case "0x4A": case "0x4B": case "0x4C": case "0x4D": case "0x4E": case "0x4F":
-            case "0x50": case "0x51": case "0x52": case "0x53": case "0x54": case "0x55": case "0x56": case "0x57": case "0x58": case "0x59": case "0x5A": case "0x5B": case "0x5C": case "0x5D": case "0x5E": case "0x5F":
-            case "0x60": case "0x61": case "0x62": case "0x63": case "0x64": case "0x65": case "0x66": case "0x67": case "0x68": case "0x69": case "0x6A": case "0x6B": case "0x6C": case "0x6D": case "0x6E": case "0x6F":
-            case "0x70": case "0x71": case "0x72": case "0x73": case "0x74": case "0x75": case "0x76": case "0x77": case "0x78": case "0x79": case "0x7A": case "0x7B": case "0x7C": case "0x7D": case "0x7E": case "0x7F":
+            case 0x0F:
+            case 0x10: case 0x11: case 0x12: case 0x13: case 0x14: case 0x15: case 0x16: case 0x17: case 0x18: case 0x19: case 0x1A: case 0x1B: case 0x1C: case 0x1D: case 0x1E: case 0x1F:
+            case 0x20: case 0x21: case 0x22: case 0x23: case 0x24: case 0x25: case 0x26: case 0x27: case 0x28: case 0x29: case 0x2A: case 0x2B: case 0x2C: case 0x2D: case 0x2E: case 0x2F:
+            case 0x30: case 0x31: case 0x32: case 0x33: case 0x34: case 0x35: case 0x36: case 0x37: case 0x38: case 0x39: case 0x3A: case 0x3B: case 0x3C: case 0x3D: case 0x3E: case 0x3F:
+            case 0x40: case 0x41: case 0x42: case 0x43: case 0x44: case 0x45: case 0x46: case 0x47: case 0x48: case 0x49: case 0x4A: case 0x4B: case 0x4C: case 0x4D: case 0x4E: case 0x4F:
+            case 0x50: case 0x51: case 0x52: case 0x53: case 0x54: case 0x55: case 0x56: case 0x57: case 0x58: case 0x59: case 0x5A: case 0x5B: case 0x5C: case 0x5D: case 0x5E: case 0x5F:
+            case 0x60: case 0x61: case 0x62: case 0x63: case 0x64: case 0x65: case 0x66: case 0x67: case 0x68: case 0x69: case 0x6A: case 0x6B: case 0x6C: case 0x6D: case 0x6E: case 0x6F:
+            case 0x70: case 0x71: case 0x72: case 0x73: case 0x74: case 0x75: case 0x76: case 0x77: case 0x78: case 0x79: case 0x7A: case 0x7B: case 0x7C: case 0x7D: case 0x7E: case 0x7F:
                 return "ITU-T Rec. H.222.0｜ISO/IEC 13818-1 reserved";
             default: // 0x80 ~ 0xFF : User private
                 return "User private";
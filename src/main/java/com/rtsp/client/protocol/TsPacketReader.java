@@ -0,0 +1,301 @@
+package com.rtsp.client.protocol;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @class public class TsPacketReader
+ * @brief 할당 없이 TS 패킷 헤더와 Adaptation field 를 읽는 재사용 가능한 Flyweight class
+ * Reference: ISO/IEC 13818-1, 2.4.3.2 Transport Stream packet layer
+ *
+ * byte[] 또는 ByteBuf 의 지정한 범위를 188 bytes 단위로 순회하며(RTP payload 의 7 x 188 등) 현재 패킷의 필드를 int / long 으로 제공한다.
+ * TsPacket 과 달리 header, adaptation field, payload 를 복사하지 않고 위치만 계산하므로 다음 next / wrap 호출 전까지만 유효하다.
+ * 하나의 인스턴스는 하나의 스레드에서만 사용해야 한다.
+ */
+public class TsPacketReader {
+
+    public static final int PAT_PID = 0x0000;
+    public static final int CAT_PID = 0x0001;
+    public static final int SDT_PID = 0x0011;
+    public static final int NULL_PID = 0x1FFF;
+    public static final long NO_PCR = -1;
+
+    private byte[] array = null;
+    private ByteBuf byteBuf = null;
+    private int position = 0; // 다음에 읽을 패킷 위치
+    private int end = 0;
+
+    private int packetOffset = 0;
+    private boolean isValid = false;
+
+    private boolean transportErrorIndicator = false;
+    private boolean payloadUnitStartIndicator = false;
+    private boolean transportPriority = false;
+    private int pid = 0;
+    private int transportScramblingControl = 0;
+    private int adaptationFieldControl = 0;
+    private int continuityCounter = 0;
+
+    private int adaptationFieldLength = 0;
+    private int adaptationFieldFlags = 0;
+    private long pcr = NO_PCR; // 27 MHz (base * 300 + extension)
+    private int payloadOffset = 0;
+    private int payloadLength = 0;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public TsPacketReader() {
+        // Nothing
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public void reset(byte[] data, int offset, int length)
+     * @brief byte[] 의 지정한 범위를 순회하도록 설정하는 함수 (next 로 첫 패킷부터 읽는다.)
+     * @param data TS 데이터
+     * @param offset 시작 위치
+     * @param length 길이
+     */
+    public void reset(byte[] data, int offset, int length) {
+        this.array = data;
+        this.byteBuf = null;
+        this.position = offset;
+        this.end = data == null ? offset : Math.min(data.length, offset + length);
+        this.isValid = false;
+    }
+
+    /**
+     * @fn public void reset(ByteBuf data, int offset, int length)
+     * @brief ByteBuf 의 지정한 범위를 순회하도록 설정하는 함수 (readerIndex 는 변경하지 않는다.)
+     * @param data TS 데이터
+     * @param offset 시작 위치 (절대 위치)
+     * @param length 길이
+     */
+    public void reset(ByteBuf data, int offset, int length) {
+        this.array = null;
+        this.byteBuf = data;
+        this.position = offset;
+        this.end = data == null ? offset : Math.min(data.writerIndex(), offset + length);
+        this.isValid = false;
+    }
+
+    /**
+     * @fn public boolean next()
+     * @brief 다음 188 bytes 패킷을 파싱하는 함수
+     * sync byte 가 맞지 않는 패킷도 건너뛰지 않고 반환하며, 이 때 isValid 는 false 이다.
+     * @return 남은 데이터가 188 bytes 이상이면 true, 아니면 false 반환
+     */
+    public boolean next() {
+        if (position + TsPacket.TS_TOTAL_SIZE > end) {
+            isValid = false;
+            return false;
+        }
+
+        parse(position);
+        position += TsPacket.TS_TOTAL_SIZE;
+        return true;
+    }
+
+    /**
+     * @fn public boolean wrap(byte[] data, int offset)
+     * @brief byte[] 의 지정한 위치에 있는 TS 패킷 하나를 파싱하는 함수
+     * @param data TS 데이터
+     * @param offset TS 패킷 시작 위치
+     * @return 유효한 TS 패킷이면 true, 아니면 false 반환
+     */
+    public boolean wrap(byte[] data, int offset) {
+        reset(data, offset, TsPacket.TS_TOTAL_SIZE);
+        return next() && isValid;
+    }
+
+    /**
+     * @fn public boolean wrap(ByteBuf data, int offset)
+     * @brief ByteBuf 의 지정한 위치에 있는 TS 패킷 하나를 파싱하는 함수
+     * @param data TS 데이터
+     * @param offset TS 패킷 시작 위치 (절대 위치)
+     * @return 유효한 TS 패킷이면 true, 아니면 false 반환
+     */
+    public boolean wrap(ByteBuf data, int offset) {
+        reset(data, offset, TsPacket.TS_TOTAL_SIZE);
+        return next() && isValid;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private void parse(int offset) {
+        packetOffset = offset;
+        adaptationFieldLength = 0;
+        adaptationFieldFlags = 0;
+        pcr = NO_PCR;
+        payloadOffset = offset + TsPacket.TS_TOTAL_SIZE;
+        payloadLength = 0;
+
+        int header = getInt(offset);
+        isValid = (header >>> 24) == TsPacket.SYNC_BYTE;
+        transportErrorIndicator = (header & 0x00800000) != 0;
+        payloadUnitStartIndicator = (header & 0x00400000) != 0;
+        transportPriority = (header & 0x00200000) != 0;
+        pid = (header >>> 8) & 0x1FFF;
+        transportScramblingControl = (header >>> 6) & 0x03;
+        adaptationFieldControl = (header >>> 4) & 0x03;
+        continuityCounter = header & 0x0F;
+        if (!isValid) {
+            return;
+        }
+
+        int index = offset + TsPacket.TS_HEADER_SIZE;
+        if ((adaptationFieldControl & 0x02) != 0) {
+            adaptationFieldLength = getUnsignedByte(index);
+            if (adaptationFieldLength > TsPacket.TS_BODY_SIZE - 1) {
+                isValid = false;
+                return;
+            }
+
+            if (adaptationFieldLength > 0) {
+                adaptationFieldFlags = getUnsignedByte(index + 1);
+                if ((adaptationFieldFlags & 0x10) != 0 && adaptationFieldLength >= 7) {
+                    // program_clock_reference_base (33 bits), reserved (6 bits), program_clock_reference_extension (9 bits)
+                    long base = ((getInt(index + 2) & 0xFFFFFFFFL) << 1) | (getUnsignedByte(index + 6) >>> 7);
+                    int extension = ((getUnsignedByte(index + 6) & 0x01) << 8) | getUnsignedByte(index + 7);
+                    pcr = base * 300 + extension;
+                }
+            }
+            index += 1 + adaptationFieldLength;
+        }
+
+        if ((adaptationFieldControl & 0x01) != 0) {
+            payloadOffset = index;
+            payloadLength = offset + TsPacket.TS_TOTAL_SIZE - index;
+        }
+    }
+
+    private int getUnsignedByte(int index) {
+        return array != null ? array[index] & 0xFF : byteBuf.getUnsignedByte(index);
+    }
+
+    private int getInt(int index) {
+        if (array != null) {
+            return (array[index] & 0xFF) << 24 | (array[index + 1] & 0xFF) << 16
+                    | (array[index + 2] & 0xFF) << 8 | (array[index + 3] & 0xFF);
+        }
+        return byteBuf.getInt(index);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public boolean isValid() {
+        return isValid;
+    }
+
+    /**
+     * @fn public int getPacketOffset()
+     * @brief 현재 패킷의 절대 위치를 반환하는 함수
+     * @return Packet offset
+     */
+    public int getPacketOffset() {
+        return packetOffset;
+    }
+
+    public boolean isTransportErrorIndicator() {
+        return transportErrorIndicator;
+    }
+
+    public boolean isPayloadUnitStartIndicator() {
+        return payloadUnitStartIndicator;
+    }
+
+    public boolean isTransportPriority() {
+        return transportPriority;
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    public boolean isNullPacket() {
+        return pid == NULL_PID;
+    }
+
+    public int getTransportScramblingControl() {
+        return transportScramblingControl;
+    }
+
+    public int getAdaptationFieldControl() {
+        return adaptationFieldControl;
+    }
+
+    public boolean hasAdaptationField() {
+        return (adaptationFieldControl & 0x02) != 0;
+    }
+
+    public boolean hasPayload() {
+        return payloadLength > 0;
+    }
+
+    public int getContinuityCounter() {
+        return continuityCounter;
+    }
+
+    public int getAdaptationFieldLength() {
+        return adaptationFieldLength;
+    }
+
+    public boolean isDiscontinuityIndicator() {
+        return (adaptationFieldFlags & 0x80) != 0;
+    }
+
+    public boolean isRandomAccessIndicator() {
+        return (adaptationFieldFlags & 0x40) != 0;
+    }
+
+    public boolean isElementaryStreamPriorityIndicator() {
+        return (adaptationFieldFlags & 0x20) != 0;
+    }
+
+    public boolean isPcrFlag() {
+        return (adaptationFieldFlags & 0x10) != 0;
+    }
+
+    /**
+     * @fn public long getPcr()
+     * @brief Program clock reference 를 반환하는 함수
+     * @return PCR (27 MHz), 없으면 NO_PCR(-1) 반환
+     */
+    public long getPcr() {
+        return pcr;
+    }
+
+    /**
+     * @fn public int getPayloadOffset()
+     * @brief 현재 패킷의 payload 절대 위치를 반환하는 함수 (PUSI 가 설정된 PSI 패킷이면 pointer_field 부터 시작한다.)
+     * @return Payload offset
+     */
+    public int getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public String toString() {
+        return "TsPacketReader{" +
+                "packetOffset=" + packetOffset +
+                ", isValid=" + isValid +
+                ", transportErrorIndicator=" + transportErrorIndicator +
+                ", payloadUnitStartIndicator=" + payloadUnitStartIndicator +
+                ", transportPriority=" + transportPriority +
+                ", pid=" + pid +
+                ", transportScramblingControl=" + transportScramblingControl +
+                ", adaptationFieldControl=" + adaptationFieldControl +
+                ", continuityCounter=" + continuityCounter +
+                ", adaptationFieldLength=" + adaptationFieldLength +
+                ", pcr=" + pcr +
+                ", payloadOffset=" + payloadOffset +
+                ", payloadLength=" + payloadLength +
+                '}';
+    }
+}
@@ -3,6 +3,7 @@ package com.rtsp.client.protocol.base;
 public class RtpException extends Exception {
 
     public static final String OUT_OF_RANGE = "Method parameter value is out of range.";
+    public static final String INVALID_HEADER = "RTP header is invalid. ";
 
     public RtpException(String exceptionType) {
 
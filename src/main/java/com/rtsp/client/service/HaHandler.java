@@ -1,5 +1,10 @@
 package com.rtsp.client.service;
 
+import com.rtsp.client.file.base.AsyncFileWriter;
+import com.rtsp.client.file.base.LatencyHistogram;
+import com.rtsp.client.media.module.base.MediaMemoryBudget;
+import com.rtsp.client.media.module.base.TsHealthMonitor;
+import com.rtsp.client.media.module.base.TsPesReassembler;
 import com.rtsp.client.media.netty.NettyChannelManager;
 import com.rtsp.client.media.netty.module.RtspManager;
 import com.rtsp.client.media.netty.module.base.RtspUnit;
@@ -41,8 +46,34 @@ public class HaHandler extends Job {
         if (rtspUnit != null) {
             curState = rtspUnit.getStateManager().getStateUnit(rtspUnit.getRtspStateUnitId()).getCurState();
         }
-        logger.debug("| cpu=[{}], mem=[{}], thread=[{}], RtspState=[{}]",
-                cpuUsageStr, memoryUsageStr, Thread.activeCount(), curState);
+        MediaMemoryBudget mediaMemoryBudget = MediaMemoryBudget.getInstance();
+        logger.debug("| cpu=[{}], mem=[{}], thread=[{}], netty=[media:{}/control:{}/created:{}], mediaMem=[{}/{}, rejected:{}], RtspState=[{}]",
+                cpuUsageStr, memoryUsageStr, Thread.activeCount(),
+                nettyChannelManager.getMediaThreadCount(), nettyChannelManager.getControlThreadCount(),
+                nettyChannelManager.getTotalCreatedThreadCount(),
+                mediaMemoryBudget.getUsedBytes(), mediaMemoryBudget.getLimit(), mediaMemoryBudget.getRejectedCount(),
+                curState);
+
+        if (rtspUnit != null && rtspUnit.isStarted()) {
+            TsHealthMonitor tsHealthMonitor = rtspUnit.getTsHealthMonitor();
+            TsPesReassembler tsPesReassembler = rtspUnit.getTsPesReassembler();
+            logger.debug("| ts=[packets:{}, cc:{}, dup:{}, tei:{}, disc:{}, pcrJitter(us):{}/max:{}, pcrRepetition:{}, pes:{}, mediaSec:{}]",
+                    tsHealthMonitor.getTotalPackets(), tsHealthMonitor.getCcErrors(), tsHealthMonitor.getDuplicatePackets(),
+                    tsHealthMonitor.getTransportErrors(), tsHealthMonitor.getDiscontinuities(),
+                    tsHealthMonitor.getPcrJitterUs(), tsHealthMonitor.getMaxPcrJitterUs(), tsHealthMonitor.getPcrRepetitionErrors(),
+                    tsPesReassembler.getPesCount(), String.format("%.3f", tsPesReassembler.getMediaSeconds()));
+        }
+
+        if (AppInstance.getInstance().getConfigManager().isTsAsyncWrite()) {
+            AsyncFileWriter asyncFileWriter = AsyncFileWriter.getInstance();
+            LatencyHistogram writeLatencyHistogram = asyncFileWriter.getWriteLatencyHistogram();
+            LatencyHistogram fsyncLatencyHistogram = asyncFileWriter.getFsyncLatencyHistogram();
+            logger.debug("| io=[queue:{}/{}, maxQueue:{}, written:{}, write(us):p50={}/p99={}/p999={}, fsync(us):p50={}/p99={}/p999={}]",
+                    asyncFileWriter.getQueueDepth(), asyncFileWriter.getQueueCapacity(), asyncFileWriter.getMaxQueueDepth(),
+                    asyncFileWriter.getTotalWrittenBytes(),
+                    writeLatencyHistogram.getPercentile(50), writeLatencyHistogram.getPercentile(99), writeLatencyHistogram.getPercentile(99.9),
+                    fsyncLatencyHistogram.getPercentile(50), fsyncLatencyHistogram.getPercentile(99), fsyncLatencyHistogram.getPercentile(99.9));
+        }
     }
 
 }
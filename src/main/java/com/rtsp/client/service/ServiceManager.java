@@ -1,6 +1,8 @@
 package com.rtsp.client.service;
 
 import com.rtsp.client.config.ConfigManager;
+import com.rtsp.client.ffmpeg.Mp4ConversionService;
+import com.rtsp.client.file.base.AsyncFileWriter;
 import com.rtsp.client.gui.GuiManager;
 import com.rtsp.client.media.netty.NettyChannelManager;
 import com.rtsp.client.service.scheduler.schedule.ScheduleManager;
@@ -53,14 +55,27 @@ public class ServiceManager {
 
         // Add register channel
         NettyChannelManager.getInstance().addRegisterChannel();
+
+        // Open the loopback hls server for early playback
+        if (configManager.isHlsServer()) {
+            NettyChannelManager.getInstance().openHlsServer();
+        }
     }
 
     public void stop() {
         scheduleManager.stopAll(MAIN_SCHEDULE_JOB);
 
         GuiManager.getInstance().getPlaylistPanel().savePlaylist();
-        // Remove register channel
-        NettyChannelManager.getInstance().removeRegisterChannel();
+        // Remove all channels & shared event loop groups
+        NettyChannelManager.getInstance().stop();
+
+        // Cancel the remaining mp4 conversions
+        Mp4ConversionService.getInstance().stop();
+
+        // Write the remaining segment data
+        if (AppInstance.getInstance().getConfigManager().isTsAsyncWrite()) {
+            AsyncFileWriter.getInstance().stop();
+        }
 
         isQuit = true;
         logger.debug("| All services are closed.");
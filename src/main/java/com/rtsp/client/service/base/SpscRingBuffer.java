@@ -0,0 +1,316 @@
+package com.rtsp.client.service.base;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @class public class SpscRingBuffer<E>
+ * @brief Lock-free bounded Single-Producer / Single-Consumer ring buffer class
+ *
+ * 미리 할당한 slot 배열을 (index & mask) 로 순환하며 사용하므로 원소마다 Node 를 할당하지 않는다.
+ * head(소비 위치), tail(생산 위치)은 서로 다른 cache line 에 놓이도록 padding 한다.
+ * offer 는 한 번에 하나의 생산자 스레드, poll / take / clear 는 한 번에 하나의 소비자 스레드에서만 호출해야 한다.
+ * (생산자가 여러 스레드이면 호출하는 쪽의 lock 으로 직렬화해야 한다.)
+ * ConcurrentCyclicFIFO 와 달리 용량이 정해져 있어서 가득 차면 offer 가 false 를 반환한다.
+ * hasStamp 로 생성하면 원소마다 long 값(수신 시간 등)을 primitive 배열에 함께 저장하므로, 값을 담을 객체를 할당하지 않는다.
+ */
+public class SpscRingBuffer<E> {
+
+    /** Left hand side padding */
+    static class LhsPadding {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    /** Sequence value */
+    static class Value extends LhsPadding {
+        volatile long value;
+    }
+
+    /** Right hand side padding, 다른 필드와 cache line 을 공유하지 않도록 한다. */
+    static final class Sequence extends Value {
+        long p9, p10, p11, p12, p13, p14, p15;
+
+        private static final AtomicLongFieldUpdater<Value> UPDATER = AtomicLongFieldUpdater.newUpdater(Value.class, "value");
+
+        long get() {
+            return value;
+        }
+
+        void lazySet(long newValue) {
+            UPDATER.lazySet(this, newValue);
+        }
+
+        void set(long newValue) {
+            value = newValue;
+        }
+    }
+
+    /** 한 스레드에서만 읽고 쓰는 padding 된 값 */
+    static final class Cache extends LhsPadding {
+        long value;
+        long p9, p10, p11, p12, p13, p14, p15;
+    }
+
+    private final Object[] slots;
+    private final long[] stamps; // hasStamp 가 false 이면 null
+    private final int mask;
+
+    /** 다음에 꺼낼 위치 (소비자만 변경) */
+    private final Sequence head = new Sequence();
+
+    /** 다음에 넣을 위치 (생산자만 변경) */
+    private final Sequence tail = new Sequence();
+
+    /** 생산자가 마지막으로 읽은 head (생산자 전용 cache) */
+    private final Cache headCache = new Cache();
+
+    /** 소비자가 마지막으로 읽은 tail (소비자 전용 cache) */
+    private final Cache tailCache = new Cache();
+
+    /** 마지막으로 꺼낸 원소의 stamp (소비자 전용) */
+    private long polledStamp = 0;
+
+    /** take 로 대기 중인 소비자 스레드 */
+    private volatile Thread waitingConsumer = null;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public SpscRingBuffer(int capacity)
+     * @brief SpscRingBuffer 생성자 함수
+     * @param capacity 최대 원소 개수 (2 의 제곱수로 올림)
+     */
+    public SpscRingBuffer(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * @fn public SpscRingBuffer(int capacity, boolean hasStamp)
+     * @brief SpscRingBuffer 생성자 함수
+     * @param capacity 최대 원소 개수 (2 의 제곱수로 올림)
+     * @param hasStamp 원소마다 long 값을 함께 저장할지 여부 (offer(E, long) 으로 넣고 getPolledStamp 로 읽는다.)
+     */
+    public SpscRingBuffer(int capacity, boolean hasStamp) {
+        int size = 2;
+        while (size < capacity && size < (1 << 30)) {
+            size <<= 1;
+        }
+
+        this.slots = new Object[size];
+        this.stamps = hasStamp ? new long[size] : null;
+        this.mask = size - 1;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public boolean offer(E e)
+     * @brief 원소를 추가하는 함수 (생산자 전용)
+     * @param e 추가할 원소
+     * @return 성공 시 true, 가득 찼으면 false 반환
+     */
+    public boolean offer(E e) {
+        return offer(e, 0);
+    }
+
+    /**
+     * @fn public boolean offer(E e, long stamp)
+     * @brief 원소와 stamp 를 함께 추가하는 함수 (생산자 전용, hasStamp 가 false 이면 stamp 는 무시한다.)
+     * @param e 추가할 원소
+     * @param stamp 원소와 함께 저장할 값
+     * @return 성공 시 true, 가득 찼으면 false 반환
+     */
+    public boolean offer(E e, long stamp) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+
+        final long currentTail = tail.get();
+        final long wrapPoint = currentTail - slots.length;
+        if (headCache.value <= wrapPoint) {
+            headCache.value = head.get();
+            if (headCache.value <= wrapPoint) {
+                return false;
+            }
+        }
+
+        final int index = (int) currentTail & mask;
+        slots[index] = e;
+        if (stamps != null) {
+            stamps[index] = stamp;
+        }
+        // 대기 중인 소비자를 놓치지 않도록 tail 은 volatile write 로 publish 한 후 waitingConsumer 를 확인한다.
+        tail.set(currentTail + 1);
+
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * @fn public E poll()
+     * @brief 원소를 하나 꺼내는 함수 (소비자 전용)
+     * @return 비어있으면 null 반환
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        final long currentHead = head.get();
+        if (currentHead >= tailCache.value) {
+            tailCache.value = tail.get();
+            if (currentHead >= tailCache.value) {
+                return null;
+            }
+        }
+
+        final int index = (int) currentHead & mask;
+        E e = (E) slots[index];
+        slots[index] = null;
+        if (stamps != null) {
+            // head 를 옮기면 생산자가 slot 을 다시 쓸 수 있으므로 먼저 읽는다.
+            polledStamp = stamps[index];
+        }
+        head.lazySet(currentHead + 1);
+        return e;
+    }
+
+    /**
+     * @fn public E poll(long timeout, TimeUnit unit)
+     * @brief 원소가 들어올 때까지 최대 timeout 동안 기다렸다가 꺼내는 함수 (소비자 전용)
+     * @param timeout 최대 대기 시간
+     * @param unit 시간 단위
+     * @return 시간 안에 원소가 들어오지 않으면 null 반환
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = poll();
+        if (e != null) {
+            return e;
+        }
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            waitingConsumer = Thread.currentThread();
+            while (true) {
+                e = poll();
+                if (e != null) {
+                    return e;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+
+    /**
+     * @fn public boolean await(long timeout, TimeUnit unit)
+     * @brief 원소가 들어올 때까지 최대 timeout 동안 기다리는 함수 (소비자 전용, 원소는 꺼내지 않는다.)
+     * 꺼내는 쪽을 호출하는 쪽의 lock 으로 직렬화하는 경우, lock 을 잡지 않고 기다릴 때 사용한다.
+     * @param timeout 최대 대기 시간
+     * @param unit 시간 단위
+     * @return 시간 안에 원소가 있으면 true, 아니면 false 반환
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!isEmpty()) {
+            return true;
+        }
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            waitingConsumer = Thread.currentThread();
+            while (true) {
+                if (!isEmpty()) {
+                    return true;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+
+    /**
+     * @fn public E take()
+     * @brief 원소가 들어올 때까지 기다렸다가 꺼내는 함수 (소비자 전용)
+     * @return 꺼낸 원소
+     */
+    public E take() throws InterruptedException {
+        E e = poll();
+        if (e != null) {
+            return e;
+        }
+
+        try {
+            waitingConsumer = Thread.currentThread();
+            while (true) {
+                e = poll();
+                if (e != null) {
+                    return e;
+                }
+
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+
+    /**
+     * @fn public void clear()
+     * @brief 남은 원소를 모두 버리는 함수 (소비자 전용)
+     * 원소의 자원(ByteBuf 등)을 해제해야 하면 poll 로 꺼내서 직접 처리해야 한다.
+     */
+    public void clear() {
+        while (poll() != null) {
+            // Nothing
+        }
+    }
+
+    /**
+     * @fn public long getPolledStamp()
+     * @brief 마지막으로 꺼낸 원소와 함께 넣은 stamp 를 반환하는 함수 (소비자 전용)
+     * @return stamp (hasStamp 가 false 이면 0)
+     */
+    public long getPolledStamp() {
+        return polledStamp;
+    }
+
+    public int size() {
+        // head 를 먼저 읽어서 size 가 음수가 되지 않도록 한다.
+        long currentHead = head.get();
+        long currentTail = tail.get();
+        return (int) Math.max(0, currentTail - currentHead);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+}
@@ -84,7 +84,8 @@ public class JobScheduler {
 
         scheduleLock.lock();
         try {
-            JobAdder jobAdder = scheduleMap.get(scheduleUnitKey + ":" + job.getName());
+            // 같은 job 을 다시 schedule 할 수 있도록 등록 정보도 삭제한다.
+            JobAdder jobAdder = scheduleMap.remove(scheduleUnitKey + ":" + job.getName());
             if (jobAdder != null) {
                 jobAdder.stop();
             }
@@ -39,6 +39,8 @@ public class JobAdder implements Runnable {
 
     public void stop() {
         scheduledThreadPoolExecutor.shutdown();
+        // 실행 중에 종료 여부를 확인하며 계속 동작하는 job 도 멈추도록 한다.
+        job.setIsFinished(true);
     }
 
     public boolean isJobFinished(Job job) {
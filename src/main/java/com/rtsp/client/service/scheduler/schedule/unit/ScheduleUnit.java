@@ -37,6 +37,7 @@ public class ScheduleUnit {
     public boolean start(Job job) {
         if (job == null) { return false; }
         job.setScheduleUnitKey(scheduleUnitKey);
+        job.setIsFinished(false);
         return jobScheduler.schedule(job);
     }
 
@@ -0,0 +1,72 @@
+package com.rtsp.client.ffmpeg;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @class public class Mp4ConversionServiceTest
+ * @brief 다음 스트림이 세그먼트 파일을 덮어쓰기 전에 이전 변환 작업을 기다리거나 취소할 수 있는지 확인하는 test
+ */
+public class Mp4ConversionServiceTest {
+
+    private static final String KEY = "test";
+
+    private Mp4ConversionService mp4ConversionService;
+
+    @Before
+    public void setUp() {
+        mp4ConversionService = new Mp4ConversionService(1);
+    }
+
+    @After
+    public void tearDown() {
+        mp4ConversionService.stop();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testAwaitWithoutJob() {
+        assertTrue(mp4ConversionService.await(KEY, 0));
+    }
+
+    @Test
+    public void testAwaitRunningJob() throws Exception {
+        CountDownLatch convertLatch = new CountDownLatch(1);
+        CompletableFuture<Boolean> future = mp4ConversionService.submit(KEY, 0, null, 0, job -> convertLatch.await(5, TimeUnit.SECONDS));
+
+        // 작업이 세그먼트를 읽는 동안에는 끝나지 않는다.
+        assertFalse(mp4ConversionService.await(KEY, 50));
+
+        convertLatch.countDown();
+        assertTrue(mp4ConversionService.await(KEY, 5000));
+        assertTrue(future.get());
+    }
+
+    @Test
+    public void testAwaitCancelledJob() throws Exception {
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch convertLatch = new CountDownLatch(1);
+        CompletableFuture<Boolean> future = mp4ConversionService.submit(KEY, 0, null, 0, job -> {
+            startLatch.countDown();
+            return convertLatch.await(5, TimeUnit.SECONDS);
+        });
+        assertTrue(startLatch.await(5, TimeUnit.SECONDS));
+        assertFalse(mp4ConversionService.await(KEY, 50));
+
+        // 기다리지 못한 작업은 취소하며, 취소한 작업은 더 기다리지 않는다.
+        assertTrue(mp4ConversionService.cancel(KEY));
+        assertTrue(mp4ConversionService.await(KEY, 0));
+        assertFalse(future.get());
+        convertLatch.countDown();
+    }
+
+}
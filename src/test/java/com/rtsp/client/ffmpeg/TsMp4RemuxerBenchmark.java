@@ -0,0 +1,111 @@
+package com.rtsp.client.ffmpeg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class public class TsMp4RemuxerBenchmark
+ * @brief 녹화한 TS 파일 하나를 MP4 로 변환하는 wall-clock 시간을 TsMp4Remuxer 와 FFmpeg 프로세스로 비교하는 JMH benchmark
+ * 실행 : mvn -P jmh test -Djmh.args="TsMp4RemuxerBenchmark -p captureFile=/path/to/capture.ts -p ffmpegPath=/opt/homebrew/bin/ffmpeg"
+ * mp4parser 는 실제 H.264 SPS / PPS 가 있어야 MP4 를 만들 수 있어서 TsStreamGenerator 의 데이터로는 측정할 수 없으므로,
+ * 카메라에서 녹화한 H.264 / AAC TS 파일을 captureFile 로 지정해야 한다. (지정하지 않으면 setup 에서 실패한다.)
+ * ffmpegPipe 는 FfmpegManager.getPipeCommand 와 같은 명령어(-c copy -bsf:a aac_adtstoasc)로 프로세스를 띄우고 표준 입력으로 TS 를 넘긴다.
+ * 결과는 변환 한 번의 평균 시간이며, 프로세스 생성 시간도 포함된다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TsMp4RemuxerBenchmark {
+
+    @Param({""})
+    public String captureFile;
+
+    @Param({"ffmpeg"})
+    public String ffmpegPath;
+
+    private File srcFile;
+    private Path tempDirectory;
+    private String javaDestFilePath;
+    private String ffmpegDestFilePath;
+    private File ffmpegLogFile;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Setup
+    public void setup() throws IOException {
+        srcFile = new File(captureFile);
+        if (captureFile.isEmpty() || !srcFile.isFile()) {
+            throw new IllegalStateException("Capture file is not found. Set -p captureFile=<H.264/AAC TS file>. (captureFile=" + captureFile + ")");
+        }
+
+        tempDirectory = Files.createTempDirectory("ts-mp4-remuxer-benchmark");
+        javaDestFilePath = tempDirectory.resolve("java.mp4").toString();
+        ffmpegDestFilePath = tempDirectory.resolve("ffmpeg.mp4").toString();
+        ffmpegLogFile = tempDirectory.resolve("ffmpeg.log").toFile();
+
+        // 측정 전에 두 방식 모두 변환할 수 있는 파일인지 확인한다.
+        if (!javaRemux()) {
+            throw new IllegalStateException("TsMp4Remuxer fails to convert the capture file. (captureFile=" + captureFile + ")");
+        }
+        if (!ffmpegPipe()) {
+            throw new IllegalStateException("FFmpeg fails to convert the capture file. (ffmpegPath=" + ffmpegPath + ", log=" + ffmpegLogFile + ")");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (tempDirectory == null) {
+            return;
+        }
+
+        Files.deleteIfExists(new File(javaDestFilePath).toPath());
+        Files.deleteIfExists(new File(ffmpegDestFilePath).toPath());
+        Files.deleteIfExists(ffmpegLogFile.toPath());
+        Files.delete(tempDirectory);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Benchmark
+    public boolean javaRemux() throws IOException {
+        return new TsMp4Remuxer().remux(new BufferedInputStream(new FileInputStream(srcFile)), javaDestFilePath);
+    }
+
+    @Benchmark
+    public boolean ffmpegPipe() throws IOException {
+        Process process = new ProcessBuilder(FfmpegManager.getPipeCommand(ffmpegPath, ffmpegDestFilePath, false))
+                .redirectInput(srcFile)
+                .redirectErrorStream(true)
+                .redirectOutput(ffmpegLogFile)
+                .start();
+        try {
+            return process.waitFor() == 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,258 @@
+package com.rtsp.client.ffmpeg;
+
+import com.rtsp.client.ffmpeg.sink.JavaRemuxSink;
+import com.rtsp.client.protocol.TsStreamGenerator;
+import com.rtsp.client.protocol.TsStreamGenerator.Capture;
+import com.rtsp.client.protocol.TsStreamGenerator.Muxer;
+import io.netty.buffer.Unpooled;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mp4parser.Box;
+import org.mp4parser.IsoFile;
+import org.mp4parser.boxes.iso14496.part12.CompositionTimeToSample;
+import org.mp4parser.boxes.iso14496.part12.EditListBox;
+import org.mp4parser.boxes.iso14496.part12.MovieFragmentBox;
+import org.mp4parser.boxes.iso14496.part12.MovieHeaderBox;
+import org.mp4parser.boxes.iso14496.part12.SampleSizeBox;
+import org.mp4parser.boxes.iso14496.part12.TimeToSampleBox;
+import org.mp4parser.boxes.iso14496.part12.TrackFragmentBaseMediaDecodeTimeBox;
+import org.mp4parser.boxes.iso14496.part12.TrackFragmentBox;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @class public class TsMp4RemuxerTest
+ * @brief TsMp4Remuxer 가 Elementary stream 최대 크기와 취소 여부를 지키고, PES timestamp 로 sample timing 을 만드는지 확인하는 test
+ */
+public class TsMp4RemuxerTest {
+
+    // 생성한 캡처의 video Elementary stream 보다 작은 크기
+    private static final int SMALL_MAX_ES_BYTES = 16 * 1024;
+
+    private static final int GOP_FRAMES = 25;
+    private static final int SEGMENT_FRAMES = 50;
+    private static final int TOTAL_FRAMES = 200;
+    private static final long AUDIO_TIMESCALE = 48000;
+
+    private byte[] capture;
+    private Path tempDirectory;
+    private String destFilePath;
+
+    @Before
+    public void setUp() throws IOException {
+        capture = new TsStreamGenerator(Muxer.FFMPEG).build().getData();
+        tempDirectory = Files.createTempDirectory("ts-mp4-remuxer");
+        destFilePath = tempDirectory.resolve("test.mp4").toString();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(new File(destFilePath).toPath());
+        Files.delete(tempDirectory);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testRemuxFailsOverEsLimit() {
+        TsMp4Remuxer tsMp4Remuxer = new TsMp4Remuxer(SMALL_MAX_ES_BYTES);
+        assertFalse(tsMp4Remuxer.remux(new ByteArrayInputStream(capture), destFilePath));
+        assertFalse(new File(destFilePath).exists());
+    }
+
+    @Test
+    public void testRemuxCancelled() {
+        TsMp4Remuxer tsMp4Remuxer = new TsMp4Remuxer();
+        assertFalse(tsMp4Remuxer.remux(new ByteArrayInputStream(capture), destFilePath, () -> true));
+        assertFalse(new File(destFilePath).exists());
+    }
+
+    @Test
+    public void testRemuxUsesDtsDelta() throws IOException {
+        long[] frameTicks = {3600, 1800, 5400, 3600};
+        byte[] h264Capture = new TsStreamGenerator(Muxer.FFMPEG).elementaryStream(true).frameTicks(frameTicks).build().getData();
+        assertTrue(new TsMp4Remuxer().remux(new ByteArrayInputStream(h264Capture), destFilePath));
+
+        try (IsoFile isoFile = new IsoFile(destFilePath)) {
+            assertEquals(TOTAL_FRAMES, getSampleCount(isoFile, 0));
+            assertEquals(TOTAL_FRAMES, getSampleCount(isoFile, 1));
+
+            // 마지막 sample 은 다음 DTS 가 없으므로 평균 frame 간격(3600)을 쓴다.
+            List<Long> sampleDurations = getSampleDurations(isoFile, 0);
+            for (int i = 0; i < TOTAL_FRAMES - 1; i++) {
+                assertEquals("sample " + i, frameTicks[i % frameTicks.length], (long) sampleDurations.get(i));
+            }
+            assertEquals(3600L, (long) sampleDurations.get(TOTAL_FRAMES - 1));
+
+            // audio 와 video 의 첫 PTS 가 같고 재정렬이 없으므로 ctts 와 edit list 가 없다.
+            assertNull(getBox(isoFile, "moov[0]/trak[0]/mdia[0]/minf[0]/stbl[0]/ctts[0]"));
+            assertNull(getBox(isoFile, "moov[0]/trak[0]/edts[0]/elst[0]"));
+            assertNull(getBox(isoFile, "moov[0]/trak[1]/edts[0]/elst[0]"));
+        }
+    }
+
+    @Test
+    public void testRemuxUsesCompositionOffset() throws IOException {
+        TsStreamGenerator generator = new TsStreamGenerator(Muxer.FFMPEG).elementaryStream(true).bFrames(true).gopFrames(GOP_FRAMES);
+        byte[] h264Capture = generator.build().getData();
+        assertTrue(new TsMp4Remuxer().remux(new ByteArrayInputStream(h264Capture), destFilePath));
+
+        try (IsoFile isoFile = new IsoFile(destFilePath)) {
+            assertEquals(TOTAL_FRAMES, getSampleCount(isoFile, 0));
+            for (long sampleDuration : getSampleDurations(isoFile, 0)) {
+                assertEquals(TsStreamGenerator.FRAME_TICKS, sampleDuration);
+            }
+
+            CompositionTimeToSample ctts = getBox(isoFile, "moov[0]/trak[0]/mdia[0]/minf[0]/stbl[0]/ctts[0]");
+            List<Long> compositionOffsets = new ArrayList<>();
+            for (CompositionTimeToSample.Entry entry : ctts.getEntries()) {
+                for (int i = 0; i < entry.getCount(); i++) {
+                    compositionOffsets.add((long) entry.getOffset());
+                }
+            }
+            assertEquals(TOTAL_FRAMES, compositionOffsets.size());
+            for (int i = 0; i < TOTAL_FRAMES; i++) {
+                assertEquals("sample " + i, generator.getCompositionOffset(i % GOP_FRAMES), (long) compositionOffsets.get(i));
+            }
+
+            // audio 는 video 의 첫 DTS 에, video 는 첫 PTS(DTS + FRAME_TICKS)에 시작하므로 video 가 한 frame 늦게 보인다.
+            long movieTimescale = ((MovieHeaderBox) getBox(isoFile, "moov[0]/mvhd[0]")).getTimescale();
+            EditListBox videoEdits = getBox(isoFile, "moov[0]/trak[0]/edts[0]/elst[0]");
+            assertEquals(2, videoEdits.getEntries().size());
+            assertEquals(-1, videoEdits.getEntries().get(0).getMediaTime());
+            assertEquals(TsStreamGenerator.FRAME_TICKS * movieTimescale / 90000, videoEdits.getEntries().get(0).getSegmentDuration());
+            assertEquals(TsStreamGenerator.FRAME_TICKS, videoEdits.getEntries().get(1).getMediaTime());
+            assertNull(getBox(isoFile, "moov[0]/trak[1]/edts[0]/elst[0]"));
+        }
+    }
+
+    @Test
+    public void testFragmentDecodeTimeFollowsTimestamps() throws IOException {
+        // 세그먼트의 마지막 frame(5400)이 평균 간격(3600)보다 길어서, 길이를 이어서 더하면 세그먼트마다 1800 씩 짧아진다.
+        long[] frameTicks = {1800, 5400};
+        Capture h264Capture = new TsStreamGenerator(Muxer.FFMPEG).elementaryStream(true).frameTicks(frameTicks).build();
+        JavaRemuxSink javaRemuxSink = new JavaRemuxSink(true, Integer.MAX_VALUE);
+        assertTrue(javaRemuxSink.start(destFilePath));
+        writeSegments(javaRemuxSink, h264Capture);
+        assertTrue(javaRemuxSink.finish());
+
+        try (IsoFile isoFile = new IsoFile(destFilePath)) {
+            List<Long> videoDecodeTimes = getDecodeTimes(isoFile, 1);
+            List<Long> audioDecodeTimes = getDecodeTimes(isoFile, 2);
+            assertEquals(TOTAL_FRAMES / SEGMENT_FRAMES, videoDecodeTimes.size());
+            assertEquals(TOTAL_FRAMES / SEGMENT_FRAMES, audioDecodeTimes.size());
+            for (int segmentIndex = 0; segmentIndex < TOTAL_FRAMES / SEGMENT_FRAMES; segmentIndex++) {
+                long segmentTicks = (long) segmentIndex * SEGMENT_FRAMES / 2 * (frameTicks[0] + frameTicks[1]);
+                assertEquals("segment " + segmentIndex, segmentTicks, (long) videoDecodeTimes.get(segmentIndex));
+
+                // 세그먼트 경계에 걸친 audio PES(이전 세그먼트의 마지막 frame)는 다음 fragment 로 넘어간다.
+                long audioTicks = segmentIndex == 0 ? 0 : segmentTicks - frameTicks[1];
+                assertEquals("segment " + segmentIndex, audioTicks * AUDIO_TIMESCALE / 90000, (long) audioDecodeTimes.get(segmentIndex));
+            }
+        }
+    }
+
+    @Test
+    public void testFragmentWithoutAudio() throws IOException {
+        TsStreamGenerator generator = new TsStreamGenerator(Muxer.FFMPEG).elementaryStream(true);
+        Capture fullCapture = generator.build();
+        for (int nth = 0; nth < SEGMENT_FRAMES; nth++) {
+            generator.dropPacket(fullCapture.findPacketIndex(2, generator.getAudioPid(), nth));
+        }
+        Capture h264Capture = generator.build();
+
+        JavaRemuxSink javaRemuxSink = new JavaRemuxSink(true, Integer.MAX_VALUE);
+        assertTrue(javaRemuxSink.start(destFilePath));
+        writeSegments(javaRemuxSink, h264Capture);
+        assertTrue(javaRemuxSink.finish());
+
+        // audio 가 없는 세 번째 세그먼트는 video 만 쓰고, 두 번째 세그먼트의 마지막 audio PES 는 네 번째 fragment 에 원래 시간으로 쓴다.
+        try (IsoFile isoFile = new IsoFile(destFilePath)) {
+            List<Long> videoDecodeTimes = getDecodeTimes(isoFile, 1);
+            List<Long> audioDecodeTimes = getDecodeTimes(isoFile, 2);
+            assertEquals(TOTAL_FRAMES / SEGMENT_FRAMES, videoDecodeTimes.size());
+            assertEquals(TOTAL_FRAMES / SEGMENT_FRAMES - 1, audioDecodeTimes.size());
+            long lastAudioTicks = (2L * SEGMENT_FRAMES - 1) * TsStreamGenerator.FRAME_TICKS;
+            assertEquals(lastAudioTicks * AUDIO_TIMESCALE / 90000, (long) audioDecodeTimes.get(2));
+        }
+    }
+
+    @Test
+    public void testJavaRemuxSinkFailsOverEsLimit() {
+        JavaRemuxSink javaRemuxSink = new JavaRemuxSink(false, SMALL_MAX_ES_BYTES);
+        assertTrue(javaRemuxSink.start(destFilePath));
+
+        int chunkSize = 7 * 188;
+        for (int offset = 0; offset + chunkSize <= capture.length; offset += chunkSize) {
+            javaRemuxSink.write(Unpooled.wrappedBuffer(capture, offset, chunkSize));
+        }
+
+        // 실패한 sink 는 저장한 세그먼트로 다시 변환하도록 false 를 반환한다.
+        assertFalse(javaRemuxSink.finish());
+        assertFalse(new File(destFilePath).exists());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private static <T extends Box> T getBox(IsoFile isoFile, String path) {
+        return org.mp4parser.tools.Path.getPath(isoFile, path);
+    }
+
+    private static void writeSegments(JavaRemuxSink javaRemuxSink, Capture capture) {
+        byte[] data = capture.getData();
+        List<Integer> segmentEnds = new ArrayList<>(capture.getSegmentOffsets());
+        segmentEnds.add(data.length);
+
+        int offset = 0;
+        for (int segmentEnd : segmentEnds) {
+            javaRemuxSink.write(Unpooled.wrappedBuffer(data, offset, segmentEnd - offset));
+            javaRemuxSink.endSegment();
+            offset = segmentEnd;
+        }
+    }
+
+    /**
+     * @fn private static List<Long> getDecodeTimes(IsoFile isoFile, long trackId)
+     * @brief 파일 순서대로 track 의 fragment 별 tfdt 를 모으는 함수 (세그먼트 안의 moof 순서는 track 순서와 다를 수 있다.)
+     */
+    private static List<Long> getDecodeTimes(IsoFile isoFile, long trackId) {
+        List<Long> decodeTimes = new ArrayList<>();
+        for (MovieFragmentBox moof : isoFile.getBoxes(MovieFragmentBox.class)) {
+            for (TrackFragmentBox traf : moof.getBoxes(TrackFragmentBox.class)) {
+                if (traf.getTrackFragmentHeaderBox().getTrackId() == trackId) {
+                    decodeTimes.add(traf.getBoxes(TrackFragmentBaseMediaDecodeTimeBox.class).get(0).getBaseMediaDecodeTime());
+                }
+            }
+        }
+        return decodeTimes;
+    }
+
+    private static long getSampleCount(IsoFile isoFile, int trackIndex) {
+        SampleSizeBox stsz = getBox(isoFile, "moov[0]/trak[" + trackIndex + "]/mdia[0]/minf[0]/stbl[0]/stsz[0]");
+        return stsz.getSampleCount();
+    }
+
+    private static List<Long> getSampleDurations(IsoFile isoFile, int trackIndex) {
+        TimeToSampleBox stts = getBox(isoFile, "moov[0]/trak[" + trackIndex + "]/mdia[0]/minf[0]/stbl[0]/stts[0]");
+        List<Long> sampleDurations = new ArrayList<>();
+        for (TimeToSampleBox.Entry entry : stts.getEntries()) {
+            for (long i = 0; i < entry.getCount(); i++) {
+                sampleDurations.add(entry.getDelta());
+            }
+        }
+        return sampleDurations;
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.rtsp.client.ffmpeg.base;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @class public class Mp4ConversionJobTest
+ * @brief 같은 MP4 파일 경로로 다시 추가한 작업을 취소된 이전 작업이 지우거나 덮어쓰지 않는지 확인하는 test
+ */
+public class Mp4ConversionJobTest {
+
+    private static final String KEY = "test";
+
+    private Path tempDirectory;
+    private String destFilePath;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDirectory = Files.createTempDirectory("mp4-conversion-job");
+        destFilePath = tempDirectory.resolve("test.mp4").toString();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        File[] files = tempDirectory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(tempDirectory);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testConvertedFileIsMoved() throws Exception {
+        Mp4ConversionJob job = newJob(0, j -> write(j.getTempFilePath(), "1"));
+        assertNotEquals(destFilePath, job.getTempFilePath());
+
+        job.run();
+        assertTrue(job.getFuture().get());
+        assertArrayEquals("1".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(new File(destFilePath).toPath()));
+        assertFalse(new File(job.getTempFilePath()).exists());
+    }
+
+    @Test
+    public void testFailedConversionKeepsDestFile() throws Exception {
+        write(destFilePath, "old");
+        Mp4ConversionJob job = newJob(0, j -> write(j.getTempFilePath(), "broken") && false);
+
+        job.run();
+        assertFalse(job.getFuture().get());
+        assertArrayEquals("old".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(new File(destFilePath).toPath()));
+        assertFalse(new File(job.getTempFilePath()).exists());
+    }
+
+    @Test
+    public void testCancelledJobDoesNotTouchResubmittedFile() throws Exception {
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch cancelLatch = new CountDownLatch(1);
+        Mp4ConversionJob oldJob = newJob(0, j -> {
+            write(j.getTempFilePath(), "old");
+            startLatch.countDown();
+            // 취소된 후에도 변환이 조금 더 이어지는 경우 (in-process remux)
+            cancelLatch.await();
+            return true;
+        });
+
+        Thread oldThread = new Thread(oldJob);
+        oldThread.start();
+        assertTrue(startLatch.await(5, TimeUnit.SECONDS));
+        oldJob.cancel();
+        assertFalse(oldJob.getFuture().get());
+
+        Mp4ConversionJob newJob = newJob(1, j -> write(j.getTempFilePath(), "new"));
+        newJob.run();
+        assertTrue(newJob.getFuture().get());
+
+        cancelLatch.countDown();
+        oldThread.join(5000);
+        assertFalse(oldThread.isAlive());
+
+        assertArrayEquals("new".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(new File(destFilePath).toPath()));
+        assertFalse(new File(oldJob.getTempFilePath()).exists());
+        assertEquals(1, tempDirectory.toFile().list().length);
+    }
+
+    @Test
+    public void testCancelAfterMoveKeepsResult() throws Exception {
+        Mp4ConversionJob job = newJob(0, j -> write(j.getTempFilePath(), "1"));
+        job.run();
+
+        // 이미 MP4 파일로 옮긴 작업은 취소해도 결과와 파일이 그대로 남는다.
+        job.cancel();
+        assertFalse(job.isCancelled());
+        assertTrue(job.getFuture().get());
+        assertArrayEquals("1".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(new File(destFilePath).toPath()));
+    }
+
+    @Test
+    public void testCancelBeforeRunReleasesTask() throws Exception {
+        AtomicInteger convertCount = new AtomicInteger(0);
+        AtomicInteger releaseCount = new AtomicInteger(0);
+        Mp4ConversionJob job = new Mp4ConversionJob(KEY, Mp4ConversionJob.PRIORITY_WATCHED, 0, destFilePath, 0, j -> {
+            convertCount.incrementAndGet();
+            return write(j.getTempFilePath(), "1");
+        }, finishedJob -> {
+            // Nothing
+        }, releaseCount::incrementAndGet);
+
+        // queue 에서 빠지지 않고 늦게 실행되어도 task 를 부르지 않고, 자원은 한 번만 놓는다.
+        job.cancel();
+        job.cancel();
+        job.run();
+        assertFalse(job.getFuture().get());
+        assertEquals(0, convertCount.get());
+        assertEquals(1, releaseCount.get());
+        assertFalse(new File(destFilePath).exists());
+    }
+
+    @Test
+    public void testCancelWhileRunningDoesNotRelease() throws Exception {
+        AtomicInteger releaseCount = new AtomicInteger(0);
+        Mp4ConversionJob job = new Mp4ConversionJob(KEY, Mp4ConversionJob.PRIORITY_WATCHED, 0, destFilePath, 0, j -> {
+            // 실행 중에 취소되면 task 가 넘겨받은 자원을 직접 마무리한다.
+            j.cancel();
+            return write(j.getTempFilePath(), "1");
+        }, finishedJob -> {
+            // Nothing
+        }, releaseCount::incrementAndGet);
+
+        job.run();
+        assertFalse(job.getFuture().get());
+        assertEquals(0, releaseCount.get());
+        assertFalse(new File(destFilePath).exists());
+        assertFalse(new File(job.getTempFilePath()).exists());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private Mp4ConversionJob newJob(long sequence, Mp4ConversionJob.Task task) {
+        return new Mp4ConversionJob(KEY, Mp4ConversionJob.PRIORITY_WATCHED, sequence, destFilePath, 0, task, job -> {
+            // Nothing
+        });
+    }
+
+    private static boolean write(String filePath, String data) throws IOException {
+        Files.write(new File(filePath).toPath(), data.getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+}
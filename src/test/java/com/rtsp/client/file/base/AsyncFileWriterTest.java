@@ -0,0 +1,98 @@
+package com.rtsp.client.file.base;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @class public class AsyncFileWriterTest
+ * @brief AsyncFileWriter 가 쓰기, fsync 실패를 FileStream 에 알리고 실패한 파일로 남은 쓰기를 버리는지 확인하는 test
+ */
+public class AsyncFileWriterTest {
+
+    private static final long SYNC_TIMEOUT_MS = 5000;
+
+    private Path tempDirectory;
+    private Path filePath;
+    private AsyncFileWriter asyncFileWriter;
+    private FileStream fileStream;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDirectory = Files.createTempDirectory("async-file-writer");
+        filePath = tempDirectory.resolve("test.ts");
+        asyncFileWriter = new AsyncFileWriter(16);
+        fileStream = new FileStream(filePath.toString(), 0, 0, asyncFileWriter);
+        fileStream.createFile(true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        asyncFileWriter.stop();
+        Files.deleteIfExists(filePath);
+        Files.delete(tempDirectory);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testWriteAndClose() throws IOException {
+        assertTrue(fileStream.openFileStream(fileStream.getFile(), true));
+        byte[] data = {0x47, 0x01, 0x02};
+        assertTrue(fileStream.writeFileStream(data));
+        assertTrue(fileStream.closeFileStream());
+        assertTrue(asyncFileWriter.sync(SYNC_TIMEOUT_MS));
+
+        assertTrue(fileStream.isDurable());
+        assertFalse(fileStream.isFailed());
+        assertArrayEquals(data, Files.readAllBytes(filePath));
+        // write 와 fsync 는 따로 기록한다.
+        assertEquals(1, asyncFileWriter.getWriteLatencyHistogram().getCount());
+        assertEquals(1, asyncFileWriter.getFsyncLatencyHistogram().getCount());
+    }
+
+    @Test
+    public void testWriteFailure() throws IOException {
+        FileChannel fileChannel = FileChannel.open(filePath, StandardOpenOption.WRITE);
+        fileChannel.close();
+
+        ByteBuf first = Unpooled.wrappedBuffer(new byte[]{0x47});
+        ByteBuf second = Unpooled.wrappedBuffer(new byte[]{0x47});
+        assertTrue(asyncFileWriter.submitWrite(fileChannel, first, fileStream));
+        assertTrue(asyncFileWriter.sync(SYNC_TIMEOUT_MS));
+        assertTrue(fileStream.isFailed());
+        assertEquals(0, first.refCnt());
+
+        // 실패한 파일로 남은 쓰기는 버린다.
+        assertTrue(asyncFileWriter.submitWrite(fileChannel, second, fileStream));
+        assertTrue(asyncFileWriter.sync(SYNC_TIMEOUT_MS));
+        assertEquals(0, second.refCnt());
+        assertEquals(0, asyncFileWriter.getTotalWriteCount());
+    }
+
+    @Test
+    public void testCloseFailure() throws IOException {
+        FileChannel fileChannel = FileChannel.open(filePath, StandardOpenOption.WRITE);
+        fileChannel.close();
+
+        // fsync 가 실패해도 durable 로 표시하지 않고 실패를 알린다.
+        assertTrue(asyncFileWriter.submitClose(fileChannel, fileStream));
+        assertTrue(asyncFileWriter.sync(SYNC_TIMEOUT_MS));
+        assertFalse(fileStream.isDurable());
+        assertTrue(fileStream.isFailed());
+    }
+
+}
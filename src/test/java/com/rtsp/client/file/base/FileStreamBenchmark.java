@@ -0,0 +1,175 @@
+package com.rtsp.client.file.base;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class public class FileStreamBenchmark
+ * @brief TS payload 하나를 세그먼트 파일에 쓰는 비용을 이전 방식(payload 마다 open / write / close)과 FileStream 으로 비교하는 JMH benchmark
+ * 실행 : mvn -P jmh test -Djmh.args="FileStreamBenchmark"
+ * openWriteClose 는 이전 StreamReceiver 처럼 payload 마다 FileOutputStream 을 append 모드로 열어서 쓰고 닫는다. (payload 하나에 open + write + close)
+ * fileStreamUnbuffered 는 열어둔 FileChannel 에 바로 쓰고 (payload 하나에 write 1 번),
+ * fileStreamBuffered 는 TS_WRITE_BUFFER_SIZE 기본값(64 KiB) 버퍼에 모아서 쓴다. (64 KiB 에 write 1 번)
+ * 세 방식 모두 SEGMENT_PACKETS 개마다 세그먼트를 닫고 새로 만든다.
+ * 결과의 bytes 를 1,000,000 으로 나누면 MB/s 이고, fileWrites 가 초당 write 호출 횟수이다.
+ * (system call 횟수는 strace -f -c -e trace=openat,write,close 로 같이 확인할 수 있다.)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileStreamBenchmark {
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    // 2 초 세그먼트에 해당하는 payload 개수
+    private static final int SEGMENT_PACKETS = 1000;
+
+    // 188 : TS 패킷 하나, 1316 : RTP payload 하나 (TS 패킷 7 개)
+    @Param({"188", "1316"})
+    public int payloadSize;
+
+    private Path tempDirectory;
+    private byte[] payloadBytes;
+    private ByteBuf payload;
+
+    private File legacyFile;
+    private int legacyPackets = 0;
+
+    private FileStream unbufferedFileStream;
+    private int unbufferedPackets = 0;
+
+    private FileStream bufferedFileStream;
+    private int bufferedPackets = 0;
+    private int bufferedBytes = 0;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Setup
+    public void setup() throws IOException {
+        tempDirectory = Files.createTempDirectory("file-stream-benchmark");
+
+        payloadBytes = new byte[payloadSize];
+        payloadBytes[0] = 0x47;
+        payload = PooledByteBufAllocator.DEFAULT.directBuffer(payloadSize);
+        payload.writeBytes(payloadBytes);
+
+        legacyFile = tempDirectory.resolve("legacy.ts").toFile();
+        unbufferedFileStream = openSegment(new FileStream(tempDirectory.resolve("unbuffered.ts").toString(), 0, 0));
+        bufferedFileStream = openSegment(new FileStream(tempDirectory.resolve("buffered.ts").toString(), 0, WRITE_BUFFER_SIZE));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        payload.release();
+        unbufferedFileStream.removeFile();
+        bufferedFileStream.removeFile();
+        Files.deleteIfExists(legacyFile.toPath());
+        Files.delete(tempDirectory);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @class public static class Counters
+     * @brief 초당 파일에 쓴 byte 수와 write 호출 횟수
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long bytes;
+        public long fileWrites;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            fileWrites = 0;
+        }
+
+    }
+
+    @Benchmark
+    public void openWriteClose(Counters counters) throws IOException {
+        if (++legacyPackets >= SEGMENT_PACKETS) {
+            legacyPackets = 0;
+            Files.deleteIfExists(legacyFile.toPath());
+        }
+
+        try (FileOutputStream fileOutputStream = new FileOutputStream(legacyFile, true)) {
+            fileOutputStream.write(payloadBytes);
+            fileOutputStream.flush();
+        }
+        counters.bytes += payloadSize;
+        counters.fileWrites++;
+    }
+
+    @Benchmark
+    public boolean fileStreamUnbuffered(Counters counters) {
+        if (++unbufferedPackets >= SEGMENT_PACKETS) {
+            unbufferedPackets = 0;
+            openSegment(unbufferedFileStream);
+        }
+
+        counters.bytes += payloadSize;
+        counters.fileWrites++;
+        return unbufferedFileStream.writeFileStream(payload);
+    }
+
+    @Benchmark
+    public boolean fileStreamBuffered(Counters counters) {
+        if (++bufferedPackets >= SEGMENT_PACKETS) {
+            bufferedPackets = 0;
+            // 세그먼트를 닫을 때 버퍼에 남은 데이터를 쓴다.
+            if (bufferedBytes > 0) {
+                counters.fileWrites++;
+                bufferedBytes = 0;
+            }
+            openSegment(bufferedFileStream);
+        }
+
+        if (bufferedBytes + payloadSize > WRITE_BUFFER_SIZE) {
+            counters.fileWrites++;
+            bufferedBytes = 0;
+        }
+        bufferedBytes += payloadSize;
+        counters.bytes += payloadSize;
+        return bufferedFileStream.writeFileStream(payload);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn private static FileStream openSegment(FileStream fileStream)
+     * @brief 세그먼트 파일을 닫고 비운 후 다시 여는 함수 (RtspFileManager 가 새 세그먼트를 만드는 순서와 같다.)
+     */
+    private static FileStream openSegment(FileStream fileStream) {
+        fileStream.removeFile();
+        fileStream.createFile(true);
+        fileStream.openFileStream(fileStream.getFile(), true);
+        return fileStream;
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.rtsp.client.file.base;
+
+import com.rtsp.client.file.store.MemorySegmentStore;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @class public class FileStreamTest
+ * @brief FileStream 이 쓰기 버퍼에 모은 데이터를 flush, close 할 때 파일에 순서대로 쓰는지 확인하는 test
+ */
+public class FileStreamTest {
+
+    private static final int WRITE_BUFFER_SIZE = 4096;
+    private static final int PAYLOAD_SIZE = 1316;
+
+    private Path tempDirectory;
+    private FileStream fileStream;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDirectory = Files.createTempDirectory("file-stream");
+        fileStream = new FileStream(tempDirectory.resolve("test.ts").toString(), 0, WRITE_BUFFER_SIZE);
+        fileStream.createFile(true);
+        assertTrue(fileStream.openFileStream(fileStream.getFile(), true));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileStream.removeFile();
+        Files.delete(tempDirectory);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testCoalescedWrite() throws IOException {
+        File file = fileStream.getFile();
+        byte[] expected = new byte[PAYLOAD_SIZE * 10];
+        for (int i = 0; i < 10; i++) {
+            byte[] payload = payload(i);
+            System.arraycopy(payload, 0, expected, i * PAYLOAD_SIZE, PAYLOAD_SIZE);
+            assertTrue(fileStream.writeFileStream(payload));
+
+            // 버퍼가 가득 찰 때만 파일에 쓴다.
+            assertEquals((long) (i / 3) * 3 * PAYLOAD_SIZE, file.length());
+        }
+
+        assertTrue(fileStream.flushFileStream());
+        assertEquals(expected.length, file.length());
+        assertTrue(fileStream.isOpened());
+
+        assertTrue(fileStream.closeFileStream());
+        assertFalse(fileStream.isOpened());
+        assertTrue(fileStream.isDurable());
+        assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+        assertEquals(expected.length, fileStream.getTotalDataSize());
+    }
+
+    @Test
+    public void testLargeWriteBypassesBuffer() throws IOException {
+        byte[] small = payload(1);
+        byte[] large = new byte[WRITE_BUFFER_SIZE * 2];
+        large[0] = 0x47;
+        large[large.length - 1] = 0x02;
+
+        assertTrue(fileStream.writeFileStream(small));
+        ByteBuf data = Unpooled.wrappedBuffer(large);
+        assertTrue(fileStream.writeFileStream(data));
+        // readerIndex 는 바뀌지 않는다.
+        assertEquals(large.length, data.readableBytes());
+        assertEquals(small.length + large.length, fileStream.getFile().length());
+
+        assertTrue(fileStream.closeFileStream());
+        byte[] written = Files.readAllBytes(fileStream.getFile().toPath());
+        assertEquals(small[1], written[1]);
+        assertEquals(0x02, written[written.length - 1]);
+    }
+
+    @Test
+    public void testCloseAtLimitDataSize() throws IOException {
+        FileStream limitedFileStream = new FileStream(tempDirectory.resolve("limited.ts").toString(), PAYLOAD_SIZE * 2, WRITE_BUFFER_SIZE);
+        limitedFileStream.createFile(true);
+        assertTrue(limitedFileStream.openFileStream(limitedFileStream.getFile(), true));
+
+        try {
+            // 제한 크기에 닿기 전까지는 계속 쓴다.
+            assertTrue(limitedFileStream.writeFileStream(payload(1)));
+            assertTrue(limitedFileStream.isOpened());
+
+            // 제한 크기에 닿으면 닫는다.
+            assertTrue(limitedFileStream.writeFileStream(payload(2)));
+            assertFalse(limitedFileStream.isOpened());
+            assertFalse(limitedFileStream.writeFileStream(payload(3)));
+            assertEquals(PAYLOAD_SIZE * 2, limitedFileStream.getFile().length());
+        } finally {
+            limitedFileStream.removeFile();
+        }
+    }
+
+    @Test
+    public void testFailedSpill() throws IOException {
+        // 세그먼트 경로의 상위 경로가 파일이므로 디스크로 옮길 수 없다.
+        Path blocker = Files.createFile(tempDirectory.resolve("blocker"));
+        MemorySegmentStore memorySegmentStore = new MemorySegmentStore(MemorySegmentStore.CHUNK_SIZE);
+        FileStream storeFileStream = new FileStream(blocker.resolve("spill.ts").toString(), 0);
+        storeFileStream.setSegmentStore(memorySegmentStore);
+        storeFileStream.createFile(true);
+        assertTrue(storeFileStream.openFileStream(storeFileStream.getFile(), true));
+
+        try {
+            assertTrue(storeFileStream.writeFileStream(new byte[MemorySegmentStore.CHUNK_SIZE]));
+            assertFalse(storeFileStream.isFailed());
+
+            // 메모리 한도를 넘으면 디스크로 옮기다 실패하고, FileStream 을 실패로 표시한다.
+            assertFalse(storeFileStream.writeFileStream(payload(1)));
+            assertTrue(storeFileStream.isFailed());
+            assertEquals(0, memorySegmentStore.getUsedBytes());
+            assertFalse(storeFileStream.writeFileStream(payload(2)));
+
+            assertTrue(storeFileStream.closeFileStream());
+            assertFalse(storeFileStream.isDurable());
+        } finally {
+            storeFileStream.removeFile();
+            Files.delete(blocker);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private static byte[] payload(int index) {
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        payload[0] = 0x47;
+        for (int i = 1; i < PAYLOAD_SIZE; i++) {
+            payload[i] = (byte) (index + i);
+        }
+        return payload;
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.rtsp.client.media.module.base;
+
+import com.rtsp.client.protocol.TsStreamGenerator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @class public class BoundedMediaBufferTest
+ * @brief BoundedMediaBuffer 의 DROP_UNTIL_PUSI 재시작 위치, 소비자가 멈췄을 때 DROP_OLDEST 한도, 수신 버퍼 크기 기준 메모리 계산을 확인하는 test
+ */
+public class BoundedMediaBufferTest {
+
+    private static final int VIDEO_PID = 0x100;
+    private static final int AUDIO_PID = 0x101;
+    private static final int PACKET_SIZE = BoundedMediaBuffer.TS_PACKET_SIZE;
+
+    private final MediaMemoryBudget memoryBudget = new MediaMemoryBudget(1024 * 1024);
+    private BoundedMediaBuffer boundedMediaBuffer = null;
+
+    @After
+    public void tearDown() {
+        if (boundedMediaBuffer != null) {
+            boundedMediaBuffer.clear();
+        }
+        assertEquals(0, memoryBudget.getUsedBytes());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testRandomAccessPointWithoutVideoPid() {
+        // video PID 를 모르면 random_access_indicator 가 있는 PUSI 만 재시작 위치로 본다.
+        assertFalse(BoundedMediaBuffer.hasRandomAccessPoint(payload(AUDIO_PID, true, false), -1));
+        assertFalse(BoundedMediaBuffer.hasRandomAccessPoint(payload(VIDEO_PID, false, true), -1));
+        assertTrue(BoundedMediaBuffer.hasRandomAccessPoint(payload(VIDEO_PID, true, true), -1));
+    }
+
+    @Test
+    public void testRandomAccessPointWithVideoPid() {
+        assertFalse(BoundedMediaBuffer.hasRandomAccessPoint(payload(AUDIO_PID, true, true), VIDEO_PID));
+        assertFalse(BoundedMediaBuffer.hasRandomAccessPoint(payload(0, true, false), VIDEO_PID));
+        assertTrue(BoundedMediaBuffer.hasRandomAccessPoint(payload(VIDEO_PID, true, false), VIDEO_PID));
+    }
+
+    @Test
+    public void testDropUntilVideoPusi() {
+        boundedMediaBuffer = new BoundedMediaBuffer(1, Long.MAX_VALUE, MediaBufferOverflowPolicy.DROP_UNTIL_PUSI, memoryBudget);
+        boundedMediaBuffer.setVideoPid(VIDEO_PID);
+
+        assertTrue(boundedMediaBuffer.offer(payload(VIDEO_PID, true, true)));
+        assertFalse(boundedMediaBuffer.offer(payload(VIDEO_PID, false, false)));
+        release(boundedMediaBuffer.poll());
+        // 넘친 후에는 audio PES 시작이 와도 버린다.
+        assertFalse(boundedMediaBuffer.offer(payload(AUDIO_PID, true, false)));
+        assertTrue(boundedMediaBuffer.offer(payload(VIDEO_PID, true, false)));
+        assertEquals(2, boundedMediaBuffer.getDroppedPackets());
+    }
+
+    @Test
+    public void testChargePinnedBuffer() {
+        boundedMediaBuffer = new BoundedMediaBuffer(16, Long.MAX_VALUE, MediaBufferOverflowPolicy.DROP_NEWEST, memoryBudget);
+
+        // recvmmsg 처럼 datagram 16 개를 담은 수신 버퍼
+        int payloadSize = 7 * PACKET_SIZE;
+        ByteBuf recvBuf = PooledByteBufAllocator.DEFAULT.directBuffer(1500 * 16);
+        recvBuf.writeZero(1500 * 16);
+        ByteBuf slice = recvBuf.retainedSlice(0, payloadSize);
+        recvBuf.release();
+
+        assertTrue(boundedMediaBuffer.offer(slice));
+        // 수신 버퍼는 복사본을 넣으면서 pool 로 돌아간다.
+        assertEquals(0, recvBuf.refCnt());
+        assertTrue(memoryBudget.getUsedBytes() >= payloadSize);
+        assertTrue(memoryBudget.getUsedBytes() < 1500 * 16);
+
+        ByteBuf data = boundedMediaBuffer.poll();
+        assertNotNull(data);
+        assertNotSame(slice, data);
+        assertEquals(payloadSize, data.readableBytes());
+        assertEquals(0, memoryBudget.getUsedBytes());
+        data.release();
+    }
+
+    @Test
+    public void testChargeSliceParentCapacity() {
+        boundedMediaBuffer = new BoundedMediaBuffer(16, Long.MAX_VALUE, MediaBufferOverflowPolicy.DROP_NEWEST, memoryBudget);
+
+        // NIO 수신 버퍼(2048 bytes)처럼 payload 보다 조금 큰 버퍼는 복사하지 않고 버퍼 크기로 계산한다.
+        ByteBuf recvBuf = Unpooled.buffer(2048);
+        recvBuf.writeZero(12 + 7 * PACKET_SIZE);
+        ByteBuf slice = recvBuf.retainedSlice(12, 7 * PACKET_SIZE);
+        recvBuf.release();
+
+        assertTrue(boundedMediaBuffer.offer(slice));
+        assertEquals(2048, boundedMediaBuffer.getBytes());
+        assertEquals(2048, memoryBudget.getUsedBytes());
+
+        ByteBuf data = boundedMediaBuffer.poll();
+        assertSame(slice, data);
+        assertNull(boundedMediaBuffer.poll());
+        assertEquals(0, boundedMediaBuffer.getBytes());
+        data.release();
+    }
+
+    @Test
+    public void testPolledArrivalTime() throws InterruptedException {
+        boundedMediaBuffer = new BoundedMediaBuffer(2, Long.MAX_VALUE, MediaBufferOverflowPolicy.DROP_OLDEST, memoryBudget);
+
+        assertTrue(boundedMediaBuffer.offer(payload(1, false, false), 100));
+        assertTrue(boundedMediaBuffer.offer(payload(2, false, false), 200));
+        assertTrue(boundedMediaBuffer.offer(payload(3, false, false), 300));
+
+        // 생산자가 버린 데이터의 수신 시간은 꺼낸 데이터에 섞이지 않는다.
+        release(boundedMediaBuffer.poll());
+        assertEquals(200, boundedMediaBuffer.getPolledArrivalTime());
+        release(boundedMediaBuffer.poll(10, TimeUnit.MILLISECONDS));
+        assertEquals(300, boundedMediaBuffer.getPolledArrivalTime());
+    }
+
+    @Test
+    public void testDropOldestWithStalledConsumer() {
+        boundedMediaBuffer = new BoundedMediaBuffer(4, Long.MAX_VALUE, MediaBufferOverflowPolicy.DROP_OLDEST, memoryBudget);
+
+        // 소비자가 꺼내지 않아도 생산자가 한도를 지키고, 가장 최근 데이터만 남긴다.
+        for (int i = 0; i < 10; i++) {
+            assertTrue(boundedMediaBuffer.offer(payload(i, false, false)));
+            assertTrue(boundedMediaBuffer.size() <= 4);
+        }
+        assertEquals(4, boundedMediaBuffer.size());
+        assertEquals(6, boundedMediaBuffer.getDroppedPackets());
+        assertEquals(4L * 7 * PACKET_SIZE, memoryBudget.getUsedBytes());
+
+        for (int i = 6; i < 10; i++) {
+            ByteBuf data = boundedMediaBuffer.poll();
+            assertNotNull(data);
+            assertEquals(i, data.getByte(data.readerIndex() + 2));
+            data.release();
+        }
+        assertNull(boundedMediaBuffer.poll());
+    }
+
+    @Test
+    public void testDropOldestByBytesWithStalledConsumer() throws InterruptedException {
+        int payloadSize = 7 * PACKET_SIZE;
+        boundedMediaBuffer = new BoundedMediaBuffer(16, 3L * payloadSize, MediaBufferOverflowPolicy.DROP_OLDEST, memoryBudget);
+
+        for (int i = 0; i < 8; i++) {
+            assertTrue(boundedMediaBuffer.offer(payload(i, false, false)));
+            assertTrue(boundedMediaBuffer.getBytes() <= 3L * payloadSize);
+        }
+        assertEquals(3, boundedMediaBuffer.size());
+        assertEquals(5L * payloadSize, boundedMediaBuffer.getDroppedBytes());
+
+        ByteBuf data = boundedMediaBuffer.poll(10, TimeUnit.MILLISECONDS);
+        assertNotNull(data);
+        assertEquals(5, data.getByte(data.readerIndex() + 2));
+        data.release();
+
+        // maxBytes 보다 큰 데이터는 다 비워도 들어가지 않으므로 남은 데이터는 두고 새 데이터를 버린다.
+        ByteBuf large = Unpooled.buffer(4 * payloadSize);
+        large.writeZero(4 * payloadSize);
+        assertFalse(boundedMediaBuffer.offer(large));
+        assertEquals(0, large.refCnt());
+        assertEquals(2, boundedMediaBuffer.size());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn private static ByteBuf payload(int pid, boolean isPusi, boolean isRandomAccess)
+     * @brief 첫 번째 패킷만 pid 이고 나머지는 Null 패킷인 RTP payload (7 x 188 bytes) 를 만드는 함수
+     */
+    private static ByteBuf payload(int pid, boolean isPusi, boolean isRandomAccess) {
+        ByteBuf data = Unpooled.buffer(7 * PACKET_SIZE);
+        for (int i = 0; i < 7; i++) {
+            int packetPid = i == 0 ? pid : 0x1FFF;
+            byte[] packet = new byte[PACKET_SIZE];
+            packet[0] = BoundedMediaBuffer.TS_SYNC_BYTE;
+            packet[1] = (byte) (((i == 0 && isPusi) ? 0x40 : 0) | (packetPid >> 8));
+            packet[2] = (byte) packetPid;
+            packet[3] = 0x10;
+            if (i == 0 && isRandomAccess) {
+                TsStreamGenerator.writeAdaptationField(packet, 0x40, -1, 7);
+            }
+            data.writeBytes(packet);
+        }
+        return data;
+    }
+
+    private static void release(ByteBuf data) {
+        assertNotNull(data);
+        data.release();
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.rtsp.client.media.module.base;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @class public class RtpReorderBufferTest
+ * @brief RtpReorderBuffer 의 순서 맞춤과 RFC 3550 A.1 sequence number 재동기화를 확인하는 test
+ */
+public class RtpReorderBufferTest {
+
+    private static final int DEPTH = 64;
+    // 테스트 중에 latency 로 건너뛰지 않도록 충분히 길게 잡는다.
+    private static final long LATENCY = 60000;
+
+    private final List<Integer> emittedSeqs = new ArrayList<>();
+    private final List<Long> emittedArrivalTimes = new ArrayList<>();
+    private final List<ByteBuf> offeredPayloads = new ArrayList<>();
+    private RtpReorderBuffer rtpReorderBuffer;
+
+    @Before
+    public void setUp() {
+        rtpReorderBuffer = new RtpReorderBuffer(DEPTH, LATENCY, LATENCY, false, RtpJitterEstimator.DEFAULT_CLOCK_RATE, (payload, arrivalTime) -> {
+            emittedSeqs.add(payload.getInt(0));
+            emittedArrivalTimes.add(arrivalTime);
+            payload.release();
+        });
+    }
+
+    @After
+    public void tearDown() {
+        rtpReorderBuffer.clear();
+        // 버퍼가 넘겨받은 payload 는 전달하거나 버릴 때 모두 release 해야 한다.
+        for (ByteBuf payload : offeredPayloads) {
+            assertEquals(0, payload.refCnt());
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testReorder() {
+        offer(10, 12, 11, 13);
+        assertEquals(Arrays.asList(10, 11, 12, 13), emittedSeqs);
+        assertEquals(1, rtpReorderBuffer.getReorderedCount());
+    }
+
+    @Test
+    public void testReorderKeepsArrivalTime() {
+        long startTime = System.nanoTime();
+        offer(10, 12, 11);
+        assertEquals(Arrays.asList(10, 11, 12), emittedSeqs);
+        // 기다렸다가 전달한 payload 도 전달한 시간이 아니라 받은 시간을 넘긴다.
+        assertTrue(emittedArrivalTimes.get(0) >= startTime);
+        assertTrue(emittedArrivalTimes.get(2) <= emittedArrivalTimes.get(1));
+    }
+
+    @Test
+    public void testWraparound() {
+        offer(0xFFFE, 0, 0xFFFF, 1);
+        assertEquals(Arrays.asList(0xFFFE, 0xFFFF, 0, 1), emittedSeqs);
+        assertEquals(0, rtpReorderBuffer.getResyncCount());
+    }
+
+    @Test
+    public void testLateAndDuplicate() {
+        offer(100, 101, 102, 101, 50);
+        assertEquals(Arrays.asList(100, 101, 102), emittedSeqs);
+        // 이미 전달한 101 과 MAX_MISORDER 안에서 뒤처진 50 은 late 로 센다.
+        assertEquals(2, rtpReorderBuffer.getLateCount());
+        assertEquals(0, rtpReorderBuffer.getOutOfRangeCount());
+        assertEquals(0, rtpReorderBuffer.getDuplicateCount());
+
+        offer(104, 104);
+        assertEquals(1, rtpReorderBuffer.getDuplicateCount());
+    }
+
+    @Test
+    public void testBackwardJumpResync() {
+        // 송신 측이 다시 시작해서 sequence number 가 뒤로 돌아간 경우
+        offer(5000, 5001, 5002);
+        offer(100, 101, 102, 103);
+        // 첫 번째 범위 밖 패킷은 버리고, 연속된 두 번째부터 다시 맞춘다.
+        assertEquals(Arrays.asList(5000, 5001, 5002, 101, 102, 103), emittedSeqs);
+        assertEquals(1, rtpReorderBuffer.getResyncCount());
+        assertEquals(1, rtpReorderBuffer.getOutOfRangeCount());
+    }
+
+    @Test
+    public void testForwardJumpResync() {
+        offer(200, 202);
+        offer(40000, 40001, 40002);
+        // 기다리던 202 는 재동기화 전에 전달한다.
+        assertEquals(Arrays.asList(200, 202, 40001, 40002), emittedSeqs);
+        assertEquals(1, rtpReorderBuffer.getResyncCount());
+    }
+
+    @Test
+    public void testStrayPacketDoesNotResync() {
+        // 범위 밖 패킷이 하나씩만 들어오면 버리고 기존 순서를 유지한다.
+        offer(300, 301, 9000, 302, 20000, 303);
+        assertEquals(Arrays.asList(300, 301, 302, 303), emittedSeqs);
+        assertEquals(0, rtpReorderBuffer.getResyncCount());
+        assertEquals(2, rtpReorderBuffer.getOutOfRangeCount());
+    }
+
+    @Test
+    public void testClearReseeds() {
+        offer(1000, 1001);
+        rtpReorderBuffer.clear();
+        offer(10, 11);
+        assertEquals(Arrays.asList(1000, 1001, 10, 11), emittedSeqs);
+        assertEquals(0, rtpReorderBuffer.getLateCount());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private void offer(int... seqs) {
+        for (int seq : seqs) {
+            ByteBuf payload = Unpooled.buffer(4).writeInt(seq);
+            offeredPayloads.add(payload);
+            rtpReorderBuffer.offer(seq, seq * 3600L, payload);
+        }
+    }
+
+}
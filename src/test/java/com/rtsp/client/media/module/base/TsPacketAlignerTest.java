@@ -0,0 +1,88 @@
+package com.rtsp.client.media.module.base;
+
+import com.rtsp.client.protocol.TsPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @class public class TsPacketAlignerTest
+ * @brief TsPacketAligner 가 sync 를 잃은 payload 에서 버린 bytes 를 한 번만 세는지 확인하는 test
+ */
+public class TsPacketAlignerTest {
+
+    private static final int PID = 0x100;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testAlignedPayload() {
+        TsPacketAligner tsPacketAligner = new TsPacketAligner(true);
+        ByteBuf data = Unpooled.wrappedBuffer(packet(), packet(), packet());
+
+        assertEquals(3, tsPacketAligner.align(data));
+        assertEquals(3 * TsPacket.TS_TOTAL_SIZE, data.readableBytes());
+        assertEquals(0, tsPacketAligner.getResyncCount());
+        assertEquals(0, tsPacketAligner.getSkippedBytes());
+    }
+
+    @Test
+    public void testFailedResync() {
+        TsPacketAligner tsPacketAligner = new TsPacketAligner(true);
+        // sync byte 가 하나도 없는 payload
+        ByteBuf data = Unpooled.wrappedBuffer(garbage(400));
+
+        assertEquals(0, tsPacketAligner.align(data));
+        assertEquals(0, data.readableBytes());
+        assertEquals(1, tsPacketAligner.getResyncCount());
+        assertEquals(400, tsPacketAligner.getSkippedBytes());
+    }
+
+    @Test
+    public void testFailedResyncAfterPacket() {
+        TsPacketAligner tsPacketAligner = new TsPacketAligner(true);
+        // 정상 패킷 뒤에 sync byte 가 없는 깨진 데이터가 이어진다.
+        // 두 번째 패킷은 다음 위치에 sync byte 가 없으므로 깨진 데이터와 함께 버린다.
+        ByteBuf data = Unpooled.wrappedBuffer(packet(), packet(), garbage(300));
+
+        assertEquals(1, tsPacketAligner.align(data));
+        assertEquals(TsPacket.TS_TOTAL_SIZE, data.readableBytes());
+        assertEquals(1, tsPacketAligner.getResyncCount());
+        assertEquals(TsPacket.TS_TOTAL_SIZE + 300, tsPacketAligner.getSkippedBytes());
+    }
+
+    @Test
+    public void testResync() {
+        TsPacketAligner tsPacketAligner = new TsPacketAligner(true);
+        // 앞의 깨진 데이터를 버리고 다음 sync byte 부터 다시 맞춘다.
+        ByteBuf data = Unpooled.wrappedBuffer(garbage(5), packet(), packet());
+
+        assertEquals(2, tsPacketAligner.align(data));
+        assertEquals(2 * TsPacket.TS_TOTAL_SIZE, data.readableBytes());
+        assertEquals(1, tsPacketAligner.getResyncCount());
+        assertEquals(5, tsPacketAligner.getSkippedBytes());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private static byte[] packet() {
+        byte[] packet = new byte[TsPacket.TS_TOTAL_SIZE];
+        Arrays.fill(packet, (byte) 0xFF);
+        packet[0] = TsPacket.SYNC_BYTE;
+        packet[1] = (byte) ((PID >> 8) & 0x1F);
+        packet[2] = (byte) (PID & 0xFF);
+        packet[3] = 0x10;
+        return packet;
+    }
+
+    private static byte[] garbage(int length) {
+        byte[] garbage = new byte[length];
+        Arrays.fill(garbage, (byte) 0x00);
+        return garbage;
+    }
+
+}
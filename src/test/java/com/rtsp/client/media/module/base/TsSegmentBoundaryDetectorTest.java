@@ -0,0 +1,220 @@
+package com.rtsp.client.media.module.base;
+
+import com.rtsp.client.protocol.TsPacket;
+import com.rtsp.client.protocol.TsPacketReader;
+import com.rtsp.client.protocol.TsStreamGenerator;
+import com.rtsp.client.protocol.TsStreamGenerator.Capture;
+import com.rtsp.client.protocol.TsStreamGenerator.Muxer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @class public class TsSegmentBoundaryDetectorTest
+ * @brief TsSegmentBoundaryDetector 가 muxer 별 TS 캡처에서 세그먼트 경계를 찾는지 확인하는 test
+ * RTP payload 처럼 7 개 패킷 단위로 나눠서 StreamReceiver.writeTsData 와 같은 순서로 findBoundary 를 호출한다.
+ */
+public class TsSegmentBoundaryDetectorTest {
+
+    // RTP 패킷 하나에 들어있는 TS 패킷 개수 (RFC 2250)
+    private static final int CHUNK_SIZE = 7 * TsPacket.TS_TOTAL_SIZE;
+
+    ////////////////////////////////////////////////////////////////////////////////
+    // 하나의 muxer 가 나눈 세그먼트 (CC, PCR 이 이어진다.)
+
+    @Test
+    public void testFfmpegSingleMuxer() {
+        Capture capture = new TsStreamGenerator(Muxer.FFMPEG).build();
+        assertEquals(capture.getSegmentOffsets(), findBoundaries(capture, capture.getDurations()));
+    }
+
+    @Test
+    public void testGstreamerSingleMuxer() {
+        Capture capture = new TsStreamGenerator(Muxer.GSTREAMER).segmentFrames(50, 75, 50, 25).build();
+        assertEquals(capture.getSegmentOffsets(), findBoundaries(capture, capture.getDurations()));
+    }
+
+    @Test
+    public void testFfmpegSingleMuxerRoundedExtinf() {
+        // GOP 가 1 초이고 #EXTINF 를 정수로 반올림한 경우 (2.4 -> 2, 1.6 -> 2)
+        Capture capture = new TsStreamGenerator(Muxer.FFMPEG).segmentFrames(60, 40, 50, 50).gopFrames(10).build();
+        List<Integer> boundaries = findBoundaries(capture, new double[]{2, 2, 2, 2});
+        assertEquals(3, boundaries.size());
+        // 첫 번째 세그먼트는 #EXTINF 가 짧으므로 2 초 지점의 PAT 에서 나눠지지만, 이후 세그먼트는 누적 시간으로 다시 맞춰진다.
+        assertEquals(capture.getSegmentOffsets().subList(1, 3), boundaries.subList(1, 3));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    // 세그먼트마다 새로 mux 한 경우 (CC 가 0 으로 다시 시작한다.)
+
+    @Test
+    public void testSegmenterPerSegmentMux() {
+        Capture capture = new TsStreamGenerator(Muxer.SEGMENTER).gopFrames(50).build();
+        assertEquals(capture.getSegmentOffsets(), findBoundaries(capture, capture.getDurations()));
+    }
+
+    @Test
+    public void testSegmenterPcrRestartRoundedExtinf() {
+        // PCR 도 세그먼트마다 다시 시작하고, #EXTINF 는 반올림된 값
+        Capture capture = new TsStreamGenerator(Muxer.SEGMENTER).segmentFrames(60, 40, 50, 50).gopFrames(100)
+                .restartPcr(true).build();
+        assertEquals(capture.getSegmentOffsets(), findBoundaries(capture, new double[]{2, 2, 2, 2}));
+    }
+
+    @Test
+    public void testSegmenterDiscontinuityIndicator() {
+        // 세그먼트 길이를 모르더라도 discontinuity_indicator 로 나눈다.
+        Capture capture = new TsStreamGenerator(Muxer.SEGMENTER).restartPcr(true).discontinuityOnSegmentStart(true).build();
+        assertEquals(capture.getSegmentOffsets(), findBoundaries(capture, new double[]{0, 0, 0, 0}));
+    }
+
+    @Test
+    public void testFfmpegRemuxPerSegment() {
+        Capture capture = new TsStreamGenerator(Muxer.FFMPEG).remuxPerSegment(true).build();
+        assertEquals(capture.getSegmentOffsets(), findBoundaries(capture, capture.getDurations()));
+    }
+
+    @Test
+    public void testGstreamerRemuxPerSegmentUnknownDuration() {
+        // 세그먼트 길이를 모르면 CC 가 0 으로 다시 시작하는 PAT 에서 나눈다.
+        Capture capture = new TsStreamGenerator(Muxer.GSTREAMER).remuxPerSegment(true).restartPcr(true).build();
+        assertEquals(capture.getSegmentOffsets(), findBoundaries(capture, new double[]{0, 0, 0, 0}));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    // 패킷 손실
+
+    @Test
+    public void testFfmpegLostPatInSegment() {
+        TsStreamGenerator generator = new TsStreamGenerator(Muxer.FFMPEG);
+        Capture original = generator.build();
+        for (int segmentIndex = 0; segmentIndex < 4; segmentIndex++) {
+            generator.dropPacket(original.findPacketIndex(segmentIndex, TsPacketReader.PAT_PID, 5));
+        }
+
+        Capture capture = generator.build();
+        assertEquals(capture.getSegmentOffsets(), findBoundaries(capture, capture.getDurations()));
+    }
+
+    @Test
+    public void testFfmpegLostPatBeforeCcWrap() {
+        // CC 15 인 PAT 를 잃어버리면 다음 PAT 의 CC 는 14 -> 0 이 되어 다시 시작한 것처럼 보인다.
+        TsStreamGenerator generator = new TsStreamGenerator(Muxer.FFMPEG).segmentFrames(100, 100, 100);
+        Capture original = generator.build();
+        int droppedCount = 0;
+        for (int segmentIndex = 0; segmentIndex < 3; segmentIndex++) {
+            // 세그먼트 앞쪽 절반 안에 있는 CC 15 PAT
+            for (int nth = 1; nth < 12; nth++) {
+                int packetIndex = original.findPacketIndex(segmentIndex, TsPacketReader.PAT_PID, nth);
+                if (original.getContinuityCounter(packetIndex) == 0x0F) {
+                    generator.dropPacket(packetIndex);
+                    droppedCount++;
+                    break;
+                }
+            }
+        }
+        assertTrue(droppedCount > 0);
+
+        Capture capture = generator.build();
+        assertEquals(capture.getSegmentOffsets(), findBoundaries(capture, capture.getDurations()));
+    }
+
+    @Test
+    public void testFfmpegLostPcrPackets() {
+        // PCR 을 가진 video 패킷을 잃어버려도 시간이 밀리지 않아야 한다.
+        TsStreamGenerator generator = new TsStreamGenerator(Muxer.FFMPEG);
+        Capture original = generator.build();
+        for (int segmentIndex = 0; segmentIndex < 4; segmentIndex++) {
+            for (int nth = 7; nth < 200; nth += 37) {
+                generator.dropPacket(original.findPacketIndex(segmentIndex, generator.getVideoPid(), nth));
+            }
+        }
+
+        Capture capture = generator.build();
+        assertEquals(capture.getSegmentOffsets(), findBoundaries(capture, capture.getDurations()));
+    }
+
+    @Test
+    public void testGstreamerLostPatBeforeKeyframe() {
+        // 세그먼트 시작 PAT 를 잃어버리면 keyframe (random_access_indicator) 에서 나눈다.
+        TsStreamGenerator generator = new TsStreamGenerator(Muxer.GSTREAMER);
+        Capture original = generator.build();
+        generator.dropPacket(original.findPacketIndex(2, TsPacketReader.PAT_PID, 0));
+
+        Capture capture = generator.build();
+        List<Integer> expected = new ArrayList<>(capture.getSegmentOffsets());
+        // PAT 자리에 PMT 가 오고, 그 다음 패킷이 keyframe 이다.
+        expected.set(1, expected.get(1) + TsPacket.TS_TOTAL_SIZE);
+        assertEquals(expected, findBoundaries(capture, capture.getDurations()));
+    }
+
+    @Test
+    public void testSegmenterLostPatInSegment() {
+        // 세그먼트 시작에만 PAT 가 있는 muxer 에서 PAT 를 잃어버리면 다음 세그먼트의 PAT CC 가 두 칸 건너뛴다.
+        TsStreamGenerator generator = new TsStreamGenerator(Muxer.SEGMENTER).remuxPerSegment(false).gopFrames(50);
+        Capture original = generator.build();
+        generator.dropPacket(original.findPacketIndex(1, TsPacketReader.PAT_PID, 0));
+
+        Capture capture = generator.build();
+        List<Integer> expected = new ArrayList<>(capture.getSegmentOffsets());
+        expected.set(0, expected.get(0) + TsPacket.TS_TOTAL_SIZE);
+        assertEquals(expected, findBoundaries(capture, capture.getDurations()));
+    }
+
+    @Test
+    public void testSegmenterLostPacketsAroundReset() {
+        // 세그먼트 중간의 손실은 CC 가 0 으로 돌아간 PAT 가 아니면 경계로 보지 않는다.
+        TsStreamGenerator generator = new TsStreamGenerator(Muxer.SEGMENTER).gopFrames(50);
+        Capture original = generator.build();
+        for (int segmentIndex = 0; segmentIndex < 4; segmentIndex++) {
+            generator.dropPacket(original.findPacketIndex(segmentIndex, generator.getAudioPid(), 10));
+            generator.dropPacket(original.findPacketIndex(segmentIndex, generator.getVideoPid(), 61));
+        }
+
+        Capture capture = generator.build();
+        assertEquals(capture.getSegmentOffsets(), findBoundaries(capture, capture.getDurations()));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn private static List<Integer> findBoundaries(Capture capture, double[] durations)
+     * @brief StreamReceiver.writeTsData 처럼 마지막 세그먼트 전까지 경계를 찾는 함수
+     * @param capture TS 캡처
+     * @param durations 세그먼트별 #EXTINF
+     * @return 경계 위치 목록
+     */
+    private static List<Integer> findBoundaries(Capture capture, double[] durations) {
+        TsSegmentBoundaryDetector detector = new TsSegmentBoundaryDetector();
+        detector.reset();
+        detector.startSegment(durations[0]);
+
+        byte[] data = capture.getData();
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(data);
+        List<Integer> boundaries = new ArrayList<>();
+        int segmentIndex = 0;
+        for (int chunkIndex = 0; chunkIndex < data.length; chunkIndex += CHUNK_SIZE) {
+            int end = Math.min(data.length, chunkIndex + CHUNK_SIZE);
+            int scanIndex = chunkIndex;
+            while (segmentIndex + 1 < durations.length) {
+                int boundary = detector.findBoundary(byteBuf, scanIndex, end);
+                if (boundary < 0) {
+                    break;
+                }
+                boundaries.add(boundary);
+                detector.startSegment(durations[++segmentIndex]);
+                scanIndex = boundary + TsPacket.TS_TOTAL_SIZE;
+            }
+        }
+
+        assertEquals(detector.toString(), boundaries.size(), detector.getBoundaryCount());
+        return boundaries;
+    }
+
+}
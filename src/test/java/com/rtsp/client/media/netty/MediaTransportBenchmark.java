@@ -0,0 +1,183 @@
+package com.rtsp.client.media.netty;
+
+import com.rtsp.client.protocol.TsPacket;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @class public class MediaTransportBenchmark
+ * @brief loopback 으로 RTP 크기(12 + 7 x 188 bytes) Datagram 을 보내서 NIO 와 epoll 수신 채널의 처리량을 비교하는 JMH benchmark
+ * 실행 : mvn -P jmh test -Djmh.args="MediaTransportBenchmark"
+ * 수신 채널은 NettyChannelManager.configureMediaBootstrap 으로 RTP 채널과 같은 option 을 사용한다. (recvBatchCount > 1 이면 epoll 은 recvmmsg)
+ * 결과의 received 가 초당 수신한 Datagram 개수이고, 매 iteration 이 끝날 때 수신 EventLoop thread 의 Datagram 하나당 CPU 시간을 출력한다.
+ * epoll 을 사용할 수 없는 환경에서는 transport=EPOLL 이 setup 에서 실패한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MediaTransportBenchmark {
+
+    private static final int DATAGRAM_SIZE = 12 + 7 * TsPacket.TS_TOTAL_SIZE;
+    private static final int BUF_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_DATAGRAM_PAYLOAD_SIZE = 1500;
+
+    @Param({"NIO", "EPOLL"})
+    public String transport;
+
+    @Param({"1", "16"})
+    public int recvBatchCount;
+
+    private final AtomicLong receivedPackets = new AtomicLong();
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private EventLoopGroup eventLoopGroup;
+    private Channel channel;
+    private DatagramChannel sender;
+    private final ByteBuffer datagram = ByteBuffer.allocateDirect(DATAGRAM_SIZE);
+
+    private volatile long recvThreadId = -1;
+    private long lastReceivedPackets;
+    private long lastCpuTime;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Setup
+    public void setup() throws Exception {
+        if ("EPOLL".equals(transport)) {
+            if (!Epoll.isAvailable()) {
+                throw new IllegalStateException("Native transport is not available. (" + Epoll.unavailabilityCause() + ")");
+            }
+            eventLoopGroup = new EpollEventLoopGroup(1);
+        } else {
+            eventLoopGroup = new NioEventLoopGroup(1);
+        }
+
+        Bootstrap bootstrap = new Bootstrap();
+        NettyChannelManager.configureMediaBootstrap(bootstrap, eventLoopGroup,
+                BUF_SIZE, BUF_SIZE, MAX_DATAGRAM_PAYLOAD_SIZE, recvBatchCount
+        );
+        bootstrap.handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+            @Override
+            protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+                if (recvThreadId < 0) {
+                    recvThreadId = Thread.currentThread().getId();
+                }
+                receivedPackets.incrementAndGet();
+            }
+        });
+        channel = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+
+        sender = DatagramChannel.open();
+        sender.setOption(StandardSocketOptions.SO_SNDBUF, BUF_SIZE);
+        sender.connect(channel.localAddress());
+
+        datagram.put(0, (byte) 0x80); // V=2
+        datagram.put(1, (byte) 33); // PT=33 (MP2T)
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sender.close();
+        channel.close().syncUninterruptibly();
+        eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        lastReceivedPackets = receivedPackets.get();
+        lastCpuTime = getRecvThreadCpuTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        long packets = receivedPackets.get() - lastReceivedPackets;
+        long cpuTime = getRecvThreadCpuTime() - lastCpuTime;
+        if (packets > 0 && cpuTime > 0) {
+            System.out.printf("%n[%s, recvBatchCount=%d] recv thread cpu %d ns/packet (%d packets)%n",
+                    transport, recvBatchCount, cpuTime / packets, packets
+            );
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @class public static class Counters
+     * @brief 송신한 Datagram 중 수신 채널이 실제로 읽은 개수를 초당 값으로 보여주는 counter
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        private long startPackets = -1;
+        public long received;
+
+        public void update(long receivedPackets) {
+            if (startPackets < 0) {
+                startPackets = receivedPackets;
+            }
+            received = receivedPackets - startPackets;
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            startPackets = -1;
+            received = 0;
+        }
+
+    }
+
+    @Benchmark
+    public int send(Counters counters) throws IOException {
+        datagram.clear();
+        int sentBytes = sender.write(datagram);
+        counters.update(receivedPackets.get());
+        return sentBytes;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private long getRecvThreadCpuTime() {
+        long threadId = recvThreadId;
+        if (threadId < 0) {
+            return 0;
+        }
+        long cpuTime = threadMXBean.getThreadCpuTime(threadId);
+        return Math.max(cpuTime, 0);
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.rtsp.client.media.netty.handler;
+
+import com.rtsp.client.media.module.StreamReceiver;
+import com.rtsp.client.protocol.LegacyRtpPacket;
+import com.rtsp.client.protocol.RtpHeaderView;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @class public class RtpChannelHandlerTest
+ * @brief RtpChannelHandler 의 zero-copy 수신 경로가 이전 복사 경로와 같은 결과를 내는지 확인하는 test
+ */
+public class RtpChannelHandlerTest {
+
+    @Test
+    public void testM3u8Detection() {
+        ByteBuf m3u8 = Unpooled.copiedBuffer("#EXTM3U\n#EXT-X-VERSION:3\n", StandardCharsets.UTF_8);
+        assertTrue(RtpChannelHandler.isM3u8Data(m3u8, m3u8.readerIndex(), m3u8.readableBytes()));
+
+        ByteBuf shortData = Unpooled.copiedBuffer("#EXT", StandardCharsets.UTF_8);
+        assertFalse(RtpChannelHandler.isM3u8Data(shortData, 0, shortData.readableBytes()));
+
+        // 앞에 다른 데이터가 있으면 readerIndex 부터 비교한다.
+        ByteBuf offsetData = Unpooled.copiedBuffer("xx" + StreamReceiver.M3U8_FILE_HEADER, StandardCharsets.UTF_8);
+        assertFalse(RtpChannelHandler.isM3u8Data(offsetData, 0, offsetData.readableBytes()));
+        assertTrue(RtpChannelHandler.isM3u8Data(offsetData, 2, offsetData.readableBytes() - 2));
+    }
+
+    @Test
+    public void testPayloadSliceMatchesCopy() {
+        byte[] data = new byte[12 + 1316];
+        data[0] = (byte) 0x80;
+        data[1] = 33;
+        data[2] = 0x12;
+        data[3] = 0x34;
+        for (int i = 12; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        ByteBuf datagram = Unpooled.wrappedBuffer(data);
+        assertFalse(RtpChannelHandler.isM3u8Data(datagram, 0, data.length));
+
+        RtpHeaderView rtpHeaderView = new RtpHeaderView();
+        assertTrue(rtpHeaderView.wrap(datagram, 0, data.length));
+        ByteBuf payload = datagram.retainedSlice(rtpHeaderView.getPayloadOffset(), rtpHeaderView.getPayloadLength());
+
+        LegacyRtpPacket legacyRtpPacket = new LegacyRtpPacket(data, data.length);
+        assertEquals(legacyRtpPacket.getSeqNum(), rtpHeaderView.getSequenceNumber());
+        assertArrayEquals(legacyRtpPacket.getPayload(), ByteBufUtil.getBytes(payload));
+
+        payload.release();
+        assertEquals(1, datagram.refCnt());
+    }
+
+}
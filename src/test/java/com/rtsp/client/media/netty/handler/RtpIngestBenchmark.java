@@ -0,0 +1,108 @@
+package com.rtsp.client.media.netty.handler;
+
+import com.rtsp.client.media.module.StreamReceiver;
+import com.rtsp.client.protocol.LegacyRtpPacket;
+import com.rtsp.client.protocol.RtpHeaderView;
+import com.rtsp.client.protocol.TsPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class public class RtpIngestBenchmark
+ * @brief RtpChannelHandler 가 Datagram 하나를 받아서 TS 버퍼에 넘길 payload 를 만드는 비용을 비교하는 JMH benchmark
+ * 실행 : mvn -P jmh test -Djmh.args="RtpIngestBenchmark -prof gc"
+ * copyIngest 는 이전 방식(byte[] 복사, UTF-8 String 으로 #EXTM3U 확인, RtpPacket 으로 헤더 / payload 복사),
+ * zeroCopyIngest 는 지금 방식(byte 비교, RtpHeaderView, retained slice)이다.
+ * -prof gc 의 gc.alloc.rate.norm 이 Datagram 하나당 할당량이다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RtpIngestBenchmark {
+
+    private static final int RTP_HEADER_SIZE = 12;
+    // RTP payload 하나에 TS 패킷 7 개 (RFC 2250)
+    private static final int PAYLOAD_SIZE = 7 * TsPacket.TS_TOTAL_SIZE;
+
+    private final RtpHeaderView rtpHeaderView = new RtpHeaderView();
+    // 수신한 DatagramPacket 의 content 처럼 pool 에서 할당한 direct buffer
+    private ByteBuf datagram;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Setup
+    public void setup() {
+        datagram = PooledByteBufAllocator.DEFAULT.directBuffer(RTP_HEADER_SIZE + PAYLOAD_SIZE);
+        datagram.writeByte(0x80); // V=2
+        datagram.writeByte(33); // PT=33 (MP2T)
+        datagram.writeShort(1000);
+        datagram.writeInt(90000);
+        datagram.writeInt(0x12345678);
+        for (int i = 0; i < PAYLOAD_SIZE; i++) {
+            datagram.writeByte(i % TsPacket.TS_TOTAL_SIZE == 0 ? 0x47 : i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        datagram.release();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Benchmark
+    public void copyIngest(Blackhole blackhole) {
+        int readBytes = datagram.readableBytes();
+        byte[] data = new byte[readBytes];
+        datagram.getBytes(datagram.readerIndex(), data);
+
+        String dataStr = new String(data, StandardCharsets.UTF_8);
+        if (dataStr.startsWith(StreamReceiver.M3U8_FILE_HEADER)) {
+            blackhole.consume(data);
+            return;
+        }
+
+        LegacyRtpPacket rtpPacket = new LegacyRtpPacket(data, readBytes);
+        blackhole.consume(rtpPacket.getSeqNum());
+        blackhole.consume(rtpPacket.getPayload());
+    }
+
+    @Benchmark
+    public void zeroCopyIngest(Blackhole blackhole) {
+        int readerIndex = datagram.readerIndex();
+        int readBytes = datagram.readableBytes();
+        if (RtpChannelHandler.isM3u8Data(datagram, readerIndex, readBytes)) {
+            blackhole.consume(datagram);
+            return;
+        }
+
+        if (!rtpHeaderView.wrap(datagram, readerIndex, readBytes)) {
+            return;
+        }
+
+        ByteBuf payload = datagram.retainedSlice(rtpHeaderView.getPayloadOffset(), rtpHeaderView.getPayloadLength());
+        blackhole.consume(rtpHeaderView.getSequenceNumber());
+        blackhole.consume(payload);
+        // 소비자(StreamReceiver)가 파일에 쓴 후 release 하는 것과 같다.
+        payload.release();
+    }
+
+}
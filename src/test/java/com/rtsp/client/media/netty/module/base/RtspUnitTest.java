@@ -0,0 +1,180 @@
+package com.rtsp.client.media.netty.module.base;
+
+import com.rtsp.client.config.ConfigManager;
+import com.rtsp.client.file.RtspFileManager;
+import com.rtsp.client.media.netty.NettyChannelManager;
+import com.rtsp.client.media.netty.module.HlsNettyServer;
+import com.rtsp.client.service.AppInstance;
+import io.lindstrom.m3u8.model.MediaSegment;
+import io.lindstrom.m3u8.parser.MediaPlaylistParser;
+import io.netty.buffer.Unpooled;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @class public class RtspUnitTest
+ * @brief PAUSE 로 RtspUnit 을 정리해도 HLS 로 공개한 세그먼트는 남아서 재개(PLAY) 후에도 이어서 재생되는지 확인하는 test
+ * src/main/resources/config/user_conf.ini (SEGMENT_STORE=DISK, DELETE_TS=true) 로 설정을 읽는다.
+ */
+public class RtspUnitTest {
+
+    private static final String CONFIG_PATH = "src/main/resources/config/user_conf.ini";
+    private static final long SESSION_ID = 1234;
+    private static final String PLAYLIST = "#EXTM3U\n" +
+            "#EXT-X-VERSION:3\n" +
+            "#EXT-X-TARGETDURATION:2\n" +
+            "#EXT-X-MEDIA-SEQUENCE:0\n" +
+            "#EXTINF:2.000,\n" +
+            "test0.ts\n" +
+            "#EXTINF:2.000,\n" +
+            "test1.ts\n" +
+            "#EXT-X-ENDLIST\n";
+    private static final int SEGMENT_SIZE = 7 * 188;
+
+    private static HlsNettyServer hlsNettyServer;
+
+    private Path tempDirectory;
+    private RtspUnit rtspUnit;
+    private String name;
+
+    @BeforeClass
+    public static void setUpClass() {
+        if (AppInstance.getInstance().getConfigManager() == null) {
+            AppInstance.getInstance().setConfigManager(new ConfigManager(CONFIG_PATH));
+        }
+        NettyChannelManager.getInstance().openHlsServer();
+        hlsNettyServer = NettyChannelManager.getInstance().getHlsServer();
+        assertNotNull(hlsNettyServer);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        NettyChannelManager.getInstance().closeHlsServer();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        tempDirectory = Files.createTempDirectory("rtsp-unit");
+        rtspUnit = new RtspUnit("127.0.0.1", 0);
+        rtspUnit.setSessionId(SESSION_ID);
+        name = String.valueOf(SESSION_ID);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        rtspUnit.clear(true);
+        File[] files = tempDirectory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(tempDirectory);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testPauseAndResumeKeepsHlsSegments() throws IOException {
+        RtspFileManager fileManager = rtspUnit.getFileManager();
+        List<MediaSegment> mediaSegmentList = new MediaPlaylistParser().readPlaylist(PLAYLIST).mediaSegments();
+        HlsSession hlsSession = new HlsSession(name, fileManager, mediaSegmentList);
+        String playlistUrl = hlsNettyServer.publish(hlsSession);
+        String segmentUrl = "http://" + HlsNettyServer.LOOPBACK_IP + ":" + hlsNettyServer.getPort() + "/" + name + "/";
+
+        writeSegment(fileManager, 0);
+        assertTrue(rtspUnit.isHlsPublished());
+        assertTrue(get(playlistUrl).contains(name + "/0.ts"));
+
+        // PAUSE
+        rtspUnit.setPaused(true);
+        rtspUnit.clear(false);
+
+        // 재생기가 다시 요청해도 이미 받은 세그먼트를 그대로 받는다.
+        assertEquals(1, hlsSession.getCompleteSegmentCount());
+        assertTrue(get(playlistUrl).contains(name + "/0.ts"));
+        assertEquals(SEGMENT_SIZE, getBytes(segmentUrl + "0.ts").length);
+
+        // PLAY (resume) 후에 받은 세그먼트가 이어서 추가된다.
+        rtspUnit.setPaused(false);
+        writeSegment(fileManager, 1);
+        String playlist = get(playlistUrl);
+        assertTrue(playlist.contains(name + "/0.ts"));
+        assertTrue(playlist.contains(name + "/1.ts"));
+        assertTrue(playlist.contains("#EXT-X-ENDLIST"));
+        assertEquals(SEGMENT_SIZE, getBytes(segmentUrl + "1.ts").length);
+
+        // TEARDOWN 은 세션을 내린 후 세그먼트를 지운다.
+        rtspUnit.clear(true);
+        assertNull(hlsNettyServer.getSession(name));
+        assertFalse(tempDirectory.resolve("0.ts").toFile().exists());
+        assertFalse(tempDirectory.resolve("1.ts").toFile().exists());
+    }
+
+    @Test
+    public void testPauseWithoutHlsRemovesSegments() {
+        RtspFileManager fileManager = rtspUnit.getFileManager();
+        writeSegment(fileManager, 0);
+        assertFalse(rtspUnit.isHlsPublished());
+
+        rtspUnit.clear(false);
+        assertFalse(tempDirectory.resolve("0.ts").toFile().exists());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private void writeSegment(RtspFileManager fileManager, int index) {
+        byte[] data = new byte[SEGMENT_SIZE];
+        for (int i = 0; i < SEGMENT_SIZE; i += 188) {
+            data[i] = 0x47;
+        }
+
+        assertNotNull(fileManager.createTsFile(index, tempDirectory.resolve(index + ".ts").toString(), 0));
+        assertTrue(fileManager.openTsFile(index));
+        assertTrue(fileManager.writeDataToTsFile(index, Unpooled.wrappedBuffer(data)));
+        assertTrue(fileManager.closeTsFile(index));
+    }
+
+    private static String get(String url) throws IOException {
+        return new String(getBytes(url), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] getBytes(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+            try (InputStream inputStream = connection.getInputStream()) {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int length;
+                while ((length = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, length);
+                }
+                return outputStream.toByteArray();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+}
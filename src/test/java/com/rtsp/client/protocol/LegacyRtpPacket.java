@@ -0,0 +1,112 @@
+package com.rtsp.client.protocol;
+
+import com.rtsp.client.protocol.base.ByteUtil;
+
+/**
+ * @class public class LegacyRtpPacket
+ * @brief RtpHeaderView 를 쓰기 전의 RtpPacket(byte[], int) 파싱을 그대로 옮긴 benchmark 비교용 class
+ * 헤더 필드마다 byte[] 를 만들어서 ByteUtil 로 변환하고, payload 를 새 byte[] 로 복사한다. (CSRC, extension, padding 은 무시한다.)
+ */
+public class LegacyRtpPacket {
+
+    private int version;
+    private int padding;
+    private int extension;
+    private int csrc;
+    private int marker;
+    private int payloadType;
+    private long seqNum;
+    private long timeStamp;
+    private long ssrc;
+    private byte[] payload;
+    private int payloadLength;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public LegacyRtpPacket(byte[] data, int dataLength) {
+        /* 1) Extract Version to Sequence Number (32 bits) */
+        int vToSnLength = 4; // # bytes
+        int offset = vToSnLength;
+        byte[] vToSnBytes = new byte[vToSnLength];
+        System.arraycopy(data, 0, vToSnBytes, 0, vToSnLength);
+        int vToSn = ByteUtil.bytesToInt(vToSnBytes, true);
+        version = (vToSn >>> 0x1E) & 0x03;
+        padding = (vToSn >>> 0x1D) & 0x01;
+        extension = (vToSn >>> 0x1C) & 0x01;
+        csrc = (vToSn >>> 0x18) & 0x0F;
+        marker = (vToSn >>> 0x17) & 0x01;
+        payloadType = (vToSn >>> 0x10) & 0x7F;
+        seqNum = (vToSn & 0xFFFF);
+
+        /* 2) Extract Timestamp */
+        int timeStampLength = 4; // 4 bytes arriving, need to store as long
+        byte[] timeStampBytes = new byte[timeStampLength];
+        System.arraycopy(data, offset, timeStampBytes, 0, timeStampLength);
+        byte[] timeStampLongBytes = new byte[8]; // Copy to long byte array
+        System.arraycopy(timeStampBytes, 0, timeStampLongBytes, 4, 4);
+        timeStamp = ByteUtil.bytesToLong(timeStampLongBytes, true);
+        offset += timeStampLength;
+
+        /* 3) Extract SSRC */
+        int ssrcLength = 4; // 4 bytes arriving, need to store as long
+        byte[] ssrcBytes = new byte[ssrcLength];
+        System.arraycopy(data, offset, ssrcBytes, 0, ssrcLength);
+        byte[] ssrcLongBytes = new byte[8]; // Copy to long byte array
+        System.arraycopy(ssrcBytes, 0, ssrcLongBytes, 4, 4);
+        ssrc = ByteUtil.bytesToLong(ssrcLongBytes, true);
+        offset += ssrcLength;
+
+        /* 4) Extract Payload */
+        int payloadLength = (dataLength - offset); // # bytes
+        this.payloadLength = payloadLength;
+        payload = new byte[payloadLength];
+        System.arraycopy(data, offset, payload, 0, payloadLength);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getPadding() {
+        return padding;
+    }
+
+    public int getExtension() {
+        return extension;
+    }
+
+    public int getCsrc() {
+        return csrc;
+    }
+
+    public int getMarker() {
+        return marker;
+    }
+
+    public int getPayloadType() {
+        return payloadType;
+    }
+
+    public long getSeqNum() {
+        return seqNum;
+    }
+
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    public long getSsrc() {
+        return ssrc;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+}
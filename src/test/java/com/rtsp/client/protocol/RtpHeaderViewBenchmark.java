@@ -0,0 +1,121 @@
+package com.rtsp.client.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class public class RtpHeaderViewBenchmark
+ * @brief RTP 헤더 파싱 비용을 이전 RtpPacket 생성자, 지금 RtpPacket 생성자, RtpHeaderView 로 비교하는 JMH benchmark
+ * 실행 : mvn -P jmh test -Djmh.args="RtpHeaderViewBenchmark -prof gc"
+ * csrcCount 와 extensionWords 로 CSRC list 와 header extension 이 있는 패킷도 확인한다. (이전 생성자는 둘 다 payload 에 포함한다.)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RtpHeaderViewBenchmark {
+
+    private static final int PAYLOAD_SIZE = 7 * TsPacket.TS_TOTAL_SIZE;
+
+    @Param({"0", "2"})
+    private int csrcCount;
+
+    @Param({"0", "3"})
+    private int extensionWords;
+
+    private final RtpHeaderView rtpHeaderView = new RtpHeaderView();
+
+    private byte[] data;
+    private ByteBuffer byteBuffer;
+    private ByteBuf byteBuf;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Setup
+    public void setup() {
+        data = RtpHeaderViewTest.newPacket(csrcCount, extensionWords, 0, PAYLOAD_SIZE);
+        byteBuffer = ByteBuffer.allocateDirect(data.length);
+        byteBuffer.put(data);
+        byteBuffer.flip();
+        byteBuf = PooledByteBufAllocator.DEFAULT.directBuffer(data.length);
+        byteBuf.writeBytes(data);
+    }
+
+    @TearDown
+    public void tearDown() {
+        byteBuf.release();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public void legacyConstructor(Blackhole blackhole)
+     * @brief 이전 방식 : 헤더 필드마다 byte[] 를 만들고 payload 를 복사한다.
+     */
+    @Benchmark
+    public void legacyConstructor(Blackhole blackhole) {
+        LegacyRtpPacket rtpPacket = new LegacyRtpPacket(data, data.length);
+        blackhole.consume(rtpPacket.getSeqNum());
+        blackhole.consume(rtpPacket.getTimeStamp());
+        blackhole.consume(rtpPacket.getSsrc());
+        blackhole.consume(rtpPacket.getPayload());
+    }
+
+    /**
+     * @fn public void rtpPacketConstructor(Blackhole blackhole)
+     * @brief 지금 RtpPacket 생성자 : RtpHeaderView 로 파싱하고 payload 만 복사한다.
+     */
+    @Benchmark
+    public void rtpPacketConstructor(Blackhole blackhole) {
+        RtpPacket rtpPacket = new RtpPacket(data, data.length);
+        blackhole.consume(rtpPacket.getSeqNum());
+        blackhole.consume(rtpPacket.getTimeStamp());
+        blackhole.consume(rtpPacket.getSsrc());
+        blackhole.consume(rtpPacket.getPayload());
+    }
+
+    @Benchmark
+    public void headerViewArray(Blackhole blackhole) {
+        rtpHeaderView.wrap(data, 0, data.length);
+        consume(blackhole);
+    }
+
+    @Benchmark
+    public void headerViewByteBuffer(Blackhole blackhole) {
+        rtpHeaderView.wrap(byteBuffer, 0, byteBuffer.limit());
+        consume(blackhole);
+    }
+
+    @Benchmark
+    public void headerViewByteBuf(Blackhole blackhole) {
+        rtpHeaderView.wrap(byteBuf, byteBuf.readerIndex(), byteBuf.readableBytes());
+        consume(blackhole);
+    }
+
+    private void consume(Blackhole blackhole) {
+        blackhole.consume(rtpHeaderView.getSequenceNumber());
+        blackhole.consume(rtpHeaderView.getTimeStamp());
+        blackhole.consume(rtpHeaderView.getSsrc());
+        blackhole.consume(rtpHeaderView.getPayloadOffset());
+        blackhole.consume(rtpHeaderView.getPayloadLength());
+    }
+
+}
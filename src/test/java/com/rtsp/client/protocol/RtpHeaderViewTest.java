@@ -0,0 +1,159 @@
+package com.rtsp.client.protocol;
+
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @class public class RtpHeaderViewTest
+ * @brief RtpHeaderView 가 byte[] / ByteBuffer / ByteBuf 에서 CSRC list, header extension, padding 을 건너뛰는지 확인하는 test
+ */
+public class RtpHeaderViewTest {
+
+    private static final int SEQUENCE_NUMBER = 0xABCD;
+    private static final long TIME_STAMP = 0xF0000001L;
+    private static final long SSRC = 0x89ABCDEFL;
+    private static final long CSRC_BASE = 0xC0000000L;
+    private static final int EXTENSION_PROFILE = 0xBEDE;
+    private static final int PAYLOAD_SIZE = 1316;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testFixedHeader() {
+        byte[] data = newPacket(0, 0, 0, PAYLOAD_SIZE);
+        for (RtpHeaderView rtpHeaderView : wrapAll(data, 0)) {
+            assertTrue(rtpHeaderView.isValid());
+            assertEquals(RtpHeaderView.RTP_VERSION, rtpHeaderView.getVersion());
+            assertTrue(rtpHeaderView.isMarker());
+            assertEquals(33, rtpHeaderView.getPayloadType());
+            assertEquals(SEQUENCE_NUMBER, rtpHeaderView.getSequenceNumber());
+            assertEquals(TIME_STAMP, rtpHeaderView.getTimeStamp());
+            assertEquals(SSRC, rtpHeaderView.getSsrc());
+            assertEquals(RtpPacket.FIXED_HEADER_LENGTH, rtpHeaderView.getPayloadOffset());
+            assertEquals(PAYLOAD_SIZE, rtpHeaderView.getPayloadLength());
+        }
+    }
+
+    @Test
+    public void testCsrcExtensionPadding() {
+        int csrcCount = 3;
+        int extensionWords = 2;
+        int paddingLength = 4;
+        byte[] data = newPacket(csrcCount, extensionWords, paddingLength, PAYLOAD_SIZE);
+        int headerLength = RtpPacket.FIXED_HEADER_LENGTH + csrcCount * RtpHeaderView.CSRC_LENGTH
+                + RtpHeaderView.EXTENSION_HEADER_LENGTH + extensionWords * 4;
+
+        for (RtpHeaderView rtpHeaderView : wrapAll(data, 0)) {
+            assertTrue(rtpHeaderView.isValid());
+            assertEquals(csrcCount, rtpHeaderView.getCsrcCount());
+            for (int i = 0; i < csrcCount; i++) {
+                assertEquals(CSRC_BASE + i, rtpHeaderView.getCsrc(i));
+            }
+            assertEquals(EXTENSION_PROFILE, rtpHeaderView.getExtensionProfile());
+            assertEquals(extensionWords * 4, rtpHeaderView.getExtensionLength());
+            assertEquals(headerLength, rtpHeaderView.getHeaderLength());
+            assertEquals(paddingLength, rtpHeaderView.getPaddingLength());
+            assertEquals(headerLength, rtpHeaderView.getPayloadOffset());
+            assertEquals(PAYLOAD_SIZE, rtpHeaderView.getPayloadLength());
+        }
+
+        // RtpPacket 생성자도 같은 payload 를 꺼낸다.
+        RtpPacket rtpPacket = new RtpPacket(data, data.length);
+        assertArrayEquals(Arrays.copyOfRange(data, headerLength, headerLength + PAYLOAD_SIZE), rtpPacket.getPayload());
+    }
+
+    @Test
+    public void testOffset() {
+        // 앞에 다른 데이터가 있는 버퍼에서도 절대 위치로 payload 를 가리킨다.
+        byte[] packet = newPacket(1, 1, 0, PAYLOAD_SIZE);
+        byte[] data = new byte[packet.length + 20];
+        System.arraycopy(packet, 0, data, 20, packet.length);
+
+        for (RtpHeaderView rtpHeaderView : wrapAll(data, 20)) {
+            assertTrue(rtpHeaderView.isValid());
+            assertEquals(20 + RtpPacket.FIXED_HEADER_LENGTH + 4 + 8, rtpHeaderView.getPayloadOffset());
+            assertEquals(CSRC_BASE, rtpHeaderView.getCsrc(0));
+        }
+    }
+
+    @Test
+    public void testInvalidPacket() {
+        RtpHeaderView rtpHeaderView = new RtpHeaderView();
+
+        byte[] shortData = new byte[RtpPacket.FIXED_HEADER_LENGTH - 1];
+        assertFalse(rtpHeaderView.wrap(shortData, 0, shortData.length));
+
+        byte[] version1 = newPacket(0, 0, 0, PAYLOAD_SIZE);
+        version1[0] = (byte) ((version1[0] & 0x3F) | 0x40);
+        assertFalse(rtpHeaderView.wrap(version1, 0, version1.length));
+
+        // padding 의 마지막 byte 가 0 이면 잘못된 패킷이다.
+        byte[] zeroPadding = newPacket(0, 0, 1, PAYLOAD_SIZE);
+        zeroPadding[zeroPadding.length - 1] = 0;
+        assertFalse(rtpHeaderView.wrap(zeroPadding, 0, zeroPadding.length));
+
+        // extension 길이가 데이터보다 길면 잘못된 패킷이다.
+        byte[] longExtension = newPacket(0, 1, 0, 0);
+        longExtension[RtpPacket.FIXED_HEADER_LENGTH + 3] = 100;
+        assertFalse(rtpHeaderView.wrap(longExtension, 0, longExtension.length));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private static RtpHeaderView[] wrapAll(byte[] data, int offset) {
+        int length = data.length - offset;
+        RtpHeaderView arrayView = new RtpHeaderView();
+        assertTrue(arrayView.wrap(data, offset, length));
+        RtpHeaderView byteBufferView = new RtpHeaderView();
+        assertTrue(byteBufferView.wrap(ByteBuffer.wrap(data), offset, length));
+        RtpHeaderView byteBufView = new RtpHeaderView();
+        assertTrue(byteBufView.wrap(Unpooled.wrappedBuffer(data), offset, length));
+        return new RtpHeaderView[]{arrayView, byteBufferView, byteBufView};
+    }
+
+    /**
+     * @fn static byte[] newPacket(int csrcCount, int extensionWords, int paddingLength, int payloadSize)
+     * @brief RTP 패킷을 만드는 함수 (RtpHeaderViewBenchmark 에서도 사용한다.)
+     * @param csrcCount CSRC 개수
+     * @param extensionWords header extension 길이 (32 bits 단위, 0 이면 extension 없음)
+     * @param paddingLength padding 길이 (0 이면 padding 없음)
+     * @param payloadSize payload 크기
+     * @return RTP 패킷
+     */
+    static byte[] newPacket(int csrcCount, int extensionWords, int paddingLength, int payloadSize) {
+        int extensionLength = extensionWords > 0 ? RtpHeaderView.EXTENSION_HEADER_LENGTH + extensionWords * 4 : 0;
+        int headerLength = RtpPacket.FIXED_HEADER_LENGTH + csrcCount * RtpHeaderView.CSRC_LENGTH + extensionLength;
+        ByteBuffer buffer = ByteBuffer.allocate(headerLength + payloadSize + paddingLength);
+
+        buffer.put((byte) (0x80 | (paddingLength > 0 ? 0x20 : 0) | (extensionWords > 0 ? 0x10 : 0) | csrcCount));
+        buffer.put((byte) (0x80 | 33)); // M=1, PT=33 (MP2T)
+        buffer.putShort((short) SEQUENCE_NUMBER);
+        buffer.putInt((int) TIME_STAMP);
+        buffer.putInt((int) SSRC);
+        for (int i = 0; i < csrcCount; i++) {
+            buffer.putInt((int) (CSRC_BASE + i));
+        }
+        if (extensionWords > 0) {
+            buffer.putShort((short) EXTENSION_PROFILE);
+            buffer.putShort((short) extensionWords);
+            buffer.put(new byte[extensionWords * 4]);
+        }
+        for (int i = 0; i < payloadSize; i++) {
+            buffer.put((byte) i);
+        }
+        if (paddingLength > 0) {
+            buffer.put(new byte[paddingLength - 1]);
+            buffer.put((byte) paddingLength);
+        }
+        return buffer.array();
+    }
+
+}
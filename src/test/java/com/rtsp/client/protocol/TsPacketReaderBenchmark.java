@@ -0,0 +1,128 @@
+package com.rtsp.client.protocol;
+
+import com.rtsp.client.media.module.base.TsSegmentBoundaryDetector;
+import com.rtsp.client.protocol.TsStreamGenerator.Capture;
+import com.rtsp.client.protocol.TsStreamGenerator.Muxer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class public class TsPacketReaderBenchmark
+ * @brief RTP payload (7 x 188 bytes) 하나의 TS 패킷을 TsPacket 과 TsPacketReader 로 파싱하는 비용을 비교하는 JMH benchmark
+ * 실행 : mvn -P jmh test -Djmh.args="TsPacketReaderBenchmark -prof gc"
+ * 결과는 TS 패킷 하나 기준이며, -prof gc 의 gc.alloc.rate.norm 으로 패킷당 할당량을 확인한다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TsPacketReaderBenchmark {
+
+    private static final int PACKETS_PER_PAYLOAD = 7;
+    private static final int PAYLOAD_SIZE = PACKETS_PER_PAYLOAD * TsPacket.TS_TOTAL_SIZE;
+
+    private final TsPacketReader tsPacketReader = new TsPacketReader();
+    private final TsSegmentBoundaryDetector tsSegmentBoundaryDetector = new TsSegmentBoundaryDetector();
+
+    private byte[] capture;
+    private ByteBuf captureBuf;
+    private int payloadCount;
+    private int payloadIndex = 0;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Setup
+    public void setup() {
+        Capture tsCapture = new TsStreamGenerator(Muxer.FFMPEG).build();
+        payloadCount = tsCapture.getData().length / PAYLOAD_SIZE;
+        capture = Arrays.copyOf(tsCapture.getData(), payloadCount * PAYLOAD_SIZE);
+        captureBuf = PooledByteBufAllocator.DEFAULT.directBuffer(capture.length);
+        captureBuf.writeBytes(capture);
+
+        tsSegmentBoundaryDetector.reset();
+        tsSegmentBoundaryDetector.startSegment(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        captureBuf.release();
+    }
+
+    private int nextPayloadOffset() {
+        if (++payloadIndex >= payloadCount) {
+            payloadIndex = 0;
+        }
+        return payloadIndex * PAYLOAD_SIZE;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public void tsPacket(Blackhole blackhole)
+     * @brief 기존 방식 : 패킷마다 byte[] 로 복사하고 TsPacket 을 만든다.
+     */
+    @Benchmark
+    @OperationsPerInvocation(PACKETS_PER_PAYLOAD)
+    public void tsPacket(Blackhole blackhole) {
+        int offset = nextPayloadOffset();
+        for (int i = 0; i < PACKETS_PER_PAYLOAD; i++) {
+            int packetOffset = offset + i * TsPacket.TS_TOTAL_SIZE;
+            TsPacket tsPacket = new TsPacket(Arrays.copyOfRange(capture, packetOffset, packetOffset + TsPacket.TS_TOTAL_SIZE));
+            blackhole.consume(tsPacket.getPid());
+            blackhole.consume(tsPacket.getContinuityCounter());
+            blackhole.consume(tsPacket.getAdaptationField());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACKETS_PER_PAYLOAD)
+    public void tsPacketReaderArray(Blackhole blackhole) {
+        tsPacketReader.reset(capture, nextPayloadOffset(), PAYLOAD_SIZE);
+        while (tsPacketReader.next()) {
+            blackhole.consume(tsPacketReader.getPid());
+            blackhole.consume(tsPacketReader.getContinuityCounter());
+            blackhole.consume(tsPacketReader.getPcr());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACKETS_PER_PAYLOAD)
+    public void tsPacketReaderByteBuf(Blackhole blackhole) {
+        tsPacketReader.reset(captureBuf, nextPayloadOffset(), PAYLOAD_SIZE);
+        while (tsPacketReader.next()) {
+            blackhole.consume(tsPacketReader.getPid());
+            blackhole.consume(tsPacketReader.getContinuityCounter());
+            blackhole.consume(tsPacketReader.getPcr());
+        }
+    }
+
+    /**
+     * @fn public int boundaryDetector()
+     * @brief StreamReceiver 가 RTP payload 마다 호출하는 TsSegmentBoundaryDetector.findBoundary 의 비용
+     */
+    @Benchmark
+    @OperationsPerInvocation(PACKETS_PER_PAYLOAD)
+    public int boundaryDetector() {
+        int offset = nextPayloadOffset();
+        return tsSegmentBoundaryDetector.findBoundary(captureBuf, offset, offset + PAYLOAD_SIZE);
+    }
+
+}
@@ -0,0 +1,285 @@
+package com.rtsp.client.protocol;
+
+import com.rtsp.client.protocol.TsStreamGenerator.Capture;
+import com.rtsp.client.protocol.TsStreamGenerator.Muxer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @class public class TsPacketReaderTest
+ * @brief TsPacketReader 의 파싱 결과를 기존 TsPacket 과 비교하는 test
+ * muxer 별 TS 캡처(TsStreamGenerator)와 adaptation field 만 있는 패킷, stuffing, sync byte 가 깨진 패킷을 확인한다.
+ */
+public class TsPacketReaderTest {
+
+    // RTP 패킷 하나에 들어있는 TS 패킷 개수 (RFC 2250)
+    private static final int CHUNK_SIZE = 7 * TsPacket.TS_TOTAL_SIZE;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testFfmpegCapture() {
+        assertSameCapture(new TsStreamGenerator(Muxer.FFMPEG).build());
+    }
+
+    @Test
+    public void testGstreamerCapture() {
+        assertSameCapture(new TsStreamGenerator(Muxer.GSTREAMER).remuxPerSegment(true).build());
+    }
+
+    @Test
+    public void testSegmenterCapture() {
+        assertSameCapture(new TsStreamGenerator(Muxer.SEGMENTER).restartPcr(true).discontinuityOnSegmentStart(true).build());
+    }
+
+    @Test
+    public void testHeaderFlags() {
+        byte[] packet = newPacket(0x1ABC, 0x01, 7);
+        // transport_error_indicator, payload_unit_start_indicator, transport_priority, transport_scrambling_control (10)
+        packet[1] |= (byte) 0xE0;
+        packet[3] |= (byte) 0x80;
+
+        TsPacketReader reader = new TsPacketReader();
+        assertTrue(reader.wrap(packet, 0));
+        assertSamePacket(packet, 0, reader);
+        assertTrue(reader.isTransportErrorIndicator());
+        assertTrue(reader.isPayloadUnitStartIndicator());
+        assertTrue(reader.isTransportPriority());
+        assertEquals(2, reader.getTransportScramblingControl());
+        assertEquals(0x1ABC, reader.getPid());
+        assertEquals(7, reader.getContinuityCounter());
+    }
+
+    @Test
+    public void testAdaptationOnlyPacket() {
+        // adaptation_field_control 10 : payload 없이 PCR 과 stuffing 만 있는 패킷
+        byte[] packet = newPacket(0x100, 0x02, 3);
+        long pcr = 123456789L * 300 + 299;
+        TsStreamGenerator.writeAdaptationField(packet, 0x50, pcr, TsPacket.TS_BODY_SIZE - 1);
+        packet[3] = (byte) ((packet[3] & 0xCF) | 0x20);
+
+        TsPacketReader reader = new TsPacketReader();
+        assertTrue(reader.wrap(packet, 0));
+        assertSamePacket(packet, 0, reader);
+        assertEquals(2, reader.getAdaptationFieldControl());
+        assertFalse(reader.hasPayload());
+        assertEquals(0, reader.getPayloadLength());
+        assertTrue(reader.isRandomAccessIndicator());
+        assertEquals(pcr, reader.getPcr());
+    }
+
+    @Test
+    public void testStuffing() {
+        TsPacketReader reader = new TsPacketReader();
+
+        // adaptation_field_length 0 : stuffing 1 byte (flags 도 없다.)
+        byte[] packet = newPacket(0x101, 0x03, 1);
+        packet[4] = 0;
+        Arrays.fill(packet, 5, TsPacket.TS_TOTAL_SIZE, (byte) 0x11);
+        assertTrue(reader.wrap(packet, 0));
+        assertSamePacket(packet, 0, reader);
+        assertEquals(0, reader.getAdaptationFieldLength());
+        assertEquals(TsPacket.TS_BODY_SIZE - 1, reader.getPayloadLength());
+        assertEquals(TsPacketReader.NO_PCR, reader.getPcr());
+
+        // adaptation field 가 payload 1 byte 만 남기고 stuffing 으로 채운 경우
+        packet = newPacket(0x101, 0x03, 2);
+        TsStreamGenerator.writeAdaptationField(packet, 0, -1, TsPacket.TS_BODY_SIZE - 2);
+        packet[TsPacket.TS_TOTAL_SIZE - 1] = 0x22;
+        assertTrue(reader.wrap(packet, 0));
+        assertSamePacket(packet, 0, reader);
+        assertEquals(1, reader.getPayloadLength());
+        assertEquals(TsPacket.TS_TOTAL_SIZE - 1, reader.getPayloadOffset());
+
+        // null packet
+        packet = newPacket(TsPacketReader.NULL_PID, 0x01, 0);
+        Arrays.fill(packet, TsPacket.TS_HEADER_SIZE, TsPacket.TS_TOTAL_SIZE, (byte) 0xFF);
+        assertTrue(reader.wrap(packet, 0));
+        assertSamePacket(packet, 0, reader);
+        assertTrue(reader.isNullPacket());
+    }
+
+    @Test
+    public void testPcrRange() {
+        TsPacketReader reader = new TsPacketReader();
+        long[] pcrs = {0, 299, 300, ((1L << 33) - 1) * 300 + 299, 0x1ABCDEF01L * 300 + 17};
+        for (long pcr : pcrs) {
+            byte[] packet = newPacket(0x1E1, 0x03, 0);
+            TsStreamGenerator.writeAdaptationField(packet, 0x10, pcr, 7);
+            assertTrue(reader.wrap(packet, 0));
+            assertSamePacket(packet, 0, reader);
+            assertEquals(pcr, reader.getPcr());
+        }
+
+        // PCR flag 가 있어도 adaptation field 가 PCR 보다 짧으면 PCR 이 없는 것으로 본다.
+        byte[] packet = newPacket(0x1E1, 0x03, 0);
+        TsStreamGenerator.writeAdaptationField(packet, 0, -1, 3);
+        packet[5] = 0x10;
+        assertTrue(reader.wrap(packet, 0));
+        assertTrue(reader.isPcrFlag());
+        assertEquals(TsPacketReader.NO_PCR, reader.getPcr());
+    }
+
+    @Test
+    public void testCorruptedSync() {
+        Capture capture = new TsStreamGenerator(Muxer.FFMPEG).segmentFrames(10).build();
+        byte[] data = capture.getData().clone();
+        int corruptedIndex = 5;
+        data[corruptedIndex * TsPacket.TS_TOTAL_SIZE] = 0x00;
+        // adaptation_field_length 가 183 보다 큰 패킷
+        int badLengthIndex = 9;
+        int badLengthOffset = badLengthIndex * TsPacket.TS_TOTAL_SIZE;
+        data[badLengthOffset + 3] = (byte) ((data[badLengthOffset + 3] & 0xCF) | 0x30);
+        data[badLengthOffset + 4] = (byte) 0xC0;
+
+        TsPacket tsPacket = new TsPacket(Arrays.copyOfRange(data, corruptedIndex * TsPacket.TS_TOTAL_SIZE, (corruptedIndex + 1) * TsPacket.TS_TOTAL_SIZE));
+        assertNotEquals(TsPacket.SYNC_BYTE, tsPacket.getSyncByte());
+
+        // 깨진 패킷도 건너뛰지 않고 188 bytes 단위로 반환한다.
+        TsPacketReader reader = new TsPacketReader();
+        reader.reset(data, 0, data.length);
+        int index = 0;
+        while (reader.next()) {
+            assertEquals(index * TsPacket.TS_TOTAL_SIZE, reader.getPacketOffset());
+            if (index == corruptedIndex || index == badLengthIndex) {
+                assertFalse(reader.isValid());
+                assertEquals(TsPacketReader.NO_PCR, reader.getPcr());
+                assertEquals(0, reader.getPayloadLength());
+            } else {
+                assertSamePacket(data, reader.getPacketOffset(), reader);
+            }
+            index++;
+        }
+        assertEquals(data.length / TsPacket.TS_TOTAL_SIZE, index);
+        assertFalse(reader.wrap(data, corruptedIndex * TsPacket.TS_TOTAL_SIZE));
+    }
+
+    @Test
+    public void testPartialPacket() {
+        Capture capture = new TsStreamGenerator(Muxer.GSTREAMER).segmentFrames(2).build();
+        byte[] data = capture.getData();
+
+        // 188 bytes 가 안되는 나머지는 읽지 않는다.
+        TsPacketReader reader = new TsPacketReader();
+        reader.reset(data, TsPacket.TS_TOTAL_SIZE, TsPacket.TS_TOTAL_SIZE * 2 + 100);
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        assertFalse(reader.next());
+        assertFalse(reader.isValid());
+
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(data, 0, TsPacket.TS_TOTAL_SIZE * 3 - 1);
+        reader.reset(byteBuf, 0, data.length);
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        assertFalse(reader.next());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn private static void assertSameCapture(Capture capture)
+     * @brief 캡처를 RTP payload 단위로 나눠서 byte[] 와 ByteBuf 로 각각 읽고 모든 패킷을 TsPacket 과 비교하는 함수
+     * @param capture TS 캡처
+     */
+    private static void assertSameCapture(Capture capture) {
+        byte[] data = capture.getData();
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(data);
+        TsPacketReader arrayReader = new TsPacketReader();
+        TsPacketReader byteBufReader = new TsPacketReader();
+
+        int packetCount = 0;
+        int pcrCount = 0;
+        for (int chunkIndex = 0; chunkIndex < data.length; chunkIndex += CHUNK_SIZE) {
+            arrayReader.reset(data, chunkIndex, CHUNK_SIZE);
+            byteBufReader.reset(byteBuf, chunkIndex, CHUNK_SIZE);
+            while (arrayReader.next()) {
+                assertTrue(byteBufReader.next());
+                assertSamePacket(data, arrayReader.getPacketOffset(), arrayReader);
+                assertSamePacket(data, byteBufReader.getPacketOffset(), byteBufReader);
+                if (arrayReader.getPcr() != TsPacketReader.NO_PCR) {
+                    pcrCount++;
+                }
+                packetCount++;
+            }
+            assertFalse(byteBufReader.next());
+        }
+
+        assertEquals(data.length / TsPacket.TS_TOTAL_SIZE, packetCount);
+        assertTrue(pcrCount > 0);
+    }
+
+    /**
+     * @fn private static void assertSamePacket(byte[] data, int offset, TsPacketReader reader)
+     * @brief 같은 패킷을 TsPacket 으로 파싱한 결과와 reader 의 현재 값이 같은지 확인하는 함수
+     * @param data TS 데이터
+     * @param offset 패킷 위치
+     * @param reader 같은 패킷을 읽은 TsPacketReader
+     */
+    private static void assertSamePacket(byte[] data, int offset, TsPacketReader reader) {
+        byte[] packet = Arrays.copyOfRange(data, offset, offset + TsPacket.TS_TOTAL_SIZE);
+        TsPacket tsPacket = new TsPacket(packet);
+        String message = reader.toString();
+
+        assertEquals(message, TsPacket.SYNC_BYTE, tsPacket.getSyncByte());
+        assertTrue(message, reader.isValid());
+        assertEquals(message, offset, reader.getPacketOffset());
+        assertEquals(message, tsPacket.getPid(), reader.getPid());
+        assertEquals(message, tsPacket.getContinuityCounter(), reader.getContinuityCounter());
+        assertEquals(message, tsPacket.getAdaptationFieldControl(), reader.getAdaptationFieldControl());
+        assertEquals(message, tsPacket.isPayloadUnitStartIndicator(), reader.isPayloadUnitStartIndicator());
+        assertEquals(message, tsPacket.isTransportErrorIndicator(), reader.isTransportErrorIndicator());
+        assertEquals(message, tsPacket.isTransportPriority(), reader.isTransportPriority());
+        assertEquals(message, tsPacket.getTransportScramblingControl(), reader.getTransportScramblingControl());
+
+        // adaptation field
+        byte[] adaptationField = tsPacket.getAdaptationField();
+        int flags = adaptationField.length > 0 ? adaptationField[0] & 0xFF : 0;
+        assertEquals(message, tsPacket.getAdaptationFieldLength(), reader.getAdaptationFieldLength());
+        assertEquals(message, (flags & 0x80) != 0, reader.isDiscontinuityIndicator());
+        assertEquals(message, (flags & 0x40) != 0, reader.isRandomAccessIndicator());
+        assertEquals(message, (flags & 0x20) != 0, reader.isElementaryStreamPriorityIndicator());
+        assertEquals(message, (flags & 0x10) != 0, reader.isPcrFlag());
+        assertEquals(message, getPcr(adaptationField), reader.getPcr());
+
+        // payload (TsPacket 은 PUSI 이면 첫 byte 를 pointer_field 로 떼어낸다.)
+        int pointerLength = tsPacket.isPayloadUnitStartIndicator() && reader.hasPayload() ? 1 : 0;
+        assertEquals(message, tsPacket.getPayload().length + pointerLength, reader.getPayloadLength());
+        if (reader.getPayloadLength() > 0) {
+            int payloadIndex = reader.getPayloadOffset() - offset + pointerLength;
+            assertArrayEquals(message, tsPacket.getPayload(), Arrays.copyOfRange(packet, payloadIndex, TsPacket.TS_TOTAL_SIZE));
+        }
+    }
+
+    private static long getPcr(byte[] adaptationField) {
+        if (adaptationField.length < 7 || (adaptationField[0] & 0x10) == 0) {
+            return TsPacketReader.NO_PCR;
+        }
+
+        long base = 0;
+        for (int i = 1; i <= 4; i++) {
+            base = (base << 8) | (adaptationField[i] & 0xFF);
+        }
+        base = (base << 1) | ((adaptationField[5] & 0xFF) >>> 7);
+        int extension = ((adaptationField[5] & 0x01) << 8) | (adaptationField[6] & 0xFF);
+        return base * 300 + extension;
+    }
+
+    private static byte[] newPacket(int pid, int adaptationFieldControl, int cc) {
+        byte[] packet = new byte[TsPacket.TS_TOTAL_SIZE];
+        packet[0] = TsPacket.SYNC_BYTE;
+        packet[1] = (byte) (pid >>> 8);
+        packet[2] = (byte) pid;
+        packet[3] = (byte) ((adaptationFieldControl << 4) | cc);
+        return packet;
+    }
+
+}
@@ -0,0 +1,654 @@
+package com.rtsp.client.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @class public class TsStreamGenerator
+ * @brief 테스트용 TS 스트림을 만드는 class
+ *
+ * 샌드박스에서 실제 muxer 를 실행할 수 없으므로, 각 muxer 가 쓰는 패킷 배치를 그대로 흉내 낸 캡처를 만든다.
+ * - FFMPEG : PMT 0x1000, video 0x100 (PCR), audio 0x101, SDT("FFmpeg"), PAT/PMT 를 100 ms 마다 반복, keyframe 에 RAI
+ * - GSTREAMER : mpegtsmux 처럼 PMT 0x20, video 0x41 (PCR), audio 0x42, SDT 없음, PAT/PMT 를 keyframe 앞과 100 ms 마다 반복
+ * - SEGMENTER : 하드웨어 인코더/세그먼터처럼 PMT 0x1E0, video 0x1E1 (PCR), audio 0x1E2, PAT/PMT 는 세그먼트 시작에만 쓴다.
+ *
+ * remuxPerSegment 이면 세그먼트마다 muxer 를 새로 띄운 것처럼 CC 를 0 부터 다시 시작한다. (PCR 은 restartPcr 이면 다시 시작한다.)
+ * elementaryStream 이면 video 는 SPS / PPS / slice header 를 가진 H.264 access unit 으로, audio 는 ADTS frame 으로 채워서 mp4parser 가 sample 로 나눌 수 있게 한다.
+ * frameTicks 로 frame 간격을 바꿀 수 있고, bFrames 이면 I P B P B ... 순서로 DTS 와 PTS 가 다른 video 를 만든다.
+ * build 결과에는 세그먼트 시작 패킷의 위치가 들어있으며, dropPacket 으로 지운 패킷은 위치 계산에서 빠진다.
+ */
+public class TsStreamGenerator {
+
+    public enum Muxer {
+        FFMPEG, GSTREAMER, SEGMENTER
+    }
+
+    public static final int VIDEO_FPS = 25;
+    // 90 kHz 기준 한 frame 의 시간
+    public static final long FRAME_TICKS = 90000 / VIDEO_FPS;
+    // PCR 이 PTS 보다 앞서는 시간 (90 kHz)
+    private static final long PCR_START = 126000;
+    private static final long PSI_INTERVAL_TICKS = 9000;
+    private static final long SDT_INTERVAL_TICKS = 45000;
+
+    private static final int STREAM_TYPE_H264 = 0x1B;
+    private static final int STREAM_TYPE_AAC = 0x0F;
+
+    private final Muxer muxer;
+    private final int pmtPid;
+    private final int videoPid;
+    private final int audioPid;
+
+    private int[] segmentFrames = {50, 50, 50, 50};
+    private int gopFrames = VIDEO_FPS;
+    private int videoPacketsPerFrame = 6;
+    private boolean remuxPerSegment = false;
+    private boolean restartPcr = false;
+    private boolean discontinuityOnSegmentStart = false;
+    private boolean elementaryStream = false;
+    private long[] frameTicks = {FRAME_TICKS};
+    private boolean bFrames = false;
+    private final Set<Integer> droppedPacketIndexes = new HashSet<>();
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public TsStreamGenerator(Muxer muxer) {
+        this.muxer = muxer;
+        switch (muxer) {
+            case FFMPEG:
+                pmtPid = 0x1000;
+                videoPid = 0x100;
+                audioPid = 0x101;
+                break;
+            case GSTREAMER:
+                pmtPid = 0x20;
+                videoPid = 0x41;
+                audioPid = 0x42;
+                break;
+            default:
+                pmtPid = 0x1E0;
+                videoPid = 0x1E1;
+                audioPid = 0x1E2;
+                remuxPerSegment = true;
+                break;
+        }
+    }
+
+    public TsStreamGenerator segmentFrames(int... segmentFrames) {
+        this.segmentFrames = segmentFrames;
+        return this;
+    }
+
+    public TsStreamGenerator gopFrames(int gopFrames) {
+        this.gopFrames = gopFrames;
+        return this;
+    }
+
+    public TsStreamGenerator videoPacketsPerFrame(int videoPacketsPerFrame) {
+        this.videoPacketsPerFrame = videoPacketsPerFrame;
+        return this;
+    }
+
+    public TsStreamGenerator remuxPerSegment(boolean remuxPerSegment) {
+        this.remuxPerSegment = remuxPerSegment;
+        return this;
+    }
+
+    public TsStreamGenerator restartPcr(boolean restartPcr) {
+        this.restartPcr = restartPcr;
+        return this;
+    }
+
+    public TsStreamGenerator discontinuityOnSegmentStart(boolean discontinuityOnSegmentStart) {
+        this.discontinuityOnSegmentStart = discontinuityOnSegmentStart;
+        return this;
+    }
+
+    public TsStreamGenerator elementaryStream(boolean elementaryStream) {
+        this.elementaryStream = elementaryStream;
+        return this;
+    }
+
+    /**
+     * @fn public TsStreamGenerator frameTicks(long... frameTicks)
+     * @brief frame 마다 돌아가면서 쓸 90 kHz frame 간격을 정하는 함수
+     * @param frameTicks frame 간격 목록
+     * @return this
+     */
+    public TsStreamGenerator frameTicks(long... frameTicks) {
+        this.frameTicks = frameTicks;
+        return this;
+    }
+
+    /**
+     * @fn public TsStreamGenerator bFrames(boolean bFrames)
+     * @brief GOP 안에서 I P B P B ... 순서(decode 순서)로 video 를 만들지 정하는 함수 (B 는 앞의 P 보다 먼저 보인다.)
+     * PTS 는 DTS + composition offset 이고, composition offset 은 I 가 FRAME_TICKS, P 가 FRAME_TICKS * 2, B 가 0 이다. (frameTicks 와 함께 쓰지 않는다.)
+     * @param bFrames B frame 사용 여부
+     * @return this
+     */
+    public TsStreamGenerator bFrames(boolean bFrames) {
+        this.bFrames = bFrames;
+        return this;
+    }
+
+    /**
+     * @fn public TsStreamGenerator dropPacket(int packetIndex)
+     * @brief 패킷 손실을 흉내 내기 위해 지울 패킷을 추가하는 함수
+     * @param packetIndex 지우기 전 스트림에서의 패킷 순서
+     * @return this
+     */
+    public TsStreamGenerator dropPacket(int packetIndex) {
+        droppedPacketIndexes.add(packetIndex);
+        return this;
+    }
+
+    public int getVideoPid() {
+        return videoPid;
+    }
+
+    public int getAudioPid() {
+        return audioPid;
+    }
+
+    public int getPmtPid() {
+        return pmtPid;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn public Capture build()
+     * @brief 설정한 muxer 배치로 TS 스트림을 만드는 함수
+     * @return Capture
+     */
+    public Capture build() {
+        List<byte[]> packets = new ArrayList<>();
+        List<Integer> segmentStartIndexes = new ArrayList<>();
+        Map<Integer, Integer> ccMap = new HashMap<>();
+
+        long frameIndex = 0;
+        for (int segmentIndex = 0; segmentIndex < segmentFrames.length; segmentIndex++) {
+            if (remuxPerSegment) {
+                ccMap.clear();
+            }
+            if (restartPcr) {
+                frameIndex = 0;
+            }
+
+            segmentStartIndexes.add(packets.size());
+            boolean isDiscontinuity = discontinuityOnSegmentStart && segmentIndex > 0;
+            packets.add(makePat(nextCc(ccMap, TsPacketReader.PAT_PID), isDiscontinuity));
+            packets.add(makePmt(nextCc(ccMap, pmtPid)));
+            long lastPsiTicks = getTicks(frameIndex);
+            long lastSdtTicks = -SDT_INTERVAL_TICKS;
+
+            for (int frame = 0; frame < segmentFrames[segmentIndex]; frame++, frameIndex++) {
+                long ticks = getTicks(frameIndex);
+                boolean isKeyFrame = frame % gopFrames == 0;
+
+                if (muxer == Muxer.FFMPEG && ticks - lastSdtTicks >= SDT_INTERVAL_TICKS) {
+                    packets.add(makeSdt(nextCc(ccMap, TsPacketReader.SDT_PID)));
+                    lastSdtTicks = ticks;
+                }
+                if (muxer != Muxer.SEGMENTER && frame > 0
+                        && (ticks - lastPsiTicks >= PSI_INTERVAL_TICKS || (muxer == Muxer.GSTREAMER && isKeyFrame))) {
+                    packets.add(makePat(nextCc(ccMap, TsPacketReader.PAT_PID), false));
+                    packets.add(makePmt(nextCc(ccMap, pmtPid)));
+                    lastPsiTicks = ticks;
+                }
+
+                addVideoFrame(packets, ccMap, ticks, frame % gopFrames, frameIndex / gopFrames);
+                packets.add(makeAudio(nextCc(ccMap, audioPid), ticks));
+            }
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        List<Integer> segmentOffsets = new ArrayList<>();
+        int nextSegment = 0;
+        int keptCount = 0;
+        for (int i = 0; i < packets.size(); i++) {
+            while (nextSegment < segmentStartIndexes.size() && segmentStartIndexes.get(nextSegment) <= i) {
+                segmentOffsets.add(keptCount * TsPacket.TS_TOTAL_SIZE);
+                nextSegment++;
+            }
+            if (droppedPacketIndexes.contains(i)) {
+                continue;
+            }
+            outputStream.write(packets.get(i), 0, TsPacket.TS_TOTAL_SIZE);
+            keptCount++;
+        }
+
+        double[] durations = new double[segmentFrames.length];
+        long segmentStartFrame = 0;
+        for (int i = 0; i < segmentFrames.length; i++) {
+            durations[i] = (double) (getTicks(segmentStartFrame + segmentFrames[i]) - getTicks(segmentStartFrame)) / 90000;
+            segmentStartFrame += segmentFrames[i];
+        }
+        return new Capture(outputStream.toByteArray(), packets, segmentStartIndexes, segmentOffsets, durations);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @fn private long getTicks(long frameIndex)
+     * @brief frameIndex 번째 frame 의 90 kHz 시작 시간을 구하는 함수 (frameTicks 를 돌아가면서 더한다.)
+     */
+    private long getTicks(long frameIndex) {
+        long cycleTicks = 0;
+        for (long frameTick : frameTicks) {
+            cycleTicks += frameTick;
+        }
+
+        long ticks = frameIndex / frameTicks.length * cycleTicks;
+        for (int i = 0; i < frameIndex % frameTicks.length; i++) {
+            ticks += frameTicks[i];
+        }
+        return ticks;
+    }
+
+    /**
+     * @fn public long getCompositionOffset(int gopFrame)
+     * @brief GOP 안에서 gopFrame 번째(decode 순서) video frame 의 PTS - DTS 를 구하는 함수
+     * @return 90 kHz composition offset (bFrames 가 아니면 0)
+     */
+    public long getCompositionOffset(int gopFrame) {
+        if (!bFrames) {
+            return 0;
+        }
+        if (gopFrame == 0) {
+            return FRAME_TICKS;
+        }
+        return gopFrame % 2 == 1 ? FRAME_TICKS * 2 : 0;
+    }
+
+    private void addVideoFrame(List<byte[]> packets, Map<Integer, Integer> ccMap, long ticks, int gopFrame, long gopIndex) {
+        boolean isKeyFrame = gopFrame == 0;
+        long dts = PCR_START + ticks + FRAME_TICKS * 2;
+        for (int i = 0; i < videoPacketsPerFrame; i++) {
+            byte[] packet = newPacket(videoPid, i == 0, nextCc(ccMap, videoPid));
+            int index = TsPacket.TS_HEADER_SIZE;
+            if (i == 0) {
+                // adaptation field : flags (RAI, PCR) + PCR 6 bytes
+                int flags = 0x10 | (isKeyFrame ? 0x40 : 0);
+                index = writeAdaptationField(packet, flags, (PCR_START + ticks) * 300, 8);
+                index = bFrames ?
+                        writePesHeader(packet, index, 0xE0, dts + getCompositionOffset(gopFrame), dts) :
+                        writePesHeader(packet, index, 0xE0, dts);
+                if (elementaryStream) {
+                    index = writeAccessUnit(packet, index, gopFrame, gopIndex);
+                }
+            } else if (i == videoPacketsPerFrame - 1) {
+                // 마지막 패킷은 frame 크기에 맞추기 위해 stuffing 으로 채운다.
+                index = writeAdaptationField(packet, 0, -1, 40);
+            }
+            fillPayload(packet, index, (byte) (isKeyFrame ? 0x65 : 0x41));
+            packets.add(packet);
+        }
+    }
+
+    private byte[] makeAudio(int cc, long ticks) {
+        byte[] packet = newPacket(audioPid, true, cc);
+        int index = writeAdaptationField(packet, 0, -1, 100);
+        index = writePesHeader(packet, index, 0xC0, PCR_START + ticks + FRAME_TICKS * 2);
+        if (elementaryStream) {
+            index = writeAdtsHeader(packet, index, TsPacket.TS_TOTAL_SIZE - index);
+            fillPayload(packet, index, (byte) 0x21);
+        } else {
+            fillPayload(packet, index, (byte) 0xFF);
+        }
+        return packet;
+    }
+
+    /**
+     * @fn private int writeAccessUnit(byte[] packet, int index, int gopFrame, long gopIndex)
+     * @brief video frame 의 앞부분(keyframe 이면 SPS / PPS 포함)과 slice header 를 쓰는 함수 (나머지 slice data 는 fillPayload 로 채운다.)
+     * SPS 는 Main profile, 32x32, log2_max_frame_num 4, pic_order_cnt_type 0, log2_max_pic_order_cnt_lsb 8 이다.
+     * @return slice data 시작 위치
+     */
+    private int writeAccessUnit(byte[] packet, int index, int gopFrame, long gopIndex) {
+        boolean isKeyFrame = gopFrame == 0;
+        if (isKeyFrame) {
+            BitWriter sps = new BitWriter();
+            sps.writeBits(77, 8).writeBits(0, 8).writeBits(30, 8); // profile_idc, constraint flags, level_idc
+            sps.writeUe(0).writeUe(0).writeUe(0).writeUe(4); // sps_id, log2_max_frame_num - 4, poc type, log2_max_poc_lsb - 4
+            sps.writeUe(2).writeBits(0, 1).writeUe(1).writeUe(1); // max_num_ref_frames, gaps, width / height in mbs - 1
+            sps.writeBits(1, 1).writeBits(1, 1).writeBits(0, 1).writeBits(0, 1); // frame_mbs_only, direct_8x8, cropping, vui
+            index = writeNal(packet, index, 0x67, sps.toRbsp());
+
+            BitWriter pps = new BitWriter();
+            pps.writeUe(0).writeUe(0).writeBits(0, 1).writeBits(0, 1).writeUe(0).writeUe(0).writeUe(0); // pps_id, sps_id, cabac, bottom_field_poc, slice groups, ref idx
+            pps.writeBits(0, 1).writeBits(0, 2).writeSe(0).writeSe(0).writeSe(0); // weighted pred, qp, qs, chroma qp offset
+            pps.writeBits(0, 1).writeBits(0, 1).writeBits(0, 1); // deblocking control, constrained intra, redundant_pic_cnt
+            index = writeNal(packet, index, 0x68, pps.toRbsp());
+        }
+
+        // decode 순서 I P B P B ... 를 보이는 순서 I B P B P ... 로 바꾼 순서로 pic_order_cnt 를 매긴다.
+        int pictureOrder = !bFrames || isKeyFrame ? gopFrame : (gopFrame % 2 == 1 ? gopFrame + 1 : gopFrame - 1);
+        boolean isReference = !bFrames || gopFrame % 2 == 1 || isKeyFrame;
+        BitWriter slice = new BitWriter();
+        slice.writeUe(0).writeUe(isKeyFrame ? 7 : 5).writeUe(0).writeBits(gopFrame & 0x0F, 4); // first_mb, slice_type, pps_id, frame_num
+        if (isKeyFrame) {
+            slice.writeUe((int) (gopIndex & 0x01)); // idr_pic_id
+        }
+        slice.writeBits((pictureOrder * 2) & 0xFF, 8); // pic_order_cnt_lsb
+        int nalHeader = isKeyFrame ? 0x65 : (isReference ? 0x41 : 0x01);
+        // slice header 뒤는 fillPayload 가 slice data 로 채운다.
+        return writeNal(packet, index, nalHeader, slice.toRbsp());
+    }
+
+    private static int writeNal(byte[] packet, int index, int nalHeader, byte[] rbsp) {
+        packet[index++] = 0x00;
+        packet[index++] = 0x00;
+        packet[index++] = 0x00;
+        packet[index++] = 0x01;
+        packet[index++] = (byte) nalHeader;
+        System.arraycopy(rbsp, 0, packet, index, rbsp.length);
+        return index + rbsp.length;
+    }
+
+    /**
+     * @fn private static int writeAdtsHeader(byte[] packet, int index, int frameLength)
+     * @brief AAC LC, 48 kHz, stereo ADTS header 를 쓰는 함수 (CRC 없음)
+     * @param frameLength header 를 포함한 ADTS frame 길이
+     * @return raw data 시작 위치
+     */
+    private static int writeAdtsHeader(byte[] packet, int index, int frameLength) {
+        packet[index++] = (byte) 0xFF;
+        packet[index++] = (byte) 0xF1;
+        packet[index++] = (byte) 0x4C; // profile LC, sampling_frequency_index 3, channel_configuration 2 (상위 1 bit)
+        packet[index++] = (byte) (0x80 | ((frameLength >>> 11) & 0x03));
+        packet[index++] = (byte) (frameLength >>> 3);
+        packet[index++] = (byte) (((frameLength & 0x07) << 5) | 0x1F);
+        packet[index++] = (byte) 0xFC;
+        return index;
+    }
+
+    private byte[] makePat(int cc, boolean isDiscontinuity) {
+        byte[] packet = newPacket(TsPacketReader.PAT_PID, true, cc);
+        int index = TsPacket.TS_HEADER_SIZE;
+        if (isDiscontinuity) {
+            index = writeAdaptationField(packet, 0x80, -1, 2);
+        }
+        byte[] section = {
+                0x00, (byte) 0xB0, 0x0D, 0x00, 0x01, (byte) 0xC1, 0x00, 0x00,
+                0x00, 0x01, (byte) (0xE0 | (pmtPid >>> 8)), (byte) pmtPid
+        };
+        return writeSection(packet, index, section);
+    }
+
+    private byte[] makePmt(int cc) {
+        byte[] packet = newPacket(pmtPid, true, cc);
+        byte[] section = {
+                0x02, (byte) 0xB0, 0x17, 0x00, 0x01, (byte) 0xC1, 0x00, 0x00,
+                (byte) (0xE0 | (videoPid >>> 8)), (byte) videoPid, (byte) 0xF0, 0x00,
+                STREAM_TYPE_H264, (byte) (0xE0 | (videoPid >>> 8)), (byte) videoPid, (byte) 0xF0, 0x00,
+                STREAM_TYPE_AAC, (byte) (0xE0 | (audioPid >>> 8)), (byte) audioPid, (byte) 0xF0, 0x00
+        };
+        return writeSection(packet, TsPacket.TS_HEADER_SIZE, section);
+    }
+
+    private byte[] makeSdt(int cc) {
+        byte[] packet = newPacket(TsPacketReader.SDT_PID, true, cc);
+        byte[] provider = "FFmpeg".getBytes(StandardCharsets.US_ASCII);
+        byte[] service = "Service01".getBytes(StandardCharsets.US_ASCII);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(0x00); body.write(0x01); body.write(0xC1); body.write(0x00); body.write(0x00);
+        body.write(0xFF); body.write(0x01); body.write(0xFF);
+        int descriptorLength = 5 + provider.length + service.length;
+        body.write(0x00); body.write(0x01); body.write(0xFC);
+        body.write(0x80 | (descriptorLength >>> 8)); body.write(descriptorLength);
+        body.write(0x48); body.write(3 + provider.length + service.length); body.write(0x01);
+        body.write(provider.length); body.write(provider, 0, provider.length);
+        body.write(service.length); body.write(service, 0, service.length);
+
+        byte[] bodyBytes = body.toByteArray();
+        byte[] section = new byte[3 + bodyBytes.length];
+        section[0] = 0x42;
+        section[1] = (byte) (0xF0 | ((bodyBytes.length + 4) >>> 8));
+        section[2] = (byte) (bodyBytes.length + 4);
+        System.arraycopy(bodyBytes, 0, section, 3, bodyBytes.length);
+        return writeSection(packet, TsPacket.TS_HEADER_SIZE, section);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private static int nextCc(Map<Integer, Integer> ccMap, int pid) {
+        int cc = ccMap.getOrDefault(pid, -1);
+        cc = (cc + 1) & 0x0F;
+        ccMap.put(pid, cc);
+        return cc;
+    }
+
+    private static byte[] newPacket(int pid, boolean isPusi, int cc) {
+        byte[] packet = new byte[TsPacket.TS_TOTAL_SIZE];
+        packet[0] = TsPacket.SYNC_BYTE;
+        packet[1] = (byte) ((isPusi ? 0x40 : 0) | (pid >>> 8));
+        packet[2] = (byte) pid;
+        packet[3] = (byte) (0x10 | cc);
+        return packet;
+    }
+
+    /**
+     * @fn public static int writeAdaptationField(byte[] packet, int flags, long pcr, int length)
+     * @brief adaptation field 를 쓰는 함수 (adaptation_field_control 을 11 로 바꾸고, 남는 자리는 0xFF 로 채운다.)
+     * @param packet TS 패킷
+     * @param flags adaptation field flags (PCR flag 0x10 이 있으면 pcr 을 쓴다.)
+     * @param pcr 27 MHz PCR
+     * @param length adaptation_field_length
+     * @return payload 시작 위치
+     */
+    public static int writeAdaptationField(byte[] packet, int flags, long pcr, int length) {
+        packet[3] = (byte) ((packet[3] & 0xCF) | 0x30);
+        int index = TsPacket.TS_HEADER_SIZE;
+        packet[index] = (byte) length;
+        if (length > 0) {
+            packet[index + 1] = (byte) flags;
+            int fieldIndex = index + 2;
+            if ((flags & 0x10) != 0) {
+                long base = pcr / 300;
+                long extension = pcr % 300;
+                packet[fieldIndex] = (byte) (base >>> 25);
+                packet[fieldIndex + 1] = (byte) (base >>> 17);
+                packet[fieldIndex + 2] = (byte) (base >>> 9);
+                packet[fieldIndex + 3] = (byte) (base >>> 1);
+                packet[fieldIndex + 4] = (byte) (((base & 0x01) << 7) | 0x7E | (extension >>> 8));
+                packet[fieldIndex + 5] = (byte) extension;
+                fieldIndex += 6;
+            }
+            Arrays.fill(packet, fieldIndex, index + 1 + length, (byte) 0xFF);
+        }
+        return index + 1 + length;
+    }
+
+    private static int writePesHeader(byte[] packet, int index, int streamId, long pts, long dts) {
+        byte[] header = {
+                0x00, 0x00, 0x01, (byte) streamId, 0x00, 0x00, (byte) 0x80, (byte) 0xC0, 0x0A,
+                (byte) (0x31 | ((pts >>> 29) & 0x0E)), (byte) (pts >>> 22), (byte) (0x01 | ((pts >>> 14) & 0xFE)),
+                (byte) (pts >>> 7), (byte) (0x01 | ((pts << 1) & 0xFE)),
+                (byte) (0x11 | ((dts >>> 29) & 0x0E)), (byte) (dts >>> 22), (byte) (0x01 | ((dts >>> 14) & 0xFE)),
+                (byte) (dts >>> 7), (byte) (0x01 | ((dts << 1) & 0xFE))
+        };
+        System.arraycopy(header, 0, packet, index, header.length);
+        return index + header.length;
+    }
+
+    private static int writePesHeader(byte[] packet, int index, int streamId, long pts) {
+        byte[] header = {
+                0x00, 0x00, 0x01, (byte) streamId, 0x00, 0x00, (byte) 0x80, (byte) 0x80, 0x05,
+                (byte) (0x21 | ((pts >>> 29) & 0x0E)), (byte) (pts >>> 22), (byte) (0x01 | ((pts >>> 14) & 0xFE)),
+                (byte) (pts >>> 7), (byte) (0x01 | ((pts << 1) & 0xFE))
+        };
+        System.arraycopy(header, 0, packet, index, header.length);
+        return index + header.length;
+    }
+
+    private static void fillPayload(byte[] packet, int index, byte value) {
+        Arrays.fill(packet, index, TsPacket.TS_TOTAL_SIZE, value);
+    }
+
+    private static byte[] writeSection(byte[] packet, int index, byte[] section) {
+        // pointer_field + section + CRC32 + stuffing
+        packet[index++] = 0x00;
+        System.arraycopy(section, 0, packet, index, section.length);
+        index += section.length;
+        int crc = crc32Mpeg(section);
+        packet[index++] = (byte) (crc >>> 24);
+        packet[index++] = (byte) (crc >>> 16);
+        packet[index++] = (byte) (crc >>> 8);
+        packet[index++] = (byte) crc;
+        Arrays.fill(packet, index, TsPacket.TS_TOTAL_SIZE, (byte) 0xFF);
+        return packet;
+    }
+
+    private static int crc32Mpeg(byte[] data) {
+        int crc = 0xFFFFFFFF;
+        for (byte b : data) {
+            crc ^= (b & 0xFF) << 24;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+            }
+        }
+        return crc;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @class private static class BitWriter
+     * @brief SPS / PPS / slice header 를 쓰기 위한 bit 단위 writer (Exp-Golomb 포함)
+     */
+    private static class BitWriter {
+
+        private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        private int current = 0;
+        private int bitCount = 0;
+
+        private BitWriter writeBits(int value, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                current = (current << 1) | ((value >>> i) & 0x01);
+                if (++bitCount == 8) {
+                    outputStream.write(current);
+                    current = 0;
+                    bitCount = 0;
+                }
+            }
+            return this;
+        }
+
+        private BitWriter writeUe(int value) {
+            int codeNum = value + 1;
+            int length = 32 - Integer.numberOfLeadingZeros(codeNum);
+            writeBits(0, length - 1);
+            return writeBits(codeNum, length);
+        }
+
+        private BitWriter writeSe(int value) {
+            return writeUe(value <= 0 ? -2 * value : 2 * value - 1);
+        }
+
+        /**
+         * @fn private byte[] toRbsp()
+         * @brief rbsp_stop_one_bit 를 쓰고 byte 단위로 맞춘 결과를 반환하는 함수
+         */
+        private byte[] toRbsp() {
+            writeBits(1, 1);
+            while (bitCount != 0) {
+                writeBits(0, 1);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @class public static class Capture
+     * @brief 만든 TS 스트림과 세그먼트 시작 위치
+     */
+    public static class Capture {
+
+        private final byte[] data;
+        private final List<byte[]> packets;
+        private final List<Integer> segmentStartIndexes;
+        private final List<Integer> segmentOffsets;
+        private final double[] durations;
+
+        private Capture(byte[] data, List<byte[]> packets, List<Integer> segmentStartIndexes, List<Integer> segmentOffsets, double[] durations) {
+            this.data = data;
+            this.packets = packets;
+            this.segmentStartIndexes = segmentStartIndexes;
+            this.segmentOffsets = segmentOffsets;
+            this.durations = durations;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * @fn public List<byte[]> getPackets()
+         * @brief 손실을 적용하기 전의 패킷 목록을 반환하는 함수
+         * @return 패킷 목록 (dropPacket 의 packetIndex 기준)
+         */
+        public List<byte[]> getPackets() {
+            return packets;
+        }
+
+        /**
+         * @fn public List<Integer> getSegmentOffsets()
+         * @brief 두 번째 세그먼트부터의 시작 위치를 반환하는 함수 (손실을 적용한 data 기준)
+         * @return 세그먼트 시작 위치 목록
+         */
+        public List<Integer> getSegmentOffsets() {
+            return segmentOffsets.subList(1, segmentOffsets.size());
+        }
+
+        public double[] getDurations() {
+            return durations;
+        }
+
+        /**
+         * @fn public int findPacketIndex(int segmentIndex, int pid, int nth)
+         * @brief 세그먼트 안에서 nth 번째 pid 패킷의 순서를 반환하는 함수 (손실을 적용하기 전 기준)
+         * @return 패킷 순서, 없으면 -1 반환
+         */
+        public int findPacketIndex(int segmentIndex, int pid, int nth) {
+            int count = 0;
+            for (int i = 0; i < packets.size(); i++) {
+                byte[] packet = packets.get(i);
+                int curPid = ((packet[1] & 0x1F) << 8) | (packet[2] & 0xFF);
+                if (curPid != pid || segmentOf(i) != segmentIndex) {
+                    continue;
+                }
+                if (count++ == nth) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public int getContinuityCounter(int packetIndex) {
+            return packets.get(packetIndex)[3] & 0x0F;
+        }
+
+        private int segmentOf(int packetIndex) {
+            int segment = 0;
+            for (int i = 1; i < segmentStartIndexes.size(); i++) {
+                if (packetIndex >= segmentStartIndexes.get(i)) {
+                    segment = i;
+                }
+            }
+            return segment;
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+package com.rtsp.client.service.base;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class public class SpscRingBufferBenchmark
+ * @brief 생산자 스레드 하나, 소비자 스레드 하나로 SpscRingBuffer, ConcurrentCyclicFIFO, ArrayBlockingQueue 의 처리량을 비교하는 JMH benchmark
+ * 실행 : mvn -P jmh test -Djmh.args="SpscRingBufferBenchmark -prof gc"
+ * RtspUnit 의 수신 버퍼처럼 Netty 스레드(offer)와 StreamReceiver(poll)가 동시에 쉬지 않고 접근하는 상황이다.
+ * ConcurrentCyclicFIFO 는 용량 제한이 없으므로 CAPACITY 만큼 차 있으면 생산자가 offer 하지 않고 실패로 센다.
+ * 결과의 offered / polled 가 초당 성공한 offer / poll 개수이고, -prof gc 의 gc.alloc.rate.norm 으로 원소마다 Node 할당 여부를 볼 수 있다.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpscRingBufferBenchmark {
+
+    // RtspUnit 의 M3U8_BUFFER_CAPACITY 와 같은 크기
+    private static final int CAPACITY = 1024;
+    private static final Object ELEMENT = new Object();
+
+    @Param({"SPSC_RING_BUFFER", "CONCURRENT_CYCLIC_FIFO", "ARRAY_BLOCKING_QUEUE"})
+    public String queueType;
+
+    private Queue queue;
+
+    /**
+     * @class interface Queue
+     * @brief 비교할 queue 의 offer / poll 만 감싼 interface
+     */
+    interface Queue {
+        boolean offer(Object e);
+        Object poll();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Setup
+    public void setup() {
+        switch (queueType) {
+            case "SPSC_RING_BUFFER":
+                SpscRingBuffer<Object> spscRingBuffer = new SpscRingBuffer<>(CAPACITY);
+                queue = new Queue() {
+                    @Override
+                    public boolean offer(Object e) {
+                        return spscRingBuffer.offer(e);
+                    }
+
+                    @Override
+                    public Object poll() {
+                        return spscRingBuffer.poll();
+                    }
+                };
+                break;
+            case "CONCURRENT_CYCLIC_FIFO":
+                ConcurrentCyclicFIFO<Object> concurrentCyclicFIFO = new ConcurrentCyclicFIFO<>();
+                queue = new Queue() {
+                    @Override
+                    public boolean offer(Object e) {
+                        if (concurrentCyclicFIFO.size() >= CAPACITY) {
+                            return false;
+                        }
+                        concurrentCyclicFIFO.offer(e);
+                        return true;
+                    }
+
+                    @Override
+                    public Object poll() {
+                        return concurrentCyclicFIFO.poll();
+                    }
+                };
+                break;
+            case "ARRAY_BLOCKING_QUEUE":
+                ArrayBlockingQueue<Object> arrayBlockingQueue = new ArrayBlockingQueue<>(CAPACITY);
+                queue = new Queue() {
+                    @Override
+                    public boolean offer(Object e) {
+                        return arrayBlockingQueue.offer(e);
+                    }
+
+                    @Override
+                    public Object poll() {
+                        return arrayBlockingQueue.poll();
+                    }
+                };
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown queue type. (" + queueType + ")");
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @class public static class OfferCounters
+     * @brief 생산자 스레드의 성공, 실패(가득 참) 횟수
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class OfferCounters {
+
+        public long offered;
+        public long offerFailed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            offered = 0;
+            offerFailed = 0;
+        }
+
+    }
+
+    /**
+     * @class public static class PollCounters
+     * @brief 소비자 스레드의 성공, 실패(비어 있음) 횟수
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class PollCounters {
+
+        public long polled;
+        public long pollFailed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            polled = 0;
+            pollFailed = 0;
+        }
+
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public void offer(OfferCounters counters) {
+        if (queue.offer(ELEMENT)) {
+            counters.offered++;
+        } else {
+            counters.offerFailed++;
+        }
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public void poll(PollCounters counters) {
+        if (queue.poll() != null) {
+            counters.polled++;
+        } else {
+            counters.pollFailed++;
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.rtsp.client.service.base;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @class public class SpscRingBufferTest
+ * @brief SpscRingBuffer 의 용량 제한과 생산자 / 소비자 스레드 간 순서를 확인하는 test
+ */
+public class SpscRingBufferTest {
+
+    private static final int COUNT = 1000000;
+
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testCapacity() {
+        SpscRingBuffer<Integer> spscRingBuffer = new SpscRingBuffer<>(3);
+        assertEquals(4, spscRingBuffer.capacity());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(spscRingBuffer.offer(i));
+        }
+        assertFalse(spscRingBuffer.offer(4));
+        assertEquals(4, spscRingBuffer.size());
+
+        assertEquals(Integer.valueOf(0), spscRingBuffer.poll());
+        assertTrue(spscRingBuffer.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), spscRingBuffer.poll());
+        }
+        assertNull(spscRingBuffer.poll());
+        assertTrue(spscRingBuffer.isEmpty());
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentOrder() throws Exception {
+        SpscRingBuffer<Integer> spscRingBuffer = new SpscRingBuffer<>(64);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < COUNT; i++) {
+                while (!spscRingBuffer.offer(i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int i = 0; i < COUNT; i++) {
+                    // take 와 poll(timeout) 으로 대기 중인 소비자를 offer 가 깨우는지도 같이 확인한다.
+                    Integer e = (i % 2 == 0) ? spscRingBuffer.take() : spscRingBuffer.poll(5, TimeUnit.SECONDS);
+                    assertEquals(Integer.valueOf(i), e);
+                }
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+
+        consumer.start();
+        producer.start();
+        producer.join();
+        consumer.join();
+
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        assertTrue(spscRingBuffer.isEmpty());
+    }
+
+}